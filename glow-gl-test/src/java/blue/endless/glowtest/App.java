@@ -46,13 +46,9 @@ public class App {
 		});
 		
 		window.setVisible(true);
+		window.setTargetFrameRate(100);
 		
 		while(!window.shouldClose()) {
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {}
-			
-			
 			window.paint(painter -> {
 				painter.clear(new RGBColor(0x7777AA));
 				for(int y=0; y<32; y++) {
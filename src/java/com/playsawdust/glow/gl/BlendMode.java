@@ -0,0 +1,46 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * How drawn colors combine with what's already in the target.
+ *
+ * <p>Alpha is blended separately from color, so that drawing into a transparent {@link Framebuffer} leaves behind
+ * correct coverage, and color that is premultiplied by it. Such a Framebuffer should be drawn back out with
+ * {@link #PREMULTIPLIED}.
+ */
+public enum BlendMode {
+	/** Ordinary "over" compositing: the source is layered on top of the destination according to its alpha. */
+	NORMAL(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA),
+	/** The source color, scaled by its alpha, is added to the destination. Good for glows, sparks, and light. */
+	ADDITIVE(GL_SRC_ALPHA, GL_ONE, GL_ONE, GL_ONE),
+	/** The destination color is multiplied by the source color. Good for shadows and tinted glass. */
+	MULTIPLY(GL_DST_COLOR, GL_ONE_MINUS_SRC_ALPHA, GL_ZERO, GL_ONE),
+	/**
+	 * "Over" compositing for sources whose color has already been multiplied by their alpha, such as the contents of
+	 * an offscreen layer. Tint with equal color and alpha, like (a, a, a, a), to fade a premultiplied source.
+	 */
+	PREMULTIPLIED(GL_ONE, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA),
+	;
+	
+	private final int sourceFactor;
+	private final int destFactor;
+	private final int sourceAlphaFactor;
+	private final int destAlphaFactor;
+	
+	BlendMode(int sourceFactor, int destFactor, int sourceAlphaFactor, int destAlphaFactor) {
+		this.sourceFactor = sourceFactor;
+		this.destFactor = destFactor;
+		this.sourceAlphaFactor = sourceAlphaFactor;
+		this.destAlphaFactor = destAlphaFactor;
+	}
+	
+	public int sourceFactor() { return sourceFactor; }
+	public int destFactor() { return destFactor; }
+	public int sourceAlphaFactor() { return sourceAlphaFactor; }
+	public int destAlphaFactor() { return destAlphaFactor; }
+	
+	public void apply() {
+		glBlendFuncSeparate(sourceFactor, destFactor, sourceAlphaFactor, destAlphaFactor);
+	}
+}
@@ -0,0 +1,151 @@
+package com.playsawdust.glow.gl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hands out {@code (offset, length)} ranges from a fixed-capacity region, such as a large shared buffer. This is a
+ * CPU-side bookkeeping structure only; it never touches the GPU.
+ *
+ * <p>Free space is kept in an address-ordered free list. Allocations are best-fit, and freed ranges are coalesced
+ * with their free neighbors immediately, so fragmentation only builds up from interleaved lifetimes. When that
+ * happens, {@link #getLargestFreeRange()} will shrink relative to {@link #getFreeSpace()}, and the owner can compact
+ * the region.
+ *
+ * <p>Units are whatever the owner wants them to be - vertices, indices, bytes.
+ */
+public class BufferAllocator {
+	/** offset -> length of each free range */
+	private final TreeMap<Integer, Integer> freeRanges = new TreeMap<>();
+	/** offset -> length of each allocated range */
+	private final Map<Integer, Integer> allocatedRanges = new HashMap<>();
+	private int capacity;
+	private int used = 0;
+	
+	public BufferAllocator(int capacity) {
+		this.capacity = capacity;
+		if (capacity > 0) freeRanges.put(0, capacity);
+	}
+	
+	/**
+	 * Allocates a range of the requested length.
+	 * @param length the number of units to allocate. Must be positive.
+	 * @return the offset of the allocated range, or -1 if no free range is large enough.
+	 */
+	public int allocate(int length) {
+		if (length <= 0) throw new IllegalArgumentException("Allocation length must be positive.");
+		
+		int bestOffset = -1;
+		int bestLength = Integer.MAX_VALUE;
+		for(Map.Entry<Integer, Integer> entry : freeRanges.entrySet()) {
+			int rangeLength = entry.getValue();
+			if (rangeLength >= length && rangeLength < bestLength) {
+				bestOffset = entry.getKey();
+				bestLength = rangeLength;
+				if (rangeLength == length) break;
+			}
+		}
+		
+		if (bestOffset == -1) return -1;
+		
+		freeRanges.remove(bestOffset);
+		if (bestLength > length) freeRanges.put(bestOffset + length, bestLength - length);
+		allocatedRanges.put(bestOffset, length);
+		used += length;
+		return bestOffset;
+	}
+	
+	/**
+	 * Returns a previously allocated range to the free list, merging it with any adjacent free ranges.
+	 * @param offset the offset returned by {@link #allocate(int)}
+	 */
+	public void free(int offset) {
+		Integer length = allocatedRanges.remove(offset);
+		if (length == null) throw new IllegalArgumentException("No range is allocated at offset " + offset + ".");
+		used -= length;
+		
+		int start = offset;
+		int end = offset + length;
+		
+		Map.Entry<Integer, Integer> before = freeRanges.floorEntry(start);
+		if (before != null && before.getKey() + before.getValue() == start) {
+			start = before.getKey();
+			freeRanges.remove(start);
+		}
+		
+		Integer afterLength = freeRanges.remove(end);
+		if (afterLength != null) end += afterLength;
+		
+		freeRanges.put(start, end - start);
+	}
+	
+	/**
+	 * Extends the managed region. The new space is added to the end of the region and merged with any trailing free
+	 * range.
+	 */
+	public void grow(int newCapacity) {
+		if (newCapacity <= capacity) return;
+		
+		int start = getTrailingFreeStart();
+		freeRanges.put(start, newCapacity - start);
+		capacity = newCapacity;
+	}
+	
+	/**
+	 * Packs every allocated range down to the start of the region, in address order, leaving one contiguous free range
+	 * at the end. The mover is called once for every allocated range, in increasing address order, including ranges
+	 * which didn't move ({@code oldOffset == newOffset}), so that the owner can copy live data into fresh storage.
+	 */
+	public void compact(RangeMover mover) {
+		TreeMap<Integer, Integer> ordered = new TreeMap<>(allocatedRanges);
+		allocatedRanges.clear();
+		freeRanges.clear();
+		
+		int cursor = 0;
+		for(Map.Entry<Integer, Integer> entry : ordered.entrySet()) {
+			int oldOffset = entry.getKey();
+			int length = entry.getValue();
+			mover.move(oldOffset, cursor, length);
+			allocatedRanges.put(cursor, length);
+			cursor += length;
+		}
+		
+		if (cursor < capacity) freeRanges.put(cursor, capacity - cursor);
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public int getUsedSpace() {
+		return used;
+	}
+	
+	public int getFreeSpace() {
+		return capacity - used;
+	}
+	
+	/**
+	 * Gets where the free space at the end of the region begins, which is the capacity if the last unit is allocated.
+	 * Growing the region to {@code getTrailingFreeStart() + length} guarantees room for an allocation of that length.
+	 */
+	public int getTrailingFreeStart() {
+		Map.Entry<Integer, Integer> last = freeRanges.lastEntry();
+		if (last != null && last.getKey() + last.getValue() == capacity) return last.getKey();
+		return capacity;
+	}
+	
+	public int getLargestFreeRange() {
+		int largest = 0;
+		for(int length : freeRanges.values()) {
+			largest = Math.max(largest, length);
+		}
+		return largest;
+	}
+	
+	@FunctionalInterface
+	public static interface RangeMover {
+		public void move(int oldOffset, int newOffset, int length);
+	}
+}
@@ -0,0 +1,255 @@
+package com.playsawdust.glow.gl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.playsawdust.glow.image.ImageData;
+import com.playsawdust.glow.image.color.RGBColor;
+import com.playsawdust.glow.offheap.Destroyable;
+import com.playsawdust.glow.render.Painter;
+
+/**
+ * A Painter which makes no GL calls at all, but instead records what it's asked to draw into an off-heap command
+ * stream. Because of this, a CommandBuffer can be filled from any thread, and the commands are replayed later on the
+ * thread which owns the GL context.
+ *
+ * <p>A CommandBuffer is not itself thread-safe - each recording thread should have its own, usually obtained from
+ * {@link CommandQueue#begin(long)}. Any ImageData handed to a CommandBuffer must not be modified until the buffer has
+ * been replayed.
+ */
+public class CommandBuffer implements Painter, Destroyable {
+	private static final int INITIAL_CAPACITY = 4096;
+	
+	private static final int OP_CLEAR = 1;
+	private static final int OP_FILL_RECT = 2;
+	private static final int OP_DRAW_IMAGE = 3;
+	private static final int OP_CALLBACK = 4;
+	private static final int OP_SET_LAYER = 5;
+	private static final int OP_SET_BLEND_MODE = 6;
+	
+	private ByteBuffer commands;
+	private final List<Object> references = new ArrayList<>();
+	private int width;
+	private int height;
+	private long order;
+	private long sequence;
+	
+	public CommandBuffer(int width, int height) {
+		this.commands = MemoryUtil.memAlloc(INITIAL_CAPACITY);
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Discards all recorded commands and prepares this buffer to record against a surface of the given size.
+	 */
+	public void reset(int width, int height) {
+		commands.clear();
+		references.clear();
+		this.width = width;
+		this.height = height;
+	}
+	
+	public boolean isEmpty() {
+		return commands.position() == 0;
+	}
+	
+	/**
+	 * Gets the key this buffer is sorted by when it's merged with others. Lower keys are replayed first.
+	 */
+	public long getOrder() {
+		return order;
+	}
+	
+	void setOrder(long order, long sequence) {
+		this.order = order;
+		this.sequence = sequence;
+	}
+	
+	long getSequence() {
+		return sequence;
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	public void clear(RGBColor color) {
+		ensureCapacity(4 + 16);
+		commands.putInt(OP_CLEAR);
+		putColor(color);
+	}
+	
+	@Override
+	public void fillRect(int x, int y, int width, int height, RGBColor color) {
+		ensureCapacity(4 + 16 + 16);
+		commands.putInt(OP_FILL_RECT);
+		commands.putInt(x).putInt(y).putInt(width).putInt(height);
+		putColor(color);
+	}
+	
+	@Override
+	public void drawPixel(int x, int y, RGBColor color) {
+		fillRect(x, y, 1, 1, color);
+	}
+	
+	@Override
+	public void drawImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, float opacity) {
+		drawTintImage(image, destX, destY, srcX, srcY, width, height, new RGBColor(opacity, 1, 1, 1));
+	}
+	
+	@Override
+	public void drawTintImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, RGBColor tintColor) {
+		ensureCapacity(4 + 4 + 24 + 16);
+		commands.putInt(OP_DRAW_IMAGE);
+		commands.putInt(addReference(image));
+		commands.putInt(destX).putInt(destY).putInt(srcX).putInt(srcY).putInt(width).putInt(height);
+		putColor(tintColor);
+	}
+	
+	/**
+	 * Records a layer change. See {@link WindowPainter#setLayer(int)}.
+	 */
+	public void setLayer(int layer) {
+		ensureCapacity(4 + 4);
+		commands.putInt(OP_SET_LAYER);
+		commands.putInt(layer);
+	}
+	
+	/**
+	 * Records a blend mode change. See {@link WindowPainter#setBlendMode(BlendMode)}.
+	 */
+	public void setBlendMode(BlendMode blendMode) {
+		ensureCapacity(4 + 4);
+		commands.putInt(OP_SET_BLEND_MODE);
+		commands.putInt(blendMode.ordinal());
+	}
+	
+	/**
+	 * Records a piece of code to run on the GL thread, in order with the other commands in this buffer. This is the
+	 * escape hatch for anything a Painter can't express, like drawing a {@link MeshBuffer}. Anything the painter has
+	 * queued is flushed before the action runs.
+	 */
+	public void execute(Consumer<WindowPainter> action) {
+		ensureCapacity(4 + 4);
+		commands.putInt(OP_CALLBACK);
+		commands.putInt(addReference(action));
+	}
+	
+	/**
+	 * Replays every recorded command onto the specified painter. Must be called on the thread which owns the painter's
+	 * GL context. The recorded commands are left intact, so a buffer can be replayed more than once.
+	 */
+	@SuppressWarnings("unchecked")
+	public void replay(WindowPainter painter) {
+		ByteBuffer in = commands.duplicate();
+		in.order(commands.order());
+		in.flip();
+		
+		while(in.hasRemaining()) {
+			int op = in.getInt();
+			switch(op) {
+				case OP_CLEAR -> painter.clear(getColor(in));
+				case OP_FILL_RECT -> {
+					int x = in.getInt();
+					int y = in.getInt();
+					int w = in.getInt();
+					int h = in.getInt();
+					painter.fillRect(x, y, w, h, getColor(in));
+				}
+				case OP_DRAW_IMAGE -> {
+					ImageData image = (ImageData) references.get(in.getInt());
+					int destX = in.getInt();
+					int destY = in.getInt();
+					int srcX = in.getInt();
+					int srcY = in.getInt();
+					int w = in.getInt();
+					int h = in.getInt();
+					painter.drawTintImage(image, destX, destY, srcX, srcY, w, h, getColor(in));
+				}
+				case OP_CALLBACK -> {
+					painter.flush();
+					((Consumer<WindowPainter>) references.get(in.getInt())).accept(painter);
+				}
+				case OP_SET_LAYER -> painter.setLayer(in.getInt());
+				case OP_SET_BLEND_MODE -> painter.setBlendMode(BlendMode.values()[in.getInt()]);
+				default -> throw new IllegalStateException("Corrupt command buffer: unknown opcode "+op);
+			}
+		}
+	}
+	
+	/**
+	 * Copies every command recorded in this buffer onto the end of another buffer.
+	 */
+	public void appendTo(CommandBuffer dest) {
+		ByteBuffer in = commands.duplicate();
+		in.order(commands.order());
+		in.flip();
+		
+		while(in.hasRemaining()) {
+			int op = in.getInt();
+			dest.ensureCapacity(4 + 4 + 24 + 16);
+			dest.commands.putInt(op);
+			switch(op) {
+				case OP_CLEAR -> copyBytes(in, dest.commands, 16);
+				case OP_FILL_RECT -> copyBytes(in, dest.commands, 32);
+				case OP_DRAW_IMAGE -> {
+					dest.commands.putInt(dest.addReference(references.get(in.getInt())));
+					copyBytes(in, dest.commands, 40);
+				}
+				case OP_CALLBACK -> dest.commands.putInt(dest.addReference(references.get(in.getInt())));
+				case OP_SET_LAYER, OP_SET_BLEND_MODE -> copyBytes(in, dest.commands, 4);
+				default -> throw new IllegalStateException("Corrupt command buffer: unknown opcode "+op);
+			}
+		}
+	}
+	
+	private static void copyBytes(ByteBuffer from, ByteBuffer to, int count) {
+		to.put(to.position(), from, from.position(), count);
+		to.position(to.position() + count);
+		from.position(from.position() + count);
+	}
+	
+	private int addReference(Object o) {
+		references.add(o);
+		return references.size() - 1;
+	}
+	
+	private void putColor(RGBColor color) {
+		commands.putFloat(color.alpha()).putFloat(color.r()).putFloat(color.g()).putFloat(color.b());
+	}
+	
+	private static RGBColor getColor(ByteBuffer in) {
+		float a = in.getFloat();
+		float r = in.getFloat();
+		float g = in.getFloat();
+		float b = in.getFloat();
+		return new RGBColor(a, r, g, b);
+	}
+	
+	private void ensureCapacity(int bytes) {
+		if (commands.remaining() < bytes) {
+			int newCapacity = Math.max(commands.capacity() * 2, commands.position() + bytes);
+			commands = MemoryUtil.memRealloc(commands, newCapacity);
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		if (commands != null) {
+			MemoryUtil.memFree(commands);
+			commands = null;
+		}
+		references.clear();
+	}
+}
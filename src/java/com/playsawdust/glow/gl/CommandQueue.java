@@ -0,0 +1,120 @@
+package com.playsawdust.glow.gl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Collects {@link CommandBuffer CommandBuffers} recorded on worker threads and replays them on the GL thread.
+ *
+ * <p>Any thread may call {@link #begin(long)}, record into the buffer it gets back, and {@link #submit(CommandBuffer)}
+ * it. Recording never touches GL, so scene traversal and vertex generation can be spread across a ForkJoinPool or a
+ * set of virtual threads. When the GL thread calls {@link #replay(WindowPainter)}, every submitted buffer is played
+ * back sorted by the order key passed to begin, so the final image does not depend on which worker finished first.
+ * Give each buffer in a frame a distinct order key; buffers with equal keys replay in the order begin was called.
+ *
+ * <p>Buffers are pooled and reused across frames, so steady-state recording doesn't allocate off-heap memory.
+ */
+public class CommandQueue implements Destroyable {
+	private static final Comparator<CommandBuffer> REPLAY_ORDER =
+			Comparator.comparingLong(CommandBuffer::getOrder).thenComparingLong(CommandBuffer::getSequence);
+	
+	private final Window window;
+	private final ConcurrentLinkedQueue<CommandBuffer> pool = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<CommandBuffer> submitted = new ConcurrentLinkedQueue<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final List<CommandBuffer> replayList = new ArrayList<>();
+	
+	public CommandQueue(Window window) {
+		this.window = window;
+	}
+	
+	/**
+	 * Gets an empty CommandBuffer to record into. Safe to call from any thread.
+	 * @param order The replay order of this buffer relative to the other buffers in the same frame. Lower keys replay
+	 *              first.
+	 */
+	public CommandBuffer begin(long order) {
+		CommandBuffer buffer = pool.poll();
+		if (buffer == null) {
+			buffer = new CommandBuffer(window.getWidth(), window.getHeight());
+		} else {
+			buffer.reset(window.getWidth(), window.getHeight());
+		}
+		buffer.setOrder(order, sequence.getAndIncrement());
+		return buffer;
+	}
+	
+	/**
+	 * Hands a finished CommandBuffer over to be replayed. Safe to call from any thread. The caller must not touch the
+	 * buffer afterwards.
+	 */
+	public void submit(CommandBuffer buffer) {
+		submitted.add(buffer);
+	}
+	
+	/**
+	 * Records and submits a CommandBuffer in one step. Convenient as the body of a worker task.
+	 */
+	public void record(long order, Consumer<CommandBuffer> recorder) {
+		CommandBuffer buffer = begin(order);
+		recorder.accept(buffer);
+		submit(buffer);
+	}
+	
+	public boolean hasPending() {
+		return !submitted.isEmpty();
+	}
+	
+	/**
+	 * Replays every buffer submitted so far, in order, and returns them to the pool. Must be called on the GL thread.
+	 * Buffers submitted while this is running may be left for the next call, so join any recording tasks for the
+	 * current frame before calling this.
+	 */
+	public void replay(WindowPainter painter) {
+		CommandBuffer buffer;
+		while((buffer = submitted.poll()) != null) {
+			replayList.add(buffer);
+		}
+		replayList.sort(REPLAY_ORDER);
+		
+		for(CommandBuffer cur : replayList) {
+			cur.replay(painter);
+			cur.reset(0, 0);
+			pool.add(cur);
+		}
+		replayList.clear();
+	}
+	
+	/**
+	 * Moves every buffer submitted so far, in order, onto the end of another CommandBuffer instead of replaying it.
+	 * This lets worker output be folded into a frame that is itself going to be replayed on another thread. Safe to
+	 * call from any one thread at a time.
+	 */
+	public void appendTo(CommandBuffer dest) {
+		CommandBuffer buffer;
+		while((buffer = submitted.poll()) != null) {
+			replayList.add(buffer);
+		}
+		replayList.sort(REPLAY_ORDER);
+		
+		for(CommandBuffer cur : replayList) {
+			cur.appendTo(dest);
+			cur.reset(0, 0);
+			pool.add(cur);
+		}
+		replayList.clear();
+	}
+	
+	@Override
+	public void destroy() {
+		CommandBuffer buffer;
+		while((buffer = submitted.poll()) != null) buffer.destroy();
+		while((buffer = pool.poll()) != null) buffer.destroy();
+	}
+}
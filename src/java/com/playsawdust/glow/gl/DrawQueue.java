@@ -0,0 +1,255 @@
+package com.playsawdust.glow.gl;
+
+import java.util.Arrays;
+
+/**
+ * The list of textured quads a {@link WindowPainter} has been asked to draw but hasn't submitted yet.
+ *
+ * <p>Each quad carries a 64-bit sort key, laid out from most to least significant as:
+ * <ul>
+ *   <li>16 bits of layer, so that everything on a lower layer is drawn before anything on a higher one
+ *   <li>16 bits of depth, which is one more than the depth of the deepest earlier quad in the same layer that it
+ *       overlaps. Quads at the same depth never overlap, so they can be freely reordered among themselves.
+ *   <li>3 bits of blend mode, 5 bits of program, and 24 bits of texture, so that quads which can share a draw call
+ *       end up next to each other.
+ * </ul>
+ * Because the radix sort is stable, quads with identical keys also keep their submission order.
+ *
+ * <p>Overlap is tracked conservatively on a coarse grid, so two quads which share a grid cell are treated as
+ * overlapping even if they don't actually touch. That can only cost batching, never correctness.
+ */
+class DrawQueue {
+	public static final int FLOATS_PER_VERTEX = 9;
+	public static final int FLOATS_PER_QUAD = FLOATS_PER_VERTEX * 4;
+	public static final int MAX_DEPTH = 0xFFFF;
+	
+	private static final int CELL_SIZE = 64;
+	private static final int MAX_LAYERS = 16;
+	
+	private float[] vertexData = new float[FLOATS_PER_QUAD * 256];
+	private long[] keys = new long[256];
+	/** Each quad's {@link Texture} or {@link TextureArray} */
+	private GLResource[] textures = new GLResource[256];
+	private BlendMode[] blendModes = new BlendMode[256];
+	private int[] programs = new int[256];
+	private int count = 0;
+	
+	private int[] order = new int[256];
+	private int[] scratchOrder = new int[256];
+	private long[] sortKeys = new long[256];
+	private long[] scratchKeys = new long[256];
+	private final int[] histogram = new int[256];
+	
+	private int gridWidth = 1;
+	private int gridHeight = 1;
+	private final int[] gridLayers = new int[MAX_LAYERS];
+	private final int[][] grids = new int[MAX_LAYERS][];
+	private int gridCount = 0;
+	
+	/**
+	 * Sets up the overlap grid for a surface of the given size. Clears any queued quads.
+	 */
+	public void beginFrame(int width, int height) {
+		clear();
+		gridWidth = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+		gridHeight = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+		for(int i=0; i<MAX_LAYERS; i++) {
+			if (grids[i] != null && grids[i].length < gridWidth * gridHeight) grids[i] = null;
+		}
+	}
+	
+	public int size() {
+		return count;
+	}
+	
+	public boolean isEmpty() {
+		return count == 0;
+	}
+	
+	public void clear() {
+		Arrays.fill(textures, 0, count, null);
+		Arrays.fill(blendModes, 0, count, null);
+		count = 0;
+		for(int i=0; i<gridCount; i++) {
+			Arrays.fill(grids[i], 0, gridWidth * gridHeight, 0);
+		}
+		gridCount = 0;
+	}
+	
+	/**
+	 * Returns true if the most recently queued quad could not share a draw call with a quad using this state.
+	 */
+	public boolean stateDiffers(GLResource texture, BlendMode blendMode, int program) {
+		if (count == 0) return false;
+		int last = count - 1;
+		return textures[last] != texture || blendModes[last] != blendMode || programs[last] != program;
+	}
+	
+	/**
+	 * Queues a quad. Its vertices must then be filled in with {@link #vertex(int, int, float, float, float, float, float, float, float, float, float)}.
+	 * @param sorted if true, compute the quad's depth from what it overlaps. If false, every quad gets depth zero and
+	 *               the queue must be drawn in submission order.
+	 * @return the index of the new quad, or -1 if the quad would need more depth than the key can hold, in which case
+	 *         the queue must be flushed and the quad queued again.
+	 */
+	public int add(int layer, BlendMode blendMode, int program, GLResource texture, float minX, float minY, float maxX, float maxY, boolean sorted) {
+		int depth = 0;
+		if (sorted) {
+			depth = claimDepth(layer, minX, minY, maxX, maxY);
+			if (depth < 0) return -1;
+		}
+		
+		if (count == keys.length) grow();
+		int index = count;
+		count++;
+		
+		long key = ((long) ((layer + 0x8000) & 0xFFFF) << 48)
+				| ((long) depth << 32)
+				| ((long) (blendMode.ordinal() & 0x7) << 29)
+				| ((long) (program & 0x1F) << 24)
+				| (texture.getHandle() & 0xFFFFFFL);
+		keys[index] = key;
+		textures[index] = texture;
+		blendModes[index] = blendMode;
+		programs[index] = program;
+		return index;
+	}
+	
+	/**
+	 * Fills in one corner of a queued quad. Corners are numbered 0 = top-left, 1 = top-right, 2 = bottom-left,
+	 * 3 = bottom-right. The texture layer is only read when the quad's texture is a {@link TextureArray}.
+	 */
+	public void vertex(int quad, int corner, float x, float y, float u, float v, float textureLayer, float r, float g, float b, float a) {
+		int i = quad * FLOATS_PER_QUAD + corner * FLOATS_PER_VERTEX;
+		float[] data = vertexData;
+		data[i    ] = x;
+		data[i + 1] = y;
+		data[i + 2] = r;
+		data[i + 3] = g;
+		data[i + 4] = b;
+		data[i + 5] = a;
+		data[i + 6] = u;
+		data[i + 7] = v;
+		data[i + 8] = textureLayer;
+	}
+	
+	public float[] vertexData() {
+		return vertexData;
+	}
+	
+	public GLResource texture(int quad) {
+		return textures[quad];
+	}
+	
+	public BlendMode blendMode(int quad) {
+		return blendModes[quad];
+	}
+	
+	public int program(int quad) {
+		return programs[quad];
+	}
+	
+	/**
+	 * Gets the order the queued quads should be drawn in. The returned array is only valid until the next call, and
+	 * only the first {@link #size()} entries are meaningful.
+	 * @param sort if true, radix-sort by key. Otherwise submission order is returned.
+	 */
+	public int[] drawOrder(boolean sort) {
+		if (order.length < count) {
+			order = new int[keys.length];
+			scratchOrder = new int[keys.length];
+			sortKeys = new long[keys.length];
+			scratchKeys = new long[keys.length];
+		}
+		
+		for(int i=0; i<count; i++) order[i] = i;
+		if (!sort || count < 2) return order;
+		
+		System.arraycopy(keys, 0, sortKeys, 0, count);
+		for(int shift=0; shift<64; shift+=8) {
+			radixPass(shift);
+		}
+		return order;
+	}
+	
+	/**
+	 * One stable counting-sort pass over a single byte of the keys. Passes where every key has the same byte are
+	 * skipped, which in practice is most of them.
+	 */
+	private void radixPass(int shift) {
+		Arrays.fill(histogram, 0);
+		for(int i=0; i<count; i++) {
+			histogram[(int) (sortKeys[i] >>> shift) & 0xFF]++;
+		}
+		for(int i=0; i<256; i++) {
+			if (histogram[i] == count) return;
+		}
+		
+		int total = 0;
+		for(int i=0; i<256; i++) {
+			int c = histogram[i];
+			histogram[i] = total;
+			total += c;
+		}
+		
+		for(int i=0; i<count; i++) {
+			int bucket = (int) (sortKeys[i] >>> shift) & 0xFF;
+			int dest = histogram[bucket]++;
+			scratchKeys[dest] = sortKeys[i];
+			scratchOrder[dest] = order[i];
+		}
+		
+		long[] tk = sortKeys; sortKeys = scratchKeys; scratchKeys = tk;
+		int[] to = order; order = scratchOrder; scratchOrder = to;
+	}
+	
+	private int claimDepth(int layer, float minX, float minY, float maxX, float maxY) {
+		int[] grid = gridFor(layer);
+		if (grid == null) return -1;
+		
+		int x0 = clampCell((int) Math.floor(minX) / CELL_SIZE, gridWidth);
+		int y0 = clampCell((int) Math.floor(minY) / CELL_SIZE, gridHeight);
+		int x1 = Math.max(x0, clampCell((int) Math.ceil(maxX - 1) / CELL_SIZE, gridWidth));
+		int y1 = Math.max(y0, clampCell((int) Math.ceil(maxY - 1) / CELL_SIZE, gridHeight));
+		
+		int depth = 0;
+		for(int y=y0; y<=y1; y++) {
+			for(int x=x0; x<=x1; x++) {
+				depth = Math.max(depth, grid[y * gridWidth + x]);
+			}
+		}
+		if (depth >= MAX_DEPTH) return -1;
+		depth++;
+		
+		for(int y=y0; y<=y1; y++) {
+			Arrays.fill(grid, y * gridWidth + x0, y * gridWidth + x1 + 1, depth);
+		}
+		return depth;
+	}
+	
+	private int[] gridFor(int layer) {
+		for(int i=0; i<gridCount; i++) {
+			if (gridLayers[i] == layer) return grids[i];
+		}
+		if (gridCount == MAX_LAYERS) return null;
+		
+		int index = gridCount;
+		gridCount++;
+		if (grids[index] == null) grids[index] = new int[gridWidth * gridHeight];
+		gridLayers[index] = layer;
+		return grids[index];
+	}
+	
+	private static int clampCell(int cell, int max) {
+		return Math.max(0, Math.min(max - 1, cell));
+	}
+	
+	private void grow() {
+		int newSize = keys.length * 2;
+		vertexData = Arrays.copyOf(vertexData, newSize * FLOATS_PER_QUAD);
+		keys = Arrays.copyOf(keys, newSize);
+		textures = Arrays.copyOf(textures, newSize);
+		blendModes = Arrays.copyOf(blendModes, newSize);
+		programs = Arrays.copyOf(programs, newSize);
+	}
+}
@@ -0,0 +1,360 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.system.MemoryUtil;
+
+import com.playsawdust.glow.gl.capture.FrameEncoder;
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Records every frame a Window presents, without ever making {@link Window#presentFrame()} wait on the GPU or on
+ * disk.
+ *
+ * <p>Just before each swap, the back buffer is read into one of a small ring of pixel pack buffers and fenced. The
+ * readback finishes on the GPU while later frames are drawn; each frame, slots whose fences have signaled are mapped,
+ * copied into a pooled off-heap buffer, and handed to a bounded pool of worker threads which pass them to a
+ * {@link FrameEncoder}. When something can't keep up, frames are dropped and counted rather than queued without
+ * bound: if every slot is still in flight on the GPU the frame is a GPU drop, and if every pooled buffer is waiting
+ * on the encoder it's a backpressure drop.
+ *
+ * <pre>
+ * FrameCapture capture = new FrameCapture(window, new Y4mEncoder(Path.of("out.y4m"), 60));
+ * ...
+ * capture.destroy(); // writes out the frames still in flight
+ * </pre>
+ *
+ * <p>The constructor and {@link #destroy()} may be called from any thread; all GL work happens on the Window's
+ * context thread. Metrics can be read from any thread.
+ */
+public final class FrameCapture implements Destroyable {
+	private final Window window;
+	private final FrameEncoder encoder;
+	private final Slot[] slots;
+	private final ThreadPoolExecutor workers;
+	private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+	private final int maxBuffers;
+	private int allocatedBuffers = 0;
+	private int nextSlot = 0;
+	private int oldestSlot = 0;
+	private final int[] framebufferWidth = new int[1];
+	private final int[] framebufferHeight = new int[1];
+	private volatile boolean running = true;
+	
+	private final AtomicLong presentedFrames = new AtomicLong();
+	private final AtomicLong capturedFrames = new AtomicLong();
+	private final AtomicLong encodedFrames = new AtomicLong();
+	private final AtomicLong gpuDroppedFrames = new AtomicLong();
+	private final AtomicLong backpressureDroppedFrames = new AtomicLong();
+	private final AtomicLong encodeErrors = new AtomicLong();
+	private final AtomicLong encodeNanos = new AtomicLong();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger peakQueueDepth = new AtomicInteger();
+	private volatile IOException lastError = null;
+	
+	public FrameCapture(Window window, FrameEncoder encoder) {
+		this(window, encoder, 3, 2, 8);
+	}
+	
+	/**
+	 * Starts capturing a Window's frames.
+	 * @param ringSize      how many frames may be in flight on the GPU at once. Three covers the usual driver latency.
+	 * @param workerThreads how many frames may be encoded at once. This is capped by the encoder's
+	 *                      {@link FrameEncoder#maxConcurrency()}.
+	 * @param queueCapacity how many read-back frames may wait for a worker before further frames are dropped
+	 */
+	public FrameCapture(Window window, FrameEncoder encoder, int ringSize, int workerThreads, int queueCapacity) {
+		if (ringSize < 1 || workerThreads < 1 || queueCapacity < 0) throw new IllegalArgumentException("Ring size and worker count must be positive, and queue capacity can't be negative.");
+		this.window = window;
+		this.encoder = encoder;
+		this.slots = new Slot[ringSize];
+		for(int i=0; i<ringSize; i++) slots[i] = new Slot();
+		
+		int threads = Math.max(1, Math.min(workerThreads, encoder.maxConcurrency()));
+		// Every buffer is either free, queued, or being encoded, so the executor's queue can never overflow
+		this.maxBuffers = threads + queueCapacity;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+			Thread thread = new Thread(runnable, "Glow Frame Encoder " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		window.addFrameCapture(this);
+	}
+	
+	/**
+	 * Called by the Window on its context thread, after the frame is drawn and before the swap.
+	 */
+	void captureFrame() {
+		if (!running) return;
+		long frameNumber = presentedFrames.getAndIncrement();
+		harvest(false);
+		
+		Slot slot = slots[nextSlot];
+		if (slot.sync != 0) {
+			// Every slot is still waiting on the GPU
+			gpuDroppedFrames.incrementAndGet();
+			return;
+		}
+		
+		int[] width = framebufferWidth;
+		int[] height = framebufferHeight;
+		GLFW.glfwGetFramebufferSize(window.getHandle(), width, height);
+		if (width[0] <= 0 || height[0] <= 0) return;
+		
+		long bytes = (long) width[0] * height[0] * 4;
+		if (slot.buffer == null) slot.buffer = new VertexBuffer();
+		if (slot.buffer.getSize() < bytes) slot.buffer.allocateReadback(BufferTarget.PIXEL_PACK, bytes);
+		
+		int previousRead = glGetInteger(GL_READ_FRAMEBUFFER_BINDING);
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, 0);
+		int previousReadBuffer = glGetInteger(GL_READ_BUFFER);
+		glReadBuffer(GL_BACK);
+		int previousPackAlignment = glGetInteger(GL_PACK_ALIGNMENT);
+		glPixelStorei(GL_PACK_ALIGNMENT, 4);
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, slot.buffer.getHandle());
+		glReadPixels(0, 0, width[0], height[0], GL_RGBA, GL_UNSIGNED_BYTE, 0L);
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+		glPixelStorei(GL_PACK_ALIGNMENT, previousPackAlignment);
+		glReadBuffer(previousReadBuffer);
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, previousRead);
+		
+		slot.sync = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		slot.width = width[0];
+		slot.height = height[0];
+		slot.frameNumber = frameNumber;
+		nextSlot = (nextSlot + 1) % slots.length;
+	}
+	
+	/**
+	 * Hands off finished readbacks, oldest first, so that frames reach the encoder in order.
+	 * @param wait if true, block on every outstanding fence instead of stopping at the first unsignaled one
+	 */
+	private void harvest(boolean wait) {
+		while(slots[oldestSlot].sync != 0) {
+			Slot slot = slots[oldestSlot];
+			int status = wait ?
+					glClientWaitSync(slot.sync, GL_SYNC_FLUSH_COMMANDS_BIT, TimeUnit.SECONDS.toNanos(1)) :
+					glClientWaitSync(slot.sync, 0, 0);
+			if (status == GL_TIMEOUT_EXPIRED && !wait) return;
+			
+			glDeleteSync(slot.sync);
+			slot.sync = 0;
+			oldestSlot = (oldestSlot + 1) % slots.length;
+			if (status == GL_WAIT_FAILED || status == GL_TIMEOUT_EXPIRED) {
+				gpuDroppedFrames.incrementAndGet();
+				continue;
+			}
+			
+			handOff(slot);
+		}
+	}
+	
+	private void handOff(Slot slot) {
+		int bytes = slot.width * slot.height * 4;
+		ByteBuffer pixels = takeBuffer(bytes);
+		if (pixels == null) {
+			backpressureDroppedFrames.incrementAndGet();
+			return;
+		}
+		
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, slot.buffer.getHandle());
+		ByteBuffer mapped = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, bytes, GL_MAP_READ_BIT);
+		if (mapped == null) {
+			glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+			freeBuffers.add(pixels);
+			gpuDroppedFrames.incrementAndGet();
+			return;
+		}
+		MemoryUtil.memCopy(mapped, pixels);
+		glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+		
+		long frameNumber = slot.frameNumber;
+		int width = slot.width;
+		int height = slot.height;
+		int depth = queueDepth.incrementAndGet();
+		try {
+			workers.execute(() -> encode(frameNumber, width, height, pixels));
+		} catch (RejectedExecutionException ex) {
+			queueDepth.decrementAndGet();
+			freeBuffers.add(pixels);
+			backpressureDroppedFrames.incrementAndGet();
+			return;
+		}
+		
+		capturedFrames.incrementAndGet();
+		peakQueueDepth.accumulateAndGet(depth, Math::max);
+	}
+	
+	/**
+	 * Gets a pooled buffer of at least {@code bytes} bytes, limited to exactly that many, or null if every buffer is
+	 * still waiting on the encoder.
+	 */
+	private ByteBuffer takeBuffer(int bytes) {
+		ByteBuffer buffer = freeBuffers.poll();
+		if (buffer == null) {
+			if (allocatedBuffers >= maxBuffers) return null;
+			allocatedBuffers++;
+			buffer = MemoryUtil.memAlloc(bytes);
+		} else if (buffer.capacity() < bytes) {
+			buffer = MemoryUtil.memRealloc(buffer, bytes);
+		}
+		buffer.clear().limit(bytes);
+		return buffer;
+	}
+	
+	private void encode(long frameNumber, int width, int height, ByteBuffer pixels) {
+		try {
+			// GL reads bottom row first, and the back buffer's alpha is whatever blending left behind. Rows are swapped
+			// eight bytes at a time, in place, so that encoding a frame allocates nothing.
+			int stride = width * 4;
+			for(int y=0; y<height / 2; y++) {
+				int topOffset = y * stride;
+				int bottomOffset = (height - 1 - y) * stride;
+				int x = 0;
+				for(; x + 8 <= stride; x += 8) {
+					long top = pixels.getLong(topOffset + x);
+					pixels.putLong(topOffset + x, pixels.getLong(bottomOffset + x));
+					pixels.putLong(bottomOffset + x, top);
+				}
+				if (x < stride) {
+					int top = pixels.getInt(topOffset + x);
+					pixels.putInt(topOffset + x, pixels.getInt(bottomOffset + x));
+					pixels.putInt(bottomOffset + x, top);
+				}
+			}
+			for(int i=3; i<pixels.limit(); i += 4) {
+				pixels.put(i, (byte) 0xFF);
+			}
+			
+			long start = System.nanoTime();
+			encoder.encode(frameNumber, width, height, pixels);
+			encodeNanos.addAndGet(System.nanoTime() - start);
+			encodedFrames.incrementAndGet();
+		} catch (IOException | RuntimeException ex) {
+			encodeErrors.incrementAndGet();
+			lastError = (ex instanceof IOException io) ? io : new IOException(ex);
+		} finally {
+			queueDepth.decrementAndGet();
+			freeBuffers.add(pixels);
+		}
+	}
+	
+	/** Gets how many frames the Window has presented since capture started. */
+	public long getPresentedFrames() {
+		return presentedFrames.get();
+	}
+	
+	/** Gets how many frames were read back and handed to the encoder. */
+	public long getCapturedFrames() {
+		return capturedFrames.get();
+	}
+	
+	/** Gets how many frames the encoder has finished writing. */
+	public long getEncodedFrames() {
+		return encodedFrames.get();
+	}
+	
+	public long getDroppedFrames() {
+		return gpuDroppedFrames.get() + backpressureDroppedFrames.get();
+	}
+	
+	/** Gets how many frames were dropped because every readback slot was still in flight on the GPU. */
+	public long getGpuDroppedFrames() {
+		return gpuDroppedFrames.get();
+	}
+	
+	/** Gets how many frames were dropped because the encoder had fallen behind and the queue was full. */
+	public long getBackpressureDroppedFrames() {
+		return backpressureDroppedFrames.get();
+	}
+	
+	public long getEncodeErrors() {
+		return encodeErrors.get();
+	}
+	
+	/** Gets the most recent exception thrown by the encoder, or null if there hasn't been one. */
+	public IOException getLastError() {
+		return lastError;
+	}
+	
+	/** Gets how many frames are currently queued for or being encoded. */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+	
+	/** Gets the highest {@link #getQueueDepth() queue depth} seen so far. */
+	public int getPeakQueueDepth() {
+		return peakQueueDepth.get();
+	}
+	
+	/** Gets the average time the encoder has spent on each frame, in milliseconds. */
+	public double getAverageEncodeMillis() {
+		long encoded = encodedFrames.get();
+		return (encoded == 0) ? 0 : encodeNanos.get() / (encoded * 1_000_000.0);
+	}
+	
+	/**
+	 * Stops capturing, waits for the frames still in flight to be read back and encoded, then closes the encoder.
+	 */
+	@Override
+	public void destroy() {
+		if (!running) return;
+		running = false;
+		window.removeFrameCapture(this);
+		
+		CompletableFuture<Void> drained = new CompletableFuture<>();
+		window.runOnContextThread(() -> {
+			try {
+				harvest(true);
+				for(Slot slot : slots) {
+					if (slot.buffer != null) slot.buffer.destroy();
+				}
+				drained.complete(null);
+			} catch (Throwable t) {
+				drained.completeExceptionally(t);
+			}
+		});
+		drained.join();
+		
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			encoder.close();
+		} catch (IOException ex) {
+			encodeErrors.incrementAndGet();
+			lastError = ex;
+		}
+		
+		ByteBuffer buffer;
+		while((buffer = freeBuffers.poll()) != null) {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+	
+	private static class Slot {
+		private VertexBuffer buffer;
+		private long sync = 0;
+		private int width;
+		private int height;
+		private long frameNumber;
+	}
+}
@@ -0,0 +1,63 @@
+package com.playsawdust.glow.gl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * A lock-free triple buffer of recorded frames, passed from one producer thread to one consumer thread.
+ *
+ * <p>The producer always owns the "back" buffer and the consumer always owns the "front" buffer. The third buffer sits
+ * in the middle, and publishing or taking a frame swaps your buffer with the middle one. Neither side ever waits for
+ * the other: if the producer publishes twice before the consumer takes a frame, the older frame is simply recycled.
+ */
+class FrameHandoff implements Destroyable {
+	private static final int FRESH = 4;
+	private static final int INDEX_MASK = 3;
+	
+	private final CommandBuffer[] buffers = new CommandBuffer[3];
+	private final AtomicInteger middle = new AtomicInteger(1);
+	private int back = 0;
+	private int front = 2;
+	
+	public FrameHandoff(int width, int height) {
+		for(int i=0; i<buffers.length; i++) {
+			buffers[i] = new CommandBuffer(width, height);
+		}
+	}
+	
+	/**
+	 * Gets the buffer the producer should record the next frame into. Producer thread only.
+	 */
+	public CommandBuffer back() {
+		return buffers[back];
+	}
+	
+	/**
+	 * Makes the back buffer available to the consumer and hands the producer a fresh, empty back buffer. Producer
+	 * thread only.
+	 */
+	public void publish(int nextWidth, int nextHeight) {
+		int old = middle.getAndSet(back | FRESH);
+		back = old & INDEX_MASK;
+		buffers[back].reset(nextWidth, nextHeight);
+	}
+	
+	/**
+	 * Takes the most recently published frame, if there's one the consumer hasn't seen. Consumer thread only.
+	 * @return the newest frame, or null if nothing has been published since the last call
+	 */
+	public CommandBuffer takeLatest() {
+		if ((middle.get() & FRESH) == 0) return null;
+		int old = middle.getAndSet(front);
+		front = old & INDEX_MASK;
+		return buffers[front];
+	}
+	
+	@Override
+	public void destroy() {
+		for(CommandBuffer buffer : buffers) {
+			buffer.destroy();
+		}
+	}
+}
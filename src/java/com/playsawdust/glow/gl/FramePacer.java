@@ -0,0 +1,346 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.glfw.GLFWVidMode;
+
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Keeps a Window's frame rate steady under load by measuring how long each frame takes, and trading resolution for
+ * time when the GPU can't keep up.
+ *
+ * <p>CPU time is measured from the end of one swap to the start of the next, and GPU time with a GL_TIME_ELAPSED query
+ * around the GL work submitted in the same span. Query results are collected a few frames late, once they're ready, so
+ * measuring never stalls the pipeline. Both are smoothed, and compared against the frame budget, which by default is
+ * one refresh of the primary monitor.
+ *
+ * <p>When the GPU goes over budget, and it's the GPU rather than the CPU holding frames up, painting is redirected
+ * into an offscreen target smaller than the window, which is stretched over the window just before the swap.
+ * Coordinates don't change: the painter scales everything down on its own. CPU-bound frames never lower the scale,
+ * since fewer pixels wouldn't make them any faster. The scale drops quickly, as soon as a few frames in a row miss the
+ * budget, and climbs back slowly, only after many frames in a row have comfortable headroom, so that it doesn't
+ * oscillate around the threshold. At full scale there is no offscreen target at all and no extra cost.
+ *
+ * <p>With vsync on, a frame that misses a refresh normally waits for the next one, halving the frame rate. If the
+ * driver supports adaptive vsync, the pacer switches to it while over budget, so that late frames tear instead, and
+ * back to ordinary vsync once things recover.
+ *
+ * <pre>
+ * FramePacer pacer = new FramePacer(window);
+ * pacer.setMinimumScale(0.5f);
+ * </pre>
+ *
+ * <p>Can't be combined with partial repaint. The constructor and {@link #destroy()} must be called on the main thread;
+ * all GL work happens on the Window's context thread. Settings and measurements can be used from any thread.
+ */
+public final class FramePacer implements Destroyable {
+	/** How many frames of queries may be in flight before the oldest is overwritten */
+	private static final int QUERY_RING = 4;
+	/** Weight of each new sample in the smoothed frame times */
+	private static final float SMOOTHING = 0.1f;
+	/** Scales are rounded to this step, so that the offscreen target isn't reallocated for tiny changes */
+	private static final float SCALE_STEP = 0.05f;
+	
+	private final Window window;
+	private final int[] queries = new int[QUERY_RING];
+	private final boolean[] pending = new boolean[QUERY_RING];
+	private int nextQuery = 0;
+	private int oldestQuery = 0;
+	private boolean frameOpen = false;
+	private long frameStartNanos = 0;
+	
+	private volatile long budgetNanos;
+	private volatile float minimumScale = 0.5f;
+	private volatile float maximumScale = 1;
+	private volatile float highWater = 0.9f;
+	private volatile float lowWater = 0.7f;
+	private volatile int downFrames = 3;
+	private volatile int upFrames = 60;
+	private volatile boolean vsync = true;
+	private volatile boolean adaptiveVsyncSupported = false;
+	
+	private volatile float cpuMillis = 0;
+	private volatile float gpuMillis = 0;
+	private volatile float scale = 1;
+	private int overBudgetStreak = 0;
+	private int underBudgetStreak = 0;
+	/** Frames left before measurements reflect the latest scale change and can trigger another */
+	private int cooldown = 0;
+	private boolean adaptiveVsyncActive = false;
+	private volatile long scaleChanges = 0;
+	
+	private Framebuffer scaledTarget = null;
+	private volatile boolean running = true;
+	
+	/**
+	 * Starts pacing a Window with the default budget of one monitor refresh.
+	 */
+	public FramePacer(Window window) {
+		this.window = window;
+		GLFWVidMode mode = GLFW.glfwGetVideoMode(GLFW.glfwGetPrimaryMonitor());
+		int refreshRate = (mode != null && mode.refreshRate() > 0) ? mode.refreshRate() : 60;
+		this.budgetNanos = 1_000_000_000L / refreshRate;
+		
+		CompletableFuture<Void> ready = new CompletableFuture<>();
+		window.runOnContextThread(() -> {
+			try {
+				window.setFramePacer(this);
+				// Only answerable with a context current
+				adaptiveVsyncSupported = GLFW.glfwExtensionSupported("WGL_EXT_swap_control_tear") || GLFW.glfwExtensionSupported("GLX_EXT_swap_control_tear");
+				glGenQueries(queries);
+				ready.complete(null);
+			} catch (Throwable t) {
+				ready.completeExceptionally(t);
+			}
+		});
+		ready.join();
+	}
+	
+	/**
+	 * Sets the frame rate to budget for. Defaults to the primary monitor's refresh rate.
+	 */
+	public void setTargetFrameRate(int framesPerSecond) {
+		if (framesPerSecond <= 0) throw new IllegalArgumentException("Target frame rate must be positive.");
+		this.budgetNanos = 1_000_000_000L / framesPerSecond;
+	}
+	
+	/**
+	 * Sets the range the resolution scale may move within. A minimum of 1 turns dynamic resolution off, leaving only
+	 * measurement and vsync control.
+	 */
+	public void setScaleRange(float minimum, float maximum) {
+		if (minimum <= 0 || maximum > 1 || minimum > maximum) throw new IllegalArgumentException("Scale range must lie within (0, 1].");
+		this.minimumScale = minimum;
+		this.maximumScale = maximum;
+	}
+	
+	public void setMinimumScale(float minimum) {
+		setScaleRange(minimum, maximumScale);
+	}
+	
+	/**
+	 * Sets the hysteresis band. The scale drops after {@code downFrames} consecutive frames whose GPU time is over
+	 * {@code highWater} of the budget, and over their CPU time, and rises after {@code upFrames} consecutive frames under {@code lowWater}.
+	 * The defaults are 0.9, 0.7, 3, and 60.
+	 */
+	public void setThresholds(float highWater, float lowWater, int downFrames, int upFrames) {
+		if (lowWater <= 0 || highWater <= lowWater) throw new IllegalArgumentException("The high water mark must be above the low water mark.");
+		if (downFrames < 1 || upFrames < 1) throw new IllegalArgumentException("Frame counts must be positive.");
+		this.highWater = highWater;
+		this.lowWater = lowWater;
+		this.downFrames = downFrames;
+		this.upFrames = upFrames;
+	}
+	
+	/**
+	 * Turns vsync on or off. While on, adaptive vsync is used during over-budget stretches where the driver supports
+	 * it. This replaces {@link Window#setSwapInterval(int)} for as long as the pacer is attached.
+	 */
+	public void setVsync(boolean vsync) {
+		this.vsync = vsync;
+	}
+	
+	/**
+	 * Called by the Window on its context thread, once a frame has been swapped, and before anything of the next frame
+	 * is drawn.
+	 */
+	void beginFrame() {
+		if (!running) return;
+		applySwapInterval();
+		updateTarget();
+		
+		if (!pending[nextQuery]) {
+			glBeginQuery(GL_TIME_ELAPSED, queries[nextQuery]);
+			frameOpen = true;
+		}
+		frameStartNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Called by the Window on its context thread, after the frame is drawn and before the swap. Stretches the scaled
+	 * target over the window, if one is in use.
+	 */
+	void endFrame() {
+		if (!running) return;
+		
+		if (scaledTarget != null) {
+			window.getPainter().flush();
+			int width = window.getWidth();
+			int height = window.getHeight();
+			glBindFramebuffer(GL_READ_FRAMEBUFFER, scaledTarget.getHandle());
+			glBindFramebuffer(GL_DRAW_FRAMEBUFFER, 0);
+			glBlitFramebuffer(0, 0, scaledTarget.getWidth(), scaledTarget.getHeight(), 0, 0, width, height, GL_COLOR_BUFFER_BIT, GL_LINEAR);
+			glBindFramebuffer(GL_FRAMEBUFFER, 0);
+		}
+		
+		if (frameOpen) {
+			glEndQuery(GL_TIME_ELAPSED);
+			pending[nextQuery] = true;
+			nextQuery = (nextQuery + 1) % QUERY_RING;
+			frameOpen = false;
+		}
+		if (frameStartNanos != 0) {
+			cpuMillis = smooth(cpuMillis, (System.nanoTime() - frameStartNanos) / 1_000_000f);
+		}
+		
+		harvest();
+	}
+	
+	/**
+	 * Collects finished queries, oldest first, without waiting on any, and feeds each into the controller.
+	 */
+	private void harvest() {
+		while(pending[oldestQuery]) {
+			if (glGetQueryObjecti(queries[oldestQuery], GL_QUERY_RESULT_AVAILABLE) == GL_FALSE) return;
+			long elapsed = glGetQueryObjecti64(queries[oldestQuery], GL_QUERY_RESULT);
+			pending[oldestQuery] = false;
+			oldestQuery = (oldestQuery + 1) % QUERY_RING;
+			
+			float millis = elapsed / 1_000_000f;
+			gpuMillis = smooth(gpuMillis, millis);
+			control(elapsed / (float) budgetNanos, millis > cpuMillis);
+		}
+	}
+	
+	private static float smooth(float average, float sample) {
+		return (average == 0) ? sample : average + (sample - average) * SMOOTHING;
+	}
+	
+	/**
+	 * Moves the scale based on one frame's GPU load, as a fraction of the budget.
+	 * @param gpuBound whether the GPU took longer over the frame than the CPU did
+	 */
+	private void control(float load, boolean gpuBound) {
+		if (cooldown > 0) {
+			cooldown--;
+			return;
+		}
+		
+		if (load > highWater && gpuBound) {
+			overBudgetStreak++;
+			underBudgetStreak = 0;
+		} else if (load < lowWater) {
+			underBudgetStreak++;
+			overBudgetStreak = 0;
+		} else {
+			// Inside the band, or over it only because the CPU is slow: hold steady, and make both directions start
+			// counting afresh
+			overBudgetStreak = 0;
+			underBudgetStreak = 0;
+		}
+		
+		float current = scale;
+		float next = current;
+		if (overBudgetStreak >= downFrames) {
+			// Fill cost goes with area, so aim straight for the scale that would land in the middle of the band
+			float target = (highWater + lowWater) / 2;
+			next = current * (float) Math.sqrt(target / load);
+			next = Math.min(next, current - SCALE_STEP);
+		} else if (underBudgetStreak >= upFrames) {
+			next = current + SCALE_STEP;
+		}
+		next = Math.max(minimumScale, Math.min(maximumScale, Math.round(next / SCALE_STEP) * SCALE_STEP));
+		
+		if (next != current) {
+			scale = next;
+			scaleChanges++;
+			cooldown = QUERY_RING;
+		}
+		if (overBudgetStreak >= downFrames || underBudgetStreak >= upFrames) {
+			overBudgetStreak = 0;
+			underBudgetStreak = 0;
+		}
+		adaptiveVsyncActive = (load > highWater && adaptiveVsyncSupported);
+	}
+	
+	private void applySwapInterval() {
+		window.applySwapInterval(!vsync ? 0 : (adaptiveVsyncActive ? -1 : 1));
+	}
+	
+	/**
+	 * Makes sure the painter's base target matches the current scale and window size.
+	 */
+	private void updateTarget() {
+		WindowPainter painter = window.getPainter();
+		float scale = this.scale;
+		if (scale >= 1) {
+			if (scaledTarget != null) {
+				painter.setBaseTarget(null);
+				scaledTarget.destroy();
+				scaledTarget = null;
+			}
+			return;
+		}
+		
+		int width = Math.max(1, Math.round(window.getWidth() * scale));
+		int height = Math.max(1, Math.round(window.getHeight() * scale));
+		if (scaledTarget != null && scaledTarget.getWidth() == width && scaledTarget.getHeight() == height) return;
+		
+		if (scaledTarget != null) scaledTarget.destroy();
+		scaledTarget = new Framebuffer(width, height);
+		painter.setBaseTarget(scaledTarget);
+	}
+	
+	/**
+	 * Gets the smoothed time the CPU spends on each frame, between swaps, in milliseconds.
+	 */
+	public float getCpuFrameTime() {
+		return cpuMillis;
+	}
+	
+	/**
+	 * Gets the smoothed time the GPU spends on each frame, in milliseconds. Lags a few frames behind.
+	 */
+	public float getGpuFrameTime() {
+		return gpuMillis;
+	}
+	
+	/**
+	 * Gets the frame budget, in milliseconds.
+	 */
+	public float getBudget() {
+		return budgetNanos / 1_000_000f;
+	}
+	
+	/**
+	 * Gets the fraction of the window's resolution frames are currently rendered at, from the minimum scale to 1.
+	 */
+	public float getScale() {
+		return scale;
+	}
+	
+	/** Gets how many times the scale has changed since the pacer was created. */
+	public long getScaleChanges() {
+		return scaleChanges;
+	}
+	
+	/** Returns true if the driver supports adaptive vsync, which tears late frames instead of delaying them. */
+	public boolean isAdaptiveVsyncSupported() {
+		return adaptiveVsyncSupported;
+	}
+	
+	@Override
+	public void destroy() {
+		if (!running) return;
+		running = false;
+		
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		window.runOnContextThread(() -> {
+			try {
+				window.setFramePacer(null);
+				window.getPainter().setBaseTarget(null);
+				if (scaledTarget != null) scaledTarget.destroy();
+				scaledTarget = null;
+				glDeleteQueries(queries);
+				done.complete(null);
+			} catch (Throwable t) {
+				done.completeExceptionally(t);
+			}
+		});
+		done.join();
+	}
+}
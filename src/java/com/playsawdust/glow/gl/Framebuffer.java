@@ -0,0 +1,91 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * An offscreen render target: a framebuffer object with a single color Texture attached.
+ *
+ * <p>The attached texture's row 0 is the bottom of the framebuffer, as with any GL texture. {@link WindowPainter}
+ * accounts for this when painting into a Framebuffer, so anything painted there can be drawn back out with
+ * {@link WindowPainter#drawImage drawImage} the right way up.
+ */
+public class Framebuffer implements GLResource {
+	private final int handle;
+	private final Texture texture;
+	private final int width;
+	private final int height;
+	
+	public Framebuffer(int width, int height) {
+		this(TextureFormat.RGBA8, width, height);
+	}
+	
+	/**
+	 * Creates a new Framebuffer. Its contents start out undefined, so clear it before use.
+	 * @param format The format of the color attachment. Must be renderable, so compressed formats aren't allowed.
+	 */
+	public Framebuffer(TextureFormat format, int width, int height) {
+		if (format.isCompressed()) throw new IllegalArgumentException("Can't render into a compressed "+format+" texture.");
+		this.width = width;
+		this.height = height;
+		
+		texture = new Texture(format, width, height, 1);
+		texture.setFilter(TextureFilter.LINEAR, TextureFilter.LINEAR);
+		
+		handle = glGenFramebuffers();
+		glBindFramebuffer(GL_FRAMEBUFFER, handle);
+		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture.getHandle(), 0);
+		int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+		glBindFramebuffer(GL_FRAMEBUFFER, 0);
+		if (status != GL_FRAMEBUFFER_COMPLETE) {
+			glDeleteFramebuffers(handle);
+			texture.destroy();
+			throw new RuntimeException("Framebuffer is incomplete: 0x"+Integer.toHexString(status));
+		}
+	}
+	
+	/**
+	 * Binds this Framebuffer for drawing and reading, and sets the viewport to cover it.
+	 */
+	public void bind() {
+		glBindFramebuffer(GL_FRAMEBUFFER, handle);
+		glViewport(0, 0, width, height);
+	}
+	
+	/**
+	 * Binds the window's default framebuffer again. The viewport is left alone, since only the caller knows the
+	 * window's size.
+	 */
+	public static void unbind() {
+		glBindFramebuffer(GL_FRAMEBUFFER, 0);
+	}
+	
+	public Texture getTexture() {
+		return texture;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Estimates the GPU memory used by this Framebuffer's attachments.
+	 */
+	public long getMemorySize() {
+		return texture.getMemorySize();
+	}
+	
+	@Override
+	public void destroy() {
+		glDeleteFramebuffers(handle);
+		texture.destroy();
+	}
+	
+	@Override
+	public int getHandle() {
+		return handle;
+	}
+}
@@ -37,9 +37,9 @@ public enum GLType {
 	FLOAT_VEC2(GL_FLOAT_VEC2, GLPrimitiveType.FLOAT, 2),
 	FLOAT_VEC3(GL_FLOAT_VEC3, GLPrimitiveType.FLOAT, 3),
 	FLOAT_VEC4(GL_FLOAT_VEC4, GLPrimitiveType.FLOAT, 4),
-	FLOAT_MAT2(GL_FLOAT_MAT2, GLPrimitiveType.FLOAT, 4),
-	FLOAT_MAT3(GL_FLOAT_MAT3, GLPrimitiveType.FLOAT, 9),
-	FLOAT_MAT4(GL_FLOAT_MAT4, GLPrimitiveType.FLOAT,16),
+	FLOAT_MAT2(GL_FLOAT_MAT2, GLPrimitiveType.FLOAT, 4, 2),
+	FLOAT_MAT3(GL_FLOAT_MAT3, GLPrimitiveType.FLOAT, 9, 3),
+	FLOAT_MAT4(GL_FLOAT_MAT4, GLPrimitiveType.FLOAT,16, 4),
 	
 	DOUBLE(GL_DOUBLE, GLPrimitiveType.DOUBLE, 1),
 	DOUBLE_VEC2(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE, 2),
@@ -47,9 +47,23 @@ public enum GLType {
 	
 	
 	DOUBLE_VEC4(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE, 4),
-	DOUBLE_MAT2(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE, 4),
-	DOUBLE_MAT3(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE, 9),
-	DOUBLE_MAT4(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE,16),
+	DOUBLE_MAT2(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE, 4, 2),
+	DOUBLE_MAT3(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE, 9, 3),
+	DOUBLE_MAT4(GL_DOUBLE_VEC2, GLPrimitiveType.DOUBLE,16, 4),
+	
+	// Small-integer vectors only exist as vertex attributes, so like HALF_VEC2 they have no GL type value
+	BYTE_VEC2(-1, GLPrimitiveType.BYTE, 2),
+	BYTE_VEC3(-1, GLPrimitiveType.BYTE, 3),
+	BYTE_VEC4(-1, GLPrimitiveType.BYTE, 4),
+	UNSIGNED_BYTE_VEC2(-1, GLPrimitiveType.UNSIGNED_BYTE, 2),
+	UNSIGNED_BYTE_VEC3(-1, GLPrimitiveType.UNSIGNED_BYTE, 3),
+	UNSIGNED_BYTE_VEC4(-1, GLPrimitiveType.UNSIGNED_BYTE, 4),
+	SHORT_VEC2(-1, GLPrimitiveType.SHORT, 2),
+	SHORT_VEC3(-1, GLPrimitiveType.SHORT, 3),
+	SHORT_VEC4(-1, GLPrimitiveType.SHORT, 4),
+	UNSIGNED_SHORT_VEC2(-1, GLPrimitiveType.UNSIGNED_SHORT, 2),
+	UNSIGNED_SHORT_VEC3(-1, GLPrimitiveType.UNSIGNED_SHORT, 3),
+	UNSIGNED_SHORT_VEC4(-1, GLPrimitiveType.UNSIGNED_SHORT, 4),
 	/*
 	DOUBLE_MAT2x3(GL_DOUBLE_MAT2x3, Double.class, 6, 8, DOUBLE),
 	DOUBLE_MAT2x4(GL_DOUBLE_MAT2x4, Double.class, 8, 8, DOUBLE),
@@ -62,11 +76,18 @@ public enum GLType {
 	private final int value;
 	private final GLPrimitiveType primitiveType;
 	private final int primitiveCount;
+	/** 1 for scalars and vectors, or the number of columns of a matrix */
+	private final int columns;
 	
 	GLType(int value, GLPrimitiveType primitive, int primitiveCount) {
+		this(value, primitive, primitiveCount, 1);
+	}
+	
+	GLType(int value, GLPrimitiveType primitive, int primitiveCount, int columns) {
 		this.value = value;
 		this.primitiveType = primitive;
 		this.primitiveCount = primitiveCount;
+		this.columns = columns;
 	}
 	
 	public int value() {
@@ -85,8 +106,34 @@ public enum GLType {
 		return primitiveCount * primitiveType.bytes();
 	}
 	
+	/** Gets the number of columns of a matrix type, or 1 for scalars and vectors. */
+	public int columns() {
+		return columns;
+	}
+	
+	public boolean isMatrix() {
+		return columns > 1;
+	}
+	
+	/**
+	 * Gets the vertex attribute type made of {@code count} components of the given primitive type, or null if there
+	 * isn't one.
+	 */
+	public static GLType of(GLPrimitiveType primitive, int count) {
+		for(GLType type : values()) {
+			if (type.primitiveType == primitive && type.primitiveCount == count && !type.isMatrix()) return type;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Gets the type with the given GL type value, or null if there isn't one. Types with no GL value of their own are
+	 * never returned.
+	 */
 	public static GLType of(int value) {
 		for(GLType type : values()) {
+			if (type.value == -1) continue;
 			if (type.value == value) return type;
 		}
 		
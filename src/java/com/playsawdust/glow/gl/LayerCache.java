@@ -0,0 +1,189 @@
+package com.playsawdust.glow.gl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Owns the offscreen storage for a set of retained {@link Layer Layers}, and keeps it within a memory budget.
+ *
+ * <p>A Layer is drawn with {@link WindowPainter#drawLayer(Layer, int, int, java.util.function.Consumer)}. The first
+ * time, its contents are painted into a Framebuffer; after that, every draw is a single textured quad until the
+ * Layer is {@link Layer#invalidate() invalidated}. A screen made of mostly-static panels therefore costs one quad per
+ * panel per frame instead of one per widget.
+ *
+ * <p>When the budget would be exceeded, the least recently drawn Layers lose their Framebuffers. They aren't
+ * otherwise affected; they just repaint their contents the next time they're drawn. The budget is a soft limit: a
+ * Layer that's being drawn is never evicted, even if it alone is over budget.
+ */
+public class LayerCache implements Destroyable {
+	private final LinkedHashSet<Layer> resident = new LinkedHashSet<>();
+	private final List<Layer> layers = new ArrayList<>();
+	private long budget;
+	private long memoryUsage = 0;
+	
+	/**
+	 * Creates a new LayerCache.
+	 * @param budget the most GPU memory, in bytes, that this cache's Layers should hold at once
+	 */
+	public LayerCache(long budget) {
+		this.budget = budget;
+	}
+	
+	/**
+	 * Creates a Layer of the given size in pixels. No GPU memory is used until it's first drawn.
+	 */
+	public Layer createLayer(int width, int height) {
+		Layer layer = new Layer(this, width, height);
+		layers.add(layer);
+		return layer;
+	}
+	
+	/**
+	 * Sets the memory budget. Lowering it doesn't evict anything right away; that happens as Layers are drawn.
+	 */
+	public void setBudget(long budget) {
+		this.budget = budget;
+	}
+	
+	public long getBudget() {
+		return budget;
+	}
+	
+	/** Gets the GPU memory currently held by this cache's Layers, in bytes. */
+	public long getMemoryUsage() {
+		return memoryUsage;
+	}
+	
+	/** Marks every Layer for repainting, for example after a theme or scale change. */
+	public void invalidateAll() {
+		for(Layer layer : layers) {
+			layer.invalidate();
+		}
+	}
+	
+	/**
+	 * Gets a Layer's Framebuffer, allocating it if needed, and marks the Layer as the most recently used.
+	 * @param beforeEviction run before any other Layer's Framebuffer is destroyed, so that queued draws which sample it
+	 *                       can be submitted first
+	 */
+	Framebuffer acquire(Layer layer, Runnable beforeEviction) {
+		if (layer.framebuffer == null) {
+			long needed = (long) layer.width * layer.height * 4;
+			boolean flushed = false;
+			Iterator<Layer> iterator = resident.iterator();
+			while(memoryUsage + needed > budget && iterator.hasNext()) {
+				Layer victim = iterator.next();
+				if (victim.pinned) continue;
+				if (!flushed) {
+					beforeEviction.run();
+					flushed = true;
+				}
+				iterator.remove();
+				release(victim);
+			}
+			
+			layer.framebuffer = new Framebuffer(layer.width, layer.height);
+			layer.valid = false;
+			memoryUsage += layer.framebuffer.getMemorySize();
+		}
+		
+		resident.remove(layer);
+		resident.add(layer);
+		return layer.framebuffer;
+	}
+	
+	private void release(Layer layer) {
+		if (layer.framebuffer == null) return;
+		memoryUsage -= layer.framebuffer.getMemorySize();
+		layer.framebuffer.destroy();
+		layer.framebuffer = null;
+		layer.valid = false;
+	}
+	
+	@Override
+	public void destroy() {
+		for(Layer layer : layers) {
+			release(layer);
+		}
+		resident.clear();
+		layers.clear();
+	}
+	
+	/**
+	 * A rectangle of painted content which is kept offscreen and reused until invalidated.
+	 */
+	public static class Layer implements Destroyable {
+		private final LayerCache cache;
+		private int width;
+		private int height;
+		private Framebuffer framebuffer = null;
+		private boolean valid = false;
+		/** Set while this Layer's contents are being painted, so that nested Layers can't evict it */
+		boolean pinned = false;
+		
+		private Layer(LayerCache cache, int width, int height) {
+			this.cache = cache;
+			this.width = width;
+			this.height = height;
+		}
+		
+		public LayerCache getCache() {
+			return cache;
+		}
+		
+		public int getWidth() {
+			return width;
+		}
+		
+		public int getHeight() {
+			return height;
+		}
+		
+		/**
+		 * Changes this Layer's size. If it actually changes, the Layer's storage is freed and its contents repainted on
+		 * the next draw.
+		 */
+		public void setSize(int width, int height) {
+			if (width == this.width && height == this.height) return;
+			if (pinned) throw new IllegalStateException("Can't resize a Layer while it's being painted.");
+			cache.resident.remove(this);
+			cache.release(this);
+			this.width = width;
+			this.height = height;
+		}
+		
+		/** Makes this Layer repaint its contents the next time it's drawn. */
+		public void invalidate() {
+			valid = false;
+		}
+		
+		/** Returns true if this Layer's contents are cached and will be reused by the next draw. */
+		public boolean isValid() {
+			return valid;
+		}
+		
+		void markValid() {
+			valid = true;
+		}
+		
+		/** Returns true if this Layer currently holds GPU memory. */
+		public boolean isResident() {
+			return framebuffer != null;
+		}
+		
+		/**
+		 * Frees this Layer's storage and removes it from its cache. Call this between frames, and don't draw the Layer
+		 * again afterwards.
+		 */
+		@Override
+		public void destroy() {
+			cache.resident.remove(this);
+			cache.release(this);
+			cache.layers.remove(this);
+		}
+	}
+}
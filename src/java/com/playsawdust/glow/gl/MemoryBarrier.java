@@ -0,0 +1,77 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL43.*;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+/**
+ * The kinds of access that can be made to wait for incoherent writes from shaders, such as compute shaders writing to
+ * shader storage buffers or images. Each value names how the written data will be <em>read</em> next.
+ *
+ * <pre>
+ * simulate.dispatch(particleCount / 64, 1, 1);
+ * MemoryBarrier.apply(MemoryBarrier.VERTEX_ATTRIB_ARRAY);
+ * particleVertexArray.draw(...);
+ * </pre>
+ */
+public enum MemoryBarrier {
+	/** The data will be read as vertex attributes. */
+	VERTEX_ATTRIB_ARRAY(GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT),
+	/** The data will be read as indices by indexed draw calls. */
+	ELEMENT_ARRAY(GL_ELEMENT_ARRAY_BARRIER_BIT),
+	/** The data will be read from uniform buffers. */
+	UNIFORM(GL_UNIFORM_BARRIER_BIT),
+	/** The data will be sampled from textures. */
+	TEXTURE_FETCH(GL_TEXTURE_FETCH_BARRIER_BIT),
+	/** The data will be read or written through image load/store. */
+	SHADER_IMAGE_ACCESS(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT),
+	/** The data will be read as arguments for indirect draws or dispatches. */
+	COMMAND(GL_COMMAND_BARRIER_BIT),
+	/** The data will be read or written by pixel pack/unpack operations. */
+	PIXEL_BUFFER(GL_PIXEL_BUFFER_BARRIER_BIT),
+	/** The data will be read or written by glTexSubImage, glGetTexImage, and friends. */
+	TEXTURE_UPDATE(GL_TEXTURE_UPDATE_BARRIER_BIT),
+	/** The data will be read or written by glBufferSubData, glGetBufferSubData, copies, or mapping. */
+	BUFFER_UPDATE(GL_BUFFER_UPDATE_BARRIER_BIT),
+	/** The data will be read or written as a framebuffer attachment. */
+	FRAMEBUFFER(GL_FRAMEBUFFER_BARRIER_BIT),
+	/** The data will be written by transform feedback. */
+	TRANSFORM_FEEDBACK(GL_TRANSFORM_FEEDBACK_BARRIER_BIT),
+	/** The data will be accessed through atomic counters. */
+	ATOMIC_COUNTER(GL_ATOMIC_COUNTER_BARRIER_BIT),
+	/** The data will be read or written through shader storage blocks. */
+	SHADER_STORAGE(GL_SHADER_STORAGE_BARRIER_BIT),
+	/** Every kind of access. Simple, but may stall more than necessary. */
+	ALL(GL_ALL_BARRIER_BITS),
+	;
+	
+	private final int bit;
+	
+	MemoryBarrier(int bit) {
+		this.bit = bit;
+	}
+	
+	public int bit() {
+		return bit;
+	}
+	
+	/**
+	 * Makes the given kinds of access wait for all shader writes issued so far. Does nothing on contexts without image
+	 * load/store (GL 4.2 or ARB_shader_image_load_store), since they have no way to make incoherent writes anyway.
+	 */
+	public static void apply(MemoryBarrier... barriers) {
+		if (!isSupported()) return;
+		
+		int bits = 0;
+		for(MemoryBarrier barrier : barriers) {
+			bits |= barrier.bit;
+		}
+		if (bits != 0) glMemoryBarrier(bits);
+	}
+	
+	public static boolean isSupported() {
+		GLCapabilities caps = GL.getCapabilities();
+		return caps.OpenGL42 || caps.GL_ARB_shader_image_load_store;
+	}
+}
@@ -0,0 +1,278 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One large vertex buffer and one large index buffer, shared by many small meshes and drawn from a single
+ * VertexArray. Each mesh uploaded here gets a {@link SubMesh} which remembers where its data lives, and is drawn with
+ * glDrawElementsBaseVertex so that its indices can stay relative to its own first vertex.
+ *
+ * <p>Vertices are interleaved, with the attributes given to the constructor bound to locations 0, 1, 2... in order.
+ * All attributes must be float-based, because mesh data is supplied as {@code float[]}.
+ *
+ * <p>When either buffer runs out of room, the buffer is first compacted if there is enough free space in total, and
+ * grown otherwise. Both operations copy data on the GPU, and only change the SubMesh offsets - never the data that
+ * the caller handed in.
+ */
+public class MeshBuffer implements GLResource {
+	private static final int INDEX_BYTES = 4;
+	
+	private final GLType[] attributes;
+	private final int floatsPerVertex;
+	private final int vertexStride;
+	private final VertexArray vertexArray;
+	private VertexBuffer vertices;
+	private VertexBuffer indices;
+	private final BufferAllocator vertexAllocator;
+	private final BufferAllocator indexAllocator;
+	private Map<Integer, SubMesh> meshesByVertexOffset = new HashMap<>();
+	private Map<Integer, SubMesh> meshesByIndexOffset = new HashMap<>();
+	
+	/**
+	 * Creates a new MeshBuffer.
+	 * @param vertexCapacity The number of vertices to reserve space for up front
+	 * @param indexCapacity  The number of indices to reserve space for up front
+	 * @param attributes     The layout of each vertex. Each attribute is bound to the location of its position in
+	 *                       this list.
+	 */
+	public MeshBuffer(int vertexCapacity, int indexCapacity, GLType... attributes) {
+		int floats = 0;
+		for(GLType type : attributes) {
+			if (type.primitiveType() != GLPrimitiveType.FLOAT) throw new IllegalArgumentException("MeshBuffer attributes must be float-based, but got "+type+".");
+			floats += type.primitiveCount();
+		}
+		this.attributes = attributes.clone();
+		this.floatsPerVertex = floats;
+		this.vertexStride = floats * 4;
+		
+		vertexAllocator = new BufferAllocator(vertexCapacity);
+		indexAllocator = new BufferAllocator(indexCapacity);
+		
+		// Element buffer bindings are VertexArray state, so keep ours bound whenever the index buffer is touched
+		vertexArray = new VertexArray();
+		vertexArray.bind();
+		vertices = new VertexBuffer();
+		vertices.allocateStatic(BufferTarget.ARRAY, (long) vertexCapacity * vertexStride);
+		indices = new VertexBuffer();
+		indices.allocateStatic(BufferTarget.ELEMENT_ARRAY, (long) indexCapacity * INDEX_BYTES);
+		bindAttributes();
+		vertexArray.bindIndexBuffer(indices);
+	}
+	
+	/**
+	 * Copies a mesh into this buffer.
+	 * @param vertexData Interleaved vertex data, laid out as described by this MeshBuffer's attributes
+	 * @param indexData  Triangle indices, relative to the first vertex in vertexData
+	 * @return A SubMesh which can be used to draw or free this mesh
+	 */
+	public SubMesh upload(float[] vertexData, int[] indexData) {
+		if (vertexData.length == 0 || vertexData.length % floatsPerVertex != 0) throw new IllegalArgumentException("Vertex data must be a nonzero multiple of "+floatsPerVertex+" floats.");
+		if (indexData.length == 0) throw new IllegalArgumentException("Index data cannot be empty.");
+		int vertexCount = vertexData.length / floatsPerVertex;
+		vertexArray.bind();
+		
+		int baseVertex = vertexAllocator.allocate(vertexCount);
+		if (baseVertex == -1) {
+			makeVertexRoom(vertexCount);
+			baseVertex = vertexAllocator.allocate(vertexCount);
+			if (baseVertex == -1) throw new IllegalStateException("Couldn't make room for "+vertexCount+" vertices.");
+		}
+		
+		int firstIndex = indexAllocator.allocate(indexData.length);
+		if (firstIndex == -1) {
+			makeIndexRoom(indexData.length);
+			firstIndex = indexAllocator.allocate(indexData.length);
+			if (firstIndex == -1) throw new IllegalStateException("Couldn't make room for "+indexData.length+" indices.");
+		}
+		
+		vertices.setSubData((long) baseVertex * vertexStride, vertexData);
+		indices.setSubData((long) firstIndex * INDEX_BYTES, indexData);
+		
+		SubMesh result = new SubMesh(this, baseVertex, vertexCount, firstIndex, indexData.length);
+		meshesByVertexOffset.put(baseVertex, result);
+		meshesByIndexOffset.put(firstIndex, result);
+		return result;
+	}
+	
+	/**
+	 * Releases the space held by a SubMesh. The SubMesh may not be drawn afterwards.
+	 */
+	public void free(SubMesh mesh) {
+		if (mesh.owner != this) throw new IllegalArgumentException("This SubMesh belongs to a different MeshBuffer.");
+		if (mesh.freed) return;
+		
+		vertexAllocator.free(mesh.baseVertex);
+		indexAllocator.free(mesh.firstIndex);
+		meshesByVertexOffset.remove(mesh.baseVertex);
+		meshesByIndexOffset.remove(mesh.firstIndex);
+		mesh.freed = true;
+	}
+	
+	/**
+	 * Draws one mesh from this buffer.
+	 */
+	public void draw(SubMesh mesh) {
+		if (mesh.freed) throw new IllegalStateException("Can't draw a SubMesh after it has been freed.");
+		vertexArray.bind();
+		glDrawElementsBaseVertex(GL_TRIANGLES, mesh.indexCount, GL_UNSIGNED_INT, (long) mesh.firstIndex * INDEX_BYTES, mesh.baseVertex);
+	}
+	
+	/**
+	 * Draws several meshes from this buffer, binding the VertexArray only once.
+	 */
+	public void draw(Iterable<SubMesh> meshes) {
+		vertexArray.bind();
+		for(SubMesh mesh : meshes) {
+			if (mesh.freed) throw new IllegalStateException("Can't draw a SubMesh after it has been freed.");
+			glDrawElementsBaseVertex(GL_TRIANGLES, mesh.indexCount, GL_UNSIGNED_INT, (long) mesh.firstIndex * INDEX_BYTES, mesh.baseVertex);
+		}
+	}
+	
+	/**
+	 * Removes all fragmentation from both buffers, packing live meshes together at the start of each buffer. This is
+	 * done automatically when an upload doesn't fit, but can be called during a loading screen or other quiet moment
+	 * to avoid doing it mid-frame.
+	 */
+	public void compact() {
+		vertexArray.bind();
+		compactVertices();
+		compactIndices();
+	}
+	
+	public int getVertexCapacity() {
+		return vertexAllocator.getCapacity();
+	}
+	
+	public int getIndexCapacity() {
+		return indexAllocator.getCapacity();
+	}
+	
+	public int getFreeVertices() {
+		return vertexAllocator.getFreeSpace();
+	}
+	
+	public int getFreeIndices() {
+		return indexAllocator.getFreeSpace();
+	}
+	
+	private void bindAttributes() {
+		long offset = 0;
+		for(int i=0; i<attributes.length; i++) {
+			vertexArray.bindBuffer(i, vertices, attributes[i], vertexStride, offset);
+			offset += attributes[i].stride();
+		}
+	}
+	
+	private void makeVertexRoom(int count) {
+		if (vertexAllocator.getFreeSpace() >= count) {
+			compactVertices();
+			if (vertexAllocator.getLargestFreeRange() >= count) return;
+		}
+		
+		// Only the free space at the end is sure to join up with the new space
+		int newCapacity = Math.max(vertexAllocator.getCapacity() * 2, vertexAllocator.getTrailingFreeStart() + count);
+		VertexBuffer grown = new VertexBuffer();
+		grown.allocateStatic(BufferTarget.ARRAY, (long) newCapacity * vertexStride);
+		vertices.copyTo(grown, 0, 0, (long) vertexAllocator.getCapacity() * vertexStride);
+		vertices.destroy();
+		vertices = grown;
+		vertexAllocator.grow(newCapacity);
+		bindAttributes();
+	}
+	
+	private void makeIndexRoom(int count) {
+		if (indexAllocator.getFreeSpace() >= count) {
+			compactIndices();
+			if (indexAllocator.getLargestFreeRange() >= count) return;
+		}
+		
+		int newCapacity = Math.max(indexAllocator.getCapacity() * 2, indexAllocator.getTrailingFreeStart() + count);
+		VertexBuffer grown = new VertexBuffer();
+		grown.allocateStatic(BufferTarget.ELEMENT_ARRAY, (long) newCapacity * INDEX_BYTES);
+		indices.copyTo(grown, 0, 0, (long) indexAllocator.getCapacity() * INDEX_BYTES);
+		indices.destroy();
+		indices = grown;
+		indexAllocator.grow(newCapacity);
+		vertexArray.bindIndexBuffer(indices);
+	}
+	
+	private void compactVertices() {
+		VertexBuffer packed = new VertexBuffer();
+		packed.allocateStatic(BufferTarget.ARRAY, (long) vertexAllocator.getCapacity() * vertexStride);
+		Map<Integer, SubMesh> moved = new HashMap<>();
+		
+		vertexAllocator.compact((oldOffset, newOffset, length) -> {
+			vertices.copyTo(packed, (long) oldOffset * vertexStride, (long) newOffset * vertexStride, (long) length * vertexStride);
+			SubMesh mesh = meshesByVertexOffset.get(oldOffset);
+			mesh.baseVertex = newOffset;
+			moved.put(newOffset, mesh);
+		});
+		
+		vertices.destroy();
+		vertices = packed;
+		meshesByVertexOffset = moved;
+		bindAttributes();
+	}
+	
+	private void compactIndices() {
+		VertexBuffer packed = new VertexBuffer();
+		packed.allocateStatic(BufferTarget.ELEMENT_ARRAY, (long) indexAllocator.getCapacity() * INDEX_BYTES);
+		Map<Integer, SubMesh> moved = new HashMap<>();
+		
+		indexAllocator.compact((oldOffset, newOffset, length) -> {
+			indices.copyTo(packed, (long) oldOffset * INDEX_BYTES, (long) newOffset * INDEX_BYTES, (long) length * INDEX_BYTES);
+			SubMesh mesh = meshesByIndexOffset.get(oldOffset);
+			mesh.firstIndex = newOffset;
+			moved.put(newOffset, mesh);
+		});
+		
+		indices.destroy();
+		indices = packed;
+		meshesByIndexOffset = moved;
+		vertexArray.bindIndexBuffer(indices);
+	}
+	
+	@Override
+	public void destroy() {
+		vertexArray.destroy();
+		vertices.destroy();
+		indices.destroy();
+		meshesByVertexOffset.clear();
+		meshesByIndexOffset.clear();
+	}
+	
+	@Override
+	public int getHandle() {
+		return vertexArray.getHandle();
+	}
+	
+	/**
+	 * The location of one mesh inside a MeshBuffer. Offsets can change when the MeshBuffer compacts itself, so don't
+	 * cache them.
+	 */
+	public static class SubMesh {
+		private final MeshBuffer owner;
+		private int baseVertex;
+		private final int vertexCount;
+		private int firstIndex;
+		private final int indexCount;
+		private boolean freed = false;
+		
+		private SubMesh(MeshBuffer owner, int baseVertex, int vertexCount, int firstIndex, int indexCount) {
+			this.owner = owner;
+			this.baseVertex = baseVertex;
+			this.vertexCount = vertexCount;
+			this.firstIndex = firstIndex;
+			this.indexCount = indexCount;
+		}
+		
+		public int baseVertex() { return baseVertex; }
+		public int vertexCount() { return vertexCount; }
+		public int firstIndex() { return firstIndex; }
+		public int indexCount() { return indexCount; }
+		public boolean isFreed() { return freed; }
+	}
+}
@@ -0,0 +1,19 @@
+package com.playsawdust.glow.gl;
+
+/**
+ * Decides when a {@link Texture} regenerates its mip levels after its base image changes.
+ */
+public enum MipmapPolicy {
+	/**
+	 * Generate mipmaps only if the texture's minification filter actually samples them. This is the default, and means
+	 * UI textures drawn with NEAREST or LINEAR never pay for mip generation.
+	 */
+	AUTOMATIC,
+	/** Always generate mipmaps after the base level changes, even if the current filter doesn't use them. */
+	ALWAYS,
+	/**
+	 * Never generate mipmaps. Use this when mip levels are uploaded by hand, like pre-compressed textures with baked
+	 * mip chains.
+	 */
+	NEVER;
+}
@@ -0,0 +1,37 @@
+package com.playsawdust.glow.gl;
+
+import com.playsawdust.glow.gl.shader.ShaderProgram;
+import com.playsawdust.glow.image.SrgbImageData;
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * The shaders and textures every WindowPainter uses, created once per {@link ShareGroup} and shared by the painters
+ * of all its Windows.
+ */
+class PainterResources implements Destroyable {
+	static final String NAME = "glow:painter";
+	
+	final ShaderProgram shader;
+	final ShaderProgram sdfShader;
+	final ShaderProgram arrayShader;
+	final Texture whitePixel;
+	
+	PainterResources() {
+		shader = new ShaderProgram(WindowPainter.VERT_SHADER_SRC, WindowPainter.FRAG_SHADER_SRC);
+		sdfShader = new ShaderProgram(WindowPainter.VERT_SHADER_SRC, WindowPainter.SDF_FRAG_SHADER_SRC);
+		arrayShader = new ShaderProgram(WindowPainter.VERT_SHADER_SRC, WindowPainter.ARRAY_FRAG_SHADER_SRC);
+		
+		SrgbImageData whitePixelData = new SrgbImageData(1,1);
+		whitePixelData.setPixel(0, 0, 0xFF_FFFFFF);
+		whitePixel = new Texture();
+		whitePixel.setImage(whitePixelData);
+	}
+	
+	@Override
+	public void destroy() {
+		whitePixel.destroy();
+		shader.destroy();
+		sdfShader.destroy();
+		arrayShader.destroy();
+	}
+}
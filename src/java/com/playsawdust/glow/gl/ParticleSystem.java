@@ -0,0 +1,312 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.playsawdust.glow.gl.shader.ShaderProgram;
+import com.playsawdust.glow.gl.shader.TransformFeedbackProgram;
+
+/**
+ * A fixed-capacity pool of 2D particles which lives entirely on the GPU.
+ *
+ * <p>Particle state is kept in two VertexBuffers. Each {@link #update(float)} draws one point per particle from the
+ * current buffer with rasterization turned off, and a transform feedback program writes every particle's next state
+ * into the other buffer; then the two swap roles. {@link #draw(float[])} renders the current buffer as one instanced
+ * draw of camera-facing quads. Nothing is ever read back, so the CPU cost of a frame is the same for a thousand
+ * particles as for a million. Only the GL 4.1 baseline is needed.
+ *
+ * <p>New particles are written into a ring over the pool with {@link #spawn}, overwriting the oldest slots when the
+ * pool is full. Spawns are gathered on the CPU and uploaded with the next update, as at most two small buffer writes.
+ *
+ * <p>Must only be used on the thread that owns the GL context.
+ */
+public class ParticleSystem implements GLResource {
+	public static final String UPDATE_SHADER_SRC = """
+			#version 330
+			
+			uniform float deltaTime;
+			uniform vec2 acceleration;
+			uniform float drag;
+			
+			layout(location=0) in vec4 state;
+			layout(location=1) in vec4 color;
+			layout(location=2) in vec2 life;
+			
+			out vec4 nextState;
+			out vec4 nextColor;
+			out vec2 nextLife;
+			
+			void main() {
+				vec2 velocity = state.zw * max(1.0 - drag * deltaTime, 0.0) + acceleration * deltaTime;
+				nextState = vec4(state.xy + velocity * deltaTime, velocity);
+				nextColor = color;
+				nextLife = vec2(min(life.x + deltaTime, life.y), life.y);
+			}
+			""";
+	
+	public static final String VERT_SHADER_SRC = """
+			#version 330
+			
+			uniform mat4 transform;
+			uniform float size;
+			
+			layout(location=0) in vec2 corner;
+			layout(location=1) in vec4 state;
+			layout(location=2) in vec4 color;
+			layout(location=3) in vec2 life;
+			
+			out vec4 vertexColor;
+			out vec2 vertexUv;
+			
+			void main() {
+				// Dead particles collapse to a point, and produce no fragments
+				float alive = (life.x < life.y) ? 1.0 : 0.0;
+				float fade = 1.0 - life.x / max(life.y, 0.0001);
+				vertexColor = vec4(color.rgb, color.a * fade);
+				vertexUv = corner + 0.5;
+				gl_Position = transform * vec4(state.xy + corner * size * alive, 0.0, 1.0);
+			}
+			""";
+	
+	public static final String FRAG_SHADER_SRC = """
+			#version 330
+			
+			uniform sampler2D materialTexture;
+			uniform int textured;
+			
+			in vec4 vertexColor;
+			in vec2 vertexUv;
+			out vec4 fragColor;
+			
+			void main() {
+				if (textured != 0) {
+					fragColor = vertexColor * texture(materialTexture, vertexUv);
+				} else {
+					float distance = length(vertexUv * 2.0 - 1.0);
+					fragColor = vec4(vertexColor.rgb, vertexColor.a * (1.0 - smoothstep(0.6, 1.0, distance)));
+				}
+			}
+			""";
+	
+	/** Position xy, velocity xy, color rgba, age, lifetime. */
+	public static final int FLOATS_PER_PARTICLE = 10;
+	private static final int STRIDE = FLOATS_PER_PARTICLE * 4;
+	
+	private final int capacity;
+	private final VertexBuffer[] state = new VertexBuffer[2];
+	private final VertexArray[] updateArrays = new VertexArray[2];
+	private final VertexArray[] drawArrays = new VertexArray[2];
+	private final VertexBuffer corners;
+	private final TransformFeedbackProgram updateProgram;
+	private final ShaderProgram drawProgram;
+	private int current = 0;
+	
+	private FloatBuffer pending;
+	private int pendingStart = 0;
+	private int pendingCount = 0;
+	private int spawnCursor = 0;
+	
+	private float accelerationX = 0;
+	private float accelerationY = 0;
+	private float drag = 0;
+	private float size = 4;
+	private Texture texture = null;
+	private BlendMode blendMode = BlendMode.ADDITIVE;
+	
+	public ParticleSystem(int capacity) {
+		this.capacity = capacity;
+		updateProgram = new TransformFeedbackProgram(UPDATE_SHADER_SRC, "nextState", "nextColor", "nextLife");
+		drawProgram = new ShaderProgram(VERT_SHADER_SRC, FRAG_SHADER_SRC);
+		pending = MemoryUtil.memAllocFloat(1024 * FLOATS_PER_PARTICLE);
+		
+		corners = new VertexBuffer();
+		corners.setStaticData(BufferTarget.ARRAY, new float[] {
+			-0.5f, -0.5f,
+			 0.5f, -0.5f,
+			-0.5f,  0.5f,
+			 0.5f,  0.5f
+		});
+		
+		// Zeroed particles have a lifetime of 0, so the pool starts out entirely dead
+		FloatBuffer zeroes = MemoryUtil.memCallocFloat(Math.min(capacity, 65536) * FLOATS_PER_PARTICLE);
+		try {
+			for(int i=0; i<2; i++) {
+				state[i] = new VertexBuffer();
+				state[i].allocateDynamic(BufferTarget.ARRAY, (long) capacity * STRIDE);
+				for(long offset=0; offset<(long) capacity * STRIDE; offset += zeroes.capacity() * 4L) {
+					long bytes = Math.min(zeroes.capacity() * 4L, (long) capacity * STRIDE - offset);
+					zeroes.limit((int) (bytes / 4));
+					state[i].setSubData(offset, zeroes);
+				}
+				
+				updateArrays[i] = new VertexArray();
+				updateArrays[i].bindBuffer(0, state[i], GLType.FLOAT_VEC4, STRIDE, 0);
+				updateArrays[i].bindBuffer(1, state[i], GLType.FLOAT_VEC4, STRIDE, 4 * 4);
+				updateArrays[i].bindBuffer(2, state[i], GLType.FLOAT_VEC2, STRIDE, 8 * 4);
+				
+				drawArrays[i] = new VertexArray();
+				drawArrays[i].bindBuffer(0, corners, GLType.FLOAT_VEC2);
+				drawArrays[i].bindBuffer(1, state[i], GLType.FLOAT_VEC4, STRIDE, 0);
+				drawArrays[i].bindBuffer(2, state[i], GLType.FLOAT_VEC4, STRIDE, 4 * 4);
+				drawArrays[i].bindBuffer(3, state[i], GLType.FLOAT_VEC2, STRIDE, 8 * 4);
+				drawArrays[i].setDivisor(1, 1);
+				drawArrays[i].setDivisor(2, 1);
+				drawArrays[i].setDivisor(3, 1);
+			}
+		} finally {
+			MemoryUtil.memFree(zeroes);
+		}
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Sets a constant acceleration, such as gravity, applied to every particle in pixels per second squared.
+	 */
+	public void setAcceleration(float x, float y) {
+		this.accelerationX = x;
+		this.accelerationY = y;
+	}
+	
+	/**
+	 * Sets the fraction of their velocity that particles lose per second.
+	 */
+	public void setDrag(float drag) {
+		this.drag = drag;
+	}
+	
+	/**
+	 * Sets the width and height of each particle's quad, in pixels.
+	 */
+	public void setSize(float size) {
+		this.size = size;
+	}
+	
+	/**
+	 * Sets the image drawn for each particle, tinted by its color. With no texture, particles are drawn as soft dots.
+	 */
+	public void setTexture(Texture texture) {
+		this.texture = texture;
+	}
+	
+	public void setBlendMode(BlendMode blendMode) {
+		this.blendMode = blendMode;
+	}
+	
+	/**
+	 * Adds a particle, which will appear after the next update. Once the pool is full, each new particle replaces the
+	 * oldest one.
+	 * @param lifetime how long the particle lives, in seconds. Its alpha fades linearly to zero over that time.
+	 */
+	public void spawn(float x, float y, float velocityX, float velocityY, float r, float g, float b, float a, float lifetime) {
+		if (pendingCount == capacity) {
+			// The batch already covers the whole pool, so write it out before the ring laps it
+			uploadPending();
+		}
+		if (pendingCount == 0) pendingStart = spawnCursor;
+		if (pending.capacity() < (pendingCount + 1) * FLOATS_PER_PARTICLE) {
+			pending = MemoryUtil.memRealloc(pending, Math.min(pending.capacity() * 2, capacity * FLOATS_PER_PARTICLE));
+		}
+		
+		int o = pendingCount * FLOATS_PER_PARTICLE;
+		pending.put(o    , x);
+		pending.put(o + 1, y);
+		pending.put(o + 2, velocityX);
+		pending.put(o + 3, velocityY);
+		pending.put(o + 4, r);
+		pending.put(o + 5, g);
+		pending.put(o + 6, b);
+		pending.put(o + 7, a);
+		pending.put(o + 8, 0);
+		pending.put(o + 9, lifetime);
+		pendingCount++;
+		spawnCursor = (spawnCursor + 1) % capacity;
+	}
+	
+	/**
+	 * Writes queued spawns into the current state buffer. The ring may wrap, so this is at most two buffer writes.
+	 */
+	private void uploadPending() {
+		if (pendingCount == 0) return;
+		
+		int firstRun = Math.min(pendingCount, capacity - pendingStart);
+		pending.position(0).limit(firstRun * FLOATS_PER_PARTICLE);
+		state[current].setSubData((long) pendingStart * STRIDE, pending);
+		if (firstRun < pendingCount) {
+			pending.position(firstRun * FLOATS_PER_PARTICLE).limit(pendingCount * FLOATS_PER_PARTICLE);
+			state[current].setSubData(0, pending);
+		}
+		pending.clear();
+		pendingCount = 0;
+	}
+	
+	/**
+	 * Advances every particle by {@code deltaTime} seconds, entirely on the GPU.
+	 */
+	public void update(float deltaTime) {
+		uploadPending();
+		
+		int next = 1 - current;
+		updateProgram.setUniform("deltaTime", deltaTime);
+		updateProgram.setUniform("acceleration", accelerationX, accelerationY);
+		updateProgram.setUniform("drag", drag);
+		updateProgram.bind();
+		updateArrays[current].bind();
+		
+		glEnable(GL_RASTERIZER_DISCARD);
+		glBindBufferBase(GL_TRANSFORM_FEEDBACK_BUFFER, 0, state[next].getHandle());
+		glBeginTransformFeedback(GL_POINTS);
+		glDrawArrays(GL_POINTS, 0, capacity);
+		glEndTransformFeedback();
+		glBindBufferBase(GL_TRANSFORM_FEEDBACK_BUFFER, 0, 0);
+		glDisable(GL_RASTERIZER_DISCARD);
+		
+		current = next;
+	}
+	
+	/**
+	 * Draws every live particle in one instanced draw call. If this is mixed with a {@link WindowPainter}, flush the
+	 * painter first so that draw order is kept.
+	 * @param transform the 4x4 row-major matrix from particle coordinates to clip space, like
+	 *                  {@link WindowPainter#orthoMatrix(int, int)}
+	 */
+	public void draw(float[] transform) {
+		drawProgram.bind();
+		glUniformMatrix4fv(glGetUniformLocation(drawProgram.getHandle(), "transform"), true, transform);
+		glUniform1f(glGetUniformLocation(drawProgram.getHandle(), "size"), size);
+		glUniform1i(glGetUniformLocation(drawProgram.getHandle(), "textured"), (texture != null) ? 1 : 0);
+		glUniform1i(glGetUniformLocation(drawProgram.getHandle(), "materialTexture"), 0);
+		if (texture != null) texture.bindToUnit(0);
+		
+		glEnable(GL_BLEND);
+		blendMode.apply();
+		drawArrays[current].bind();
+		glDrawArraysInstanced(GL_TRIANGLE_STRIP, 0, 4, capacity);
+	}
+	
+	@Override
+	public void destroy() {
+		for(int i=0; i<2; i++) {
+			updateArrays[i].destroy();
+			drawArrays[i].destroy();
+			state[i].destroy();
+		}
+		corners.destroy();
+		updateProgram.destroy();
+		drawProgram.destroy();
+		MemoryUtil.memFree(pending);
+	}
+	
+	/**
+	 * Gets the handle of the buffer holding the current particle state, {@link #FLOATS_PER_PARTICLE} floats each.
+	 */
+	@Override
+	public int getHandle() {
+		return state[current].getHandle();
+	}
+}
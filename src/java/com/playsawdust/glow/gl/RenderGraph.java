@@ -0,0 +1,561 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Schedules a chain of render passes, like the stages of a blur or bloom, from what each pass reads and writes.
+ *
+ * <p>Passes are declared in the order their effects should be seen: a pass which reads a target sees what the most
+ * recent earlier pass wrote to it. From that, the graph works out
+ * <ul>
+ *   <li>which passes actually matter. Only passes which contribute to an output - the screen, an imported
+ *       Framebuffer, or a target marked with {@link #markOutput(Target)} - are run, so a disabled effect can simply
+ *       stop being read instead of being torn out.
+ *   <li>an order to run them in. Any topological order of the dependencies is correct; among those, the graph prefers
+ *       to run the consumer of a target right after its producer, which keeps transient targets alive for as short a
+ *       time as possible.
+ *   <li>which transient targets can share storage. Targets whose lifetimes don't overlap, and which have the same
+ *       format and size, are given the same Framebuffer, so a ten-pass chain that only ever needs two intermediate
+ *       images at once only allocates two. Framebuffers are kept between frames and reused as long as they're needed.
+ * </ul>
+ *
+ * <pre>
+ * RenderGraph graph = new RenderGraph(window);
+ * RenderGraph.Target scene = graph.createTarget("scene", TextureFormat.RGBA16F, w, h);
+ * RenderGraph.Target blurred = graph.createTarget("blurred", TextureFormat.RGBA16F, w / 2, h / 2);
+ * graph.addPass("scene").write(scene).clear().execute(ctx -&gt; drawScene());
+ * graph.addPass("blur").read(scene).write(blurred).execute(ctx -&gt; blur(ctx.getTexture(scene)));
+ * graph.addPass("composite").read(scene, blurred).write(graph.getScreen()).execute(ctx -&gt; ...);
+ * ...
+ * graph.execute(); // every frame
+ * </pre>
+ *
+ * <p>Transient targets have undefined contents when a pass first writes them, unless that pass {@link Pass#clear()
+ * clears}. Must only be used on the thread that owns the GL context.
+ */
+public class RenderGraph implements Destroyable {
+	private final Window window;
+	private final Target screen;
+	private final List<Target> targets = new ArrayList<>();
+	private final List<Pass> passes = new ArrayList<>();
+	private final Context context = new Context();
+	/** Framebuffers owned by the graph, by format and size, whether or not the current schedule uses them */
+	private final Map<PoolKey, List<Framebuffer>> pool = new HashMap<>();
+	
+	private boolean compiled = false;
+	private Pass[] schedule = new Pass[0];
+	private final Map<Target, Framebuffer> assigned = new IdentityHashMap<>();
+	private Pass currentPass = null;
+	/** The caller's clear color, put back after the graph's own clears */
+	private final float[] savedClearColor = new float[4];
+	
+	public RenderGraph(Window window) {
+		this.window = window;
+		this.screen = new Target("screen", null, 0, 0, null);
+	}
+	
+	/**
+	 * Gets the target which stands for the window's default framebuffer. Writing to it makes a pass an output.
+	 */
+	public Target getScreen() {
+		return screen;
+	}
+	
+	/**
+	 * Declares a transient target, which only exists while passes that use it are running and may share storage with
+	 * other transient targets.
+	 * @param format a renderable format for the target's color texture
+	 */
+	public Target createTarget(String name, TextureFormat format, int width, int height) {
+		if (format.isCompressed()) throw new IllegalArgumentException("Can't render into a compressed "+format+" target.");
+		Target target = new Target(name, format, width, height, null);
+		targets.add(target);
+		compiled = false;
+		return target;
+	}
+	
+	/**
+	 * Declares a target backed by a Framebuffer the caller owns, such as one that persists between frames. Its contents
+	 * are kept, and any pass writing it is an output.
+	 */
+	public Target importTarget(String name, Framebuffer framebuffer) {
+		Target target = new Target(name, null, framebuffer.getWidth(), framebuffer.getHeight(), framebuffer);
+		targets.add(target);
+		compiled = false;
+		return target;
+	}
+	
+	/**
+	 * Marks a transient target as an output, so that the passes writing it are never culled, and its storage isn't
+	 * reused until the graph is done. Read it afterwards with {@link #getTexture(Target)}.
+	 */
+	public void markOutput(Target target) {
+		if (!target.output) {
+			target.output = true;
+			compiled = false;
+		}
+	}
+	
+	/**
+	 * Declares a new pass. Its reads and writes must be declared, and its body set, before the next {@link #execute()}.
+	 */
+	public Pass addPass(String name) {
+		Pass pass = new Pass(name, passes.size());
+		passes.add(pass);
+		compiled = false;
+		return pass;
+	}
+	
+	/**
+	 * Forgets every pass and target, so that the graph can be declared afresh. Framebuffers are kept for reuse by the
+	 * new declarations.
+	 */
+	public void reset() {
+		passes.clear();
+		targets.clear();
+		assigned.clear();
+		schedule = new Pass[0];
+		compiled = false;
+	}
+	
+	/**
+	 * Runs every live pass, compiling the graph first if anything was declared since the last run.
+	 */
+	public void execute() {
+		if (!compiled) compile();
+		
+		boolean clearColorSaved = false;
+		for(Pass pass : schedule) {
+			Target write = pass.write;
+			// Bound every time, even when the last pass wrote the same Framebuffer, since pass bodies are free to bind
+			// something else
+			if (write == screen) {
+				Framebuffer.unbind();
+				glViewport(0, 0, window.getWidth(), window.getHeight());
+			} else if (write != null) {
+				framebufferFor(write).bind();
+			}
+			if (pass.clear && write != null) {
+				if (!clearColorSaved) {
+					glGetFloatv(GL_COLOR_CLEAR_VALUE, savedClearColor);
+					clearColorSaved = true;
+				}
+				glClearColor(0, 0, 0, 0);
+				glClear(GL_COLOR_BUFFER_BIT);
+			}
+			
+			currentPass = pass;
+			try {
+				pass.body.accept(context);
+			} finally {
+				currentPass = null;
+			}
+		}
+		Framebuffer.unbind();
+		glViewport(0, 0, window.getWidth(), window.getHeight());
+		if (clearColorSaved) glClearColor(savedClearColor[0], savedClearColor[1], savedClearColor[2], savedClearColor[3]);
+	}
+	
+	/**
+	 * Gets the texture holding a target's contents. Only valid during {@link #execute()}, or afterwards for outputs.
+	 */
+	public Texture getTexture(Target target) {
+		if (target == screen) throw new IllegalArgumentException("The screen can't be read as a texture.");
+		return framebufferFor(target).getTexture();
+	}
+	
+	private Framebuffer framebufferFor(Target target) {
+		if (target.imported != null) return target.imported;
+		Framebuffer framebuffer = assigned.get(target);
+		if (framebuffer == null) throw new IllegalStateException("Target '"+target.name+"' isn't used by any live pass.");
+		return framebuffer;
+	}
+	
+	/**
+	 * Works out dependencies, culls dead passes, orders the rest, and assigns Framebuffers to transient targets.
+	 */
+	public void compile() {
+		for(Pass pass : passes) {
+			if (pass.body == null) throw new IllegalStateException("Pass '"+pass.name+"' has no body.");
+			pass.needs.clear();
+			pass.after.clear();
+			pass.dependents = 0;
+			pass.live = false;
+		}
+		
+		// Walk declaration order, tracking each target's last writer and its readers since
+		Map<Target, Pass> lastWriter = new IdentityHashMap<>();
+		Map<Target, List<Pass>> readers = new IdentityHashMap<>();
+		for(Pass pass : passes) {
+			for(Target read : pass.reads) {
+				if (read == screen) throw new IllegalStateException("Pass '"+pass.name+"' reads the screen, which isn't supported.");
+				Pass writer = lastWriter.get(read);
+				if (writer == null && read.imported == null) throw new IllegalStateException("Pass '"+pass.name+"' reads '"+read.name+"' before anything writes it.");
+				if (writer != null && writer != pass) pass.needs.add(writer);
+				readers.computeIfAbsent(read, it -> new ArrayList<>()).add(pass);
+			}
+			
+			Target write = pass.write;
+			if (write != null) {
+				Pass writer = lastWriter.get(write);
+				if (writer != null && writer != pass) {
+					// Drawing on top of a target needs what was there; clearing it only needs to come later
+					if (pass.clear && !pass.reads.contains(write)) {
+						pass.after.add(writer);
+					} else {
+						pass.needs.add(writer);
+					}
+				}
+				List<Pass> earlierReaders = readers.get(write);
+				if (earlierReaders != null) {
+					for(Pass reader : earlierReaders) {
+						if (reader != pass) pass.after.add(reader);
+					}
+					earlierReaders.clear();
+				}
+				lastWriter.put(write, pass);
+			}
+		}
+		
+		// Everything that writes an output is live, along with everything it needs, transitively
+		ArrayDeque<Pass> work = new ArrayDeque<>();
+		for(Pass pass : passes) {
+			Target write = pass.write;
+			if (write != null && (write == screen || write.imported != null || write.output)) {
+				pass.live = true;
+				work.add(pass);
+			}
+		}
+		while(!work.isEmpty()) {
+			for(Pass needed : work.poll().needs) {
+				if (!needed.live) {
+					needed.live = true;
+					work.add(needed);
+				}
+			}
+		}
+		
+		schedule = sort();
+		assignTargets();
+		compiled = true;
+	}
+	
+	/**
+	 * Orders the live passes with Kahn's algorithm. When several passes are ready, a consumer of the most recently
+	 * written target goes first, then the earliest declared.
+	 */
+	private Pass[] sort() {
+		List<Pass> live = new ArrayList<>();
+		for(Pass pass : passes) {
+			if (pass.live) live.add(pass);
+		}
+		for(Pass pass : live) {
+			for(Pass predecessor : pass.predecessors()) {
+				if (predecessor.live) pass.dependents++;
+			}
+		}
+		
+		List<Pass> ready = new ArrayList<>();
+		for(Pass pass : live) {
+			if (pass.dependents == 0) ready.add(pass);
+		}
+		
+		Pass[] result = new Pass[live.size()];
+		Target lastWritten = null;
+		for(int i=0; i<result.length; i++) {
+			if (ready.isEmpty()) throw new IllegalStateException("Render graph has a cycle.");
+			int best = 0;
+			for(int j=1; j<ready.size(); j++) {
+				if (better(ready.get(j), ready.get(best), lastWritten)) best = j;
+			}
+			Pass next = ready.remove(best);
+			result[i] = next;
+			if (next.write != null) lastWritten = next.write;
+			
+			for(Pass pass : live) {
+				if (pass.dependents > 0 && pass.predecessors().contains(next)) {
+					pass.dependents--;
+					if (pass.dependents == 0) ready.add(pass);
+				}
+			}
+		}
+		return result;
+	}
+	
+	private static boolean better(Pass candidate, Pass current, Target lastWritten) {
+		boolean candidateConsumes = lastWritten != null && candidate.reads.contains(lastWritten);
+		boolean currentConsumes = lastWritten != null && current.reads.contains(lastWritten);
+		if (candidateConsumes != currentConsumes) return candidateConsumes;
+		return candidate.index < current.index;
+	}
+	
+	/**
+	 * Gives each transient target used by the schedule a Framebuffer, reusing one across targets whose lifetimes
+	 * don't overlap. Pooled Framebuffers that end up unused are destroyed.
+	 */
+	private void assignTargets() {
+		Map<Target, int[]> lifetimes = new IdentityHashMap<>();
+		for(int i=0; i<schedule.length; i++) {
+			Pass pass = schedule[i];
+			for(Target read : pass.reads) extend(lifetimes, read, i);
+			if (pass.write != null) extend(lifetimes, pass.write, i);
+		}
+		for(Target target : targets) {
+			// Outputs have to survive until the caller reads them, after the whole schedule
+			if (target.output && lifetimes.containsKey(target)) lifetimes.get(target)[1] = Integer.MAX_VALUE;
+		}
+		
+		Map<PoolKey, ArrayDeque<Framebuffer>> available = new HashMap<>();
+		for(Map.Entry<PoolKey, List<Framebuffer>> entry : pool.entrySet()) {
+			available.put(entry.getKey(), new ArrayDeque<>(entry.getValue()));
+		}
+		List<Framebuffer> used = new ArrayList<>();
+		assigned.clear();
+		
+		for(int i=0; i<schedule.length; i++) {
+			for(Map.Entry<Target, int[]> entry : lifetimes.entrySet()) {
+				Target target = entry.getKey();
+				int[] lifetime = entry.getValue();
+				if (lifetime[1] == i - 1 && assigned.containsKey(target)) {
+					available.computeIfAbsent(target.key(), it -> new ArrayDeque<>()).push(assigned.get(target));
+				}
+			}
+			for(Map.Entry<Target, int[]> entry : lifetimes.entrySet()) {
+				Target target = entry.getKey();
+				if (entry.getValue()[0] != i || target.imported != null || assigned.containsKey(target)) continue;
+				
+				ArrayDeque<Framebuffer> free = available.get(target.key());
+				Framebuffer framebuffer = (free == null) ? null : free.poll();
+				if (framebuffer == null) {
+					framebuffer = new Framebuffer(target.format, target.width, target.height);
+					pool.computeIfAbsent(target.key(), it -> new ArrayList<>()).add(framebuffer);
+				}
+				assigned.put(target, framebuffer);
+				if (!used.contains(framebuffer)) used.add(framebuffer);
+			}
+		}
+		
+		for(List<Framebuffer> list : pool.values()) {
+			list.removeIf(framebuffer -> {
+				if (used.contains(framebuffer)) return false;
+				framebuffer.destroy();
+				return true;
+			});
+		}
+		pool.values().removeIf(List::isEmpty);
+	}
+	
+	private void extend(Map<Target, int[]> lifetimes, Target target, int index) {
+		if (target == screen) return;
+		int[] lifetime = lifetimes.get(target);
+		if (lifetime == null) {
+			lifetimes.put(target, new int[] { index, index });
+		} else {
+			lifetime[1] = Math.max(lifetime[1], index);
+		}
+	}
+	
+	/**
+	 * Gets the passes that will run, in order. Compiles the graph if needed.
+	 */
+	public List<Pass> getSchedule() {
+		if (!compiled) compile();
+		return Collections.unmodifiableList(Arrays.asList(schedule));
+	}
+	
+	/** Gets how many declared passes were culled because nothing uses their results. */
+	public int getCulledPassCount() {
+		if (!compiled) compile();
+		return passes.size() - schedule.length;
+	}
+	
+	/** Gets how many Framebuffers back the transient targets, after aliasing. */
+	public int getFramebufferCount() {
+		int total = 0;
+		for(List<Framebuffer> list : pool.values()) total += list.size();
+		return total;
+	}
+	
+	/** Estimates the GPU memory held by the graph's Framebuffers, after aliasing. */
+	public long getMemorySize() {
+		long total = 0;
+		for(List<Framebuffer> list : pool.values()) {
+			for(Framebuffer framebuffer : list) total += framebuffer.getMemorySize();
+		}
+		return total;
+	}
+	
+	@Override
+	public void destroy() {
+		for(List<Framebuffer> list : pool.values()) {
+			for(Framebuffer framebuffer : list) framebuffer.destroy();
+		}
+		pool.clear();
+		reset();
+	}
+	
+	/**
+	 * A named image which passes read and write. Only the graph creates these.
+	 */
+	public static class Target {
+		private final String name;
+		private final TextureFormat format;
+		private final int width;
+		private final int height;
+		private final Framebuffer imported;
+		private boolean output = false;
+		
+		private Target(String name, TextureFormat format, int width, int height, Framebuffer imported) {
+			this.name = name;
+			this.format = format;
+			this.width = width;
+			this.height = height;
+			this.imported = imported;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public int getWidth() {
+			return width;
+		}
+		
+		public int getHeight() {
+			return height;
+		}
+		
+		/** Returns true if this target is backed by a caller's Framebuffer rather than by the graph. */
+		public boolean isImported() {
+			return imported != null;
+		}
+		
+		private PoolKey key() {
+			return new PoolKey(format, width, height);
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	
+	/**
+	 * One step of the graph. A pass writes at most one target, which is bound, with the viewport covering it, before
+	 * its body runs; it may read any number of targets through the {@link Context}.
+	 */
+	public class Pass {
+		private final String name;
+		private final int index;
+		private final List<Target> reads = new ArrayList<>();
+		private Target write = null;
+		private boolean clear = false;
+		private Consumer<Context> body = null;
+		
+		/** Passes whose output this one uses */
+		private final List<Pass> needs = new ArrayList<>();
+		/** Passes which must run first, but whose output this one doesn't use */
+		private final List<Pass> after = new ArrayList<>();
+		private int dependents = 0;
+		private boolean live = false;
+		
+		private Pass(String name, int index) {
+			this.name = name;
+			this.index = index;
+		}
+		
+		public Pass read(Target... targets) {
+			for(Target target : targets) {
+				if (!reads.contains(target)) reads.add(target);
+			}
+			compiled = false;
+			return this;
+		}
+		
+		public Pass write(Target target) {
+			if (write != null && write != target) throw new IllegalStateException("Pass '"+name+"' already writes '"+write.name+"'.");
+			this.write = target;
+			compiled = false;
+			return this;
+		}
+		
+		/**
+		 * Clears the written target to transparent black before the body runs. A pass which clears, and doesn't also
+		 * read its target, doesn't depend on whatever wrote that target before.
+		 */
+		public Pass clear() {
+			this.clear = true;
+			compiled = false;
+			return this;
+		}
+		
+		public Pass execute(Consumer<Context> body) {
+			this.body = body;
+			return this;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		/** Returns true if the last compile found that nothing uses this pass's output. */
+		public boolean isCulled() {
+			return compiled && !live;
+		}
+		
+		private List<Pass> predecessors() {
+			if (after.isEmpty()) return needs;
+			List<Pass> all = new ArrayList<>(needs);
+			all.addAll(after);
+			return all;
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	
+	/**
+	 * What a pass's body can see while it runs.
+	 */
+	public class Context {
+		private Context() {}
+		
+		/** Gets the texture holding a target this pass reads. */
+		public Texture getTexture(Target target) {
+			if (currentPass != null && !currentPass.reads.contains(target)) throw new IllegalArgumentException("Pass '"+currentPass.name+"' doesn't declare a read of '"+target.name+"'.");
+			return RenderGraph.this.getTexture(target);
+		}
+		
+		/** Gets the pass being run. */
+		public Pass getPass() {
+			return currentPass;
+		}
+		
+		/** Gets the width of the target being written, which is also the viewport's. */
+		public int getWidth() {
+			Target write = currentPass.write;
+			return (write == screen) ? window.getWidth() : write.width;
+		}
+		
+		public int getHeight() {
+			Target write = currentPass.write;
+			return (write == screen) ? window.getHeight() : write.height;
+		}
+	}
+	
+	private record PoolKey(TextureFormat format, int width, int height) {}
+}
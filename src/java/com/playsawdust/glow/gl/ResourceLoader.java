@@ -0,0 +1,227 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.opengl.GL;
+
+import com.playsawdust.glow.gl.mesh.MeshCache;
+import com.playsawdust.glow.gl.mesh.MeshData;
+import com.playsawdust.glow.gl.mesh.StaticMesh;
+import com.playsawdust.glow.image.ImageData;
+import com.playsawdust.glow.io.resource.Identifier;
+import com.playsawdust.glow.io.resource.Resource;
+import com.playsawdust.glow.io.resource.ResourceManager;
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Creates GL resources on a background thread, so that loading a level or a batch of assets doesn't stall the frame.
+ *
+ * <p>The loader owns a hidden window whose context shares objects with a Window's context. Tasks run on the loader's
+ * own thread with that context current, and each one is followed by a fence. The resulting resource is only handed
+ * back once the fence has signaled, which happens on the Window's context thread during
+ * {@link Window#presentFrame()}. Because of that, futures returned from this class always complete on the thread that
+ * renders, and their callbacks can use the new resource right away.
+ *
+ * <pre>
+ * ResourceLoader loader = new ResourceLoader(window);
+ * loader.loadTexture(manager, Identifier.of("test:test.png")).thenAccept(texture -&gt; testTexture = texture);
+ * </pre>
+ *
+ * <p>The constructor and {@link #destroy()} must be called on the main thread, and the loader should be created before
+ * the Window's render thread is started, if it uses one.
+ */
+public final class ResourceLoader implements Destroyable {
+	private final Window window;
+	private final long contextHandle;
+	private final Thread thread;
+	private final LinkedBlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+	private final ConcurrentLinkedQueue<Pending<?>> fenced = new ConcurrentLinkedQueue<>();
+	private final List<Pending<?>> waiting = new ArrayList<>();
+	private volatile boolean running = true;
+	
+	public ResourceLoader(Window window) {
+		this.window = window;
+		
+		GLFW.glfwDefaultWindowHints();
+		GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
+		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, window.getContextMajorVersion());
+		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, window.getContextMinorVersion());
+		GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_PROFILE, GLFW.GLFW_OPENGL_CORE_PROFILE);
+		contextHandle = GLFW.glfwCreateWindow(1, 1, "", NULL, window.getHandle());
+		if (contextHandle == NULL) {
+			throw new RuntimeException("Couldn't create a shared context for the resource loader.");
+		}
+		
+		thread = new Thread(this::run, "Glow Resource Loader");
+		thread.setDaemon(true);
+		thread.start();
+		window.addResourceLoader(this);
+	}
+	
+	/**
+	 * Runs a task which creates a GL resource on the loader thread.
+	 * @return a future which completes on the Window's context thread once the resource is ready for use there
+	 */
+	public <T extends GLResource> CompletableFuture<T> submit(Supplier<T> task) {
+		if (!running) throw new IllegalStateException("This ResourceLoader has been destroyed.");
+		Pending<T> pending = new Pending<>();
+		tasks.add(new Task(pending, () -> {
+			// Nobody wants the result any more, so don't spend time or GPU memory on it
+			if (pending.future.isCancelled()) return;
+			try {
+				pending.result = task.get();
+				pending.sync = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+				// Without a flush the fence might never reach the GPU, since nothing else is submitted on this context
+				glFlush();
+			} catch (Throwable t) {
+				pending.error = t;
+			}
+			fenced.add(pending);
+		}));
+		return pending.future;
+	}
+	
+	/**
+	 * Decodes an image and uploads it to a new Texture, both on the loader thread.
+	 */
+	public CompletableFuture<Texture> loadTexture(Supplier<ImageData> source) {
+		return submit(() -> {
+			ImageData image = source.get();
+			Texture texture = new Texture();
+			texture.setImage(image);
+			return texture;
+		});
+	}
+	
+	/**
+	 * Finds, decodes, and uploads an image resource on the loader thread. The future completes exceptionally if the
+	 * resource can't be found or isn't an image.
+	 */
+	public CompletableFuture<Texture> loadTexture(ResourceManager manager, Identifier id) {
+		return loadTexture(() -> manager
+				.findFirst(id, ResourceManager.PriorityOrder.DESCENDING)
+				.flatMap(Resource::asImage)
+				.orElseThrow(() -> new IllegalArgumentException("Couldn't find an image resource for "+id)));
+	}
+	
+	/**
+	 * Loads a texture through a TextureCache on the loader thread, so that both hashing the source and any decoding on
+	 * a miss stay off the frame.
+	 * @see TextureCache#load(byte[], Supplier)
+	 */
+	public CompletableFuture<Texture> loadTexture(TextureCache cache, byte[] source, Supplier<ImageData> decoder) {
+		return submit(() -> cache.load(source, decoder));
+	}
+	
+	/**
+	 * Loads a mesh through a MeshCache on the loader thread, so that hashing the source, and parsing and optimizing it
+	 * on a miss, stay off the frame.
+	 * @see MeshCache#load(byte[], Supplier)
+	 */
+	public CompletableFuture<StaticMesh> loadMesh(MeshCache cache, byte[] source, Supplier<MeshData> decoder) {
+		return submit(() -> cache.load(source, decoder));
+	}
+	
+	/**
+	 * Completes the futures of any resources whose fences have signaled. Called by the Window on its context thread
+	 * once per frame; never blocks.
+	 */
+	void processCompleted() {
+		Pending<?> pending;
+		while((pending = fenced.poll()) != null) {
+			waiting.add(pending);
+		}
+		
+		Iterator<Pending<?>> iterator = waiting.iterator();
+		while(iterator.hasNext()) {
+			Pending<?> cur = iterator.next();
+			if (cur.error != null) {
+				iterator.remove();
+				cur.future.completeExceptionally(cur.error);
+				continue;
+			}
+			
+			int status = glClientWaitSync(cur.sync, 0, 0);
+			if (status == GL_ALREADY_SIGNALED || status == GL_CONDITION_SATISFIED) {
+				iterator.remove();
+				glDeleteSync(cur.sync);
+				cur.complete();
+			} else if (status == GL_WAIT_FAILED) {
+				iterator.remove();
+				glDeleteSync(cur.sync);
+				cur.future.completeExceptionally(new IllegalStateException("Failed to wait on a resource loader fence."));
+			}
+		}
+	}
+	
+	private void run() {
+		GLFW.glfwMakeContextCurrent(contextHandle);
+		GL.createCapabilities();
+		try {
+			while(running) {
+				try {
+					tasks.take().body().run();
+				} catch (InterruptedException e) {
+					// Woken up to check whether we're still running
+				}
+			}
+		} finally {
+			GL.setCapabilities(null);
+			GLFW.glfwMakeContextCurrent(NULL);
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		// Tasks which never got to run will never complete on their own
+		Task task;
+		while((task = tasks.poll()) != null) {
+			task.pending().future.cancel(false);
+		}
+		
+		window.removeResourceLoader(this);
+		window.runOnContextThread(() -> {
+			processCompleted();
+			for(Pending<?> cur : waiting) {
+				if (cur.sync != 0) glDeleteSync(cur.sync);
+				cur.future.cancel(false);
+				// Deleting is safe even while the GPU is still working on it; the driver defers the actual free
+				if (cur.result != null) cur.result.destroy();
+			}
+			waiting.clear();
+		});
+		GLFW.glfwDestroyWindow(contextHandle);
+	}
+	
+	private static class Pending<T extends GLResource> {
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private T result;
+		private Throwable error;
+		private long sync;
+		
+		private void complete() {
+			// If the caller cancelled while the resource was loading, nothing else will ever destroy it
+			if (!future.complete(result)) result.destroy();
+		}
+	}
+	
+	private record Task(Pending<?> pending, Runnable body) {}
+}
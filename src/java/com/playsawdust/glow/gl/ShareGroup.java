@@ -0,0 +1,90 @@
+package com.playsawdust.glow.gl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * The Windows whose contexts share one namespace of GL objects. Textures, buffers, shader programs, and sync objects
+ * created in any of them can be used in all of them; container objects, like vertex arrays and framebuffers, belong
+ * to the context that created them and can't.
+ *
+ * <p>A Window created with {@link Window#Window(String, Window)} joins the other Window's group. The group also holds
+ * named resources which every member uses, so that shared assets like the painter's shaders are created once rather
+ * than once per Window. Named resources are destroyed when the last Window in the group is.
+ *
+ * <pre>
+ * ShaderProgram outline = window.getShareGroup().getResource("mygame:outline", ShaderProgram.class, () -&gt; new ShaderProgram(vert, frag));
+ * </pre>
+ */
+public class ShareGroup {
+	private final List<Window> windows = new CopyOnWriteArrayList<>();
+	private final Map<String, Destroyable> resources = new LinkedHashMap<>();
+	
+	ShareGroup() {}
+	
+	/**
+	 * Gets the resource stored under a name, creating it with {@code factory} the first time it's asked for. The
+	 * factory runs with the calling thread's current context, which must be one of this group's.
+	 * @throws ClassCastException if the resource stored under the name isn't of the given type
+	 */
+	public synchronized <T extends Destroyable> T getResource(String name, Class<T> type, Supplier<? extends T> factory) {
+		Destroyable existing = resources.get(name);
+		if (existing != null) return type.cast(existing);
+		
+		T created = factory.get();
+		resources.put(name, created);
+		return created;
+	}
+	
+	/**
+	 * Removes a named resource without destroying it, handing ownership back to the caller.
+	 * @return the resource, or null if there was none under that name
+	 */
+	public synchronized Destroyable removeResource(String name) {
+		return resources.remove(name);
+	}
+	
+	/**
+	 * Gets the Windows currently in this group, in the order they were created.
+	 */
+	public List<Window> getWindows() {
+		return Collections.unmodifiableList(windows);
+	}
+	
+	/**
+	 * Returns true if the given Window is in this group, and can therefore use objects created by any other member.
+	 */
+	public boolean contains(Window window) {
+		return windows.contains(window);
+	}
+	
+	void add(Window window) {
+		windows.add(window);
+	}
+	
+	/**
+	 * Takes a Window out of the group. If it was the last one, every named resource is destroyed, newest first, which
+	 * needs the Window's context to still be current.
+	 */
+	void remove(Window window) {
+		windows.remove(window);
+		if (!windows.isEmpty()) return;
+		
+		List<Destroyable> owned;
+		synchronized(this) {
+			owned = new ArrayList<>(resources.values());
+			resources.clear();
+		}
+		Collections.reverse(owned);
+		for(Destroyable resource : owned) {
+			resource.destroy();
+		}
+	}
+}
@@ -2,21 +2,92 @@ package com.playsawdust.glow.gl;
 
 import static org.lwjgl.opengl.GL41.*;
 
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GLCapabilities;
+
+import com.playsawdust.glow.gl.color.ColorConversion;
 import com.playsawdust.glow.image.ImageData;
 import com.playsawdust.glow.image.SrgbImageData;
 import com.playsawdust.glow.image.color.RGBColor;
 
 public class Texture implements ImageData, GLResource {
 	private final int handle;
+	private final TextureFormat format;
+	private final boolean immutable;
+	/** True if the storage came from glTexStorage2D, rather than being allocated level by level */
+	private final boolean textureStorage;
+	private int levels;
 	private int width = 0;
 	private int height = 0;
+	private MipmapPolicy mipmapPolicy = MipmapPolicy.AUTOMATIC;
+	/** null until setFilter is called, meaning GL's default of NEAREST_MIPMAP_LINEAR */
+	private TextureFilter minFilter = null;
+	private boolean mipmapsValid = false;
 	
 	public Texture() {
 		handle = glGenTextures();
+		format = TextureFormat.RGBA8;
+		immutable = false;
+		textureStorage = false;
+		levels = 1;
+		glActiveTexture(GL_TEXTURE0);
+		glBindTexture(GL_TEXTURE_2D, handle);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+	}
+	
+	/**
+	 * Creates a Texture with fixed size, format, and mip count. Where glTexStorage2D is available (GL 4.2 or
+	 * ARB_texture_storage), the storage is immutable, which lets the driver skip completeness checks and lay out the
+	 * whole mip chain up front. Elsewhere, every level is allocated once with glTexImage2D to the same effect, and the
+	 * Texture refuses to change size or mip count just the same.
+	 * @param format The internal format to store texels in
+	 * @param width  The width of the base level
+	 * @param height The height of the base level
+	 * @param levels The number of mip levels to allocate, or 0 for a full mip chain
+	 */
+	public Texture(TextureFormat format, int width, int height, int levels) {
+		if (!format.isSupported()) throw new UnsupportedOperationException("Texture format "+format+" is not supported by this context.");
+		
+		this.handle = glGenTextures();
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.levels = (levels <= 0) ? fullMipChain(width, height) : Math.min(levels, fullMipChain(width, height));
+		
 		glActiveTexture(GL_TEXTURE0);
 		glBindTexture(GL_TEXTURE_2D, handle);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+		
+		GLCapabilities caps = GL.getCapabilities();
+		if (caps.OpenGL42 || caps.GL_ARB_texture_storage) {
+			GL42.glTexStorage2D(GL_TEXTURE_2D, this.levels, format.internalFormat(), width, height);
+			textureStorage = true;
+		} else {
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, this.levels - 1);
+			if (!format.isCompressed()) {
+				for(int i=0; i<this.levels; i++) {
+					glTexImage2D(GL_TEXTURE_2D, i, format.internalFormat(), levelWidth(i), levelHeight(i), 0, format.uploadFormat(), format.uploadType(), (ByteBuffer) null);
+				}
+			}
+			// Compressed levels get specified as their data arrives, in setCompressedData
+			textureStorage = false;
+		}
+		immutable = true;
+		
+		if (this.levels == 1) mipmapPolicy = MipmapPolicy.NEVER;
+	}
+	
+	/**
+	 * Gets the number of mip levels in a full mip chain for a texture of the given size.
+	 */
+	public static int fullMipChain(int width, int height) {
+		int largest = Math.max(1, Math.max(width, height));
+		return 32 - Integer.numberOfLeadingZeros(largest);
 	}
 	
 	public void bind() {
@@ -34,38 +105,231 @@ public class Texture implements ImageData, GLResource {
 		bind();
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter.value());
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, magFilter.value());
+		this.minFilter = minFilter;
+		
+		// Switching to a mipmapped filter after mip generation was skipped
+		if (width > 0 && !mipmapsValid && shouldGenerateMipmaps()) updateMipmaps();
+	}
+	
+	/**
+	 * Sets when mip levels are regenerated after the base level changes. See {@link MipmapPolicy}.
+	 */
+	public void setMipmapPolicy(MipmapPolicy policy) {
+		this.mipmapPolicy = policy;
+	}
+	
+	public MipmapPolicy getMipmapPolicy() {
+		return mipmapPolicy;
+	}
+	
+	public TextureFormat getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Returns true if this Texture was created with a fixed size, format, and mip count, which can never change.
+	 */
+	public boolean isImmutable() {
+		return immutable;
+	}
+	
+	/**
+	 * Gets the number of mip levels this Texture has storage for, or, for a resizable Texture, the number it had after
+	 * its last upload.
+	 */
+	public int getLevels() {
+		return levels;
+	}
+	
+	/**
+	 * Estimates the GPU memory used by this Texture, including its mip chain.
+	 */
+	public long getMemorySize() {
+		long total = 0;
+		for(int i=0; i<levels; i++) {
+			total += format.levelSize(levelWidth(i), levelHeight(i));
+		}
+		return total;
+	}
+	
+	/**
+	 * Regenerates every mip level from the base level, regardless of policy. Compressed textures can't be mipmapped by
+	 * the GPU, so their levels must be uploaded by hand. A Texture created with a fixed mip count keeps that count;
+	 * resizable ones grow to a full mip chain.
+	 */
+	public void generateMipmaps() {
+		if (format.isCompressed()) throw new IllegalStateException("Compressed textures can't generate their own mipmaps.");
+		bind();
+		if (!immutable) {
+			levels = fullMipChain(width, height);
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levels - 1);
+		}
+		glGenerateMipmap(GL_TEXTURE_2D);
+		mipmapsValid = true;
 	}
 	
 	/**
 	 * Sets the image data for this texture. If there is existing data, but the image sizes match, the texture storage
-	 * will be reused.
+	 * will be reused. Only formats which accept 8-bit BGRA data, or {@link TextureFormat#storesLinearColor() store linear
+	 * color}, can be set this way.
 	 * @param image the new image to set.
 	 */
 	public void setImage(ImageData image) {
+		setImage(image, false);
+	}
+	
+	/**
+	 * Sets the image data for this texture, multiplying each pixel's color by its alpha on the way, for drawing with
+	 * {@link BlendMode#PREMULTIPLIED}. Premultiplied textures filter and mipmap without dark fringes around transparent
+	 * edges. The image itself is left untouched.
+	 */
+	public void setPremultipliedImage(ImageData image) {
+		setImage(image, true);
+	}
+	
+	private void setImage(ImageData image, boolean premultiply) {
+		if (!format.acceptsImageData() && !format.storesLinearColor()) throw new IllegalStateException("Can't upload ImageData to a "+format+" texture. Use setData or setCompressedData instead.");
+		
 		int oldWidth = width;
 		int oldHeight = height;
+		if (immutable && (image.getWidth() != width || image.getHeight() != height)) {
+			throw new IllegalArgumentException("Image is "+image.getWidth()+"x"+image.getHeight()+", but this immutable texture is "+width+"x"+height+".");
+		}
 		bind();
 		width = image.getWidth();
 		height = image.getHeight();
-		int[] data;
 		
-		if (image instanceof SrgbImageData s) {
-			data = s.getData();
-		} else {
-			data = new int[width * height];
-			for(int y=0; y<height; y++) {
-				for(int x=0; x<width; x++) {
-					data[width * y + x] = image.getSrgbPixel(x, y);
-				}
+		if (format.storesLinearColor()) {
+			// Premultiplied in linear light, so that the float texture filters the way it blends
+			float[] linear = new float[width * height * 4];
+			ColorConversion.toLinear(srgbPixels(image, false), 0, linear, 0, width * height, premultiply);
+			if (width == oldWidth && height == oldHeight) {
+				glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, width, height, GL_RGBA, GL_FLOAT, linear);
+			} else {
+				glTexImage2D(GL_TEXTURE_2D, 0, format.internalFormat(), width, height, 0, GL_RGBA, GL_FLOAT, linear);
 			}
+			baseLevelChanged();
+			return;
 		}
 		
+		int[] data = srgbPixels(image, premultiply);
+		if (premultiply) ColorConversion.premultiply(data, 0, width * height);
+		
 		if (width == oldWidth && height == oldHeight) {
 			glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, width, height, GL_BGRA, GL_UNSIGNED_BYTE, data);
-			glGenerateMipmap(GL_TEXTURE_2D);
 		} else {
-			glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_BGRA, GL_UNSIGNED_BYTE, data);
-			glGenerateMipmap(GL_TEXTURE_2D);
+			glTexImage2D(GL_TEXTURE_2D, 0, format.internalFormat(), width, height, 0, GL_BGRA, GL_UNSIGNED_BYTE, data);
+		}
+		baseLevelChanged();
+	}
+	
+	/**
+	 * Gets an image's pixels as packed sRGB, row by row. An SrgbImageData's own array is returned unless {@code copy}
+	 * is set; any other ImageData can only be read a pixel at a time.
+	 */
+	static int[] srgbPixels(ImageData image, boolean copy) {
+		if (image instanceof SrgbImageData s) return copy ? s.getData().clone() : s.getData();
+		
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] data = new int[width * height];
+		for(int y=0; y<height; y++) {
+			for(int x=0; x<width; x++) {
+				data[width * y + x] = image.getSrgbPixel(x, y);
+			}
+		}
+		return data;
+	}
+	
+	/**
+	 * Uploads one whole mip level of uncompressed data, laid out as described by this Texture's format.
+	 * @param level The mip level to upload. Level 0 is the full-size image.
+	 * @param data  Exactly {@link TextureFormat#levelSize(int, int)} bytes of texel data
+	 */
+	public void setData(int level, ByteBuffer data) {
+		if (format.isCompressed()) throw new IllegalStateException("Use setCompressedData for compressed formats.");
+		checkLevel(level, data);
+		bind();
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+		glTexSubImage2D(GL_TEXTURE_2D, level, 0, 0, levelWidth(level), levelHeight(level), format.uploadFormat(), format.uploadType(), data);
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+		if (level == 0) baseLevelChanged();
+	}
+	
+	/**
+	 * Uploads a rectangle of uncompressed data into one mip level, leaving the rest of the level untouched.
+	 * @param data {@code width * height} texels, tightly packed, laid out as described by this Texture's format
+	 */
+	public void setSubData(int level, int x, int y, int width, int height, ByteBuffer data) {
+		if (format.isCompressed()) throw new IllegalStateException("Can't upload partial levels of compressed textures.");
+		bind();
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+		glTexSubImage2D(GL_TEXTURE_2D, level, x, y, width, height, format.uploadFormat(), format.uploadType(), data);
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+	}
+	
+	/**
+	 * Remaps the channels this Texture returns when sampled. Each argument is one of GL_RED, GL_GREEN, GL_BLUE,
+	 * GL_ALPHA, GL_ZERO, or GL_ONE. For example, {@code setSwizzle(GL_ONE, GL_ONE, GL_ONE, GL_RED)} lets an R8 coverage
+	 * mask be drawn anywhere an RGBA image with white color and varying alpha could be.
+	 */
+	public void setSwizzle(int red, int green, int blue, int alpha) {
+		bind();
+		glTexParameteriv(GL_TEXTURE_2D, GL_TEXTURE_SWIZZLE_RGBA, new int[] { red, green, blue, alpha });
+	}
+	
+	/**
+	 * Uploads one whole mip level of pre-compressed blocks, exactly as produced by an offline encoder.
+	 * @param level The mip level to upload. Level 0 is the full-size image.
+	 * @param data  Exactly {@link TextureFormat#levelSize(int, int)} bytes of compressed blocks
+	 */
+	public void setCompressedData(int level, ByteBuffer data) {
+		if (!format.isCompressed()) throw new IllegalStateException("Use setData for uncompressed formats.");
+		checkLevel(level, data);
+		bind();
+		if (textureStorage) {
+			glCompressedTexSubImage2D(GL_TEXTURE_2D, level, 0, 0, levelWidth(level), levelHeight(level), format.internalFormat(), data);
+		} else {
+			glCompressedTexImage2D(GL_TEXTURE_2D, level, format.internalFormat(), levelWidth(level), levelHeight(level), 0, data);
+		}
+	}
+	
+	private void checkLevel(int level, ByteBuffer data) {
+		if (width == 0 || height == 0) throw new IllegalStateException("Texture storage must be allocated before uploading levels.");
+		if (level < 0 || level >= levels) throw new IllegalArgumentException("Level "+level+" is out of range - this texture has "+levels+" levels.");
+		int expected = format.levelSize(levelWidth(level), levelHeight(level));
+		if (data.remaining() != expected) throw new IllegalArgumentException("Level "+level+" needs "+expected+" bytes of data, but got "+data.remaining()+".");
+	}
+	
+	private int levelWidth(int level) {
+		return Math.max(1, width >> level);
+	}
+	
+	private int levelHeight(int level) {
+		return Math.max(1, height >> level);
+	}
+	
+	private boolean shouldGenerateMipmaps() {
+		if (format.isCompressed()) return false;
+		return switch(mipmapPolicy) {
+			case ALWAYS -> true;
+			case NEVER -> false;
+			case AUTOMATIC -> minFilter == null || minFilter.usesMipmaps();
+		};
+	}
+	
+	private void baseLevelChanged() {
+		mipmapsValid = false;
+		updateMipmaps();
+	}
+	
+	private void updateMipmaps() {
+		if (shouldGenerateMipmaps()) {
+			generateMipmaps();
+		} else if (!immutable && !mipmapsValid) {
+			// Without this, a mipmapped min filter would see an incomplete texture and sample black
+			levels = 1;
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, 0);
 		}
 	}
 	
@@ -74,11 +338,30 @@ public class Texture implements ImageData, GLResource {
 	 * @return The image data for this Texture
 	 */
 	public SrgbImageData getImage() {
+		return readImage(false);
+	}
+	
+	/**
+	 * Gets a copy of a texture holding premultiplied color, like a Framebuffer painted with transparency, with each
+	 * pixel divided back out by its alpha, so that it can be saved or drawn as an ordinary image.
+	 */
+	public SrgbImageData getUnpremultipliedImage() {
+		return readImage(true);
+	}
+	
+	private SrgbImageData readImage(boolean unpremultiply) {
 		if (width == 0 && height == 0) return new SrgbImageData(0, 0);
 		
 		bind();
 		int[] imageData = new int[width * height];
-		glGetTexImage(GL_TEXTURE_2D, 0, GL_BGRA, GL_UNSIGNED_BYTE, imageData);
+		if (format.storesLinearColor()) {
+			float[] linear = new float[width * height * 4];
+			glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA, GL_FLOAT, linear);
+			ColorConversion.toSrgb(linear, 0, imageData, 0, width * height, unpremultiply);
+		} else {
+			glGetTexImage(GL_TEXTURE_2D, 0, GL_BGRA, GL_UNSIGNED_BYTE, imageData);
+			if (unpremultiply) ColorConversion.unpremultiply(imageData, 0, width * height);
+		}
 		return new SrgbImageData(width, height, imageData);
 	}
 	
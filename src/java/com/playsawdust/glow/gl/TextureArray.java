@@ -0,0 +1,300 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GLCapabilities;
+
+import com.playsawdust.glow.gl.color.ColorConversion;
+import com.playsawdust.glow.image.ImageData;
+
+/**
+ * A GL_TEXTURE_2D_ARRAY: a stack of same-sized images, or layers, in one texture object. Anything drawn from any layer
+ * of one TextureArray can share a draw call, so tilesets and animation frames stored this way never force a texture
+ * switch, and unlike an atlas, layers can't bleed into their neighbours when filtered or mipmapped.
+ *
+ * <p>The size, format, layer count, and mip count are fixed at creation. Layers are uploaded one at a time, and each
+ * layer's mip chain is maintained separately: when a layer's base image changes, only that layer's levels are
+ * regenerated, so changing one frame of a large array doesn't cost a mip rebuild of every other frame.
+ */
+public class TextureArray implements GLResource {
+	private final int handle;
+	private final TextureFormat format;
+	private final int width;
+	private final int height;
+	private final int layers;
+	private final int levels;
+	private final boolean immutable;
+	private MipmapPolicy mipmapPolicy = MipmapPolicy.AUTOMATIC;
+	/** null until setFilter is called, meaning GL's default of NEAREST_MIPMAP_LINEAR */
+	private TextureFilter minFilter = null;
+	/** Layers whose base level has changed since their mip levels were last rebuilt */
+	private final boolean[] staleMipmaps;
+	
+	/**
+	 * Creates a TextureArray. Storage is immutable where glTexStorage3D is available, like {@link Texture}.
+	 * @param format The internal format to store texels in
+	 * @param width  The width of every layer's base level
+	 * @param height The height of every layer's base level
+	 * @param layers The number of layers. Must be no more than GL_MAX_ARRAY_TEXTURE_LAYERS, which is at least 256.
+	 * @param levels The number of mip levels to allocate, or 0 for a full mip chain
+	 */
+	public TextureArray(TextureFormat format, int width, int height, int layers, int levels) {
+		if (!format.isSupported()) throw new UnsupportedOperationException("Texture format "+format+" is not supported by this context.");
+		int maxLayers = glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS);
+		if (layers < 1 || layers > maxLayers) throw new IllegalArgumentException("Layer count must be between 1 and "+maxLayers+", but was "+layers+".");
+		
+		this.handle = glGenTextures();
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.layers = layers;
+		this.levels = (levels <= 0) ? Texture.fullMipChain(width, height) : Math.min(levels, Texture.fullMipChain(width, height));
+		this.staleMipmaps = new boolean[layers];
+		
+		glActiveTexture(GL_TEXTURE0);
+		glBindTexture(GL_TEXTURE_2D_ARRAY, handle);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+		
+		GLCapabilities caps = GL.getCapabilities();
+		if (caps.OpenGL42 || caps.GL_ARB_texture_storage) {
+			GL42.glTexStorage3D(GL_TEXTURE_2D_ARRAY, this.levels, format.internalFormat(), width, height, layers);
+			immutable = true;
+		} else {
+			glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAX_LEVEL, this.levels - 1);
+			for(int i=0; i<this.levels; i++) {
+				if (format.isCompressed()) {
+					glCompressedTexImage3D(GL_TEXTURE_2D_ARRAY, i, format.internalFormat(), levelWidth(i), levelHeight(i), layers, 0, format.levelSize(levelWidth(i), levelHeight(i)) * layers, 0L);
+				} else {
+					glTexImage3D(GL_TEXTURE_2D_ARRAY, i, format.internalFormat(), levelWidth(i), levelHeight(i), layers, 0, format.uploadFormat(), format.uploadType(), (ByteBuffer) null);
+				}
+			}
+			immutable = false;
+		}
+		
+		if (this.levels == 1) mipmapPolicy = MipmapPolicy.NEVER;
+	}
+	
+	public void bind() {
+		glActiveTexture(GL_TEXTURE0);
+		glBindTexture(GL_TEXTURE_2D_ARRAY, handle);
+	}
+	
+	public void bindToUnit(int index) {
+		glActiveTexture(GL_TEXTURE0 + index);
+		glBindTexture(GL_TEXTURE_2D_ARRAY, handle);
+	}
+	
+	public void setFilter(TextureFilter minFilter, TextureFilter magFilter) {
+		if (magFilter != TextureFilter.NEAREST && magFilter != TextureFilter.LINEAR) throw new IllegalArgumentException("Texture magnification filter can only be NEAREST or LINEAR.");
+		bind();
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, minFilter.value());
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, magFilter.value());
+		this.minFilter = minFilter;
+		
+		// Switching to a mipmapped filter after mip generation was skipped. The layers' base images are gone by now,
+		// so this one time the whole array is rebuilt on the GPU.
+		if (shouldGenerateMipmaps()) {
+			for(boolean stale : staleMipmaps) {
+				if (stale) {
+					generateMipmaps();
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sets when a layer's mip levels are regenerated after its base level changes. See {@link MipmapPolicy}.
+	 */
+	public void setMipmapPolicy(MipmapPolicy policy) {
+		this.mipmapPolicy = policy;
+	}
+	
+	public MipmapPolicy getMipmapPolicy() {
+		return mipmapPolicy;
+	}
+	
+	public TextureFormat getFormat() {
+		return format;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getLayers() {
+		return layers;
+	}
+	
+	public int getLevels() {
+		return levels;
+	}
+	
+	public boolean isImmutable() {
+		return immutable;
+	}
+	
+	/**
+	 * Estimates the GPU memory used by this TextureArray, including every layer's mip chain.
+	 */
+	public long getMemorySize() {
+		long total = 0;
+		for(int i=0; i<levels; i++) {
+			total += format.levelSize(levelWidth(i), levelHeight(i));
+		}
+		return total * layers;
+	}
+	
+	/**
+	 * Sets the base image of one layer, and, depending on the mipmap policy, rebuilds that layer's mip levels from it.
+	 * Only formats which accept 8-bit BGRA data can be set this way.
+	 */
+	public void setLayer(int layer, ImageData image) {
+		if (!format.acceptsImageData()) throw new IllegalStateException("Can't upload ImageData to a "+format+" texture array. Use setLayerData or setLayerCompressedData instead.");
+		checkLayer(layer);
+		if (image.getWidth() != width || image.getHeight() != height) {
+			throw new IllegalArgumentException("Image is "+image.getWidth()+"x"+image.getHeight()+", but this texture array's layers are "+width+"x"+height+".");
+		}
+		
+		int[] data = Texture.srgbPixels(image, false);
+		bind();
+		glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1, GL_BGRA, GL_UNSIGNED_BYTE, data);
+		if (shouldGenerateMipmaps()) {
+			generateLayerMipmaps(layer, data);
+		} else {
+			staleMipmaps[layer] = true;
+		}
+	}
+	
+	/**
+	 * Uploads one mip level of one layer, laid out as described by this TextureArray's format. Uploading a base level
+	 * this way doesn't rebuild the layer's mips, so this can also be used to supply a whole chain by hand.
+	 * @param data Exactly {@link TextureFormat#levelSize(int, int)} bytes of texel data
+	 */
+	public void setLayerData(int level, int layer, ByteBuffer data) {
+		if (format.isCompressed()) throw new IllegalStateException("Use setLayerCompressedData for compressed formats.");
+		checkLevel(level, layer, data);
+		bind();
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+		glTexSubImage3D(GL_TEXTURE_2D_ARRAY, level, 0, 0, layer, levelWidth(level), levelHeight(level), 1, format.uploadFormat(), format.uploadType(), data);
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+		if (level == 0) staleMipmaps[layer] = true;
+	}
+	
+	/**
+	 * Uploads one mip level of one layer as pre-compressed blocks.
+	 * @param data Exactly {@link TextureFormat#levelSize(int, int)} bytes of compressed blocks
+	 */
+	public void setLayerCompressedData(int level, int layer, ByteBuffer data) {
+		if (!format.isCompressed()) throw new IllegalStateException("Use setLayerData for uncompressed formats.");
+		checkLevel(level, layer, data);
+		bind();
+		glCompressedTexSubImage3D(GL_TEXTURE_2D_ARRAY, level, 0, 0, layer, levelWidth(level), levelHeight(level), 1, format.internalFormat(), data);
+	}
+	
+	/**
+	 * Regenerates every mip level of every layer on the GPU, regardless of policy.
+	 */
+	public void generateMipmaps() {
+		if (format.isCompressed()) throw new IllegalStateException("Compressed textures can't generate their own mipmaps.");
+		bind();
+		glGenerateMipmap(GL_TEXTURE_2D_ARRAY);
+		Arrays.fill(staleMipmaps, false);
+	}
+	
+	/**
+	 * Box-filters one layer's mip chain down from its base image, and uploads it into just that layer. glGenerateMipmap
+	 * can only rebuild every layer at once. Texels are averaged as premultiplied linear light, so distant sprites don't
+	 * darken, and transparent texels don't bleed their color into their neighbours.
+	 */
+	private void generateLayerMipmaps(int layer, int[] base) {
+		int[] source = base;
+		int sourceWidth = width;
+		int sourceHeight = height;
+		for(int level=1; level<levels; level++) {
+			int levelWidth = levelWidth(level);
+			int levelHeight = levelHeight(level);
+			int[] dest = new int[levelWidth * levelHeight];
+			for(int y=0; y<levelHeight; y++) {
+				int row0 = Math.min(y * 2, sourceHeight - 1) * sourceWidth;
+				int row1 = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+				for(int x=0; x<levelWidth; x++) {
+					int x0 = Math.min(x * 2, sourceWidth - 1);
+					int x1 = Math.min(x * 2 + 1, sourceWidth - 1);
+					dest[y * levelWidth + x] = average(source[row0 + x0], source[row0 + x1], source[row1 + x0], source[row1 + x1]);
+				}
+			}
+			glTexSubImage3D(GL_TEXTURE_2D_ARRAY, level, 0, 0, layer, levelWidth, levelHeight, 1, GL_BGRA, GL_UNSIGNED_BYTE, dest);
+			
+			source = dest;
+			sourceWidth = levelWidth;
+			sourceHeight = levelHeight;
+		}
+		staleMipmaps[layer] = false;
+	}
+	
+	private static int average(int a, int b, int c, int d) {
+		float alpha = (a >>> 24) + (b >>> 24) + (c >>> 24) + (d >>> 24);
+		if (alpha == 0) return 0;
+		
+		int result = Math.round(alpha / 4) << 24;
+		for(int shift=0; shift<24; shift+=8) {
+			float sum = weighted(a, shift) + weighted(b, shift) + weighted(c, shift) + weighted(d, shift);
+			result |= ColorConversion.linearToSrgb8(sum / alpha) << shift;
+		}
+		return result;
+	}
+	
+	/** Gets one channel of a packed sRGB pixel as linear light, multiplied by the pixel's alpha out of 255 */
+	private static float weighted(int pixel, int shift) {
+		return ColorConversion.srgbToLinear(pixel >>> shift) * (pixel >>> 24);
+	}
+	
+	private void checkLayer(int layer) {
+		if (layer < 0 || layer >= layers) throw new IllegalArgumentException("Layer "+layer+" is out of range - this texture array has "+layers+" layers.");
+	}
+	
+	private void checkLevel(int level, int layer, ByteBuffer data) {
+		checkLayer(layer);
+		if (level < 0 || level >= levels) throw new IllegalArgumentException("Level "+level+" is out of range - this texture array has "+levels+" levels.");
+		int expected = format.levelSize(levelWidth(level), levelHeight(level));
+		if (data.remaining() != expected) throw new IllegalArgumentException("Level "+level+" needs "+expected+" bytes of data, but got "+data.remaining()+".");
+	}
+	
+	private int levelWidth(int level) {
+		return Math.max(1, width >> level);
+	}
+	
+	private int levelHeight(int level) {
+		return Math.max(1, height >> level);
+	}
+	
+	private boolean shouldGenerateMipmaps() {
+		if (format.isCompressed() || levels == 1) return false;
+		return switch(mipmapPolicy) {
+			case ALWAYS -> true;
+			case NEVER -> false;
+			case AUTOMATIC -> minFilter == null || minFilter.usesMipmaps();
+		};
+	}
+	
+	@Override
+	public void destroy() {
+		glDeleteTextures(handle);
+	}
+	
+	@Override
+	public int getHandle() {
+		return handle;
+	}
+}
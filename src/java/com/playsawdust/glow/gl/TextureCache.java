@@ -0,0 +1,279 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.playsawdust.glow.image.ImageData;
+
+/**
+ * An on-disk cache of textures in the exact layout the GPU wants them, mip chain included, so that a warm start can
+ * skip image decoding, color conversion, and mipmap generation entirely.
+ *
+ * <p>Each entry is one file, named after a key - usually the SHA-256 of the source file's bytes, so that editing an
+ * asset invalidates its entry without any bookkeeping. On a hit, the file is memory-mapped and each level is uploaded
+ * straight from the mapped region; the only copy made is the one the driver makes. On a miss, the decoder runs, the
+ * result is uploaded and mipmapped as usual, and the levels are read back and written out for next time.
+ *
+ * <pre>
+ * TextureCache cache = new TextureCache(Path.of("cache/textures"), TextureFormat.SRGB8_ALPHA8, true);
+ * byte[] png = Files.readAllBytes(path);
+ * Texture texture = cache.load(png, () -&gt; decode(png));
+ * </pre>
+ *
+ * <p>Entries can also be stored by hand with {@link #put(String, Texture)}, which is how pre-compressed textures from an
+ * offline encoder get into the cache. Loading and storing must happen on a thread with a GL context current; a
+ * {@link ResourceLoader} thread works well. Files may be shared between any number of caches and processes, since
+ * entries are written to a temporary file and moved into place.
+ */
+public class TextureCache {
+	/** "GLTX", little-endian */
+	private static final int MAGIC = 0x58544C47;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final String EXTENSION = ".gltex";
+	
+	private final Path directory;
+	private final TextureFormat format;
+	private final boolean mipmaps;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile IOException lastError = null;
+	
+	/**
+	 * Creates a cache which stores its entries in the given directory, creating it if needed.
+	 * @param format  the format decoded images are uploaded in. Must accept ImageData.
+	 * @param mipmaps true to store a full mip chain for decoded images
+	 */
+	public TextureCache(Path directory, TextureFormat format, boolean mipmaps) throws IOException {
+		if (!format.acceptsImageData()) throw new IllegalArgumentException("Decoded images can't be uploaded as "+format+".");
+		Files.createDirectories(directory);
+		this.directory = directory;
+		this.format = format;
+		this.mipmaps = mipmaps;
+	}
+	
+	/**
+	 * Gets a texture for some source data, from the cache if possible, or else by decoding it and storing the result.
+	 * Failing to store an entry isn't fatal; the texture is still returned, and the error is kept for
+	 * {@link #getLastError()}.
+	 * @param source  the encoded bytes of the image, such as the contents of a PNG file. Only used as the cache key.
+	 * @param decoder decodes the source into an image, on a miss
+	 */
+	public Texture load(byte[] source, Supplier<ImageData> decoder) {
+		// Entries decoded with different settings mustn't collide, so the settings are part of the key
+		String key = hash(source) + "-" + format.name().toLowerCase(Locale.ROOT) + (mipmaps ? "-mip" : "");
+		Texture texture = get(key);
+		if (texture != null) return texture;
+		
+		ImageData image = decoder.get();
+		int levels = mipmaps ? Texture.fullMipChain(image.getWidth(), image.getHeight()) : 1;
+		texture = new Texture(format, image.getWidth(), image.getHeight(), levels);
+		if (mipmaps) texture.setMipmapPolicy(MipmapPolicy.ALWAYS);
+		texture.setImage(image);
+		// The chain is baked now, and mustn't be regenerated behind the cache's back if the filter changes
+		texture.setMipmapPolicy(MipmapPolicy.NEVER);
+		
+		try {
+			put(key, texture);
+		} catch (IOException ex) {
+			lastError = ex;
+		}
+		return texture;
+	}
+	
+	/**
+	 * Loads a cached texture by key. Entries which are truncated, from an older version, or in a format this context
+	 * can't use are deleted and treated as missing.
+	 * @return the texture, with every stored mip level uploaded, or null if there is no usable entry
+	 */
+	public Texture get(String key) {
+		Path file = fileFor(key);
+		if (!Files.isRegularFile(file)) {
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel closes, and is unmapped once it's garbage
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException ex) {
+			lastError = ex;
+			misses.incrementAndGet();
+			return null;
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		
+		Texture texture = upload(mapped);
+		if (texture == null) {
+			misses.incrementAndGet();
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException ex) {
+				lastError = ex;
+			}
+			return null;
+		}
+		hits.incrementAndGet();
+		return texture;
+	}
+	
+	private Texture upload(ByteBuffer data) {
+		if (data.capacity() < HEADER_SIZE) return null;
+		if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) return null;
+		TextureFormat format = formatOf(data.getInt(8));
+		int width = data.getInt(12);
+		int height = data.getInt(16);
+		int levels = data.getInt(20);
+		long size = data.getLong(24);
+		if (format == null || !format.isSupported()) return null;
+		if (width <= 0 || height <= 0 || levels <= 0 || levels > Texture.fullMipChain(width, height)) return null;
+		if (size != dataSize(format, width, height, levels) || data.capacity() != HEADER_SIZE + size) return null;
+		
+		Texture texture = new Texture(format, width, height, levels);
+		texture.setMipmapPolicy(MipmapPolicy.NEVER);
+		int offset = HEADER_SIZE;
+		for(int level=0; level<levels; level++) {
+			int levelSize = format.levelSize(Math.max(1, width >> level), Math.max(1, height >> level));
+			ByteBuffer slice = data.slice(offset, levelSize);
+			if (format.isCompressed()) {
+				texture.setCompressedData(level, slice);
+			} else {
+				texture.setData(level, slice);
+			}
+			offset += levelSize;
+		}
+		return texture;
+	}
+	
+	/**
+	 * Reads every mip level of a texture back from the GPU and stores it under the given key, replacing any existing
+	 * entry.
+	 */
+	public void put(String key, Texture texture) throws IOException {
+		TextureFormat format = texture.getFormat();
+		int width = texture.getWidth();
+		int height = texture.getHeight();
+		int levels = texture.getLevels();
+		if (width == 0 || height == 0) throw new IllegalArgumentException("Can't cache an empty texture.");
+		long size = dataSize(format, width, height, levels);
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(format.internalFormat()).putInt(width).putInt(height).putInt(levels).putLong(size);
+		header.flip();
+		
+		Path temp = Files.createTempFile(directory, key, ".tmp");
+		ByteBuffer level = MemoryUtil.memAlloc(format.levelSize(width, height));
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				writeFully(channel, header);
+				texture.bind();
+				glPixelStorei(GL_PACK_ALIGNMENT, 1);
+				for(int i=0; i<levels; i++) {
+					level.clear().limit(format.levelSize(Math.max(1, width >> i), Math.max(1, height >> i)));
+					if (format.isCompressed()) {
+						glGetCompressedTexImage(GL_TEXTURE_2D, i, level);
+					} else {
+						glGetTexImage(GL_TEXTURE_2D, i, format.uploadFormat(), format.uploadType(), level);
+					}
+					writeFully(channel, level);
+				}
+				glPixelStorei(GL_PACK_ALIGNMENT, 4);
+			}
+			
+			try {
+				Files.move(temp, fileFor(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, fileFor(key), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			MemoryUtil.memFree(level);
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * Deletes a cached entry, if there is one.
+	 */
+	public void remove(String key) throws IOException {
+		Files.deleteIfExists(fileFor(key));
+	}
+	
+	public Path getDirectory() {
+		return directory;
+	}
+	
+	/** Gets how many lookups have been served from the cache. */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/** Gets how many lookups found no usable entry. */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Gets the most recent error from reading or writing an entry which {@link #load(byte[], Supplier)} recovered
+	 * from, or null if there hasn't been one.
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+	
+	/**
+	 * Gets the SHA-256 of some source data as a hex string, suitable as a key.
+	 */
+	public static String hash(byte[] source) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source));
+		} catch (NoSuchAlgorithmException ex) {
+			// Every Java platform is required to provide SHA-256
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	private Path fileFor(String key) {
+		return directory.resolve(key + EXTENSION);
+	}
+	
+	private static long dataSize(TextureFormat format, int width, int height, int levels) {
+		long total = 0;
+		for(int i=0; i<levels; i++) {
+			total += format.levelSize(Math.max(1, width >> i), Math.max(1, height >> i));
+		}
+		return total;
+	}
+	
+	private static TextureFormat formatOf(int internalFormat) {
+		for(TextureFormat format : TextureFormat.values()) {
+			if (format.internalFormat() == internalFormat) return format;
+		}
+		return null;
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
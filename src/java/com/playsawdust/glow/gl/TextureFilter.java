@@ -55,6 +55,13 @@ public enum TextureFilter {
 		return this.value;
 	}
 	
+	/**
+	 * Returns true if this filter samples from mip levels other than the base level.
+	 */
+	public boolean usesMipmaps() {
+		return this != NEAREST && this != LINEAR;
+	}
+	
 	public TextureFilter of(int value) {
 		for(TextureFilter filter : values()) {
 			if (value == filter.value) return filter;
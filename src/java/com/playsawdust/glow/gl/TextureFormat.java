@@ -0,0 +1,121 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+/**
+ * The internal format a {@link Texture} is stored in on the GPU.
+ *
+ * <p>Uncompressed formats are uploaded in the pixel layout given by {@link #uploadFormat()} and
+ * {@link #uploadType()}. Compressed formats are uploaded as pre-compressed blocks of 4x4 texels, exactly as produced by
+ * an offline encoder, and are never compressed or decompressed by us.
+ */
+public enum TextureFormat {
+	/** 8 bits per channel, linear color. This is what a Texture uses unless told otherwise. */
+	RGBA8(GL_RGBA8, GL_BGRA, GL_UNSIGNED_BYTE, 4, 0),
+	/** 8 bits per channel, with sRGB-encoded color. Sampling converts to linear for free. */
+	SRGB8_ALPHA8(GL_SRGB8_ALPHA8, GL_BGRA, GL_UNSIGNED_BYTE, 4, 0),
+	/** A single 8-bit channel, for masks, glyph coverage, and heightmaps. Sampled as (r, 0, 0, 1). */
+	R8(GL_R8, GL_RED, GL_UNSIGNED_BYTE, 1, 0),
+	/** Two 8-bit channels, for things like normal map XY or luminance-alpha. Sampled as (r, g, 0, 1). */
+	RG8(GL_RG8, GL_RG, GL_UNSIGNED_BYTE, 2, 0),
+	/** 16-bit float per channel, for HDR render targets and lightmaps. ImageData set on it is converted to linear light. */
+	RGBA16F(GL_RGBA16F, GL_RGBA, GL_HALF_FLOAT, 8, 0),
+	
+	/**
+	 * S3TC / DXT1 / BC1: 4 bits per texel, opaque RGB.
+	 * @since GL_EXT_texture_compression_s3tc
+	 */
+	BC1_RGB(0x83F0, 0, 0, 0, 8),
+	/**
+	 * S3TC / DXT5 / BC3: 8 bits per texel, RGBA with smooth alpha.
+	 * @since GL_EXT_texture_compression_s3tc
+	 */
+	BC3_RGBA(0x83F3, 0, 0, 0, 16),
+	/**
+	 * BPTC / BC7: 8 bits per texel, high quality RGBA.
+	 * @since OpenGL 4.2
+	 */
+	BC7_RGBA(0x8E8C, 0, 0, 0, 16),
+	/**
+	 * BPTC / BC7: 8 bits per texel, high quality RGBA with sRGB-encoded color.
+	 * @since OpenGL 4.2
+	 */
+	BC7_SRGB_ALPHA(0x8E8D, 0, 0, 0, 16),
+	/**
+	 * ETC2: 4 bits per texel, opaque RGB. Mostly found on mobile and integrated GPUs.
+	 * @since OpenGL 4.3
+	 */
+	ETC2_RGB8(0x9274, 0, 0, 0, 8),
+	/**
+	 * ETC2 + EAC: 8 bits per texel, RGBA.
+	 * @since OpenGL 4.3
+	 */
+	ETC2_RGBA8(0x9278, 0, 0, 0, 16),
+	;
+	
+	private final int internalFormat;
+	private final int uploadFormat;
+	private final int uploadType;
+	private final int bytesPerPixel;
+	private final int bytesPerBlock;
+	
+	TextureFormat(int internalFormat, int uploadFormat, int uploadType, int bytesPerPixel, int bytesPerBlock) {
+		this.internalFormat = internalFormat;
+		this.uploadFormat = uploadFormat;
+		this.uploadType = uploadType;
+		this.bytesPerPixel = bytesPerPixel;
+		this.bytesPerBlock = bytesPerBlock;
+	}
+	
+	public int internalFormat() { return internalFormat; }
+	public int uploadFormat() { return uploadFormat; }
+	public int uploadType() { return uploadType; }
+	
+	public boolean isCompressed() {
+		return bytesPerBlock != 0;
+	}
+	
+	/**
+	 * Returns true if ImageData can be uploaded directly into this format, as 8-bit BGRA.
+	 */
+	public boolean acceptsImageData() {
+		return uploadFormat == GL_BGRA && uploadType == GL_UNSIGNED_BYTE;
+	}
+	
+	/**
+	 * Returns true if this format stores linear floating-point color. ImageData uploaded into a Texture of this format is
+	 * converted from sRGB to linear light, and converted back when read.
+	 */
+	public boolean storesLinearColor() {
+		return uploadFormat == GL_RGBA && uploadType == GL_HALF_FLOAT;
+	}
+	
+	/**
+	 * Gets the number of bytes needed to store one mip level of the given size in this format.
+	 */
+	public int levelSize(int width, int height) {
+		if (isCompressed()) {
+			int blocksWide = (width + 3) / 4;
+			int blocksHigh = (height + 3) / 4;
+			return blocksWide * blocksHigh * bytesPerBlock;
+		} else {
+			return width * height * bytesPerPixel;
+		}
+	}
+	
+	/**
+	 * Returns true if the current context can create textures in this format. Must be called with a context current.
+	 */
+	public boolean isSupported() {
+		GLCapabilities caps = GL.getCapabilities();
+		return switch(this) {
+			case BC1_RGB, BC3_RGBA -> caps.GL_EXT_texture_compression_s3tc;
+			case BC7_RGBA, BC7_SRGB_ALPHA -> caps.OpenGL42 || caps.GL_ARB_texture_compression_bptc;
+			case ETC2_RGB8, ETC2_RGBA8 -> caps.OpenGL43 || caps.GL_ARB_ES3_compatibility;
+			default -> true;
+		};
+	}
+}
@@ -0,0 +1,396 @@
+package com.playsawdust.glow.gl;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.playsawdust.glow.gl.shader.ShaderProgram;
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Draws a large grid of tiles from a {@link TextureArray} tileset, where each tile id is a layer of the array.
+ *
+ * <p>The map is split into square chunks of {@link #CHUNK_SIZE} tiles. Each chunk's mesh is built once into its own
+ * static VertexArray, and after that drawing the chunk costs one draw call no matter how many tiles are in it. Chunks
+ * outside the viewport aren't drawn at all, so a frame costs the same for a huge map as for a screenful.
+ *
+ * <p>Changing a tile queues its chunk for a rebuild, so a frame only ever looks at the chunks which changed. Queued
+ * chunks are rebuilt on worker threads from a snapshot of their tiles, and the finished mesh is uploaded at the start
+ * of a later {@link #draw}; until then the chunk keeps drawing its old mesh. A chunk which changes while it's being
+ * built stays dirty, and is queued again once the first build is back.
+ *
+ * <p>Apart from the mesh building, must only be used on the thread that owns the GL context.
+ */
+public class TilemapRenderer implements Destroyable {
+	public static final String VERT_SHADER_SRC = """
+			#version 330
+			
+			uniform mat4 transform;
+			uniform vec2 chunkOrigin;
+			
+			layout(location=0) in vec2 position;
+			layout(location=1) in vec2 uv;
+			layout(location=2) in float layer;
+			
+			out vec2 vertexUv;
+			flat out float vertexLayer;
+			
+			void main() {
+				vertexUv = uv;
+				vertexLayer = layer;
+				gl_Position = transform * vec4(chunkOrigin + position, 0.0, 1.0);
+			}
+			""";
+	
+	public static final String FRAG_SHADER_SRC = """
+			#version 330
+			
+			uniform sampler2DArray tileset;
+			uniform vec4 tint;
+			
+			in vec2 vertexUv;
+			flat in float vertexLayer;
+			out vec4 fragColor;
+			
+			void main() {
+				fragColor = tint * texture(tileset, vec3(vertexUv, vertexLayer));
+			}
+			""";
+	
+	/** The width and height of a chunk, in tiles. */
+	public static final int CHUNK_SIZE = 32;
+	/** The tile id of an empty cell, which isn't drawn. */
+	public static final int EMPTY = -1;
+	
+	/** Position xy, uv, tileset layer */
+	private static final int FLOATS_PER_VERTEX = 5;
+	private static final int FLOATS_PER_TILE = FLOATS_PER_VERTEX * 4;
+	
+	private final int width;
+	private final int height;
+	private final int tileSize;
+	private final int[] tiles;
+	private final int chunksWide;
+	private final int chunksHigh;
+	private final Chunk[] chunks;
+	private final TextureArray tileset;
+	private final Executor executor;
+	private final ShaderProgram shader;
+	private final VertexBuffer indexBuffer;
+	/** Chunks waiting to be snapshotted, each at most once */
+	private final ArrayDeque<Chunk> dirtyChunks = new ArrayDeque<>();
+	private final ConcurrentLinkedQueue<Rebuild> finished = new ConcurrentLinkedQueue<>();
+	private volatile boolean destroyed = false;
+	
+	private float tintR = 1;
+	private float tintG = 1;
+	private float tintB = 1;
+	private float tintA = 1;
+	private BlendMode blendMode = BlendMode.NORMAL;
+	private int lastDrawnChunks = 0;
+	private int rebuildsInFlight = 0;
+	
+	public TilemapRenderer(int width, int height, int tileSize, TextureArray tileset) {
+		this(width, height, tileSize, tileset, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates an empty tilemap.
+	 * @param width    the width of the map, in tiles
+	 * @param height   the height of the map, in tiles
+	 * @param tileSize the width and height of each tile, in pixels
+	 * @param tileset  the tile images. Tile id {@code n} draws layer {@code n}.
+	 * @param executor where chunk meshes are built
+	 */
+	public TilemapRenderer(int width, int height, int tileSize, TextureArray tileset, Executor executor) {
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+		this.tileset = tileset;
+		this.executor = executor;
+		this.tiles = new int[width * height];
+		Arrays.fill(tiles, EMPTY);
+		this.chunksWide = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunksHigh = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunks = new Chunk[chunksWide * chunksHigh];
+		for(int i=0; i<chunks.length; i++) {
+			chunks[i] = new Chunk(i % chunksWide, i / chunksWide);
+		}
+		
+		shader = new ShaderProgram(VERT_SHADER_SRC, FRAG_SHADER_SRC);
+		
+		// One shared index buffer covers a completely full chunk
+		int maxTiles = CHUNK_SIZE * CHUNK_SIZE;
+		int[] indices = new int[maxTiles * 6];
+		for(int i=0; i<maxTiles; i++) {
+			int base = i * 4;
+			int o = i * 6;
+			indices[o    ] = base;
+			indices[o + 1] = base + 1;
+			indices[o + 2] = base + 3;
+			indices[o + 3] = base;
+			indices[o + 4] = base + 3;
+			indices[o + 5] = base + 2;
+		}
+		indexBuffer = new VertexBuffer();
+		indexBuffer.setStaticData(BufferTarget.ELEMENT_ARRAY, indices);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	public int getTile(int x, int y) {
+		checkBounds(x, y);
+		return tiles[y * width + x];
+	}
+	
+	/**
+	 * Sets one tile. Its chunk is rebuilt in the background before a later draw.
+	 * @param id a layer of the tileset, or {@link #EMPTY}
+	 */
+	public void setTile(int x, int y, int id) {
+		checkBounds(x, y);
+		if (id < EMPTY || id >= tileset.getLayers()) throw new IllegalArgumentException("Tile id "+id+" is out of range - the tileset has "+tileset.getLayers()+" layers.");
+		int index = y * width + x;
+		if (tiles[index] == id) return;
+		tiles[index] = id;
+		markDirty(chunks[(y / CHUNK_SIZE) * chunksWide + (x / CHUNK_SIZE)]);
+	}
+	
+	/**
+	 * Queues a chunk for rebuilding, unless it's already queued. A chunk which is being built is left for
+	 * uploadFinished to queue once its build is back.
+	 */
+	private void markDirty(Chunk chunk) {
+		chunk.dirty = true;
+		if (chunk.queued || chunk.building) return;
+		chunk.queued = true;
+		dirtyChunks.add(chunk);
+	}
+	
+	/**
+	 * Sets a rectangle of tiles at once.
+	 * @param ids {@code w * h} tile ids, row by row
+	 */
+	public void setTiles(int x, int y, int w, int h, int[] ids) {
+		for(int row=0; row<h; row++) {
+			for(int column=0; column<w; column++) {
+				setTile(x + column, y + row, ids[row * w + column]);
+			}
+		}
+	}
+	
+	/**
+	 * Sets a color which every tile is multiplied by, such as for fading the map in or out.
+	 */
+	public void setTint(float r, float g, float b, float a) {
+		this.tintR = r;
+		this.tintG = g;
+		this.tintB = b;
+		this.tintA = a;
+	}
+	
+	public void setBlendMode(BlendMode blendMode) {
+		this.blendMode = blendMode;
+	}
+	
+	/** Gets how many chunks were drawn by the last call to draw. */
+	public int getDrawnChunks() {
+		return lastDrawnChunks;
+	}
+	
+	/** Gets how many chunk meshes are being built in the background. */
+	public int getRebuildsInFlight() {
+		return rebuildsInFlight;
+	}
+	
+	/**
+	 * Draws every chunk which intersects the viewport. If this is mixed with a {@link WindowPainter}, flush the painter
+	 * first so that draw order is kept.
+	 * @param transform the 4x4 row-major matrix from map pixels to clip space, like
+	 *                  {@link WindowPainter#orthoMatrix(float, float, float, float, float, float)} for the viewport
+	 * @param viewX     the left edge of the visible area, in map pixels
+	 * @param viewY     the top edge of the visible area, in map pixels
+	 */
+	public void draw(float[] transform, float viewX, float viewY, float viewWidth, float viewHeight) {
+		uploadFinished();
+		scheduleRebuilds();
+		
+		float chunkPixels = CHUNK_SIZE * tileSize;
+		int cx0 = Math.max(0, (int) Math.floor(viewX / chunkPixels));
+		int cy0 = Math.max(0, (int) Math.floor(viewY / chunkPixels));
+		int cx1 = Math.min(chunksWide - 1, (int) Math.floor((viewX + viewWidth) / chunkPixels));
+		int cy1 = Math.min(chunksHigh - 1, (int) Math.floor((viewY + viewHeight) / chunkPixels));
+		
+		shader.bind();
+		int handle = shader.getHandle();
+		glUniformMatrix4fv(glGetUniformLocation(handle, "transform"), true, transform);
+		glUniform4f(glGetUniformLocation(handle, "tint"), tintR, tintG, tintB, tintA);
+		glUniform1i(glGetUniformLocation(handle, "tileset"), 0);
+		int originLocation = glGetUniformLocation(handle, "chunkOrigin");
+		tileset.bindToUnit(0);
+		glEnable(GL_BLEND);
+		blendMode.apply();
+		
+		int drawn = 0;
+		for(int cy=cy0; cy<=cy1; cy++) {
+			for(int cx=cx0; cx<=cx1; cx++) {
+				Chunk chunk = chunks[cy * chunksWide + cx];
+				if (chunk.tileCount == 0) continue;
+				
+				glUniform2f(originLocation, cx * chunkPixels, cy * chunkPixels);
+				chunk.vertexArray.bind();
+				glDrawElements(GL_TRIANGLES, chunk.tileCount * 6, GL_UNSIGNED_INT, 0L);
+				drawn++;
+			}
+		}
+		lastDrawnChunks = drawn;
+	}
+	
+	/**
+	 * Uploads meshes finished by workers. Any that are already out of date are still newer than what's on the GPU.
+	 */
+	private void uploadFinished() {
+		Rebuild rebuild;
+		while((rebuild = finished.poll()) != null) {
+			rebuildsInFlight--;
+			Chunk chunk = rebuild.chunk;
+			chunk.building = false;
+			
+			if (rebuild.tileCount > 0) {
+				if (chunk.vertexArray == null) {
+					chunk.vertexBuffer = new VertexBuffer();
+					chunk.vertexArray = new VertexArray();
+				}
+				chunk.vertexArray.bind();
+				chunk.vertexBuffer.setStaticData(BufferTarget.ARRAY, rebuild.vertices);
+				int stride = FLOATS_PER_VERTEX * 4;
+				chunk.vertexArray.bindBuffer(0, chunk.vertexBuffer, GLType.FLOAT_VEC2, stride, 0);
+				chunk.vertexArray.bindBuffer(1, chunk.vertexBuffer, GLType.FLOAT_VEC2, stride, 2 * 4);
+				chunk.vertexArray.bindBuffer(2, chunk.vertexBuffer, GLType.FLOAT, stride, 4 * 4);
+				chunk.vertexArray.bindIndexBuffer(indexBuffer);
+			}
+			chunk.tileCount = rebuild.tileCount;
+			if (chunk.dirty) markDirty(chunk);
+		}
+	}
+	
+	/**
+	 * Snapshots each queued chunk's tiles and hands them to a worker. A chunk which is already being built isn't queued
+	 * until that build comes back, so at most one build per chunk is ever in flight.
+	 */
+	private void scheduleRebuilds() {
+		while(!dirtyChunks.isEmpty()) {
+			Chunk chunk = dirtyChunks.poll();
+			chunk.queued = false;
+			
+			int x0 = chunk.x * CHUNK_SIZE;
+			int y0 = chunk.y * CHUNK_SIZE;
+			int w = Math.min(CHUNK_SIZE, width - x0);
+			int h = Math.min(CHUNK_SIZE, height - y0);
+			int[] snapshot = new int[w * h];
+			for(int row=0; row<h; row++) {
+				System.arraycopy(tiles, (y0 + row) * width + x0, snapshot, row * w, w);
+			}
+			
+			chunk.dirty = false;
+			chunk.building = true;
+			rebuildsInFlight++;
+			executor.execute(() -> {
+				if (destroyed) return;
+				finished.add(buildMesh(chunk, snapshot, w, h));
+			});
+		}
+	}
+	
+	/**
+	 * Builds one quad per non-empty tile, positioned relative to the chunk's top-left corner. Runs on a worker thread.
+	 */
+	private Rebuild buildMesh(Chunk chunk, int[] snapshot, int w, int h) {
+		int count = 0;
+		for(int id : snapshot) {
+			if (id != EMPTY) count++;
+		}
+		
+		float[] vertices = new float[count * FLOATS_PER_TILE];
+		int o = 0;
+		for(int y=0; y<h; y++) {
+			for(int x=0; x<w; x++) {
+				int id = snapshot[y * w + x];
+				if (id == EMPTY) continue;
+				
+				float left = x * tileSize;
+				float top = y * tileSize;
+				float right = left + tileSize;
+				float bottom = top + tileSize;
+				o = putVertex(vertices, o, left,  top,    0, 0, id);
+				o = putVertex(vertices, o, right, top,    1, 0, id);
+				o = putVertex(vertices, o, left,  bottom, 0, 1, id);
+				o = putVertex(vertices, o, right, bottom, 1, 1, id);
+			}
+		}
+		return new Rebuild(chunk, vertices, count);
+	}
+	
+	private static int putVertex(float[] data, int o, float x, float y, float u, float v, int layer) {
+		data[o    ] = x;
+		data[o + 1] = y;
+		data[o + 2] = u;
+		data[o + 3] = v;
+		data[o + 4] = layer;
+		return o + FLOATS_PER_VERTEX;
+	}
+	
+	private void checkBounds(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) throw new IndexOutOfBoundsException("Tile ("+x+", "+y+") is outside the "+width+"x"+height+" map.");
+	}
+	
+	@Override
+	public void destroy() {
+		destroyed = true;
+		for(Chunk chunk : chunks) {
+			if (chunk.vertexArray != null) {
+				chunk.vertexArray.destroy();
+				chunk.vertexBuffer.destroy();
+				chunk.vertexArray = null;
+				chunk.vertexBuffer = null;
+			}
+		}
+		indexBuffer.destroy();
+		shader.destroy();
+		dirtyChunks.clear();
+		finished.clear();
+	}
+	
+	private static class Chunk {
+		private final int x;
+		private final int y;
+		private VertexArray vertexArray;
+		private VertexBuffer vertexBuffer;
+		private int tileCount = 0;
+		private boolean dirty = false;
+		private boolean building = false;
+		/** Whether this chunk is in dirtyChunks */
+		private boolean queued = false;
+		
+		private Chunk(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+	
+	private record Rebuild(Chunk chunk, float[] vertices, int tileCount) {}
+}
@@ -32,6 +32,54 @@ public class VertexArray implements GLResource {
 		glEnableVertexAttribArray(index);
 	}
 	
+	/**
+	 * Binds one attribute out of an interleaved buffer to this VertexArray
+	 * @param index  The vertex attribute location to bind this attribute to
+	 * @param buffer The buffer holding the interleaved vertex data
+	 * @param type   How to interpret the attribute data
+	 * @param stride The distance, in bytes, from the start of one vertex to the start of the next
+	 * @param offset The offset, in bytes, of this attribute from the start of each vertex
+	 */
+	public void bindBuffer(int index, VertexBuffer buffer, GLType type, int stride, long offset) {
+		bindBuffer(index, buffer, type, false, stride, offset);
+	}
+	
+	/**
+	 * Binds one attribute out of an interleaved buffer to this VertexArray, optionally normalizing integer data. A
+	 * normalized attribute reaches the shader as a float in [0, 1] for unsigned types or [-1, 1] for signed ones, which
+	 * is how quantized normals, texture coordinates and colors are read.
+	 * @param index      The vertex attribute location to bind this attribute to
+	 * @param buffer     The buffer holding the interleaved vertex data
+	 * @param type       How to interpret the attribute data
+	 * @param normalized True to map integer data to [0, 1] or [-1, 1]; ignored for float types
+	 * @param stride     The distance, in bytes, from the start of one vertex to the start of the next
+	 * @param offset     The offset, in bytes, of this attribute from the start of each vertex
+	 */
+	public void bindBuffer(int index, VertexBuffer buffer, GLType type, boolean normalized, int stride, long offset) {
+		bind();
+		buffer.bind();
+		glVertexAttribPointer(index, type.primitiveCount(), type.primitiveType().value(), normalized, stride, offset);
+		glEnableVertexAttribArray(index);
+	}
+	
+	/**
+	 * Sets how often an attribute advances: 0 (the default) means once per vertex, and N means once every N instances
+	 * of an instanced draw.
+	 */
+	public void setDivisor(int index, int divisor) {
+		bind();
+		glVertexAttribDivisor(index, divisor);
+	}
+	
+	/**
+	 * Makes an externally-managed buffer the element (index) buffer for this VertexArray. The buffer is not destroyed
+	 * along with this VertexArray.
+	 */
+	public void bindIndexBuffer(VertexBuffer buffer) {
+		bind();
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffer.getHandle());
+	}
+	
 	public void bindData(int index, float[] data, GLType dataType) {
 		VertexBuffer oldBuf = managedBuffers.get(index);
 		if (oldBuf != null) {
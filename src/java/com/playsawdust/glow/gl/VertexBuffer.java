@@ -2,9 +2,13 @@ package com.playsawdust.glow.gl;
 
 import static org.lwjgl.opengl.GL31.*;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
 public class VertexBuffer implements GLResource {
 	private BufferTarget target;
 	private final int handle;
+	private long size = 0;
 	
 	public VertexBuffer() {
 		target = null;
@@ -15,24 +19,161 @@ public class VertexBuffer implements GLResource {
 		this.target = target;
 		bind();
 		glBufferData(target.value(), data, GL_STATIC_DRAW);
+		size = data.length * 4L;
 	}
 	
 	public void setDynamicData(BufferTarget target, float[] data) {
 		this.target = target;
 		bind();
 		glBufferData(target.value(), data, GL_DYNAMIC_DRAW);
+		size = data.length * 4L;
+	}
+	
+	/**
+	 * Replaces this buffer's storage with the remaining contents of an off-heap buffer. Because this respecifies the
+	 * whole store, the driver can hand back fresh memory instead of waiting for in-flight draws to finish with the old
+	 * contents, which makes this the preferred way to stream data that changes every frame.
+	 */
+	public void setDynamicData(BufferTarget target, FloatBuffer data) {
+		this.target = target;
+		bind();
+		glBufferData(target.value(), data, GL_DYNAMIC_DRAW);
+		size = data.remaining() * 4L;
 	}
 	
 	public void setStaticData(BufferTarget target, int[] data) {
 		this.target = target;
 		bind();
 		glBufferData(target.value(), data, GL_STATIC_DRAW);
+		size = data.length * 4L;
+	}
+	
+	/**
+	 * Replaces this buffer's storage with the remaining contents of a buffer of raw bytes, such as packed vertex data
+	 * or a memory-mapped file.
+	 */
+	public void setStaticData(BufferTarget target, ByteBuffer data) {
+		this.target = target;
+		bind();
+		glBufferData(target.value(), data, GL_STATIC_DRAW);
+		size = data.remaining();
+	}
+	
+	/**
+	 * Allocates uninitialized storage for this buffer, discarding any existing contents. Use this to reserve space
+	 * which will later be filled in pieces with {@link #setSubData(long, float[])} and friends.
+	 * @param target The target to bind this buffer to
+	 * @param bytes  The size of the new storage, in bytes
+	 */
+	public void allocateStatic(BufferTarget target, long bytes) {
+		this.target = target;
+		bind();
+		glBufferData(target.value(), bytes, GL_STATIC_DRAW);
+		size = bytes;
+	}
+	
+	/**
+	 * Allocates uninitialized storage for this buffer, discarding any existing contents. Dynamic storage is hinted to
+	 * the driver as being rewritten frequently.
+	 * @param target The target to bind this buffer to
+	 * @param bytes  The size of the new storage, in bytes
+	 */
+	public void allocateDynamic(BufferTarget target, long bytes) {
+		this.target = target;
+		bind();
+		glBufferData(target.value(), bytes, GL_DYNAMIC_DRAW);
+		size = bytes;
+	}
+	
+	/**
+	 * Allocates uninitialized storage for this buffer, hinted for data which the GPU writes once and the CPU reads back
+	 * once, such as pixels packed by glReadPixels.
+	 * @param target The target to bind this buffer to
+	 * @param bytes  The size of the new storage, in bytes
+	 */
+	public void allocateReadback(BufferTarget target, long bytes) {
+		this.target = target;
+		bind();
+		glBufferData(target.value(), bytes, GL_STREAM_READ);
+		size = bytes;
+	}
+	
+	/**
+	 * Overwrites part of this buffer's storage. The buffer must already have storage large enough to hold the data.
+	 * @param offset The offset into this buffer, in bytes, to start writing at
+	 * @param data   The data to write
+	 */
+	public void setSubData(long offset, float[] data) {
+		bind();
+		glBufferSubData(target.value(), offset, data);
+	}
+	
+	/**
+	 * Overwrites part of this buffer's storage. The buffer must already have storage large enough to hold the data.
+	 * @param offset The offset into this buffer, in bytes, to start writing at
+	 * @param data   The data to write
+	 */
+	public void setSubData(long offset, int[] data) {
+		bind();
+		glBufferSubData(target.value(), offset, data);
+	}
+	
+	/**
+	 * Overwrites part of this buffer's storage with the remaining contents of an off-heap buffer.
+	 * @param offset The offset into this buffer, in bytes, to start writing at
+	 * @param data   The data to write
+	 */
+	public void setSubData(long offset, FloatBuffer data) {
+		bind();
+		glBufferSubData(target.value(), offset, data);
+	}
+	
+	/**
+	 * Reads part of this buffer's storage back into an array, waiting for any GPU work that writes to it. Mostly useful
+	 * for small results like atomic counters; larger readbacks stall the pipeline.
+	 * @param offset The offset into this buffer, in bytes, to start reading from
+	 * @param data   The array to fill
+	 */
+	public void getSubData(long offset, int[] data) {
+		glBindBuffer(GL_COPY_READ_BUFFER, handle);
+		glGetBufferSubData(GL_COPY_READ_BUFFER, offset, data);
+	}
+	
+	/**
+	 * Reads part of this buffer's storage back into an array, waiting for any GPU work that writes to it.
+	 * @param offset The offset into this buffer, in bytes, to start reading from
+	 * @param data   The array to fill
+	 */
+	public void getSubData(long offset, float[] data) {
+		glBindBuffer(GL_COPY_READ_BUFFER, handle);
+		glGetBufferSubData(GL_COPY_READ_BUFFER, offset, data);
+	}
+	
+	/**
+	 * Copies a range of this buffer into another buffer, entirely on the GPU. Uses the COPY_READ and COPY_WRITE
+	 * targets so that the regular bindings of both buffers are left undisturbed.
+	 */
+	public void copyTo(VertexBuffer dest, long srcOffset, long destOffset, long bytes) {
+		glBindBuffer(GL_COPY_READ_BUFFER, handle);
+		glBindBuffer(GL_COPY_WRITE_BUFFER, dest.handle);
+		glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, srcOffset, destOffset, bytes);
 	}
 	
 	public void bind() {
 		glBindBuffer(target.value(), handle);
 	}
 	
+	public BufferTarget getTarget() {
+		return target;
+	}
+	
+	/**
+	 * Gets the size of this buffer's storage in bytes, as of the last time it was specified.
+	 */
+	public long getSize() {
+		return size;
+	}
+	
 	@Override
 	public void destroy() {
 		glDeleteBuffers(handle);
@@ -4,6 +4,7 @@ import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL41;
+import org.lwjgl.opengl.GLCapabilities;
 
 import com.playsawdust.glow.offheap.Destroyable;
 import com.playsawdust.glow.render.Painter;
@@ -11,6 +12,11 @@ import com.playsawdust.glow.vecmath.Vector2i;
 
 import static org.lwjgl.system.MemoryUtil.NULL;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 /*
@@ -28,9 +34,12 @@ import java.util.function.Consumer;
  * 
  * Moving forward, if Apple discontinues support for GL 4.1, we will respond by discontinuing MacOS support and moving
  * to OpenGL 4.6 to maximize value for our remaining users.
+ * 
+ * Until then, newer features like compute shaders are opt-in: pass a higher version to Window(String, int, int), and
+ * check what was actually granted (or use ComputeProgram.isSupported()) before relying on anything past 4.1.
  */
 
-public class Window implements Destroyable {
+public final class Window implements Destroyable {
 	static {
 		if (!GLFW.glfwInit()) {
 			throw new IllegalStateException("Unable to initialize GLFW");
@@ -46,25 +55,89 @@ public class Window implements Destroyable {
 	}
 	
 	private final long handle;
-	private int width;
-	private int height;
+	private final GLCapabilities capabilities;
+	private final int contextMajorVersion;
+	private final int contextMinorVersion;
+	private volatile int width;
+	private volatile int height;
 	private final WindowPainter painter;
+	private final CommandQueue commandQueue;
+	private final ShareGroup shareGroup;
+	/** The swap interval last handed to GLFW for this Window's context */
+	private int appliedSwapInterval = Integer.MIN_VALUE;
+	
+	private volatile long frameNanos = 0;
+	private long nextFrameDeadline = 0;
+	
+	private Thread renderThread = null;
+	private volatile boolean renderThreadRunning = false;
+	private FrameHandoff handoff = null;
+	private final ConcurrentLinkedQueue<Runnable> renderTasks = new ConcurrentLinkedQueue<>();
+	private final List<ResourceLoader> resourceLoaders = new CopyOnWriteArrayList<>();
+	private final List<FrameCapture> frameCaptures = new CopyOnWriteArrayList<>();
+	private volatile FramePacer framePacer = null;
+	
+	private boolean partialRepaint = false;
+	private Framebuffer backBuffer = null;
+	/** {x, y, width, height}, only meaningful while invalid is true. Guarded by this Window's monitor. */
+	private final int[] invalidRegion = new int[4];
+	private boolean invalid = false;
+	/** Reused each frame by the painting thread, so that steady-state partial repaint allocates nothing */
+	private final int[] repaintRegion = new int[4];
+	private final int[] frameDamage = new int[4];
+	private final int[] blitRegion = new int[4];
+	/** The damage of recent frames, newest first, four ints apiece */
+	private int[] damageHistory = new int[0];
+	private int damageHistoryCount = 0;
+	private int assumedBackBuffers = 0;
+	private double idleWait = 0.25;
 	
 	public Window(String title) {
-		GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
-		GLFW.glfwWindowHint(GLFW.GLFW_RESIZABLE, GLFW.GLFW_TRUE);
-		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, 4);
-		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, 1);
-		GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_PROFILE, GLFW.GLFW_OPENGL_CORE_PROFILE);
-		handle = GLFW.glfwCreateWindow(640, 480, title, NULL, NULL);
+		this(title, 4, 1);
+	}
+	
+	/**
+	 * Creates a Window whose context asks for a specific core-profile GL version, such as 4.3 for compute shaders. If
+	 * the driver can't provide it, this falls back to the 4.1 baseline, so check {@link #getContextMajorVersion()} and
+	 * {@link #getContextMinorVersion()}, or the capabilities of the feature you need, before using it.
+	 */
+	public Window(String title, int majorVersion, int minorVersion) {
+		this(title, majorVersion, minorVersion, null);
+	}
+	
+	/**
+	 * Creates a Window whose context shares GL objects with another Window's, at the same GL version. Textures,
+	 * buffers, and shader programs from either can be used in both, and the painter's shaders are only compiled once
+	 * per {@link ShareGroup}. Use a {@link WindowScheduler} to drive several Windows from one loop.
+	 */
+	public Window(String title, Window share) {
+		this(title, share.getContextMajorVersion(), share.getContextMinorVersion(), share);
+	}
+	
+	/**
+	 * Creates a Window which asks for a specific GL version, and shares GL objects with another Window if
+	 * {@code share} isn't null.
+	 */
+	public Window(String title, int majorVersion, int minorVersion, Window share) {
+		long shareHandle = (share != null) ? share.getHandle() : NULL;
+		long handle = createWindow(title, majorVersion, minorVersion, shareHandle);
+		if (handle == NULL && (majorVersion > 4 || (majorVersion == 4 && minorVersion > 1))) {
+			handle = createWindow(title, 4, 1, shareHandle);
+		}
 		
 		if (handle == NULL) {
 			throw new RuntimeException("Couldn't create the window.");
 		}
+		this.handle = handle;
 		
 		GLFW.glfwMakeContextCurrent(handle);
-		GL.createCapabilities();
+		capabilities = GL.createCapabilities();
+		contextMajorVersion = GL41.glGetInteger(GL41.GL_MAJOR_VERSION);
+		contextMinorVersion = GL41.glGetInteger(GL41.GL_MINOR_VERSION);
+		shareGroup = (share != null) ? share.shareGroup : new ShareGroup();
+		shareGroup.add(this);
 		painter = new WindowPainter(this);
+		commandQueue = new CommandQueue(this);
 		
 		int[] x = new int[1];
 		int[] y = new int[1];
@@ -75,7 +148,7 @@ public class Window implements Destroyable {
 		GLFW.glfwSetWindowSizeCallback(handle, (long _, int width, int height) -> {
 			this.width = width;
 			this.height = height;
-			GL41.glViewport(0, 0, width, height);
+			runOnContextThread(() -> GL41.glViewport(0, 0, width, height));
 		});
 	}
 	
@@ -83,6 +156,18 @@ public class Window implements Destroyable {
 		this("");
 	}
 	
+	private static long createWindow(String title, int majorVersion, int minorVersion, long share) {
+		GLFW.glfwDefaultWindowHints();
+		GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
+		GLFW.glfwWindowHint(GLFW.GLFW_RESIZABLE, GLFW.GLFW_TRUE);
+		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, majorVersion);
+		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, minorVersion);
+		GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_PROFILE, GLFW.GLFW_OPENGL_CORE_PROFILE);
+		// Only takes effect while GL_FRAMEBUFFER_SRGB is enabled, as by WindowPainter.setSrgbFramebuffer
+		GLFW.glfwWindowHint(GLFW.GLFW_SRGB_CAPABLE, GLFW.GLFW_TRUE);
+		return GLFW.glfwCreateWindow(640, 480, title, NULL, share);
+	}
+	
 	public void setVisible(boolean visible) {
 		if (visible) {
 			GLFW.glfwShowWindow(handle);
@@ -92,14 +177,81 @@ public class Window implements Destroyable {
 	}
 	
 	/**
-	 * Presents the frame being assembled by this Window's Painter and/or Renderer. Polls for events immediately after
-	 * the swap.
+	 * Presents the frame being assembled by this Window's Painter and/or Renderer. Any CommandBuffers submitted to this
+	 * Window's CommandQueue are replayed first, on top of anything painted directly. Polls for events immediately
+	 * after the swap.
 	 */
 	public void presentFrame() {
-		GLFW.glfwSwapBuffers(handle);
+		if (renderThread != null) {
+			commandQueue.appendTo(handoff.back());
+			handoff.publish(width, height);
+			LockSupport.unpark(renderThread);
+			GLFW.glfwPollEvents();
+			return;
+		}
+		
+		if (!swapFrame()) {
+			// Nothing changed, so there's nothing to swap. Sleep until something happens instead of spinning.
+			GLFW.glfwWaitEventsTimeout(idleWait);
+			nextFrameDeadline = 0;
+			return;
+		}
 		//Vector2i size = getSize();
 		//GL41.glViewport(0, 0, size.x(), size.y());
 		GLFW.glfwPollEvents();
+		pace();
+		beginNextFrame();
+	}
+	
+	/**
+	 * Finishes the frame painted on the calling thread and swaps it, without polling for events or pacing.
+	 * {@link WindowScheduler} calls the two halves separately.
+	 * @return false if partial repaint found nothing to swap
+	 */
+	boolean swapFrame() {
+		if (!finishFrame()) return false;
+		swapFinishedFrame();
+		return true;
+	}
+	
+	/**
+	 * Submits everything painted this frame, and under partial repaint, copies the damaged region to the window.
+	 * @return false if partial repaint found nothing to swap
+	 */
+	boolean finishFrame() {
+		makeContextCurrent();
+		processLoadedResources();
+		if (partialRepaint) ensureBackBuffer();
+		if (commandQueue.hasPending()) {
+			painter.startDrawing();
+			commandQueue.replay(painter);
+		}
+		painter.flush();
+		
+		if (partialRepaint) {
+			if (!painter.takeDamage(frameDamage)) return false;
+			blitDamage(frameDamage);
+		}
+		return true;
+	}
+	
+	/**
+	 * Swaps a frame which {@link #finishFrame()} said was ready.
+	 */
+	void swapFinishedFrame() {
+		makeContextCurrent();
+		FramePacer pacer = framePacer;
+		if (pacer != null) pacer.endFrame();
+		captureFrame();
+		GLFW.glfwSwapBuffers(handle);
+	}
+	
+	/**
+	 * Lets anything measuring frames know that the next one has begun. Called once a swapped frame has been paced.
+	 */
+	void beginNextFrame() {
+		FramePacer pacer = framePacer;
+		if (pacer != null) pacer.beginFrame();
 	}
 	
 	public boolean shouldClose() {
@@ -107,10 +259,411 @@ public class Window implements Destroyable {
 	}
 
 	public void paint(Consumer<WindowPainter> paintMethod) {
+		if (renderThread != null) throw new IllegalStateException("Can't paint directly while the render thread is running. Use record instead.");
+		makeContextCurrent();
+		if (partialRepaint) {
+			ensureBackBuffer();
+			if (!takeInvalidRegion(repaintRegion)) return;
+			int[] bounds = repaintRegion;
+			
+			painter.startDrawing();
+			boolean wholeSurface = bounds[0] <= 0 && bounds[1] <= 0 && bounds[2] >= width && bounds[3] >= height;
+			painter.setRepaintBounds(wholeSurface ? null : bounds);
+			try {
+				paintMethod.accept(painter);
+				painter.flush();
+			} finally {
+				painter.setRepaintBounds(null);
+			}
+			return;
+		}
+		
 		painter.startDrawing();
 		paintMethod.accept(painter);
+		painter.flush();
+	}
+	
+	/**
+	 * Turns partial repaint on or off. Partial repaint suits tools and UIs which are mostly idle.
+	 * 
+	 * <p>While it's on, painting goes into a persistent offscreen copy of the window, which keeps its contents between
+	 * frames. {@link #paint(Consumer)} only calls its paint method when part of the window has been
+	 * {@link #invalidate(int, int, int, int) invalidated}, and clips all painting to the invalidated region, which the
+	 * paint method can query with {@link WindowPainter#getRepaintBounds()}. {@link #presentFrame()} copies only the
+	 * damaged region of the offscreen copy to the window before swapping. When nothing was painted at all, it skips the
+	 * swap, and instead waits for input or an invalidation for up to {@link #setIdleWait(double) the idle wait}.
+	 * 
+	 * <p>Can't be combined with the render thread.
+	 */
+	public void setPartialRepaint(boolean partialRepaint) {
+		if (partialRepaint == this.partialRepaint) return;
+		if (renderThread != null) throw new IllegalStateException("Partial repaint isn't available while the render thread is running.");
+		if (framePacer != null) throw new IllegalStateException("Partial repaint can't be used with a FramePacer.");
+		
+		makeContextCurrent();
+		painter.flush();
+		this.partialRepaint = partialRepaint;
+		if (!partialRepaint) {
+			painter.setBaseTarget(null);
+			Framebuffer.unbind();
+			if (backBuffer != null) backBuffer.destroy();
+			backBuffer = null;
+			takeInvalidRegion(repaintRegion);
+			damageHistoryCount = 0;
+		}
+	}
+	
+	public boolean isPartialRepaint() {
+		return partialRepaint;
+	}
+	
+	/**
+	 * Marks a region of the window as needing to be repainted by the next {@link #paint(Consumer)}, during partial
+	 * repaint. Safe to call from any thread, and wakes up an idle {@link #presentFrame()}.
+	 */
+	public synchronized void invalidate(int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0) return;
+		if (!invalid) {
+			invalidRegion[0] = x;
+			invalidRegion[1] = y;
+			invalidRegion[2] = width;
+			invalidRegion[3] = height;
+			invalid = true;
+		} else {
+			union(invalidRegion, x, y, width, height);
+		}
+		GLFW.glfwPostEmptyEvent();
+	}
+	
+	/**
+	 * Copies the invalidated region into {@code out} and clears it.
+	 * @return false if nothing was invalidated
+	 */
+	private synchronized boolean takeInvalidRegion(int[] out) {
+		if (!invalid) return false;
+		System.arraycopy(invalidRegion, 0, out, 0, 4);
+		invalid = false;
+		return true;
 	}
 	
+	/**
+	 * Grows a {x, y, width, height} rectangle in place to also cover another one.
+	 */
+	private static void union(int[] rect, int x, int y, int width, int height) {
+		int x0 = Math.min(rect[0], x);
+		int y0 = Math.min(rect[1], y);
+		int x1 = Math.max(rect[0] + rect[2], x + width);
+		int y1 = Math.max(rect[1] + rect[3], y + height);
+		rect[0] = x0;
+		rect[1] = y0;
+		rect[2] = x1 - x0;
+		rect[3] = y1 - y0;
+	}
+	
+	/**
+	 * Marks the whole window as needing to be repainted, during partial repaint.
+	 */
+	public void invalidate() {
+		invalidate(0, 0, width, height);
+	}
+	
+	/**
+	 * Sets how long an idle {@link #presentFrame()} may wait for events before returning, during partial repaint.
+	 * Longer waits save more power; shorter ones suit apps with timers that call invalidate from the main thread.
+	 */
+	public void setIdleWait(double seconds) {
+		this.idleWait = seconds;
+	}
+	
+	/**
+	 * Sets how many back buffers the driver is assumed to rotate through, so that partial repaint only has to copy
+	 * what changed over that many frames. Drivers don't report this, so the default of 0 copies the whole window on
+	 * every presented frame, which is always correct. 2 is right for most double-buffered desktop setups; if stale
+	 * content flickers in when it's set, the driver uses more.
+	 */
+	public void setAssumedBackBuffers(int count) {
+		this.assumedBackBuffers = count;
+		damageHistoryCount = 0;
+	}
+	
+	private void ensureBackBuffer() {
+		if (backBuffer != null && backBuffer.getWidth() == width && backBuffer.getHeight() == height) return;
+		
+		painter.flush();
+		if (backBuffer != null) backBuffer.destroy();
+		backBuffer = new Framebuffer(Math.max(1, width), Math.max(1, height));
+		painter.setBaseTarget(backBuffer);
+		damageHistoryCount = 0;
+		// New storage has no contents yet
+		invalidate();
+	}
+	
+	/**
+	 * Copies the damaged region of the offscreen copy into the window's back buffer, widened by the damage of previous
+	 * frames that the back buffer may not have seen.
+	 */
+	private void blitDamage(int[] damage) {
+		int[] region = blitRegion;
+		int keep = assumedBackBuffers - 1;
+		if (assumedBackBuffers <= 0 || damageHistoryCount < keep) {
+			region[0] = 0;
+			region[1] = 0;
+			region[2] = width;
+			region[3] = height;
+		} else {
+			System.arraycopy(damage, 0, region, 0, 4);
+			for(int i=0; i<damageHistoryCount; i++) {
+				union(region, damageHistory[i * 4], damageHistory[i * 4 + 1], damageHistory[i * 4 + 2], damageHistory[i * 4 + 3]);
+			}
+		}
+		if (keep > 0) {
+			if (damageHistory.length < keep * 4) damageHistory = Arrays.copyOf(damageHistory, keep * 4);
+			int moved = Math.min(damageHistoryCount, keep - 1);
+			System.arraycopy(damageHistory, 0, damageHistory, 4, moved * 4);
+			System.arraycopy(damage, 0, damageHistory, 0, 4);
+			damageHistoryCount = moved + 1;
+		}
+		
+		int bottom = height - region[1] - region[3];
+		GL41.glBindFramebuffer(GL41.GL_READ_FRAMEBUFFER, backBuffer.getHandle());
+		GL41.glBindFramebuffer(GL41.GL_DRAW_FRAMEBUFFER, 0);
+		GL41.glBlitFramebuffer(region[0], bottom, region[0] + region[2], bottom + region[3], region[0], bottom, region[0] + region[2], bottom + region[3], GL41.GL_COLOR_BUFFER_BIT, GL41.GL_NEAREST);
+		GL41.glBindFramebuffer(GL41.GL_FRAMEBUFFER, backBuffer.getHandle());
+	}
+	
+	/**
+	 * Records draw commands into the frame which will be handed to the render thread by the next call to
+	 * {@link #presentFrame()}. Can be called more than once per frame; the commands accumulate. Only available while
+	 * the render thread is running.
+	 */
+	public void record(Consumer<CommandBuffer> recordMethod) {
+		if (renderThread == null) throw new IllegalStateException("The render thread isn't running. Use paint instead.");
+		recordMethod.accept(handoff.back());
+	}
+	
+	/**
+	 * Moves all rendering for this Window onto a dedicated render thread. Must be called from the thread that created
+	 * this Window, which keeps receiving input and window events.
+	 * 
+	 * <p>While the render thread is running, frames are recorded with {@link #record(Consumer)} instead of
+	 * {@link #paint(Consumer)}. Each call to {@link #presentFrame()} then publishes the recorded frame through a
+	 * triple buffer and polls for events, without waiting on the GPU or on vsync. The render thread always draws the
+	 * newest published frame; if the app thread outpaces it, older frames are skipped rather than queued up.
+	 * 
+	 * <p>GL calls made from the app thread will fail once the context has moved. Use
+	 * {@link #runOnContextThread(Runnable)} to run GL work where the context lives.
+	 */
+	public void startRenderThread() {
+		if (renderThread != null) throw new IllegalStateException("The render thread is already running.");
+		if (partialRepaint) throw new IllegalStateException("The render thread can't be used with partial repaint.");
+		
+		painter.flush();
+		GLFW.glfwMakeContextCurrent(NULL);
+		GL.setCapabilities(null);
+		
+		handoff = new FrameHandoff(width, height);
+		renderThreadRunning = true;
+		renderThread = new Thread(this::renderLoop, "Glow Render Thread");
+		renderThread.start();
+	}
+	
+	/**
+	 * Stops the render thread and makes this Window's context current on the calling thread again.
+	 */
+	public void stopRenderThread() {
+		if (renderThread == null) return;
+		
+		renderThreadRunning = false;
+		LockSupport.unpark(renderThread);
+		try {
+			renderThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		renderThread = null;
+		
+		GLFW.glfwMakeContextCurrent(handle);
+		GL.setCapabilities(capabilities);
+		runRenderTasks();
+		handoff.destroy();
+		handoff = null;
+		nextFrameDeadline = 0;
+	}
+	
+	public boolean isRenderThreadRunning() {
+		return renderThread != null;
+	}
+	
+	/**
+	 * Runs a task on whichever thread currently owns this Window's GL context. If that's the current thread, the task
+	 * runs immediately; otherwise it's queued without locking and runs on the render thread before its next frame.
+	 */
+	public void runOnContextThread(Runnable task) {
+		Thread renderThread = this.renderThread;
+		if (renderThread == Thread.currentThread()) {
+			task.run();
+		} else if (renderThread == null) {
+			makeContextCurrent();
+			task.run();
+		} else {
+			renderTasks.add(task);
+			LockSupport.unpark(renderThread);
+		}
+	}
+	
+	/**
+	 * Sets the number of screen refreshes to wait for before each buffer swap. 0 turns vsync off, and 1 is ordinary
+	 * vsync.
+	 */
+	public void setSwapInterval(int interval) {
+		runOnContextThread(() -> applySwapInterval(interval));
+	}
+	
+	/**
+	 * Sets the swap interval of this Window's context, which must be current, skipping the call if it's unchanged.
+	 */
+	void applySwapInterval(int interval) {
+		if (interval == appliedSwapInterval) return;
+		GLFW.glfwSwapInterval(interval);
+		appliedSwapInterval = interval;
+	}
+	
+	/**
+	 * Makes this Window's context current on the calling thread, if it isn't already. Painting, presenting, and
+	 * {@link #runOnContextThread(Runnable)} do this on their own, so this is only needed before raw GL calls when one
+	 * thread drives several Windows. Can't be used while the render thread is running.
+	 */
+	public void makeContextCurrent() {
+		if (renderThread != null && renderThread != Thread.currentThread()) throw new IllegalStateException("This Window's context belongs to its render thread.");
+		if (GLFW.glfwGetCurrentContext() != handle) {
+			GLFW.glfwMakeContextCurrent(handle);
+			GL.setCapabilities(capabilities);
+		}
+	}
+	
+	/**
+	 * Gets the group of Windows this one shares GL objects with. A Window created on its own is alone in its group.
+	 */
+	public ShareGroup getShareGroup() {
+		return shareGroup;
+	}
+	
+	/**
+	 * Caps the rate at which frames are presented, independently of vsync. Pass zero to remove the cap.
+	 */
+	public void setTargetFrameRate(int framesPerSecond) {
+		frameNanos = (framesPerSecond <= 0) ? 0 : 1_000_000_000L / framesPerSecond;
+	}
+	
+	private void renderLoop() {
+		GLFW.glfwMakeContextCurrent(handle);
+		GL.setCapabilities(capabilities);
+		try {
+			while(renderThreadRunning) {
+				runRenderTasks();
+				processLoadedResources();
+				
+				CommandBuffer frame = handoff.takeLatest();
+				if (frame == null) {
+					LockSupport.parkNanos(1_000_000L);
+					continue;
+				}
+				
+				painter.startDrawing();
+				frame.replay(painter);
+				painter.flush();
+				FramePacer pacer = framePacer;
+				if (pacer != null) pacer.endFrame();
+				captureFrame();
+				GLFW.glfwSwapBuffers(handle);
+				pace();
+				if (pacer != null) pacer.beginFrame();
+			}
+			runRenderTasks();
+		} finally {
+			GLFW.glfwMakeContextCurrent(NULL);
+			GL.setCapabilities(null);
+		}
+	}
+	
+	void addResourceLoader(ResourceLoader loader) {
+		resourceLoaders.add(loader);
+	}
+	
+	void removeResourceLoader(ResourceLoader loader) {
+		resourceLoaders.remove(loader);
+	}
+	
+	void addFrameCapture(FrameCapture capture) {
+		frameCaptures.add(capture);
+	}
+	
+	void removeFrameCapture(FrameCapture capture) {
+		frameCaptures.remove(capture);
+	}
+	
+	void setFramePacer(FramePacer pacer) {
+		if (pacer != null && framePacer != null) throw new IllegalStateException("This Window already has a FramePacer.");
+		if (pacer != null && partialRepaint) throw new IllegalStateException("A FramePacer can't be used with partial repaint.");
+		this.framePacer = pacer;
+	}
+	
+	WindowPainter getPainter() {
+		return painter;
+	}
+	
+	private void captureFrame() {
+		// forEach walks the list's snapshot directly, where a for-each loop would allocate an iterator every frame
+		frameCaptures.forEach(FrameCapture::captureFrame);
+	}
+	
+	private void processLoadedResources() {
+		resourceLoaders.forEach(ResourceLoader::processCompleted);
+	}
+	
+	private void runRenderTasks() {
+		Runnable task;
+		while((task = renderTasks.poll()) != null) {
+			task.run();
+		}
+	}
+	
+	/**
+	 * Waits out the remainder of the current frame's time slot, if a target frame rate is set. Only ever called from
+	 * the thread that presents frames.
+	 */
+	private void pace() {
+		long frameTime = frameNanos;
+		if (frameTime <= 0) {
+			nextFrameDeadline = 0;
+			return;
+		}
+		
+		long now = System.nanoTime();
+		if (nextFrameDeadline == 0 || now - nextFrameDeadline > frameTime) {
+			// First paced frame, or we've fallen more than a whole frame behind. Don't try to catch up.
+			nextFrameDeadline = now + frameTime;
+			return;
+		}
+		
+		while((now = System.nanoTime()) < nextFrameDeadline) {
+			LockSupport.parkNanos(nextFrameDeadline - now);
+		}
+		nextFrameDeadline += frameTime;
+	}
+	
+	/**
+	 * Gets the queue which worker threads can submit recorded draw commands to. The commands are replayed when the
+	 * next frame is presented.
+	 */
+	public CommandQueue getCommandQueue() {
+		return commandQueue;
+	}
+	
+	/**
+	 * Gets the window's size as a new Vector2i. Per-frame code should prefer {@link #getWidth()} and
+	 * {@link #getHeight()}, which don't allocate.
+	 */
 	public Vector2i getSize() {
 		/*
 		int[] x = new int[1];
@@ -138,6 +691,13 @@ public class Window implements Destroyable {
 	
 	@Override
 	public void destroy() {
+		stopRenderThread();
+		makeContextCurrent();
+		if (backBuffer != null) backBuffer.destroy();
+		commandQueue.destroy();
+		painter.destroy();
+		// The last Window in the group takes the shared resources with it, while its context is still current
+		shareGroup.remove(this);
 		GLFW.glfwSetWindowSizeCallback(handle, null).free();
 		GLFW.glfwDestroyWindow(handle);
 	}
@@ -145,4 +705,19 @@ public class Window implements Destroyable {
 	public long getHandle() {
 		return handle;
 	}
+	
+	/**
+	 * Gets the major GL version of the context this Window actually got, which may be higher than the one requested.
+	 */
+	public int getContextMajorVersion() {
+		return contextMajorVersion;
+	}
+	
+	public int getContextMinorVersion() {
+		return contextMinorVersion;
+	}
+	
+	public GLCapabilities getCapabilities() {
+		return capabilities;
+	}
 }
@@ -1,15 +1,13 @@
 package com.playsawdust.glow.gl;
 
+import com.playsawdust.glow.gl.color.ColorConversion;
 import com.playsawdust.glow.gl.shader.ShaderProgram;
+import com.playsawdust.glow.gl.text.GlyphCache;
 import com.playsawdust.glow.image.ImageData;
-import com.playsawdust.glow.image.SrgbImageData;
 import com.playsawdust.glow.image.color.RGBColor;
 import com.playsawdust.glow.offheap.Destroyable;
 import com.playsawdust.glow.render.Painter;
-import com.playsawdust.glow.vecmath.HalfFloat;
 import com.playsawdust.glow.vecmath.Matrix4;
-import com.playsawdust.glow.vecmath.Vector2d;
-import com.playsawdust.glow.vecmath.Vector2i;
 
 import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
 import static org.lwjgl.opengl.GL11.GL_DEPTH_BUFFER_BIT;
@@ -21,7 +19,14 @@ import static org.lwjgl.system.MemoryUtil.memASCII;
 import static org.lwjgl.system.MemoryUtil.memAddress;
 
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
 
 import org.lwjgl.opengl.GL;
 import org.lwjgl.system.MemoryStack;
@@ -36,13 +41,16 @@ public class WindowPainter implements Painter, Destroyable {
 			layout(location=0) in vec2 position;
 			layout(location=1) in vec4 color;
 			layout(location=2) in vec2 uv;
+			layout(location=3) in float layer;
 			
 			out vec4 vertexColor;
 			out vec2 vertexUv;
+			flat out float vertexLayer;
 			
 			void main() {
 				vertexColor = color;
 				vertexUv = uv;
+				vertexLayer = layer;
 				gl_Position = transform * vec4(position, 0.0, 1.0);
 			}
 			""";
@@ -62,112 +70,967 @@ public class WindowPainter implements Painter, Destroyable {
 			}
 			""";
 	
+	/**
+	 * Draws glyphs from an SDF {@link GlyphCache}. The distance field arrives in alpha, thanks to the atlas swizzle, and
+	 * is thresholded at its midpoint with an antialiasing ramp one screen pixel wide.
+	 */
+	public static final String SDF_FRAG_SHADER_SRC = """
+			#version 330
+			
+			uniform sampler2D materialTexture;
+			
+			in vec4 vertexColor;
+			in vec2 vertexUv;
+			out vec4 fragColor;
+			
+			void main() {
+				float distance = texture(materialTexture, vertexUv).a;
+				float ramp = max(fwidth(distance) * 0.5, 0.0001);
+				float coverage = smoothstep(0.5 - ramp, 0.5 + ramp, distance);
+				fragColor = vec4(vertexColor.rgb, vertexColor.a * coverage);
+			}
+			""";
+	
+	/**
+	 * Draws quads from a {@link TextureArray}, picking the layer from a per-vertex attribute, so that quads from every
+	 * layer of one array can share a draw call.
+	 */
+	public static final String ARRAY_FRAG_SHADER_SRC = """
+			#version 330
+			
+			uniform sampler2DArray materialTexture;
+			
+			in vec4 vertexColor;
+			in vec2 vertexUv;
+			flat in float vertexLayer;
+			out vec4 fragColor;
+			
+			void main() {
+				fragColor = vertexColor * texture(materialTexture, vec3(vertexUv, vertexLayer));
+			}
+			""";
+	
+	private static final int PROGRAM_DEFAULT = 0;
+	private static final int PROGRAM_SDF = 1;
+	private static final int PROGRAM_ARRAY = 2;
+	private static final int VERTEX_STRIDE = DrawQueue.FLOATS_PER_VERTEX * 4;
+	
 	private final VertexArray vertexArray;
+	private final VertexBuffer vertexBuffer;
+	private final VertexBuffer indexBuffer;
+	private int indexedQuads = 0;
+	private FloatBuffer staging;
+	private final DrawQueue queue = new DrawQueue();
+	private final List<Texture> transientTextures = new ArrayList<>();
+	private final Deque<Framebuffer> targets = new ArrayDeque<>();
+	/** The surface painted into when no Framebuffer is pushed, or null for the window itself */
+	private Framebuffer baseTarget = null;
+	private int[] repaintBounds = null;
+	private final int[] repaintBoundsStorage = new int[4];
+	private float damageMinX = Float.POSITIVE_INFINITY;
+	private float damageMinY = Float.POSITIVE_INFINITY;
+	private float damageMaxX = Float.NEGATIVE_INFINITY;
+	private float damageMaxY = Float.NEGATIVE_INFINITY;
+	
+	/** The current 2D affine transform, as {m00, m01, m02, m10, m11, m12}: x' = m00*x + m01*y + m02 */
+	private final float[] matrix = { 1, 0, 0, 0, 1, 0 };
+	/** The current clip rectangle in surface pixels, as {x0, y0, x1, y1}, or null for no clipping */
+	private float[] clip = null;
+	/** Everything that can be seen, as {x0, y0, x1, y1}: the surface, narrowed by the repaint bounds and clip */
+	private final float[] visibleBounds = new float[4];
+	private int culledQuads = 0;
+	/** Saved transforms, six floats apiece, so that pushing and popping never allocates */
+	private float[] matrixStack = new float[6 * 8];
+	private int matrixDepth = 0;
+	/** The clip in effect before each pushClip, which may be null. Parallel to clipSlots. */
+	private float[][] savedClips = new float[8][];
+	/** Storage for the clip set by the pushClip at each depth, reused from frame to frame */
+	private float[][] clipSlots = new float[8][4];
+	private int clipDepth = 0;
+	/** Transform of each enclosing target, six floats apiece, restored by popTarget */
+	private float[] targetMatrices = new float[6 * 4];
+	/** Clip of each enclosing target, which may be null. Parallel to targetMatrices. */
+	private float[][] targetClips = new float[4][];
+	/** Handed to GlyphCache for every glyph, so it's made once rather than per call */
+	private final Runnable flushCallback = this::flush;
 	private final Window target;
-	private ShaderProgram shader;
-	private Texture whitePixel;
+	/** Shared with the painters of every Window in the same ShareGroup */
+	private final ShaderProgram shader;
+	private final ShaderProgram sdfShader;
+	private final ShaderProgram arrayShader;
+	private final Texture whitePixel;
+	private float[] transform = orthoMatrix(1, 1);
+	
+	private boolean deferred = false;
+	private int layer = 0;
+	private BlendMode blendMode = BlendMode.NORMAL;
+	private boolean srgbFramebuffer = false;
 	
 	public WindowPainter(Window target) {
 		this.target = target;
-		this.shader = new ShaderProgram(VERT_SHADER_SRC, FRAG_SHADER_SRC);
+		PainterResources resources = target.getShareGroup().getResource(PainterResources.NAME, PainterResources.class, PainterResources::new);
+		this.shader = resources.shader;
+		this.sdfShader = resources.sdfShader;
+		this.arrayShader = resources.arrayShader;
+		this.whitePixel = resources.whitePixel;
+		// Vertex arrays can't be shared between contexts, so each painter keeps its own
 		this.vertexArray = new VertexArray();
-		SrgbImageData whitePixelData = new SrgbImageData(1,1);
-		whitePixelData.setPixel(0, 0, 0xFF_FFFFFF);
 		
-		whitePixel = new Texture();
-		whitePixel.setImage(whitePixelData);
+		vertexArray.bind();
+		vertexBuffer = new VertexBuffer();
+		vertexBuffer.allocateDynamic(BufferTarget.ARRAY, 256L * DrawQueue.FLOATS_PER_QUAD * 4);
+		vertexArray.bindBuffer(0, vertexBuffer, GLType.FLOAT_VEC2, VERTEX_STRIDE, 0);
+		vertexArray.bindBuffer(1, vertexBuffer, GLType.FLOAT_VEC4, VERTEX_STRIDE, 2 * 4);
+		vertexArray.bindBuffer(2, vertexBuffer, GLType.FLOAT_VEC2, VERTEX_STRIDE, 6 * 4);
+		vertexArray.bindBuffer(3, vertexBuffer, GLType.FLOAT, VERTEX_STRIDE, 8 * 4);
+		indexBuffer = new VertexBuffer();
+		ensureQuadIndices(256);
+		staging = MemoryUtil.memAllocFloat(256 * DrawQueue.FLOATS_PER_QUAD);
 	}
 	
 	public void startDrawing() {
+		if (!targets.isEmpty()) throw new IllegalStateException("A Framebuffer pushed with pushTarget was never popped.");
+		flush();
+		resetMatrix();
+		clip = null;
+		matrixDepth = 0;
+		clipDepth = 0;
+		Arrays.fill(savedClips, null);
+		culledQuads = 0;
+		applyTarget();
 		glDisable(GL_CULL_FACE);
 		glEnable(GL_BLEND);
-		glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		blendMode.apply();
+		applySrgbFramebuffer();
 		shader.bind();
-		Vector2i windowSize = target.getSize();
 		int transformLoc = glGetUniformLocation(shader.getHandle(), "transform");
-		glUniformMatrix4fv(transformLoc, true, orthoMatrix(windowSize.x(), windowSize.y()));
+		glUniformMatrix4fv(transformLoc, true, transform);
 	}
 	
 	public void clear(RGBColor color) {
-		glClearColor(color.r(), color.g(), color.b(), 0);
+		flush();
+		if (srgbFramebuffer) {
+			glClearColor(color.r(), color.g(), color.b(), 0);
+		} else {
+			glClearColor(ColorConversion.linearToSrgb(color.r()), ColorConversion.linearToSrgb(color.g()), ColorConversion.linearToSrgb(color.b()), 0);
+		}
 		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+		if (targets.isEmpty()) addDamage(0, 0, getWidth(), getHeight());
+	}
+	
+	/**
+	 * Records that part of the surface has changed, as if something had been painted there. Painting through this
+	 * class does this automatically; call it after drawing into the window with raw GL.
+	 */
+	public void addDamage(float x0, float y0, float x1, float y1) {
+		if (repaintBounds != null) {
+			x0 = Math.max(x0, repaintBounds[0]);
+			y0 = Math.max(y0, repaintBounds[1]);
+			x1 = Math.min(x1, repaintBounds[0] + repaintBounds[2]);
+			y1 = Math.min(y1, repaintBounds[1] + repaintBounds[3]);
+		}
+		if (x1 <= x0 || y1 <= y0) return;
+		
+		damageMinX = Math.min(damageMinX, x0);
+		damageMinY = Math.min(damageMinY, y0);
+		damageMaxX = Math.max(damageMaxX, x1);
+		damageMaxY = Math.max(damageMaxY, y1);
+	}
+	
+	public boolean hasDamage() {
+		return damageMaxX > damageMinX;
+	}
+	
+	/**
+	 * Gets the smallest pixel rectangle holding everything painted since the last call, clipped to the surface, and
+	 * starts tracking afresh.
+	 * @return {x, y, width, height}, or null if nothing has been painted
+	 */
+	public int[] takeDamage() {
+		int[] result = new int[4];
+		return takeDamage(result) ? result : null;
+	}
+	
+	/**
+	 * Like {@link #takeDamage()}, but writes the rectangle into {@code out} instead of allocating one.
+	 * @return false, leaving {@code out} untouched, if nothing has been painted
+	 */
+	public boolean takeDamage(int[] out) {
+		if (!hasDamage()) return false;
+		
+		int x0 = Math.max(0, (int) Math.floor(damageMinX));
+		int y0 = Math.max(0, (int) Math.floor(damageMinY));
+		int x1 = Math.min(target.getWidth(), (int) Math.ceil(damageMaxX));
+		int y1 = Math.min(target.getHeight(), (int) Math.ceil(damageMaxY));
+		damageMinX = Float.POSITIVE_INFINITY;
+		damageMinY = Float.POSITIVE_INFINITY;
+		damageMaxX = Float.NEGATIVE_INFINITY;
+		damageMaxY = Float.NEGATIVE_INFINITY;
+		
+		if (x1 <= x0 || y1 <= y0) return false;
+		out[0] = x0;
+		out[1] = y0;
+		out[2] = x1 - x0;
+		out[3] = y1 - y0;
+		return true;
+	}
+	
+	/**
+	 * Gets the region being repainted, during a partial repaint. Anything drawn outside it is clipped away, so it's
+	 * worth skipping anything that doesn't intersect it.
+	 * @return {x, y, width, height}, or null if the whole surface is being painted
+	 */
+	public int[] getRepaintBounds() {
+		return (repaintBounds == null) ? null : repaintBounds.clone();
+	}
+	
+	/**
+	 * Limits painting on the base surface to a rectangle, with the scissor test. Pass null to paint everywhere again.
+	 */
+	void setRepaintBounds(int[] bounds) {
+		flush();
+		if (bounds == null) {
+			this.repaintBounds = null;
+		} else {
+			System.arraycopy(bounds, 0, repaintBoundsStorage, 0, 4);
+			this.repaintBounds = repaintBoundsStorage;
+		}
+		if (targets.isEmpty()) applyScissor();
+		updateVisibleBounds();
+	}
+	
+	/**
+	 * Sets the persistent surface to paint into when no Framebuffer is pushed. Null means the window's own back
+	 * buffer. Painting still uses window coordinates, so a base target smaller than the window gets a scaled-down
+	 * copy. Takes effect at the next {@link #startDrawing()}.
+	 */
+	void setBaseTarget(Framebuffer framebuffer) {
+		this.baseTarget = framebuffer;
+	}
+	
+	private void applyScissor() {
+		if (repaintBounds == null) {
+			glDisable(GL_SCISSOR_TEST);
+		} else {
+			glEnable(GL_SCISSOR_TEST);
+			// Scissor rects count up from the bottom of the surface
+			glScissor(repaintBounds[0], target.getHeight() - repaintBounds[1] - repaintBounds[3], repaintBounds[2], repaintBounds[3]);
+		}
+	}
+	
+	/**
+	 * Redirects painting into a Framebuffer until the matching {@link #popTarget()}. Coordinates become relative to the
+	 * Framebuffer's top-left corner, and it's painted the right way up for being drawn back out with
+	 * {@link #drawImage drawImage}. Targets nest.
+	 */
+	public void pushTarget(Framebuffer framebuffer) {
+		flush();
+		int depth = targets.size();
+		if (depth == targetClips.length) {
+			targetMatrices = Arrays.copyOf(targetMatrices, targetMatrices.length * 2);
+			targetClips = Arrays.copyOf(targetClips, depth * 2);
+		}
+		System.arraycopy(matrix, 0, targetMatrices, depth * 6, 6);
+		targetClips[depth] = clip;
+		targets.push(framebuffer);
+		resetMatrix();
+		clip = null;
+		applyTarget();
+	}
+	
+	/**
+	 * Goes back to painting into whatever was the target before the last {@link #pushTarget(Framebuffer)}.
+	 */
+	public void popTarget() {
+		if (targets.isEmpty()) throw new IllegalStateException("No Framebuffer has been pushed.");
+		flush();
+		targets.pop();
+		int depth = targets.size();
+		System.arraycopy(targetMatrices, depth * 6, matrix, 0, 6);
+		clip = targetClips[depth];
+		targetClips[depth] = null;
+		applyTarget();
+	}
+	
+	private void applyTarget() {
+		Framebuffer framebuffer = targets.peek();
+		if (framebuffer == null) {
+			if (baseTarget != null) {
+				baseTarget.bind();
+			} else {
+				Framebuffer.unbind();
+				glViewport(0, 0, target.getWidth(), target.getHeight());
+			}
+			// The base target is never sampled as an image, only blitted, so it keeps the window's orientation
+			transform = orthoMatrix(target.getWidth(), target.getHeight());
+			queue.beginFrame(target.getWidth(), target.getHeight());
+			applyScissor();
+		} else {
+			glDisable(GL_SCISSOR_TEST);
+			framebuffer.bind();
+			// Flipped vertically, so that the top row painted lands in texture row 0, where drawImage expects it
+			transform = orthoMatrix(0, framebuffer.getWidth(), 0, framebuffer.getHeight(), -1, 1);
+			queue.beginFrame(framebuffer.getWidth(), framebuffer.getHeight());
+		}
+		updateVisibleBounds();
+	}
+	
+	private void updateVisibleBounds() {
+		float x0 = 0;
+		float y0 = 0;
+		float x1 = getWidth();
+		float y1 = getHeight();
+		if (targets.isEmpty() && repaintBounds != null) {
+			x0 = Math.max(x0, repaintBounds[0]);
+			y0 = Math.max(y0, repaintBounds[1]);
+			x1 = Math.min(x1, repaintBounds[0] + repaintBounds[2]);
+			y1 = Math.min(y1, repaintBounds[1] + repaintBounds[3]);
+		}
+		if (clip != null) {
+			x0 = Math.max(x0, clip[0]);
+			y0 = Math.max(y0, clip[1]);
+			x1 = Math.min(x1, clip[2]);
+			y1 = Math.min(y1, clip[3]);
+		}
+		visibleBounds[0] = x0;
+		visibleBounds[1] = y0;
+		visibleBounds[2] = x1;
+		visibleBounds[3] = y1;
+	}
+	
+	/**
+	 * Returns true if a rectangle, in the current transform's units, can't be seen at all: it's off the surface,
+	 * outside the repaint bounds, or clipped away. Draws like this are dropped before they're queued, and anyone
+	 * drawing many things can check first to skip preparing them.
+	 */
+	public boolean isCulled(float x, float y, float width, float height) {
+		float[] m = matrix;
+		float x1 = x + width;
+		float y1 = y + height;
+		// The bounding box of the transformed rectangle, without allocating
+		float minX = m[2] + Math.min(m[0] * x, m[0] * x1) + Math.min(m[1] * y, m[1] * y1);
+		float maxX = m[2] + Math.max(m[0] * x, m[0] * x1) + Math.max(m[1] * y, m[1] * y1);
+		float minY = m[5] + Math.min(m[3] * x, m[3] * x1) + Math.min(m[4] * y, m[4] * y1);
+		float maxY = m[5] + Math.max(m[3] * x, m[3] * x1) + Math.max(m[4] * y, m[4] * y1);
+		float[] v = visibleBounds;
+		return minX >= v[2] || maxX <= v[0] || minY >= v[3] || maxY <= v[1];
+	}
+	
+	/**
+	 * Gets how many draws were dropped since {@link #startDrawing()} because none of them could be seen.
+	 */
+	public int getCulledCount() {
+		return culledQuads;
+	}
+	
+	/**
+	 * Draws a retained Layer with its top-left corner at (x, y). If the Layer's cached contents are missing or
+	 * invalidated, {@code content} is called first to repaint them, with coordinates relative to the Layer; otherwise
+	 * it's skipped entirely, and the whole Layer costs one quad.
+	 */
+	public void drawLayer(LayerCache.Layer layer, int x, int y, Consumer<WindowPainter> content) {
+		Framebuffer framebuffer = layer.getCache().acquire(layer, this::flush);
+		if (!layer.isValid()) {
+			BlendMode outerBlendMode = blendMode;
+			int outerLayer = this.layer;
+			layer.pinned = true;
+			pushTarget(framebuffer);
+			try {
+				glClearColor(0, 0, 0, 0);
+				glClear(GL_COLOR_BUFFER_BIT);
+				content.accept(this);
+			} finally {
+				popTarget();
+				layer.pinned = false;
+				blendMode = outerBlendMode;
+				this.layer = outerLayer;
+			}
+			layer.markValid();
+		}
+		
+		// Painting into a transparent target leaves premultiplied color behind
+		BlendMode previous = blendMode;
+		blendMode = BlendMode.PREMULTIPLIED;
+		drawTintImage(framebuffer.getTexture(), x, y, 0, 0, layer.getWidth(), layer.getHeight(), 1, 1, 1, 1);
+		blendMode = previous;
+	}
+	
+	/**
+	 * Saves the current transform, to be restored by {@link #popTransform()}.
+	 */
+	public void pushTransform() {
+		if (matrixStack.length < (matrixDepth + 1) * 6) matrixStack = Arrays.copyOf(matrixStack, matrixStack.length * 2);
+		System.arraycopy(matrix, 0, matrixStack, matrixDepth * 6, 6);
+		matrixDepth++;
+	}
+	
+	public void popTransform() {
+		if (matrixDepth == 0) throw new IllegalStateException("popTransform without a matching pushTransform.");
+		matrixDepth--;
+		System.arraycopy(matrixStack, matrixDepth * 6, matrix, 0, 6);
+	}
+	
+	private void resetMatrix() {
+		matrix[0] = 1; matrix[1] = 0; matrix[2] = 0;
+		matrix[3] = 0; matrix[4] = 1; matrix[5] = 0;
+	}
+	
+	/**
+	 * Moves everything drawn afterwards by (x, y), in the current transform's units. Like all transforms, this is
+	 * applied to vertices as they're queued, so changing it never costs a flush or a uniform upload.
+	 */
+	public void translate(float x, float y) {
+		matrix[2] += matrix[0] * x + matrix[1] * y;
+		matrix[5] += matrix[3] * x + matrix[4] * y;
+	}
+	
+	public void scale(float x, float y) {
+		matrix[0] *= x;
+		matrix[3] *= x;
+		matrix[1] *= y;
+		matrix[4] *= y;
+	}
+	
+	/**
+	 * Rotates everything drawn afterwards clockwise (since y points down) around the current origin. Quads which are
+	 * rotated and straddle the edge of the clip rectangle fall back to the hardware scissor, which costs a flush
+	 * apiece, so rotation inside clipped regions is best kept to content that's fully visible.
+	 */
+	public void rotate(float radians) {
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+		float m00 = matrix[0] * cos + matrix[1] * sin;
+		float m01 = matrix[1] * cos - matrix[0] * sin;
+		float m10 = matrix[3] * cos + matrix[4] * sin;
+		float m11 = matrix[4] * cos - matrix[3] * sin;
+		matrix[0] = m00;
+		matrix[1] = m01;
+		matrix[3] = m10;
+		matrix[4] = m11;
+	}
+	
+	/**
+	 * Gets the current transform.
+	 * @return {m00, m01, m02, m10, m11, m12}, which maps (x, y) to (m00*x + m01*y + m02, m10*x + m11*y + m12)
+	 */
+	public float[] getTransform() {
+		return matrix.clone();
+	}
+	
+	/**
+	 * Narrows the clip rectangle to its intersection with the given one, in the current transform's units, until the
+	 * matching {@link #popClip()}. Clipping happens on the CPU by trimming quads and their texture coordinates, so
+	 * nested scroll views don't break batches. Under rotation, the clip is the bounding box of the rotated rectangle.
+	 */
+	public void pushClip(float x, float y, float width, float height) {
+		if (clipDepth == clipSlots.length) {
+			savedClips = Arrays.copyOf(savedClips, clipDepth * 2);
+			clipSlots = Arrays.copyOf(clipSlots, clipDepth * 2);
+			for(int i=clipDepth; i<clipSlots.length; i++) clipSlots[i] = new float[4];
+		}
+		savedClips[clipDepth] = clip;
+		float[] box = clipSlots[clipDepth];
+		clipDepth++;
+		
+		transformedBounds(x, y, x + width, y + height, box);
+		if (clip != null) {
+			box[0] = Math.max(box[0], clip[0]);
+			box[1] = Math.max(box[1], clip[1]);
+			box[2] = Math.min(box[2], clip[2]);
+			box[3] = Math.min(box[3], clip[3]);
+		}
+		clip = box;
+		updateVisibleBounds();
+	}
+	
+	public void popClip() {
+		if (clipDepth == 0) throw new IllegalStateException("popClip without a matching pushClip.");
+		clipDepth--;
+		clip = savedClips[clipDepth];
+		savedClips[clipDepth] = null;
+		updateVisibleBounds();
+	}
+	
+	/**
+	 * Gets the current clip rectangle in surface pixels, which ignores the current transform.
+	 * @return {x, y, width, height}, or null if nothing is clipped
+	 */
+	public float[] getClipBounds() {
+		if (clip == null) return null;
+		return new float[] { clip[0], clip[1], Math.max(0, clip[2] - clip[0]), Math.max(0, clip[3] - clip[1]) };
+	}
+	
+	private void transformedBounds(float x0, float y0, float x1, float y1, float[] out) {
+		float ax = matrix[0] * x0 + matrix[1] * y0 + matrix[2];
+		float ay = matrix[3] * x0 + matrix[4] * y0 + matrix[5];
+		float bx = matrix[0] * x1 + matrix[1] * y0 + matrix[2];
+		float by = matrix[3] * x1 + matrix[4] * y0 + matrix[5];
+		float cx = matrix[0] * x0 + matrix[1] * y1 + matrix[2];
+		float cy = matrix[3] * x0 + matrix[4] * y1 + matrix[5];
+		float dx = matrix[0] * x1 + matrix[1] * y1 + matrix[2];
+		float dy = matrix[3] * x1 + matrix[4] * y1 + matrix[5];
+		out[0] = Math.min(Math.min(ax, bx), Math.min(cx, dx));
+		out[1] = Math.min(Math.min(ay, by), Math.min(cy, dy));
+		out[2] = Math.max(Math.max(ax, bx), Math.max(cx, dx));
+		out[3] = Math.max(Math.max(ay, by), Math.max(cy, dy));
+	}
+	
+	/**
+	 * Turns deferred mode on or off. In the default, immediate mode, quads are drawn in exactly the order they're
+	 * requested, and consecutive quads are merged into one draw call only if they share a texture and blend mode.
+	 * 
+	 * <p>In deferred mode, quads are held until {@link #flush()} (which happens automatically at the end of
+	 * {@link Window#paint(java.util.function.Consumer)}), then sorted by layer, blend mode, shader, and texture. Order
+	 * is only preserved between quads in the same layer that overlap, so interleaved draws with different textures
+	 * collapse into a handful of draw calls. Anything on a higher {@link #setLayer(int) layer} is always drawn on top.
+	 */
+	public void setDeferred(boolean deferred) {
+		flush();
+		this.deferred = deferred;
+	}
+	
+	public boolean isDeferred() {
+		return deferred;
+	}
+	
+	/**
+	 * Sets the layer that subsequent draws go to. Layers only matter in deferred mode, where every quad on a higher
+	 * layer is drawn after every quad on a lower one. Layers must fit in a short.
+	 */
+	public void setLayer(int layer) {
+		this.layer = layer;
+	}
+	
+	public int getLayer() {
+		return layer;
+	}
+	
+	public void setBlendMode(BlendMode blendMode) {
+		this.blendMode = blendMode;
+	}
+	
+	public BlendMode getBlendMode() {
+		return blendMode;
+	}
+	
+	/**
+	 * Chooses where linear colors are converted to sRGB. By default, tint colors are encoded on the CPU as they're
+	 * queued, and textures and blending work on sRGB-encoded values, as they always have. When enabled,
+	 * GL_FRAMEBUFFER_SRGB is turned on instead: tints stay linear, blending happens in linear light, and the card encodes
+	 * each pixel as it's written to the window. For that to look right, images should be uploaded as
+	 * {@link TextureFormat#SRGB8_ALPHA8} so that sampling decodes them, which this painter does for images it uploads
+	 * itself. Offscreen targets in ordinary formats then hold linear color.
+	 */
+	public void setSrgbFramebuffer(boolean enabled) {
+		if (enabled == srgbFramebuffer) return;
+		flush();
+		srgbFramebuffer = enabled;
+		applySrgbFramebuffer();
+	}
+	
+	public boolean isSrgbFramebuffer() {
+		return srgbFramebuffer;
+	}
+	
+	private void applySrgbFramebuffer() {
+		if (srgbFramebuffer) {
+			glEnable(GL_FRAMEBUFFER_SRGB);
+		} else {
+			glDisable(GL_FRAMEBUFFER_SRGB);
+		}
+	}
+	
+	/**
+	 * Submits everything queued so far to the GPU. This happens automatically at the end of each paint and before each
+	 * frame is presented, but must be done by hand before mixing in raw GL calls that should be drawn on top of
+	 * painted content.
+	 */
+	public void flush() {
+		int count = queue.size();
+		if (count == 0) return;
+		
+		int[] order = queue.drawOrder(deferred);
+		if (staging.capacity() < count * DrawQueue.FLOATS_PER_QUAD) {
+			staging = MemoryUtil.memRealloc(staging, count * DrawQueue.FLOATS_PER_QUAD);
+		}
+		staging.clear();
+		float[] data = queue.vertexData();
+		for(int i=0; i<count; i++) {
+			staging.put(data, order[i] * DrawQueue.FLOATS_PER_QUAD, DrawQueue.FLOATS_PER_QUAD);
+		}
+		staging.flip();
+		
+		vertexArray.bind();
+		ensureQuadIndices(count);
+		vertexBuffer.setDynamicData(BufferTarget.ARRAY, staging);
+		
+		int boundProgram = -1;
+		BlendMode boundBlendMode = null;
+		GLResource boundTexture = null;
+		int runStart = 0;
+		for(int i=1; i<=count; i++) {
+			int first = order[runStart];
+			if (i < count) {
+				int cur = order[i];
+				if (queue.texture(cur) == queue.texture(first) && queue.blendMode(cur) == queue.blendMode(first) && queue.program(cur) == queue.program(first)) continue;
+			}
+			
+			if (queue.program(first) != boundProgram) {
+				boundProgram = queue.program(first);
+				bindProgram(boundProgram);
+			}
+			if (queue.blendMode(first) != boundBlendMode) {
+				boundBlendMode = queue.blendMode(first);
+				boundBlendMode.apply();
+			}
+			if (queue.texture(first) != boundTexture) {
+				boundTexture = queue.texture(first);
+				if (boundTexture instanceof TextureArray array) {
+					array.bindToUnit(0);
+				} else {
+					((Texture) boundTexture).bindToUnit(0);
+				}
+			}
+			glDrawElements(GL_TRIANGLES, (i - runStart) * 6, GL_UNSIGNED_INT, runStart * 6L * 4L);
+			runStart = i;
+		}
+		
+		queue.clear();
+		if (!transientTextures.isEmpty()) {
+			for(Texture texture : transientTextures) {
+				texture.destroy();
+			}
+			transientTextures.clear();
+		}
+	}
+	
+	private void bindProgram(int program) {
+		ShaderProgram selected = switch(program) {
+			case PROGRAM_SDF -> sdfShader;
+			case PROGRAM_ARRAY -> arrayShader;
+			default -> shader;
+		};
+		selected.bind();
+		selected.setUniform("materialTexture", 0);
+		glUniformMatrix4fv(glGetUniformLocation(selected.getHandle(), "transform"), true, transform);
+	}
+	
+	private void ensureQuadIndices(int quads) {
+		if (quads <= indexedQuads) return;
+		
+		int newQuads = Math.max(quads, indexedQuads * 2);
+		int[] indices = new int[newQuads * 6];
+		for(int i=0; i<newQuads; i++) {
+			int base = i * 4;
+			int o = i * 6;
+			indices[o    ] = base;
+			indices[o + 1] = base + 1;
+			indices[o + 2] = base + 3;
+			indices[o + 3] = base;
+			indices[o + 4] = base + 3;
+			indices[o + 5] = base + 2;
+		}
+		
+		vertexArray.bind();
+		indexBuffer.setStaticData(BufferTarget.ELEMENT_ARRAY, indices);
+		vertexArray.bindIndexBuffer(indexBuffer);
+		indexedQuads = newQuads;
+	}
+	
+	/**
+	 * Transforms and clips a rectangle, then queues it. The color must already be what the card blends with; see
+	 * {@link #encode(float, float)}.
+	 */
+	private void queueQuad(int program, GLResource texture, float textureLayer, float x0, float y0, float x1, float y1, float u0, float v0, float u1, float v1, float r, float g, float b, float a) {
+		float[] m = matrix;
+		if (m[1] == 0 && m[3] == 0) {
+			// Only scale and translation, so the quad stays an axis-aligned rectangle and can be clipped exactly
+			float left = m[0] * x0 + m[2];
+			float top = m[4] * y0 + m[5];
+			float right = m[0] * x1 + m[2];
+			float bottom = m[4] * y1 + m[5];
+			if (right < left) {
+				float swap = left; left = right; right = swap;
+				swap = u0; u0 = u1; u1 = swap;
+			}
+			if (bottom < top) {
+				float swap = top; top = bottom; bottom = swap;
+				swap = v0; v0 = v1; v1 = swap;
+			}
+			
+			float[] visible = visibleBounds;
+			if (left >= visible[2] || right <= visible[0] || top >= visible[3] || bottom <= visible[1]) {
+				culledQuads++;
+				return;
+			}
+			if (clip != null) {
+				float du = (u1 - u0) / (right - left);
+				float dv = (v1 - v0) / (bottom - top);
+				if (left < clip[0]) { u0 += du * (clip[0] - left); left = clip[0]; }
+				if (right > clip[2]) { u1 -= du * (right - clip[2]); right = clip[2]; }
+				if (top < clip[1]) { v0 += dv * (clip[1] - top); top = clip[1]; }
+				if (bottom > clip[3]) { v1 -= dv * (bottom - clip[3]); bottom = clip[3]; }
+			}
+			if (right <= left || bottom <= top) return;
+			
+			emitQuad(program, texture, textureLayer, left, top, right, top, left, bottom, right, bottom, left, top, right, bottom, u0, v0, u1, v1, r, g, b, a);
+			return;
+		}
+		
+		float ax = m[0] * x0 + m[1] * y0 + m[2];
+		float ay = m[3] * x0 + m[4] * y0 + m[5];
+		float bx = m[0] * x1 + m[1] * y0 + m[2];
+		float by = m[3] * x1 + m[4] * y0 + m[5];
+		float cx = m[0] * x0 + m[1] * y1 + m[2];
+		float cy = m[3] * x0 + m[4] * y1 + m[5];
+		float dx = m[0] * x1 + m[1] * y1 + m[2];
+		float dy = m[3] * x1 + m[4] * y1 + m[5];
+		float minX = Math.min(Math.min(ax, bx), Math.min(cx, dx));
+		float minY = Math.min(Math.min(ay, by), Math.min(cy, dy));
+		float maxX = Math.max(Math.max(ax, bx), Math.max(cx, dx));
+		float maxY = Math.max(Math.max(ay, by), Math.max(cy, dy));
+		
+		float[] visible = visibleBounds;
+		if (minX >= visible[2] || maxX <= visible[0] || minY >= visible[3] || maxY <= visible[1]) {
+			culledQuads++;
+			return;
+		}
+		if (clip == null || (minX >= clip[0] && maxX <= clip[2] && minY >= clip[1] && maxY <= clip[3])) {
+			emitQuad(program, texture, textureLayer, ax, ay, bx, by, cx, cy, dx, dy, minX, minY, maxX, maxY, u0, v0, u1, v1, r, g, b, a);
+		} else if (minX < clip[2] && maxX > clip[0] && minY < clip[3] && maxY > clip[1]) {
+			// A rotated quad straddling the clip edge can't be trimmed into another quad, so let the hardware do it
+			flush();
+			scissor(clip);
+			emitQuad(program, texture, textureLayer, ax, ay, bx, by, cx, cy, dx, dy,
+					Math.max(minX, clip[0]), Math.max(minY, clip[1]), Math.min(maxX, clip[2]), Math.min(maxY, clip[3]),
+					u0, v0, u1, v1, r, g, b, a);
+			flush();
+			if (targets.isEmpty()) {
+				applyScissor();
+			} else {
+				glDisable(GL_SCISSOR_TEST);
+			}
+		}
+	}
+	
+	/**
+	 * Enables the scissor test for a rectangle in surface pixels, respecting the repaint bounds of a partial repaint.
+	 */
+	private void scissor(float[] rect) {
+		int x0 = (int) Math.floor(rect[0]);
+		int y0 = (int) Math.floor(rect[1]);
+		int x1 = (int) Math.ceil(rect[2]);
+		int y1 = (int) Math.ceil(rect[3]);
+		glEnable(GL_SCISSOR_TEST);
+		if (targets.isEmpty()) {
+			if (repaintBounds != null) {
+				x0 = Math.max(x0, repaintBounds[0]);
+				y0 = Math.max(y0, repaintBounds[1]);
+				x1 = Math.min(x1, repaintBounds[0] + repaintBounds[2]);
+				y1 = Math.min(y1, repaintBounds[1] + repaintBounds[3]);
+			}
+			int surfaceHeight = target.getHeight();
+			if (baseTarget != null && (baseTarget.getWidth() != target.getWidth() || baseTarget.getHeight() != surfaceHeight)) {
+				// A scaled base target, as used for dynamic resolution, stands in for the window at a different size
+				float sx = baseTarget.getWidth() / (float) target.getWidth();
+				float sy = baseTarget.getHeight() / (float) surfaceHeight;
+				x0 = (int) Math.floor(x0 * sx);
+				y0 = (int) Math.floor(y0 * sy);
+				x1 = (int) Math.ceil(x1 * sx);
+				y1 = (int) Math.ceil(y1 * sy);
+				surfaceHeight = baseTarget.getHeight();
+			}
+			glScissor(x0, surfaceHeight - y1, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+		} else {
+			// Pushed targets are painted upside down, so their scissor rects already count from the top
+			glScissor(x0, y0, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+		}
+	}
+	
+	/**
+	 * Queues one quad whose corners are already in surface pixels, given top-left, top-right, bottom-left, and
+	 * bottom-right, along with their bounding box.
+	 */
+	private void emitQuad(int program, GLResource texture, float textureLayer,
+			float ax, float ay, float bx, float by, float cx, float cy, float dx, float dy,
+			float minX, float minY, float maxX, float maxY,
+			float u0, float v0, float u1, float v1, float r, float g, float b, float a) {
+		if (targets.isEmpty()) addDamage(minX, minY, maxX, maxY);
+		if (!deferred && queue.stateDiffers(texture, blendMode, program)) flush();
+		
+		int quad = queue.add(layer, blendMode, program, texture, minX, minY, maxX, maxY, deferred);
+		if (quad == -1) {
+			flush();
+			quad = queue.add(layer, blendMode, program, texture, minX, minY, maxX, maxY, deferred);
+		}
+		
+		queue.vertex(quad, 0, ax, ay, u0, v0, textureLayer, r, g, b, a);
+		queue.vertex(quad, 1, bx, by, u1, v0, textureLayer, r, g, b, a);
+		queue.vertex(quad, 2, cx, cy, u0, v1, textureLayer, r, g, b, a);
+		queue.vertex(quad, 3, dx, dy, u1, v1, textureLayer, r, g, b, a);
 	}
 	
 	@Override
 	public int getWidth() {
-		return target.getWidth();
+		Framebuffer framebuffer = targets.peek();
+		return (framebuffer != null) ? framebuffer.getWidth() : target.getWidth();
 	}
 
 	@Override
 	public int getHeight() {
-		return target.getHeight();
+		Framebuffer framebuffer = targets.peek();
+		return (framebuffer != null) ? framebuffer.getHeight() : target.getHeight();
 	}
 	
 	@Override
 	public void drawImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, float opacity) {
-		drawTintImage(image, destX, destY, srcX, srcY, width, height, new RGBColor(opacity, 1, 1, 1));
-		
+		drawTintImage(image, destX, destY, srcX, srcY, width, height, 1, 1, 1, opacity);
 	}
 
 	@Override
 	public void drawTintImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, RGBColor tintColor) {
+		drawTintImage(image, destX, destY, srcX, srcY, width, height, tintColor.r(), tintColor.g(), tintColor.b(), tintColor.alpha());
+	}
+	
+	/**
+	 * Draws a tinted image, with the tint packed as 0xAARRGGBB.
+	 */
+	public void drawTintImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, int argb) {
+		drawTintImageEncoded(image, destX, destY, srcX, srcY, width, height, red(argb), green(argb), blue(argb), alpha(argb));
+	}
+	
+	/**
+	 * Draws a tinted image, with the tint given as separate linear components. Like every overload here which takes primitive
+	 * colors, this allocates nothing once the image is a Texture.
+	 */
+	public void drawTintImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, float r, float g, float b, float a) {
+		drawTintImageEncoded(image, destX, destY, srcX, srcY, width, height, encode(r, a), encode(g, a), encode(b, a), a);
+	}
+	
+	private void drawTintImageEncoded(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, float r, float g, float b, float a) {
+		// Checked up front, so that an invisible image never costs a texture upload
+		if (isCulled(destX, destY, width, height)) {
+			culledQuads++;
+			return;
+		}
+		
 		Texture texture;
 		if (image instanceof Texture tex) {
 			texture = tex;
 		} else {
-			texture = new Texture();
+			// Kept alive until the quad using it has been flushed. Drawn 1:1, so it never needs mipmaps.
+			texture = srgbFramebuffer ? new Texture(TextureFormat.SRGB8_ALPHA8, image.getWidth(), image.getHeight(), 1) : new Texture();
+			texture.setFilter(TextureFilter.LINEAR, TextureFilter.LINEAR);
 			texture.setImage(image);
+			transientTextures.add(texture);
 		}
 		
-		shader.bind();
-		texture.bindToUnit(0);                // Texture unit 0
-		shader.setUniform("materialTexture", 0); // Same texture unit
-		vertexArray.bind();
-		vertexArray.bindData(0,
-			new float[] {
-				destX, destY,
-				destX+width, destY,
-				destX, destY+height,
-				destX+width, destY+height,
-			},
-			GLType.FLOAT_VEC2);
-		// TODO: These are linear, we should probably be giving the card SRGB data
-		vertexArray.bindData(1,
-			new float[] {
-				tintColor.r(), tintColor.g(), tintColor.b(), tintColor.alpha(),
-				tintColor.r(), tintColor.g(), tintColor.b(), tintColor.alpha(),
-				tintColor.r(), tintColor.g(), tintColor.b(), tintColor.alpha(),
-				tintColor.r(), tintColor.g(), tintColor.b(), tintColor.alpha()
-			},
-			GLType.FLOAT_VEC4);
-		
 		// Find uv's for pixel offsets into the texture
 		float u1 = srcX / (float) image.getWidth();
 		float v1 = srcY / (float) image.getHeight();
 		float u2 = (srcX + width) / (float) image.getWidth();
 		float v2 = (srcY + height) / (float) image.getHeight();
-		vertexArray.bindData(2, new float[] {
-				u1, v1,
-				u2, v1,
-				u1, v2,
-				u2, v2
-		}, GLType.FLOAT_VEC2);
-		// FIXME: Half-Floats do not seem to work right now.
-		
-		/*vertexArray.bindData(2,
-			new int[] {
-				HalfFloat.vecToHalfVec(new Vector2d(0, 0)),
-				HalfFloat.vecToHalfVec(new Vector2d(1, 0)),
-				HalfFloat.vecToHalfVec(new Vector2d(0, 1)),
-				HalfFloat.vecToHalfVec(new Vector2d(1, 1)),
-			},
-			GLType.HALF_VEC2);*/
-		vertexArray.bindIndices(3, new int[] { 0, 1, 3, 0, 3, 2 });
 		
-		glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_INT, 0);
+		queueQuad(PROGRAM_DEFAULT, texture, 0, destX, destY, destX + width, destY + height, u1, v1, u2, v2, r, g, b, a);
+	}
+	
+	/**
+	 * Draws a whole layer of a TextureArray with its top-left corner at (x, y).
+	 */
+	public void drawArrayImage(TextureArray array, int layer, float x, float y, RGBColor tintColor) {
+		drawArrayImage(array, layer, x, y, 0, 0, array.getWidth(), array.getHeight(), tintColor);
+	}
+	
+	/**
+	 * Draws part of one layer of a TextureArray. The layer travels with each vertex, so sprites drawn from any layers of
+	 * the same array, like every frame of an animation or every tile of a tileset, batch into a single draw call.
+	 */
+	public void drawArrayImage(TextureArray array, int layer, float destX, float destY, int srcX, int srcY, int width, int height, RGBColor tintColor) {
+		drawArrayImage(array, layer, destX, destY, srcX, srcY, width, height, tintColor.r(), tintColor.g(), tintColor.b(), tintColor.alpha());
+	}
+	
+	public void drawArrayImage(TextureArray array, int layer, float destX, float destY, int srcX, int srcY, int width, int height, int argb) {
+		drawArrayImageEncoded(array, layer, destX, destY, srcX, srcY, width, height, red(argb), green(argb), blue(argb), alpha(argb));
+	}
+	
+	public void drawArrayImage(TextureArray array, int layer, float destX, float destY, int srcX, int srcY, int width, int height, float r, float g, float b, float a) {
+		drawArrayImageEncoded(array, layer, destX, destY, srcX, srcY, width, height, encode(r, a), encode(g, a), encode(b, a), a);
+	}
+	
+	private void drawArrayImageEncoded(TextureArray array, int layer, float destX, float destY, int srcX, int srcY, int width, int height, float r, float g, float b, float a) {
+		if (layer < 0 || layer >= array.getLayers()) throw new IllegalArgumentException("Layer "+layer+" is out of range - the texture array has "+array.getLayers()+" layers.");
+		float u0 = srcX / (float) array.getWidth();
+		float v0 = srcY / (float) array.getHeight();
+		float u1 = (srcX + width) / (float) array.getWidth();
+		float v1 = (srcY + height) / (float) array.getHeight();
+		queueQuad(PROGRAM_ARRAY, array, layer, destX, destY, destX + width, destY + height, u0, v0, u1, v1, r, g, b, a);
+	}
+	
+	/**
+	 * Draws a string at its cache's native size, with the top of the first line at {@code y}. Newlines start a new line
+	 * back at {@code x}.
+	 */
+	public void drawString(GlyphCache cache, CharSequence text, float x, float y, RGBColor color) {
+		drawString(cache, text, x, y, cache.getPixelHeight(), color);
+	}
+	
+	public void drawString(GlyphCache cache, CharSequence text, float x, float y, int argb) {
+		drawString(cache, text, x, y, cache.getPixelHeight(), argb);
+	}
+	
+	/**
+	 * Draws a string at any size. Glyphs come from the cache's atlas, so after the first time a character is drawn this
+	 * costs one quad per glyph in the same batches as everything else, and a whole screen of text from one page is a
+	 * single draw call. Sizes other than the cache's native one look best with an {@link GlyphCache.Mode#SDF SDF} cache.
+	 * 
+	 * <p>If the cache has to evict an atlas page to fit a new glyph, everything queued so far is flushed first.
+	 */
+	public void drawString(GlyphCache cache, CharSequence text, float x, float y, float size, RGBColor color) {
+		drawString(cache, text, x, y, size, color.r(), color.g(), color.b(), color.alpha());
+	}
+	
+	/**
+	 * Draws a string with its color packed as 0xAARRGGBB.
+	 */
+	public void drawString(GlyphCache cache, CharSequence text, float x, float y, float size, int argb) {
+		drawStringEncoded(cache, text, x, y, size, red(argb), green(argb), blue(argb), alpha(argb));
+	}
+	
+	public void drawString(GlyphCache cache, CharSequence text, float x, float y, float size, float r, float g, float b, float a) {
+		drawStringEncoded(cache, text, x, y, size, encode(r, a), encode(g, a), encode(b, a), a);
+	}
+	
+	private void drawStringEncoded(GlyphCache cache, CharSequence text, float x, float y, float size, float r, float g, float b, float a) {
+		float scale = size / cache.getPixelHeight();
+		int program = (cache.getMode() == GlyphCache.Mode.SDF) ? PROGRAM_SDF : PROGRAM_DEFAULT;
+		// Coverage glyphs are only crisp when their texels land exactly on pixels
+		boolean snap = (cache.getMode() == GlyphCache.Mode.COVERAGE && scale == 1);
 		
-		if (!(image instanceof Texture)) {
-			texture.destroy();
+		float penX = x;
+		float baseline = y + cache.getAscent() * scale;
+		int previous = -1;
+		for(int i=0; i<text.length(); ) {
+			int codepoint = Character.codePointAt(text, i);
+			i += Character.charCount(codepoint);
+			if (codepoint == '\n') {
+				penX = x;
+				baseline += cache.getLineHeight() * scale;
+				previous = -1;
+				continue;
+			}
+			
+			GlyphCache.Glyph glyph = cache.getGlyph(codepoint, flushCallback);
+			if (previous != -1) penX += cache.getKerning(previous, glyph.index()) * scale;
+			previous = glyph.index();
+			
+			if (!glyph.isEmpty()) {
+				float x0 = (snap ? Math.round(penX) : penX) + glyph.xOffset() * scale;
+				float y0 = (snap ? Math.round(baseline) : baseline) + glyph.yOffset() * scale;
+				float x1 = x0 + glyph.width() * scale;
+				float y1 = y0 + glyph.height() * scale;
+				queueQuad(program, glyph.texture(), 0, x0, y0, x1, y1, glyph.u0(), glyph.v0(), glyph.u1(), glyph.v1(), r, g, b, a);
+			}
+			penX += glyph.advance() * scale;
 		}
 	}
 
@@ -176,6 +1039,10 @@ public class WindowPainter implements Painter, Destroyable {
 		fillRect(x, y, 1, 1, color);
 	}
 	
+	public void drawPixel(int x, int y, int argb) {
+		fillRect(x, y, 1, 1, argb);
+	}
+	
 	public static String unformInfo(ShaderProgram program) {
 		MemoryStack stack = MemoryStack.stackGet();
 		
@@ -267,50 +1134,73 @@ public class WindowPainter implements Painter, Destroyable {
 	
 	@Override
 	public void fillRect(int x, int y, int width, int height, RGBColor color) {
-		shader.bind();
-		whitePixel.bindToUnit(0);                // Texture unit 0
-		shader.setUniform("materialTexture", 0); // Same texture unit
-		vertexArray.bind();
-		vertexArray.bindData(0,
-			new float[] {
-				x, y,
-				x+width, y,
-				x, y+height,
-				x+width, y+height,
-			},
-			GLType.FLOAT_VEC2);
-		vertexArray.bindData(1,
-			new float[] {
-				color.r(), color.g(), color.b(), color.alpha(),
-				color.r(), color.g(), color.b(), color.alpha(),
-				color.r(), color.g(), color.b(), color.alpha(),
-				color.r(), color.g(), color.b(), color.alpha()
-			},
-			GLType.FLOAT_VEC4);
-		//vertexArray.bindData(2, new float[] {
-		//		0, 0,
-		//		1, 0,
-		//		0, 1,
-		//		1, 1
-		//}, GLType.FLOAT_VEC2);
-		
-		vertexArray.bindData(2,
-			new int[] {
-				HalfFloat.vecToHalfVec(new Vector2d(0, 0)),
-				HalfFloat.vecToHalfVec(new Vector2d(1, 0)),
-				HalfFloat.vecToHalfVec(new Vector2d(0, 1)),
-				HalfFloat.vecToHalfVec(new Vector2d(1, 1)),
-			},
-			GLType.HALF_VEC2);
-		vertexArray.bindIndices(3, new int[] { 0, 1, 3, 0, 3, 2 });
-		
-		glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_INT, 0);
+		fillRect(x, y, width, height, color.r(), color.g(), color.b(), color.alpha());
+	}
+	
+	/**
+	 * Fills a rectangle with a color packed as 0xAARRGGBB, without allocating anything.
+	 */
+	public void fillRect(int x, int y, int width, int height, int argb) {
+		fillRectEncoded(x, y, width, height, red(argb), green(argb), blue(argb), alpha(argb));
+	}
+	
+	public void fillRect(float x, float y, float width, float height, float r, float g, float b, float a) {
+		fillRectEncoded(x, y, width, height, encode(r, a), encode(g, a), encode(b, a), a);
+	}
+	
+	private void fillRectEncoded(float x, float y, float width, float height, float r, float g, float b, float a) {
+		// Every corner samples the center of the white pixel
+		queueQuad(PROGRAM_DEFAULT, whitePixel, 0, x, y, x + width, y + height, 0.5f, 0.5f, 0.5f, 0.5f, r, g, b, a);
+	}
+	
+	/**
+	 * Converts one linear color component into what the card blends with: sRGB-encoded, unless an sRGB framebuffer
+	 * encodes on write. Everything queued has been through this, or through the packed equivalents below.
+	 */
+	private float encode(float value, float a) {
+		if (srgbFramebuffer) return value;
+		if (blendMode == BlendMode.PREMULTIPLIED && a > 0) {
+			// Encode the color the tint stands for, not its already-scaled channels, so (a, a, a, a) still fades
+			return ColorConversion.linearToSrgb(value / a) * a;
+		}
+		return ColorConversion.linearToSrgb(value);
+	}
+	
+	private static float alpha(int argb) {
+		return (argb >>> 24) / 255f;
+	}
+	
+	private float red(int argb) {
+		return channel(argb >> 16);
+	}
+	
+	private float green(int argb) {
+		return channel(argb >> 8);
+	}
+	
+	private float blue(int argb) {
+		return channel(argb);
+	}
+	
+	/**
+	 * Converts one channel of a packed color. Packed colors are sRGB already, so unless an sRGB framebuffer wants linear
+	 * values, their bytes pass straight through.
+	 */
+	private float channel(int value) {
+		return srgbFramebuffer ? ColorConversion.srgbToLinear(value) : (value & 0xFF) / 255f;
 	}
 
 	@Override
 	public void destroy() {
+		for(Texture texture : transientTextures) {
+			texture.destroy();
+		}
+		transientTextures.clear();
 		vertexArray.destroy();
-		shader.destroy();
+		vertexBuffer.destroy();
+		indexBuffer.destroy();
+		MemoryUtil.memFree(staging);
+		// The shaders and white pixel belong to the ShareGroup, which destroys them along with its last Window
 	}
 	
 }
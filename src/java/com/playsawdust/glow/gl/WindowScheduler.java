@@ -0,0 +1,149 @@
+package com.playsawdust.glow.gl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.lwjgl.glfw.GLFW;
+
+/**
+ * Drives several Windows from one loop on the main thread, so that a tool with many viewports runs at the display's
+ * frame rate rather than a fraction of it.
+ *
+ * <p>Presenting each Window with vsync on makes every swap wait for its own refresh, so two Windows get half the frame
+ * rate, three a third, and so on. Instead, each {@link #runFrame()} paints every Window, then swaps them all with a
+ * swap interval of 0 except the last one which has a frame to swap, which alone waits for vsync. Events are polled
+ * once per frame, not once per Window.
+ *
+ * <pre>
+ * Window main = new Window("Editor");
+ * Window preview = new Window("Preview", main);
+ * WindowScheduler scheduler = new WindowScheduler();
+ * scheduler.add(main, this::paintEditor);
+ * scheduler.add(preview, this::paintPreview);
+ * while(scheduler.runFrame()) {}
+ * </pre>
+ *
+ * <p>Windows driven this way can't use a render thread, and their own {@link Window#setSwapInterval(int)} and
+ * {@link Window#setTargetFrameRate(int)} are overridden by the scheduler's. Only use a scheduler from the main thread.
+ */
+public class WindowScheduler {
+	private final List<Entry> entries = new ArrayList<>();
+	private int swapInterval = 1;
+	private long frameNanos = 0;
+	private long nextFrameDeadline = 0;
+	/** Which entries finished a frame with something to swap, reused from frame to frame */
+	private boolean[] finished = new boolean[0];
+	
+	/**
+	 * Adds a Window, to be painted by {@code paintMethod} every frame, after the Windows already added.
+	 */
+	public void add(Window window, Consumer<WindowPainter> paintMethod) {
+		if (window.isRenderThreadRunning()) throw new IllegalArgumentException("Windows with a render thread can't be scheduled.");
+		for(Entry entry : entries) {
+			if (entry.window == window) throw new IllegalArgumentException("This Window is already scheduled.");
+		}
+		entries.add(new Entry(window, paintMethod));
+	}
+	
+	/**
+	 * Stops scheduling a Window. It isn't destroyed.
+	 * @return true if the Window was scheduled
+	 */
+	public boolean remove(Window window) {
+		return entries.removeIf(entry -> entry.window == window);
+	}
+	
+	/**
+	 * Gets the scheduled Windows, in the order they're painted and swapped.
+	 */
+	public List<Window> getWindows() {
+		List<Window> windows = new ArrayList<>(entries.size());
+		for(Entry entry : entries) windows.add(entry.window);
+		return Collections.unmodifiableList(windows);
+	}
+	
+	/**
+	 * Sets the swap interval used for the last swap of each frame, which paces the whole loop. The others always swap
+	 * without waiting. 1, the default, is ordinary vsync.
+	 */
+	public void setSwapInterval(int interval) {
+		this.swapInterval = interval;
+	}
+	
+	/**
+	 * Caps the rate at which {@link #runFrame()} presents frames, independently of vsync. Pass zero to remove the cap.
+	 */
+	public void setTargetFrameRate(int framesPerSecond) {
+		frameNanos = (framesPerSecond <= 0) ? 0 : 1_000_000_000L / framesPerSecond;
+	}
+	
+	/**
+	 * Paints and presents one frame of every scheduled Window. Windows which have been asked to close are dropped
+	 * from the schedule first, without being destroyed; check {@link Window#shouldClose()} to find them.
+	 * @return false once there are no Windows left to schedule
+	 */
+	public boolean runFrame() {
+		entries.removeIf(entry -> entry.window.shouldClose());
+		if (entries.isEmpty()) return false;
+		
+		for(Entry entry : entries) {
+			entry.window.paint(entry.paintMethod);
+		}
+		
+		// Every frame is finished before any is swapped, so that the vsync wait goes to the last Window which really
+		// swaps. An idle Window under partial repaint doesn't, and if it held the wait, nothing would pace the loop.
+		if (finished.length < entries.size()) finished = new boolean[entries.size()];
+		int paced = -1;
+		for(int i=0; i<entries.size(); i++) {
+			finished[i] = entries.get(i).window.finishFrame();
+			if (finished[i]) paced = i;
+		}
+		for(int i=0; i<=paced; i++) {
+			if (!finished[i]) continue;
+			Window window = entries.get(i).window;
+			window.makeContextCurrent();
+			window.applySwapInterval((i == paced) ? swapInterval : 0);
+			window.swapFinishedFrame();
+		}
+		
+		if (paced != -1) {
+			GLFW.glfwPollEvents();
+			pace();
+		} else {
+			// Every Window is idle under partial repaint, so wait for something to happen instead of spinning
+			GLFW.glfwWaitEventsTimeout(0.25);
+			nextFrameDeadline = 0;
+		}
+		for(Entry entry : entries) {
+			entry.window.beginNextFrame();
+		}
+		return true;
+	}
+	
+	/**
+	 * Waits out the remainder of the current frame's time slot, the same way a single Window does.
+	 */
+	private void pace() {
+		long frameTime = frameNanos;
+		if (frameTime <= 0) {
+			nextFrameDeadline = 0;
+			return;
+		}
+		
+		long now = System.nanoTime();
+		if (nextFrameDeadline == 0 || now - nextFrameDeadline > frameTime) {
+			nextFrameDeadline = now + frameTime;
+			return;
+		}
+		
+		while((now = System.nanoTime()) < nextFrameDeadline) {
+			LockSupport.parkNanos(nextFrameDeadline - now);
+		}
+		nextFrameDeadline += frameTime;
+	}
+	
+	private record Entry(Window window, Consumer<WindowPainter> paintMethod) {}
+}
@@ -0,0 +1,27 @@
+package com.playsawdust.glow.gl.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives captured frames on a worker thread and writes them somewhere. See
+ * {@link com.playsawdust.glow.gl.FrameCapture FrameCapture}.
+ */
+public interface FrameEncoder extends Closeable {
+	/**
+	 * Encodes one frame.
+	 * @param frameNumber the number of frames presented before this one since capture started. Gaps mean frames were
+	 *                    dropped.
+	 * @param pixels      {@code width * height * 4} bytes of opaque RGBA, top row first. Only valid during this call.
+	 */
+	void encode(long frameNumber, int width, int height, ByteBuffer pixels) throws IOException;
+	
+	/**
+	 * Gets how many frames this encoder may be handed at once, from different threads. Encoders which write a single
+	 * stream return 1, which also guarantees frames arrive in order.
+	 */
+	default int maxConcurrency() {
+		return Integer.MAX_VALUE;
+	}
+}
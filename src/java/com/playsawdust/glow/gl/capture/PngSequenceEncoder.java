@@ -0,0 +1,39 @@
+package com.playsawdust.glow.gl.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.lwjgl.stb.STBImageWrite;
+
+/**
+ * Writes each frame to its own PNG file. Frames are independent, so any number can be encoded in parallel.
+ */
+public class PngSequenceEncoder implements FrameEncoder {
+	private final Path directory;
+	private final String pattern;
+	
+	/**
+	 * Creates a new PngSequenceEncoder.
+	 * @param directory where to write frames. Created if it doesn't exist.
+	 * @param pattern   a format string for each file name, given the frame number, like {@code "frame-%06d.png"}
+	 */
+	public PngSequenceEncoder(Path directory, String pattern) throws IOException {
+		this.directory = directory;
+		this.pattern = pattern;
+		Files.createDirectories(directory);
+	}
+	
+	@Override
+	public void encode(long frameNumber, int width, int height, ByteBuffer pixels) throws IOException {
+		Path file = directory.resolve(String.format(pattern, frameNumber));
+		if (!STBImageWrite.stbi_write_png(file.toAbsolutePath().toString(), width, height, 4, pixels, width * 4)) {
+			throw new IOException("Couldn't write "+file);
+		}
+	}
+	
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,78 @@
+package com.playsawdust.glow.gl.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes frames as an uncompressed YUV4MPEG2 stream, which ffmpeg and most video tools accept directly:
+ * {@code ffmpeg -i capture.y4m capture.mp4}.
+ *
+ * <p>Color is converted to BT.601 limited-range YCbCr with full-resolution chroma (4:4:4), so frames of any size can
+ * be written without resampling. Every frame must be the size of the first one.
+ */
+public class Y4mEncoder implements FrameEncoder {
+	private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+	
+	private final FileChannel channel;
+	private final int framesPerSecond;
+	private ByteBuffer planes = null;
+	private int width = -1;
+	private int height = -1;
+	
+	public Y4mEncoder(Path file, int framesPerSecond) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.framesPerSecond = framesPerSecond;
+	}
+	
+	@Override
+	public void encode(long frameNumber, int width, int height, ByteBuffer pixels) throws IOException {
+		if (this.width == -1) {
+			this.width = width;
+			this.height = height;
+			String header = "YUV4MPEG2 W"+width+" H"+height+" F"+framesPerSecond+":1 Ip A1:1 C444\n";
+			writeFully(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+			planes = ByteBuffer.allocateDirect(6 + width * height * 3);
+		} else if (width != this.width || height != this.height) {
+			throw new IOException("Frame is "+width+"x"+height+", but this stream is "+this.width+"x"+this.height+".");
+		}
+		
+		int count = width * height;
+		planes.clear();
+		planes.put(FRAME_HEADER);
+		int yStart = FRAME_HEADER.length;
+		int uStart = yStart + count;
+		int vStart = uStart + count;
+		for(int i=0; i<count; i++) {
+			int r = pixels.get(i * 4) & 0xFF;
+			int g = pixels.get(i * 4 + 1) & 0xFF;
+			int b = pixels.get(i * 4 + 2) & 0xFF;
+			// BT.601 in 8.8 fixed point, scaled to the 16-235 / 16-240 ranges
+			planes.put(yStart + i, (byte) (((  66 * r + 129 * g +  25 * b + 128) >> 8) +  16));
+			planes.put(uStart + i, (byte) ((( -38 * r -  74 * g + 112 * b + 128) >> 8) + 128));
+			planes.put(vStart + i, (byte) ((( 112 * r -  94 * g -  18 * b + 128) >> 8) + 128));
+		}
+		planes.position(0).limit(6 + count * 3);
+		writeFully(planes);
+	}
+	
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	/** Only one frame may be written at a time, so that they land in the file in order. */
+	@Override
+	public int maxConcurrency() {
+		return 1;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
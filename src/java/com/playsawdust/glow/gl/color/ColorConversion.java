@@ -0,0 +1,164 @@
+package com.playsawdust.glow.gl.color;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts colors between sRGB and linear light, premultiplies and unpremultiplies alpha, and swaps between BGRA and
+ * RGBA byte orders, either one value at a time or in bulk over rows of packed 0xAARRGGBB pixels.
+ *
+ * <p>RGBColor components are linear, while image data, packed colors, and the bytes in an ordinary framebuffer are
+ * sRGB-encoded. Single values convert through lookup tables, so they're cheap enough to do for every draw call without
+ * calling {@code Math.pow}. Bulk conversions run on the Vector API where it's available (see
+ * {@link ColorKernel#create()}), and alpha is never touched by the sRGB conversions.
+ *
+ * <p>Bulk conversions between sRGB and 8-bit linear values lose precision in the darks, since 8 bits aren't enough to
+ * store linear light. Use them for intermediate results, not for storage; the float conversions don't have this
+ * problem.
+ */
+public final class ColorConversion {
+	/** Resolution of the linear-to-sRGB tables, which is plenty for 8-bit output */
+	private static final int LINEAR_STEPS = 4096;
+	
+	private static final float[] SRGB_TO_LINEAR = new float[256];
+	private static final float[] LINEAR_TO_SRGB = new float[LINEAR_STEPS + 1];
+	static final int[] SRGB_TO_LINEAR_8 = new int[256];
+	static final int[] LINEAR_TO_SRGB_8 = new int[256];
+	private static final int[] LINEAR_STEPS_TO_SRGB_8 = new int[LINEAR_STEPS + 1];
+	
+	private static final ColorKernel KERNEL = ColorKernel.create();
+	
+	static {
+		for(int i=0; i<256; i++) {
+			float linear = decode(i / 255f);
+			SRGB_TO_LINEAR[i] = linear;
+			SRGB_TO_LINEAR_8[i] = Math.round(linear * 255);
+			LINEAR_TO_SRGB_8[i] = Math.round(encode(i / 255f) * 255);
+		}
+		for(int i=0; i<=LINEAR_STEPS; i++) {
+			float srgb = encode(i / (float) LINEAR_STEPS);
+			LINEAR_TO_SRGB[i] = srgb;
+			LINEAR_STEPS_TO_SRGB_8[i] = Math.round(srgb * 255);
+		}
+	}
+	
+	private ColorConversion() {}
+	
+	/**
+	 * Converts one 8-bit sRGB channel value to a linear value from 0 to 1.
+	 */
+	public static float srgbToLinear(int value) {
+		return SRGB_TO_LINEAR[value & 0xFF];
+	}
+	
+	/**
+	 * Converts a linear value to an sRGB-encoded value from 0 to 1. Values outside 0-1 are clamped.
+	 */
+	public static float linearToSrgb(float value) {
+		return LINEAR_TO_SRGB[step(value)];
+	}
+	
+	/**
+	 * Converts a linear value to an 8-bit sRGB channel value. Values outside 0-1 are clamped.
+	 */
+	public static int linearToSrgb8(float value) {
+		return LINEAR_STEPS_TO_SRGB_8[step(value)];
+	}
+	
+	private static int step(float value) {
+		// NaN lands on zero
+		if (!(value > 0)) return 0;
+		if (value >= 1) return LINEAR_STEPS;
+		return (int) (value * LINEAR_STEPS + 0.5f);
+	}
+	
+	/**
+	 * Converts sRGB-encoded pixels to 8-bit linear values, in place.
+	 */
+	public static void toLinear(int[] pixels, int offset, int length) {
+		check(pixels.length, offset, length);
+		KERNEL.toLinear(pixels, offset, length);
+	}
+	
+	/**
+	 * Converts 8-bit linear pixels to sRGB, in place. Used to bring back anything rendered into a linear target.
+	 */
+	public static void toSrgb(int[] pixels, int offset, int length) {
+		check(pixels.length, offset, length);
+		KERNEL.toSrgb(pixels, offset, length);
+	}
+	
+	/**
+	 * Converts packed sRGB pixels to linear floats, in RGBA order, four to a pixel, for uploading into a floating-point
+	 * texture like {@link com.playsawdust.glow.gl.TextureFormat#RGBA16F}.
+	 * @param dstOffset   the index in {@code dst} of the first pixel's red value
+	 * @param premultiply true to multiply each pixel's linear color by its alpha
+	 */
+	public static void toLinear(int[] src, int srcOffset, float[] dst, int dstOffset, int length, boolean premultiply) {
+		check(src.length, srcOffset, length);
+		checkFloats(dst.length, dstOffset, length);
+		KERNEL.toLinear(src, srcOffset, dst, dstOffset, length, premultiply);
+	}
+	
+	/**
+	 * Converts linear floats, in RGBA order, four to a pixel, back to packed sRGB pixels. Values outside 0-1 are clamped.
+	 * @param srcOffset     the index in {@code src} of the first pixel's red value
+	 * @param unpremultiply true to divide each pixel's color by its alpha first. Fully transparent pixels become 0.
+	 */
+	public static void toSrgb(float[] src, int srcOffset, int[] dst, int dstOffset, int length, boolean unpremultiply) {
+		checkFloats(src.length, srcOffset, length);
+		check(dst.length, dstOffset, length);
+		KERNEL.toSrgb(src, srcOffset, dst, dstOffset, length, unpremultiply);
+	}
+	
+	/**
+	 * Multiplies each pixel's color by its alpha, in place, for drawing with {@link com.playsawdust.glow.gl.BlendMode#PREMULTIPLIED}.
+	 */
+	public static void premultiply(int[] pixels, int offset, int length) {
+		check(pixels.length, offset, length);
+		KERNEL.premultiply(pixels, offset, length);
+	}
+	
+	/**
+	 * Divides each pixel's color by its alpha, in place, undoing {@link #premultiply(int[], int, int)} as closely as
+	 * 8 bits allow. Fully transparent pixels become 0.
+	 */
+	public static void unpremultiply(int[] pixels, int offset, int length) {
+		check(pixels.length, offset, length);
+		KERNEL.unpremultiply(pixels, offset, length);
+	}
+	
+	/**
+	 * Swaps the red and blue channels of each pixel, in place, converting between 0xAARRGGBB and 0xAABBGGRR.
+	 */
+	public static void swapRedBlue(int[] pixels, int offset, int length) {
+		check(pixels.length, offset, length);
+		KERNEL.swapRedBlue(pixels, offset, length);
+	}
+	
+	/**
+	 * Converts {@code length} pixels of 4-byte RGBA to BGRA or back, in place, starting {@code offset} bytes into the
+	 * buffer, regardless of its position. Use this to turn the RGBA rows most image decoders produce into the BGRA that
+	 * {@link com.playsawdust.glow.gl.TextureFormat#RGBA8} uploads. Works on any buffer, but direct ones, like those from
+	 * MemoryUtil or a readback, are fastest.
+	 */
+	public static void swapRedBlue(ByteBuffer pixels, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length * 4L > pixels.capacity()) throw new IndexOutOfBoundsException(length+" pixels at byte "+offset+" are out of bounds for a "+pixels.capacity()+" byte buffer.");
+		KERNEL.swapRedBlue(pixels, offset, length);
+	}
+	
+	private static void check(int size, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > size) throw new IndexOutOfBoundsException("Range "+offset+"+"+length+" is out of bounds for "+size+" pixels.");
+	}
+	
+	private static void checkFloats(int size, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length * 4L > size) throw new IndexOutOfBoundsException(length+" pixels at index "+offset+" are out of bounds for "+size+" floats.");
+	}
+	
+	private static float decode(float srgb) {
+		return (srgb <= 0.04045f) ? srgb / 12.92f : (float) Math.pow((srgb + 0.055) / 1.055, 2.4);
+	}
+	
+	private static float encode(float linear) {
+		return (linear <= 0.0031308f) ? linear * 12.92f : (float) (1.055 * Math.pow(linear, 1 / 2.4) - 0.055);
+	}
+}
@@ -0,0 +1,51 @@
+package com.playsawdust.glow.gl.color;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk conversions over runs of packed 0xAARRGGBB pixels. See {@link ColorConversion} for what each one means.
+ */
+interface ColorKernel {
+	void toLinear(int[] pixels, int offset, int length);
+	
+	void toSrgb(int[] pixels, int offset, int length);
+	
+	/**
+	 * Converts {@code length} packed sRGB pixels to linear RGBA floats, four per pixel.
+	 */
+	void toLinear(int[] src, int srcOffset, float[] dst, int dstOffset, int length, boolean premultiply);
+	
+	/**
+	 * Converts {@code length} pixels of linear RGBA floats, four per pixel, to packed sRGB.
+	 */
+	void toSrgb(float[] src, int srcOffset, int[] dst, int dstOffset, int length, boolean unpremultiply);
+	
+	void premultiply(int[] pixels, int offset, int length);
+	
+	void unpremultiply(int[] pixels, int offset, int length);
+	
+	void swapRedBlue(int[] pixels, int offset, int length);
+	
+	/**
+	 * Swaps the first and third byte of each 4-byte pixel in a buffer, starting {@code offset} bytes in. Offsets are
+	 * absolute, regardless of the buffer's position.
+	 */
+	void swapRedBlue(ByteBuffer pixels, int offset, int length);
+	
+	/**
+	 * Gets the fastest kernel this JVM can run. The Vector API implementation is used when the
+	 * {@code jdk.incubator.vector} module has been added (with {@code --add-modules jdk.incubator.vector}) and the
+	 * {@code glow.color.vector} system property isn't set to false; otherwise, the scalar one.
+	 */
+	static ColorKernel create() {
+		boolean allowed = !"false".equals(System.getProperty("glow.color.vector"));
+		if (allowed && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (ColorKernel) Class.forName("com.playsawdust.glow.gl.color.VectorColorKernel").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Fall through to the scalar path
+			}
+		}
+		return new ScalarColorKernel();
+	}
+}
@@ -0,0 +1,122 @@
+package com.playsawdust.glow.gl.color;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The portable ColorKernel, one pixel at a time. Also serves as the tail loop of {@link VectorColorKernel}, so both
+ * produce identical results.
+ */
+final class ScalarColorKernel implements ColorKernel {
+	@Override
+	public void toLinear(int[] pixels, int offset, int length) {
+		lookup(pixels, offset, length, ColorConversion.SRGB_TO_LINEAR_8);
+	}
+	
+	@Override
+	public void toSrgb(int[] pixels, int offset, int length) {
+		lookup(pixels, offset, length, ColorConversion.LINEAR_TO_SRGB_8);
+	}
+	
+	private static void lookup(int[] pixels, int offset, int length, int[] table) {
+		for(int i=offset; i<offset + length; i++) {
+			int p = pixels[i];
+			pixels[i] = (p & 0xFF000000) | (table[(p >>> 16) & 0xFF] << 16) | (table[(p >>> 8) & 0xFF] << 8) | table[p & 0xFF];
+		}
+	}
+	
+	@Override
+	public void toLinear(int[] src, int srcOffset, float[] dst, int dstOffset, int length, boolean premultiply) {
+		for(int i=0; i<length; i++) {
+			int p = src[srcOffset + i];
+			float a = (p >>> 24) / 255f;
+			float scale = premultiply ? a : 1;
+			int d = dstOffset + i * 4;
+			dst[d] = ColorConversion.srgbToLinear(p >>> 16) * scale;
+			dst[d + 1] = ColorConversion.srgbToLinear(p >>> 8) * scale;
+			dst[d + 2] = ColorConversion.srgbToLinear(p) * scale;
+			dst[d + 3] = a;
+		}
+	}
+	
+	@Override
+	public void toSrgb(float[] src, int srcOffset, int[] dst, int dstOffset, int length, boolean unpremultiply) {
+		for(int i=0; i<length; i++) {
+			int s = srcOffset + i * 4;
+			float a = src[s + 3];
+			// NaN lands on zero, like the color channels
+			int alpha = (a > 0) ? Math.round(Math.min(a, 1) * 255) : 0;
+			float scale = 1;
+			if (unpremultiply) {
+				if (alpha == 0) {
+					dst[dstOffset + i] = 0;
+					continue;
+				}
+				scale = 1 / a;
+			}
+			dst[dstOffset + i] = (alpha << 24)
+					| (ColorConversion.linearToSrgb8(src[s] * scale) << 16)
+					| (ColorConversion.linearToSrgb8(src[s + 1] * scale) << 8)
+					| ColorConversion.linearToSrgb8(src[s + 2] * scale);
+		}
+	}
+	
+	@Override
+	public void premultiply(int[] pixels, int offset, int length) {
+		for(int i=offset; i<offset + length; i++) {
+			int p = pixels[i];
+			int a = p >>> 24;
+			if (a == 255) continue;
+			pixels[i] = (a << 24) | (mul((p >>> 16) & 0xFF, a) << 16) | (mul((p >>> 8) & 0xFF, a) << 8) | mul(p & 0xFF, a);
+		}
+	}
+	
+	@Override
+	public void unpremultiply(int[] pixels, int offset, int length) {
+		for(int i=offset; i<offset + length; i++) {
+			int p = pixels[i];
+			int a = p >>> 24;
+			if (a == 255) continue;
+			if (a == 0) {
+				pixels[i] = 0;
+				continue;
+			}
+			pixels[i] = (a << 24) | (div((p >>> 16) & 0xFF, a) << 16) | (div((p >>> 8) & 0xFF, a) << 8) | div(p & 0xFF, a);
+		}
+	}
+	
+	@Override
+	public void swapRedBlue(int[] pixels, int offset, int length) {
+		for(int i=offset; i<offset + length; i++) {
+			pixels[i] = swap(pixels[i]);
+		}
+	}
+	
+	@Override
+	public void swapRedBlue(ByteBuffer pixels, int offset, int length) {
+		for(int i=0; i<length; i++) {
+			int index = offset + i * 4;
+			byte first = pixels.get(index);
+			pixels.put(index, pixels.get(index + 2));
+			pixels.put(index + 2, first);
+		}
+	}
+	
+	static int swap(int p) {
+		return (p & 0xFF00FF00) | ((p >>> 16) & 0xFF) | ((p & 0xFF) << 16);
+	}
+	
+	/**
+	 * Multiplies two 0-255 values as if they were 0-1 fractions, rounding to nearest, without a division.
+	 */
+	static int mul(int x, int y) {
+		int t = x * y + 128;
+		return (t + (t >>> 8)) >>> 8;
+	}
+	
+	/**
+	 * Divides a 0-255 value by a nonzero 0-255 alpha as if both were 0-1 fractions, rounding to nearest.
+	 */
+	static int div(int x, int a) {
+		return Math.min(255, (x * 255 + (a >> 1)) / a);
+	}
+}
@@ -0,0 +1,236 @@
+package com.playsawdust.glow.gl.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.playsawdust.glow.gl.GLType;
+import com.playsawdust.glow.gl.TextureCache;
+
+/**
+ * An on-disk cache of meshes which have already been optimized and packed, so that a warm start skips parsing the model,
+ * {@link MeshOptimizer}, and quantization entirely.
+ *
+ * <p>This works like {@link TextureCache}: each entry is one file named after a key, usually the SHA-256 of the source
+ * file's bytes. On a hit, the file is memory-mapped and the vertex and index data are uploaded straight from the
+ * mapping. On a miss, the decoder runs, and the mesh is optimized, packed, uploaded, and written out for next time.
+ *
+ * <pre>
+ * MeshCache cache = new MeshCache(Path.of("cache/meshes"), Quantization.FLOAT, Quantization.SNORM8, Quantization.HALF);
+ * byte[] obj = Files.readAllBytes(path);
+ * StaticMesh mesh = cache.load(obj, () -&gt; parseObj(obj));
+ * </pre>
+ *
+ * <p>Files are written in native byte order, so that they can be handed to the GPU without conversion; an entry
+ * written on a machine of the other byte order fails the magic number check and is simply rebuilt. Uploading must
+ * happen on a thread with a GL context current, but {@link #read(String)} and {@link #put(String, PackedMesh)} only
+ * touch the disk.
+ */
+public class MeshCache {
+	/** "GLMS" in little-endian order; appears reversed on big-endian machines */
+	private static final int MAGIC = 0x534D4C47;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int ATTRIBUTE_SIZE = 8;
+	private static final String EXTENSION = ".glmesh";
+	
+	private final Path directory;
+	private final Quantization[] quantizations;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile IOException lastError = null;
+	
+	/**
+	 * Creates a cache which stores its entries in the given directory, creating it if needed.
+	 * @param quantizations How to store each attribute of decoded meshes, in order
+	 */
+	public MeshCache(Path directory, Quantization... quantizations) throws IOException {
+		if (quantizations.length == 0) throw new IllegalArgumentException("A mesh needs at least one attribute.");
+		Files.createDirectories(directory);
+		this.directory = directory;
+		this.quantizations = quantizations.clone();
+	}
+	
+	/**
+	 * Gets a mesh for some source data, from the cache if possible, or else by decoding, optimizing and packing it and
+	 * storing the result. Failing to store an entry isn't fatal; the mesh is still returned, and the error is kept for
+	 * {@link #getLastError()}.
+	 * @param source  the encoded bytes of the model. Only used as the cache key.
+	 * @param decoder decodes the source into a mesh, on a miss. Positions must be the first attribute.
+	 */
+	public StaticMesh load(byte[] source, Supplier<MeshData> decoder) {
+		// Entries packed with different settings mustn't collide, so the settings are part of the key
+		StringBuilder key = new StringBuilder(TextureCache.hash(source));
+		for(Quantization quantization : quantizations) {
+			key.append('-').append(quantization.name().toLowerCase(Locale.ROOT));
+		}
+		StaticMesh mesh = get(key.toString());
+		if (mesh != null) return mesh;
+		
+		PackedMesh packed = PackedMesh.pack(MeshOptimizer.optimize(decoder.get()), quantizations);
+		try {
+			put(key.toString(), packed);
+		} catch (IOException ex) {
+			lastError = ex;
+		}
+		return packed.upload();
+	}
+	
+	/**
+	 * Loads a cached mesh by key and uploads it. Entries which are truncated, from an older version, or otherwise
+	 * unreadable are deleted and treated as missing.
+	 * @return the mesh, or null if there is no usable entry
+	 */
+	public StaticMesh get(String key) {
+		PackedMesh packed = read(key);
+		return (packed == null) ? null : packed.upload();
+	}
+	
+	/**
+	 * Maps a cached mesh by key without uploading it, so that the disk access can happen away from the GL thread.
+	 * @return a PackedMesh backed by the mapped file, or null if there is no usable entry
+	 */
+	public PackedMesh read(String key) {
+		Path file = fileFor(key);
+		if (!Files.isRegularFile(file)) {
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel closes, and is unmapped once it's garbage
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException ex) {
+			lastError = ex;
+			misses.incrementAndGet();
+			return null;
+		}
+		mapped.order(ByteOrder.nativeOrder());
+		
+		PackedMesh mesh = parse(mapped);
+		if (mesh == null) {
+			misses.incrementAndGet();
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException ex) {
+				lastError = ex;
+			}
+			return null;
+		}
+		hits.incrementAndGet();
+		return mesh;
+	}
+	
+	private PackedMesh parse(ByteBuffer data) {
+		if (data.capacity() < HEADER_SIZE) return null;
+		if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) return null;
+		int vertexCount = data.getInt(8);
+		int indexCount = data.getInt(12);
+		int attributeCount = data.getInt(16);
+		if (vertexCount < 0 || indexCount < 0 || indexCount % 3 != 0) return null;
+		if (attributeCount <= 0 || data.capacity() < HEADER_SIZE + (long) attributeCount * ATTRIBUTE_SIZE) return null;
+		
+		Quantization[] quantizations = new Quantization[attributeCount];
+		GLType[] types = new GLType[attributeCount];
+		long stride = 0;
+		for(int i=0; i<attributeCount; i++) {
+			int ordinal = data.getInt(HEADER_SIZE + i * ATTRIBUTE_SIZE);
+			int components = data.getInt(HEADER_SIZE + i * ATTRIBUTE_SIZE + 4);
+			if (ordinal < 0 || ordinal >= Quantization.values().length) return null;
+			quantizations[i] = Quantization.values()[ordinal];
+			types[i] = GLType.of(quantizations[i].primitiveType(), components);
+			if (types[i] == null) return null;
+			stride += PackedMesh.align(types[i].stride());
+		}
+		
+		int vertexStart = HEADER_SIZE + attributeCount * ATTRIBUTE_SIZE;
+		long vertexSize = vertexCount * stride;
+		long indexSize = (long) indexCount * PackedMesh.indexTypeFor(vertexCount).bytes();
+		if (data.capacity() != vertexStart + vertexSize + indexSize) return null;
+		
+		ByteBuffer vertexData = data.slice(vertexStart, (int) vertexSize).order(ByteOrder.nativeOrder());
+		ByteBuffer indexData = data.slice((int) (vertexStart + vertexSize), (int) indexSize).order(ByteOrder.nativeOrder());
+		return new PackedMesh(quantizations, types, vertexCount, indexCount, vertexData, indexData);
+	}
+	
+	/**
+	 * Stores a packed mesh under the given key, replacing any existing entry.
+	 */
+	public void put(String key, PackedMesh mesh) throws IOException {
+		int attributeCount = mesh.getAttributeCount();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + attributeCount * ATTRIBUTE_SIZE).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC).putInt(VERSION).putInt(mesh.getVertexCount()).putInt(mesh.getIndexCount()).putInt(attributeCount).putInt(0);
+		for(int i=0; i<attributeCount; i++) {
+			header.putInt(mesh.getQuantization(i).ordinal()).putInt(mesh.getType(i).primitiveCount());
+		}
+		header.flip();
+		
+		Path temp = Files.createTempFile(directory, key, ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				writeFully(channel, header);
+				writeFully(channel, mesh.getVertexData());
+				writeFully(channel, mesh.getIndexData());
+			}
+			
+			try {
+				Files.move(temp, fileFor(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, fileFor(key), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * Deletes a cached entry, if there is one.
+	 */
+	public void remove(String key) throws IOException {
+		Files.deleteIfExists(fileFor(key));
+	}
+	
+	public Path getDirectory() {
+		return directory;
+	}
+	
+	/** Gets how many lookups have been served from the cache. */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/** Gets how many lookups found no usable entry. */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Gets the most recent error from reading or writing an entry which {@link #load(byte[], Supplier)} recovered
+	 * from, or null if there hasn't been one.
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+	
+	private Path fileFor(String key) {
+		return directory.resolve(key + EXTENSION);
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.playsawdust.glow.gl.mesh;
+
+import com.playsawdust.glow.gl.GLPrimitiveType;
+import com.playsawdust.glow.gl.GLType;
+
+/**
+ * An indexed triangle mesh on the CPU, with interleaved float vertices, as it comes out of a model loader. This is the
+ * input to {@link MeshOptimizer} and {@link PackedMesh}; the arrays are owned by the MeshData and shouldn't be changed
+ * once it's created.
+ */
+public class MeshData {
+	private final GLType[] attributes;
+	private final int floatsPerVertex;
+	private final float[] vertices;
+	private final int[] indices;
+	
+	/**
+	 * Creates a new MeshData.
+	 * @param vertices   Interleaved vertex data, laid out as described by the attributes
+	 * @param indices    Triangle indices, three per triangle
+	 * @param attributes The layout of each vertex. All attributes must be float-based.
+	 */
+	public MeshData(float[] vertices, int[] indices, GLType... attributes) {
+		if (attributes.length == 0) throw new IllegalArgumentException("A mesh needs at least one attribute.");
+		int floats = 0;
+		for(GLType type : attributes) {
+			if (type.primitiveType() != GLPrimitiveType.FLOAT) throw new IllegalArgumentException("MeshData attributes must be float-based, but got "+type+".");
+			floats += type.primitiveCount();
+		}
+		if (vertices.length % floats != 0) throw new IllegalArgumentException("Vertex data must be a multiple of "+floats+" floats.");
+		if (indices.length % 3 != 0) throw new IllegalArgumentException("Index data must be a multiple of 3 indices.");
+		int vertexCount = vertices.length / floats;
+		for(int index : indices) {
+			if (index < 0 || index >= vertexCount) throw new IllegalArgumentException("Index "+index+" is out of range for "+vertexCount+" vertices.");
+		}
+		
+		this.attributes = attributes.clone();
+		this.floatsPerVertex = floats;
+		this.vertices = vertices;
+		this.indices = indices;
+	}
+	
+	public GLType[] getAttributes() {
+		return attributes.clone();
+	}
+	
+	public int getAttributeCount() {
+		return attributes.length;
+	}
+	
+	public GLType getAttribute(int index) {
+		return attributes[index];
+	}
+	
+	public int getFloatsPerVertex() {
+		return floatsPerVertex;
+	}
+	
+	public int getVertexCount() {
+		return vertices.length / floatsPerVertex;
+	}
+	
+	public int getTriangleCount() {
+		return indices.length / 3;
+	}
+	
+	public float[] getVertices() {
+		return vertices;
+	}
+	
+	public int[] getIndices() {
+		return indices;
+	}
+	
+	/**
+	 * Creates a copy of this mesh with different index data, sharing the same vertices.
+	 */
+	public MeshData withIndices(int[] indices) {
+		return new MeshData(vertices, indices, attributes);
+	}
+}
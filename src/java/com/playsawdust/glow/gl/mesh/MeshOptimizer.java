@@ -0,0 +1,419 @@
+package com.playsawdust.glow.gl.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reorders static meshes so that the GPU does less work drawing them. None of these change what a mesh looks like,
+ * only the order its triangles and vertices are stored in.
+ *
+ * <ul>
+ * <li>{@link #deduplicate(MeshData)} merges identical vertices, so that shared corners are shaded once
+ * <li>{@link #optimizeVertexCache(MeshData, int)} orders triangles so that recently shaded vertices are reused from the
+ *     post-transform cache (Sander, Nehab and Barczak's "Tipsify")
+ * <li>{@link #optimizeOverdraw(MeshData, int, float)} additionally orders clusters of triangles outside-in, so that
+ *     early depth testing rejects more of the hidden fragments
+ * <li>{@link #optimizeVertexFetch(MeshData)} stores vertices in the order they're first used, so fetches walk memory
+ *     forwards
+ * </ul>
+ *
+ * <p>{@link #optimize(MeshData)} runs all of them in the right order. Cache behaviour is modelled as a FIFO of
+ * {@code cacheSize} vertices, and {@link #getCacheMissRatio(int[], int, int)} measures a mesh against the same model;
+ * an unoptimized mesh typically lands between 1 and 3 misses per triangle, and an optimized one around 0.7.
+ */
+public final class MeshOptimizer {
+	/** A conservative post-transform cache size, which holds up well on hardware with larger caches */
+	public static final int DEFAULT_CACHE_SIZE = 16;
+	/** How much worse than its cluster's average a split point's cache behaviour may be, for overdraw ordering */
+	public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05f;
+	
+	private MeshOptimizer() {}
+	
+	/**
+	 * Runs every optimization, with default settings. Positions must be the first attribute.
+	 */
+	public static MeshData optimize(MeshData mesh) {
+		MeshData result = deduplicate(mesh);
+		result = optimizeOverdraw(result, DEFAULT_CACHE_SIZE, DEFAULT_OVERDRAW_THRESHOLD);
+		return optimizeVertexFetch(result);
+	}
+	
+	/**
+	 * Merges vertices whose attributes are bit-for-bit identical, and removes degenerate triangles and unused vertices.
+	 * Meshes exported with per-face data, or loaded from formats which index each attribute separately, often shrink by
+	 * half or more.
+	 */
+	public static MeshData deduplicate(MeshData mesh) {
+		int stride = mesh.getFloatsPerVertex();
+		float[] vertices = mesh.getVertices();
+		int[] indices = mesh.getIndices();
+		
+		Map<VertexKey, Integer> unique = new HashMap<>();
+		// Each source vertex's group of identical vertices, and the first source vertex in each group
+		int[] groupOf = new int[mesh.getVertexCount()];
+		Arrays.fill(groupOf, -1);
+		int[] groupSource = new int[mesh.getVertexCount()];
+		int groupCount = 0;
+		int[] outIndices = new int[indices.length];
+		int indexCount = 0;
+		
+		for(int i=0; i<indices.length; i+=3) {
+			for(int j=0; j<3; j++) {
+				int source = indices[i + j];
+				if (groupOf[source] == -1) {
+					VertexKey key = new VertexKey(vertices, source * stride, stride);
+					Integer existing = unique.get(key);
+					if (existing == null) {
+						existing = groupCount;
+						groupSource[groupCount] = source;
+						unique.put(key, existing);
+						groupCount++;
+					}
+					groupOf[source] = existing;
+				}
+				outIndices[indexCount + j] = groupOf[source];
+			}
+			
+			int a = outIndices[indexCount];
+			int b = outIndices[indexCount + 1];
+			int c = outIndices[indexCount + 2];
+			if (a != b && b != c && a != c) indexCount += 3;
+		}
+		
+		// Only vertices that a surviving triangle uses are kept, so this waits until the degenerate ones are gone
+		int[] remap = new int[groupCount];
+		Arrays.fill(remap, -1);
+		float[] outVertices = new float[groupCount * stride];
+		int vertexCount = 0;
+		for(int i=0; i<indexCount; i++) {
+			int group = outIndices[i];
+			if (remap[group] == -1) {
+				System.arraycopy(vertices, groupSource[group] * stride, outVertices, vertexCount * stride, stride);
+				remap[group] = vertexCount;
+				vertexCount++;
+			}
+			outIndices[i] = remap[group];
+		}
+		
+		return new MeshData(Arrays.copyOf(outVertices, vertexCount * stride), Arrays.copyOf(outIndices, indexCount), mesh.getAttributes());
+	}
+	
+	/**
+	 * Reorders triangles for the post-transform vertex cache. Vertices are left where they are.
+	 * @param cacheSize The number of vertices the cache is assumed to hold
+	 */
+	public static MeshData optimizeVertexCache(MeshData mesh, int cacheSize) {
+		if (cacheSize < 3) throw new IllegalArgumentException("The vertex cache must hold at least one triangle.");
+		return mesh.withIndices(tipsify(mesh.getIndices(), mesh.getVertexCount(), cacheSize, null));
+	}
+	
+	/**
+	 * Reorders triangles for the vertex cache, then splits the result into clusters and sorts the clusters so that those
+	 * facing away from the center of the mesh are drawn first. Those are the triangles most likely to hide others, so
+	 * drawing them first lets the depth test throw away more fragments before they're shaded. Vertices are left where
+	 * they are.
+	 *
+	 * <p>Positions must be the first attribute, with at least three components.
+	 * @param cacheSize The number of vertices the cache is assumed to hold
+	 * @param threshold How much cache efficiency to trade for smaller clusters. 1 keeps only the cluster boundaries the
+	 *                  vertex cache pass needed anyway; 1.05 is a good balance.
+	 */
+	public static MeshData optimizeOverdraw(MeshData mesh, int cacheSize, float threshold) {
+		if (cacheSize < 3) throw new IllegalArgumentException("The vertex cache must hold at least one triangle.");
+		if (mesh.getAttribute(0).primitiveCount() < 3) throw new IllegalArgumentException("The first attribute must be a position with at least three components.");
+		int vertexCount = mesh.getVertexCount();
+		List<Integer> hardBoundaries = new ArrayList<>();
+		int[] indices = tipsify(mesh.getIndices(), vertexCount, cacheSize, hardBoundaries);
+		int triangleCount = indices.length / 3;
+		if (triangleCount == 0) return mesh.withIndices(indices);
+		hardBoundaries.add(0, 0);
+		hardBoundaries.add(triangleCount);
+		
+		/*
+		 * The vertex cache pass only jumps elsewhere in the mesh when it runs out of neighbours, which leaves some very
+		 * large clusters. Split those further wherever the triangles since the last split already use the cache about
+		 * as well as the cluster as a whole, so that sorting the pieces costs almost nothing in cache misses.
+		 */
+		List<Integer> clusters = new ArrayList<>();
+		int[] cacheTime = new int[vertexCount];
+		int time = cacheSize + 1;
+		for(int h=0; h+1<hardBoundaries.size(); h++) {
+			int start = hardBoundaries.get(h);
+			int end = hardBoundaries.get(h + 1);
+			if (start == end) continue;
+			
+			// Moving the clock past every timestamp empties the cache
+			time += cacheSize + 1;
+			int misses = 0;
+			for(int i=start*3; i<end*3; i++) {
+				int v = indices[i];
+				if (time - cacheTime[v] > cacheSize) {
+					cacheTime[v] = time++;
+					misses++;
+				}
+			}
+			float clusterRatio = misses / (float) (end - start);
+			
+			clusters.add(start);
+			time += cacheSize + 1;
+			misses = 0;
+			int runStart = start;
+			for(int t=start; t<end-1; t++) {
+				for(int i=t*3; i<t*3+3; i++) {
+					int v = indices[i];
+					if (time - cacheTime[v] > cacheSize) {
+						cacheTime[v] = time++;
+						misses++;
+					}
+				}
+				if (misses <= clusterRatio * threshold * (t + 1 - runStart)) {
+					clusters.add(t + 1);
+					runStart = t + 1;
+					misses = 0;
+					time += cacheSize + 1;
+				}
+			}
+		}
+		clusters.add(triangleCount);
+		
+		float[] vertices = mesh.getVertices();
+		int stride = mesh.getFloatsPerVertex();
+		float centerX = 0;
+		float centerY = 0;
+		float centerZ = 0;
+		for(int v=0; v<vertexCount; v++) {
+			centerX += vertices[v * stride];
+			centerY += vertices[v * stride + 1];
+			centerZ += vertices[v * stride + 2];
+		}
+		centerX /= vertexCount;
+		centerY /= vertexCount;
+		centerZ /= vertexCount;
+		
+		int clusterCount = clusters.size() - 1;
+		float[] sortKeys = new float[clusterCount];
+		for(int c=0; c<clusterCount; c++) {
+			// Cross products are twice each triangle's area, so both sums come out area-weighted
+			float normalX = 0;
+			float normalY = 0;
+			float normalZ = 0;
+			float pointX = 0;
+			float pointY = 0;
+			float pointZ = 0;
+			float totalArea = 0;
+			for(int t=clusters.get(c); t<clusters.get(c + 1); t++) {
+				int a = indices[t * 3] * stride;
+				int b = indices[t * 3 + 1] * stride;
+				int d = indices[t * 3 + 2] * stride;
+				float abX = vertices[b] - vertices[a];
+				float abY = vertices[b + 1] - vertices[a + 1];
+				float abZ = vertices[b + 2] - vertices[a + 2];
+				float adX = vertices[d] - vertices[a];
+				float adY = vertices[d + 1] - vertices[a + 1];
+				float adZ = vertices[d + 2] - vertices[a + 2];
+				float crossX = abY * adZ - abZ * adY;
+				float crossY = abZ * adX - abX * adZ;
+				float crossZ = abX * adY - abY * adX;
+				float area = (float) Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+				
+				normalX += crossX;
+				normalY += crossY;
+				normalZ += crossZ;
+				pointX += (vertices[a] + vertices[b] + vertices[d]) / 3 * area;
+				pointY += (vertices[a + 1] + vertices[b + 1] + vertices[d + 1]) / 3 * area;
+				pointZ += (vertices[a + 2] + vertices[b + 2] + vertices[d + 2]) / 3 * area;
+				totalArea += area;
+			}
+			
+			float normalLength = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+			if (totalArea == 0 || normalLength == 0) {
+				// Degenerate or perfectly closed clusters can't occlude much of anything, so they go last
+				sortKeys[c] = Float.NEGATIVE_INFINITY;
+				continue;
+			}
+			sortKeys[c] = ((pointX / totalArea - centerX) * normalX + (pointY / totalArea - centerY) * normalY + (pointZ / totalArea - centerZ) * normalZ) / normalLength;
+		}
+		
+		Integer[] order = new Integer[clusterCount];
+		for(int c=0; c<clusterCount; c++) {
+			order[c] = c;
+		}
+		Arrays.sort(order, (a, b) -> Float.compare(sortKeys[b], sortKeys[a]));
+		
+		int[] result = new int[indices.length];
+		int offset = 0;
+		for(int c : order) {
+			int start = clusters.get(c) * 3;
+			int length = clusters.get(c + 1) * 3 - start;
+			System.arraycopy(indices, start, result, offset, length);
+			offset += length;
+		}
+		return mesh.withIndices(result);
+	}
+	
+	/**
+	 * Renumbers vertices in the order the index data first uses them, dropping any that aren't used at all. Run this
+	 * last, since it depends on the triangle order.
+	 */
+	public static MeshData optimizeVertexFetch(MeshData mesh) {
+		int stride = mesh.getFloatsPerVertex();
+		float[] vertices = mesh.getVertices();
+		int[] indices = mesh.getIndices();
+		
+		int[] remap = new int[mesh.getVertexCount()];
+		Arrays.fill(remap, -1);
+		float[] outVertices = new float[vertices.length];
+		int[] outIndices = new int[indices.length];
+		int vertexCount = 0;
+		for(int i=0; i<indices.length; i++) {
+			int source = indices[i];
+			if (remap[source] == -1) {
+				System.arraycopy(vertices, source * stride, outVertices, vertexCount * stride, stride);
+				remap[source] = vertexCount++;
+			}
+			outIndices[i] = remap[source];
+		}
+		
+		return new MeshData(Arrays.copyOf(outVertices, vertexCount * stride), outIndices, mesh.getAttributes());
+	}
+	
+	/**
+	 * Gets the average number of vertices shaded per triangle (ACMR) for some index data, assuming a FIFO
+	 * post-transform cache. 3 is the worst possible, and 0.5 the best possible for a large regular grid.
+	 */
+	public static float getCacheMissRatio(int[] indices, int vertexCount, int cacheSize) {
+		if (indices.length < 3) return 0;
+		int[] cacheTime = new int[vertexCount];
+		int time = cacheSize + 1;
+		int misses = 0;
+		for(int v : indices) {
+			if (time - cacheTime[v] > cacheSize) {
+				cacheTime[v] = time++;
+				misses++;
+			}
+		}
+		return misses / (float) (indices.length / 3);
+	}
+	
+	/**
+	 * Orders triangles by fanning around one vertex at a time, always moving on to a neighbour that will still be in the
+	 * cache after its own fan is emitted. When there's no such neighbour, recently used vertices are tried first, then
+	 * the lowest-numbered vertex with triangles left, and the triangle at which that happened is added to
+	 * hardBoundaries, if it's not null.
+	 */
+	private static int[] tipsify(int[] indices, int vertexCount, int cacheSize, List<Integer> hardBoundaries) {
+		int triangleCount = indices.length / 3;
+		
+		// Triangles using each vertex, as one flat adjacency list
+		int[] live = new int[vertexCount];
+		for(int v : indices) {
+			live[v]++;
+		}
+		int[] adjacencyStart = new int[vertexCount + 1];
+		for(int v=0; v<vertexCount; v++) {
+			adjacencyStart[v + 1] = adjacencyStart[v] + live[v];
+		}
+		int[] adjacency = new int[indices.length];
+		int[] fill = Arrays.copyOf(adjacencyStart, vertexCount);
+		for(int i=0; i<indices.length; i++) {
+			adjacency[fill[indices[i]]++] = i / 3;
+		}
+		
+		int[] cacheTime = new int[vertexCount];
+		boolean[] emitted = new boolean[triangleCount];
+		int[] deadEnds = new int[indices.length];
+		int deadEndCount = 0;
+		int[] candidates = new int[indices.length];
+		int[] result = new int[indices.length];
+		int resultCount = 0;
+		int time = cacheSize + 1;
+		int cursor = 0;
+		
+		while(cursor < vertexCount && live[cursor] == 0) cursor++;
+		int fan = (cursor < vertexCount) ? cursor : -1;
+		while(fan != -1) {
+			int candidateCount = 0;
+			for(int k=adjacencyStart[fan]; k<adjacencyStart[fan + 1]; k++) {
+				int triangle = adjacency[k];
+				if (emitted[triangle]) continue;
+				emitted[triangle] = true;
+				for(int i=triangle*3; i<triangle*3+3; i++) {
+					int v = indices[i];
+					result[resultCount++] = v;
+					deadEnds[deadEndCount++] = v;
+					candidates[candidateCount++] = v;
+					live[v]--;
+					if (time - cacheTime[v] > cacheSize) cacheTime[v] = time++;
+				}
+			}
+			
+			int best = -1;
+			int bestPriority = 0;
+			for(int c=0; c<candidateCount; c++) {
+				int v = candidates[c];
+				if (live[v] <= 0) continue;
+				// Prefer the oldest vertex that will survive its own fan. Anything that won't scores zero and is never
+				// picked, leaving the choice to the dead-end stack below.
+				int age = time - cacheTime[v];
+				int priority = (age + 2 * live[v] <= cacheSize) ? age : 0;
+				if (priority > bestPriority) {
+					best = v;
+					bestPriority = priority;
+				}
+			}
+			
+			if (best == -1) {
+				while(deadEndCount > 0) {
+					int v = deadEnds[--deadEndCount];
+					if (live[v] > 0) {
+						best = v;
+						break;
+					}
+				}
+				if (best == -1) {
+					while(cursor < vertexCount && live[cursor] == 0) cursor++;
+					if (cursor < vertexCount) best = cursor;
+				}
+				if (best != -1 && hardBoundaries != null) hardBoundaries.add(resultCount / 3);
+			}
+			fan = best;
+		}
+		
+		return result;
+	}
+	
+	private static final class VertexKey {
+		private final float[] data;
+		private final int offset;
+		private final int length;
+		private final int hash;
+		
+		private VertexKey(float[] data, int offset, int length) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+			int hash = 1;
+			for(int i=offset; i<offset+length; i++) {
+				hash = hash * 31 + Float.floatToIntBits(data[i]);
+			}
+			this.hash = hash;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof VertexKey other) || other.hash != hash) return false;
+			for(int i=0; i<length; i++) {
+				if (Float.floatToIntBits(data[offset + i]) != Float.floatToIntBits(other.data[other.offset + i])) return false;
+			}
+			return true;
+		}
+	}
+}
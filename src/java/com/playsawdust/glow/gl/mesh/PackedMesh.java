@@ -0,0 +1,157 @@
+package com.playsawdust.glow.gl.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.playsawdust.glow.gl.GLPrimitiveType;
+import com.playsawdust.glow.gl.GLType;
+
+/**
+ * A mesh encoded exactly as it will sit in GPU memory: quantized, interleaved vertices, and indices which are 16-bit
+ * whenever the vertex count allows. Packing needs no GL context, so it can happen on any thread, and the result can be
+ * written to a {@link MeshCache} or uploaded with {@link #upload()} as-is.
+ *
+ * <p>Each attribute starts on a 4-byte boundary, as some hardware fetches unaligned attributes slowly, so a 3-component
+ * byte attribute takes up 4 bytes. Data is in native byte order.
+ */
+public class PackedMesh {
+	private final Quantization[] quantizations;
+	private final GLType[] types;
+	private final int[] offsets;
+	private final int stride;
+	private final int vertexCount;
+	private final int indexCount;
+	private final GLPrimitiveType indexType;
+	private final ByteBuffer vertexData;
+	private final ByteBuffer indexData;
+	
+	PackedMesh(Quantization[] quantizations, GLType[] types, int vertexCount, int indexCount, ByteBuffer vertexData, ByteBuffer indexData) {
+		this.quantizations = quantizations;
+		this.types = types;
+		this.offsets = new int[types.length];
+		int offset = 0;
+		for(int i=0; i<types.length; i++) {
+			offsets[i] = offset;
+			offset += align(types[i].stride());
+		}
+		this.stride = offset;
+		this.vertexCount = vertexCount;
+		this.indexCount = indexCount;
+		this.indexType = indexTypeFor(vertexCount);
+		
+		if (vertexData.remaining() != (long) vertexCount * stride) throw new IllegalArgumentException("Expected "+((long) vertexCount * stride)+" bytes of vertex data, but got "+vertexData.remaining()+".");
+		if (indexData.remaining() != (long) indexCount * indexType.bytes()) throw new IllegalArgumentException("Expected "+((long) indexCount * indexType.bytes())+" bytes of index data, but got "+indexData.remaining()+".");
+		this.vertexData = vertexData;
+		this.indexData = indexData;
+	}
+	
+	/**
+	 * Encodes a mesh. Run it through {@link MeshOptimizer} first; packing keeps the order of everything.
+	 * @param quantizations How to store each of the mesh's attributes, in order
+	 */
+	public static PackedMesh pack(MeshData mesh, Quantization... quantizations) {
+		if (quantizations.length != mesh.getAttributeCount()) throw new IllegalArgumentException("The mesh has "+mesh.getAttributeCount()+" attributes, but "+quantizations.length+" quantizations were given.");
+		GLType[] types = new GLType[quantizations.length];
+		int stride = 0;
+		for(int i=0; i<types.length; i++) {
+			types[i] = quantizations[i].storedType(mesh.getAttribute(i).primitiveCount());
+			stride += align(types[i].stride());
+		}
+		
+		int vertexCount = mesh.getVertexCount();
+		float[] vertices = mesh.getVertices();
+		ByteBuffer vertexData = ByteBuffer.allocateDirect(vertexCount * stride).order(ByteOrder.nativeOrder());
+		int source = 0;
+		for(int v=0; v<vertexCount; v++) {
+			for(int i=0; i<types.length; i++) {
+				int start = vertexData.position();
+				for(int j=0; j<types[i].primitiveCount(); j++) {
+					quantizations[i].encode(vertices[source++], vertexData);
+				}
+				vertexData.position(start + align(types[i].stride()));
+			}
+		}
+		vertexData.flip();
+		
+		int[] indices = mesh.getIndices();
+		GLPrimitiveType indexType = indexTypeFor(vertexCount);
+		ByteBuffer indexData = ByteBuffer.allocateDirect(indices.length * indexType.bytes()).order(ByteOrder.nativeOrder());
+		if (indexType == GLPrimitiveType.UNSIGNED_SHORT) {
+			for(int index : indices) {
+				indexData.putShort((short) index);
+			}
+		} else {
+			indexData.asIntBuffer().put(indices);
+			indexData.position(indices.length * 4);
+		}
+		indexData.flip();
+		
+		return new PackedMesh(quantizations.clone(), types, vertexCount, indices.length, vertexData, indexData);
+	}
+	
+	/**
+	 * Uploads this mesh into new GPU buffers. Must be called on a thread with a GL context current.
+	 */
+	public StaticMesh upload() {
+		return new StaticMesh(this);
+	}
+	
+	public int getAttributeCount() {
+		return types.length;
+	}
+	
+	public Quantization getQuantization(int attribute) {
+		return quantizations[attribute];
+	}
+	
+	/** Gets the type an attribute is stored as on the GPU. */
+	public GLType getType(int attribute) {
+		return types[attribute];
+	}
+	
+	/** Gets the offset of an attribute from the start of each vertex, in bytes. */
+	public int getOffset(int attribute) {
+		return offsets[attribute];
+	}
+	
+	/** Gets the size of one vertex, in bytes. */
+	public int getStride() {
+		return stride;
+	}
+	
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	public int getIndexCount() {
+		return indexCount;
+	}
+	
+	/** Gets the type of the index data; UNSIGNED_SHORT or UNSIGNED_INT. */
+	public GLPrimitiveType getIndexType() {
+		return indexType;
+	}
+	
+	/** Gets the interleaved vertex data. The returned buffer is independent, but shares its contents with this mesh. */
+	public ByteBuffer getVertexData() {
+		return vertexData.duplicate().order(vertexData.order());
+	}
+	
+	/** Gets the index data. The returned buffer is independent, but shares its contents with this mesh. */
+	public ByteBuffer getIndexData() {
+		return indexData.duplicate().order(indexData.order());
+	}
+	
+	/** Gets the size of this mesh on the GPU, in bytes. */
+	public long getMemorySize() {
+		return vertexData.remaining() + indexData.remaining();
+	}
+	
+	static int align(int bytes) {
+		return (bytes + 3) & ~3;
+	}
+	
+	static GLPrimitiveType indexTypeFor(int vertexCount) {
+		return (vertexCount <= 0x10000) ? GLPrimitiveType.UNSIGNED_SHORT : GLPrimitiveType.UNSIGNED_INT;
+	}
+}
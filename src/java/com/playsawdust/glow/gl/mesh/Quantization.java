@@ -0,0 +1,68 @@
+package com.playsawdust.glow.gl.mesh;
+
+import java.nio.ByteBuffer;
+
+import com.playsawdust.glow.gl.GLPrimitiveType;
+import com.playsawdust.glow.gl.GLType;
+
+/**
+ * How one vertex attribute is stored on the GPU. Smaller encodings mean less memory, less bandwidth per vertex fetch,
+ * and smaller cache files; shaders don't need to change, because normalized integers arrive as floats.
+ *
+ * <p>Normalized encodings clamp values outside their range, so positions usually stay FLOAT or HALF unless the mesh
+ * has been scaled into a unit box and the model matrix scales it back.
+ */
+public enum Quantization {
+	/** Stored as-is, 4 bytes per component */
+	FLOAT(GLPrimitiveType.FLOAT, false),
+	/** Half floats, 2 bytes per component. About three decimal digits, which suits small objects and texture coordinates. */
+	HALF(GLPrimitiveType.HALF_FLOAT, false),
+	/** Signed shorts, normalized from [-1, 1] */
+	SNORM16(GLPrimitiveType.SHORT, true),
+	/** Unsigned shorts, normalized from [0, 1]. Good for texture coordinates within an atlas. */
+	UNORM16(GLPrimitiveType.UNSIGNED_SHORT, true),
+	/** Signed bytes, normalized from [-1, 1]. Plenty for normals and tangents. */
+	SNORM8(GLPrimitiveType.BYTE, true),
+	/** Unsigned bytes, normalized from [0, 1]. Good for vertex colors. */
+	UNORM8(GLPrimitiveType.UNSIGNED_BYTE, true);
+	
+	private final GLPrimitiveType primitiveType;
+	private final boolean normalized;
+	
+	Quantization(GLPrimitiveType primitiveType, boolean normalized) {
+		this.primitiveType = primitiveType;
+		this.normalized = normalized;
+	}
+	
+	public GLPrimitiveType primitiveType() { return primitiveType; }
+	public boolean isNormalized() { return normalized; }
+	
+	/**
+	 * Gets the type an attribute with the given number of components is stored as.
+	 */
+	public GLType storedType(int components) {
+		GLType result = GLType.of(primitiveType, components);
+		if (result == null) throw new IllegalArgumentException("There's no "+components+"-component "+primitiveType+" attribute type.");
+		return result;
+	}
+	
+	/**
+	 * Writes one component at the buffer's position.
+	 */
+	void encode(float value, ByteBuffer out) {
+		switch(this) {
+			case FLOAT -> out.putFloat(value);
+			case HALF -> out.putShort(Float.floatToFloat16(value));
+			case SNORM16 -> out.putShort((short) Math.round(clamp(value, -1) * 32767));
+			case UNORM16 -> out.putShort((short) Math.round(clamp(value, 0) * 65535));
+			case SNORM8 -> out.put((byte) Math.round(clamp(value, -1) * 127));
+			case UNORM8 -> out.put((byte) Math.round(clamp(value, 0) * 255));
+		}
+	}
+	
+	private static float clamp(float value, float min) {
+		// NaN has no sensible encoding, so it becomes zero rather than whatever the cast makes of it
+		if (Float.isNaN(value)) return 0;
+		return Math.max(min, Math.min(1, value));
+	}
+}
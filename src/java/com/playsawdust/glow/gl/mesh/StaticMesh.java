@@ -0,0 +1,90 @@
+package com.playsawdust.glow.gl.mesh;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import com.playsawdust.glow.gl.BufferTarget;
+import com.playsawdust.glow.gl.GLPrimitiveType;
+import com.playsawdust.glow.gl.GLResource;
+import com.playsawdust.glow.gl.VertexArray;
+import com.playsawdust.glow.gl.VertexBuffer;
+
+/**
+ * A {@link PackedMesh} uploaded to the GPU, with its own VertexArray and buffers. Attributes are bound to locations 0,
+ * 1, 2... in order, with quantized attributes normalized so that shaders see ordinary floats.
+ */
+public class StaticMesh implements GLResource {
+	private final VertexArray vertexArray;
+	private final VertexBuffer vertices;
+	private final VertexBuffer indices;
+	private final int vertexCount;
+	private final int indexCount;
+	private final GLPrimitiveType indexType;
+	private final long memorySize;
+	
+	StaticMesh(PackedMesh mesh) {
+		this.vertexCount = mesh.getVertexCount();
+		this.indexCount = mesh.getIndexCount();
+		this.indexType = mesh.getIndexType();
+		this.memorySize = mesh.getMemorySize();
+		
+		// Element buffer bindings are VertexArray state, so ours must be bound before the index buffer is touched
+		vertexArray = new VertexArray();
+		vertexArray.bind();
+		vertices = new VertexBuffer();
+		vertices.setStaticData(BufferTarget.ARRAY, mesh.getVertexData());
+		for(int i=0; i<mesh.getAttributeCount(); i++) {
+			vertexArray.bindBuffer(i, vertices, mesh.getType(i), mesh.getQuantization(i).isNormalized(), mesh.getStride(), mesh.getOffset(i));
+		}
+		indices = new VertexBuffer();
+		indices.setStaticData(BufferTarget.ELEMENT_ARRAY, mesh.getIndexData());
+		vertexArray.bindIndexBuffer(indices);
+	}
+	
+	/**
+	 * Draws the whole mesh with whatever shader is currently bound.
+	 */
+	public void draw() {
+		vertexArray.bind();
+		glDrawElements(GL_TRIANGLES, indexCount, indexType.value(), 0L);
+	}
+	
+	/**
+	 * Draws several copies of the mesh in one call, for shaders which read per-instance data.
+	 */
+	public void drawInstanced(int instances) {
+		vertexArray.bind();
+		glDrawElementsInstanced(GL_TRIANGLES, indexCount, indexType.value(), 0L, instances);
+	}
+	
+	/**
+	 * Gets the VertexArray this mesh draws from, for binding extra per-instance attributes after the mesh's own.
+	 */
+	public VertexArray getVertexArray() {
+		return vertexArray;
+	}
+	
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	public int getIndexCount() {
+		return indexCount;
+	}
+	
+	/** Gets the size of this mesh's buffers, in bytes. */
+	public long getMemorySize() {
+		return memorySize;
+	}
+	
+	@Override
+	public void destroy() {
+		vertexArray.destroy();
+		vertices.destroy();
+		indices.destroy();
+	}
+	
+	@Override
+	public int getHandle() {
+		return vertexArray.getHandle();
+	}
+}
@@ -0,0 +1,174 @@
+package com.playsawdust.glow.gl.shader;
+
+import static org.lwjgl.opengl.GL43.*;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import com.playsawdust.glow.gl.BufferTarget;
+import com.playsawdust.glow.gl.GLResource;
+import com.playsawdust.glow.gl.Texture;
+import com.playsawdust.glow.gl.VertexBuffer;
+
+/**
+ * A program with a single compute stage, for general-purpose work on the GPU like particle simulation and image
+ * filters.
+ *
+ * <p>Compute shaders need GL 4.3 or the equivalent ARB extensions, which the default 4.1 Window context may not
+ * provide (and macOS never will). Create the Window with {@code new Window(title, 4, 3)} to ask for one, and check
+ * {@link #isSupported()} to decide between this and a CPU fallback. Constructing a ComputeProgram where compute isn't
+ * supported throws an UnsupportedOperationException rather than failing inside the driver.
+ *
+ * <p>Shader writes to storage buffers and images aren't automatically visible to later GL commands; follow each
+ * dispatch with a {@link com.playsawdust.glow.gl.MemoryBarrier MemoryBarrier} for however its output will be read.
+ */
+public class ComputeProgram implements GLResource {
+	private final int handle;
+	private final int shaderHandle;
+	private final int[] workGroupSize = new int[3];
+	
+	public ComputeProgram(String src) {
+		if (!isSupported()) throw new UnsupportedOperationException("Compute shaders need OpenGL 4.3, or ARB_compute_shader and ARB_shader_storage_buffer_object.");
+		
+		handle = glCreateProgram();
+		shaderHandle = glCreateShader(GL_COMPUTE_SHADER);
+		glShaderSource(shaderHandle, src);
+		glCompileShader(shaderHandle);
+		if (glGetShaderi(shaderHandle, GL_COMPILE_STATUS) != GL_TRUE) {
+			String err = glGetShaderInfoLog(shaderHandle);
+			glDeleteShader(shaderHandle);
+			glDeleteProgram(handle);
+			throw new RuntimeException("Compute shader compile error: " + err);
+		}
+		
+		String log = glGetShaderInfoLog(shaderHandle);
+		if (log != null && !log.isBlank()) System.out.println(log);
+		
+		glAttachShader(handle, shaderHandle);
+		glLinkProgram(handle);
+		if (glGetProgrami(handle, GL_LINK_STATUS) != GL_TRUE) {
+			String err = glGetProgramInfoLog(handle);
+			glDeleteShader(shaderHandle);
+			glDeleteProgram(handle);
+			throw new RuntimeException("Compute program link error: "+err);
+		}
+		
+		log = glGetProgramInfoLog(handle);
+		if (log != null && !log.isBlank()) System.out.println(log);
+		
+		glGetProgramiv(handle, GL_COMPUTE_WORK_GROUP_SIZE, workGroupSize);
+	}
+	
+	/**
+	 * Returns true if the current context can run compute shaders with shader storage buffers.
+	 */
+	public static boolean isSupported() {
+		GLCapabilities caps = GL.getCapabilities();
+		return caps.OpenGL43 || (caps.GL_ARB_compute_shader && caps.GL_ARB_shader_storage_buffer_object);
+	}
+	
+	public void bind() {
+		glUseProgram(handle);
+	}
+	
+	/**
+	 * Gets the local work group size declared in the shader's {@code layout(local_size_x = ...)}.
+	 * @return {x, y, z}
+	 */
+	public int[] getWorkGroupSize() {
+		return workGroupSize.clone();
+	}
+	
+	/**
+	 * Binds this program and launches a grid of work groups.
+	 */
+	public void dispatch(int groupsX, int groupsY, int groupsZ) {
+		bind();
+		glDispatchCompute(groupsX, groupsY, groupsZ);
+	}
+	
+	/**
+	 * Binds this program and launches enough work groups to cover {@code invocations} along X, rounding up. The shader
+	 * should check its gl_GlobalInvocationID against the real count.
+	 */
+	public void dispatchCovering(int invocations) {
+		dispatch((invocations + workGroupSize[0] - 1) / workGroupSize[0], 1, 1);
+	}
+	
+	/**
+	 * Binds this program and launches a grid whose size is read from a buffer on the GPU, as three consecutive uints,
+	 * so that an earlier pass can decide how much work there is without a round trip to the CPU. If the buffer was
+	 * written by a shader, apply a {@link com.playsawdust.glow.gl.MemoryBarrier#COMMAND COMMAND} barrier first.
+	 * @param offset the byte offset of the arguments in the buffer, which must be a multiple of 4
+	 */
+	public void dispatchIndirect(VertexBuffer arguments, long offset) {
+		bind();
+		glBindBuffer(BufferTarget.DISPATCH_INDIRECT.value(), arguments.getHandle());
+		glDispatchComputeIndirect(offset);
+		glBindBuffer(BufferTarget.DISPATCH_INDIRECT.value(), 0);
+	}
+	
+	/**
+	 * Binds a whole buffer to a shader storage block's {@code binding} point.
+	 */
+	public static void bindStorageBuffer(int binding, VertexBuffer buffer) {
+		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, binding, buffer.getHandle());
+	}
+	
+	/**
+	 * Binds a range of a buffer to a shader storage block's {@code binding} point. The offset must be a multiple of
+	 * GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT.
+	 */
+	public static void bindStorageBuffer(int binding, VertexBuffer buffer, long offset, long size) {
+		glBindBufferRange(GL_SHADER_STORAGE_BUFFER, binding, buffer.getHandle(), offset, size);
+	}
+	
+	/**
+	 * Binds a buffer to an atomic counter {@code binding} point. Each counter takes four bytes of the buffer, at the
+	 * {@code offset} given in its layout qualifier.
+	 */
+	public static void bindAtomicCounterBuffer(int binding, VertexBuffer buffer) {
+		glBindBufferBase(GL_ATOMIC_COUNTER_BUFFER, binding, buffer.getHandle());
+	}
+	
+	/**
+	 * Binds one level of a texture to an image unit, for {@code imageLoad}/{@code imageStore} in the shader. The image
+	 * uniform's format qualifier must match the texture's format.
+	 * @param access GL_READ_ONLY, GL_WRITE_ONLY, or GL_READ_WRITE
+	 */
+	public static void bindImage(int unit, Texture texture, int level, int access) {
+		if (texture.getFormat().isCompressed()) throw new IllegalArgumentException("Compressed textures can't be bound as images.");
+		glBindImageTexture(unit, texture.getHandle(), level, false, 0, access, texture.getFormat().internalFormat());
+	}
+	
+	public void setUniform(String name, int value) {
+		int location = glGetUniformLocation(handle, name);
+		if (location != -1) {
+			glProgramUniform1i(handle, location, value);
+		} else {
+			System.out.println("Can't set uniform - it doesn't exist");
+		}
+	}
+	
+	public void setUniform(String name, float value) {
+		int location = glGetUniformLocation(handle, name);
+		if (location != -1) {
+			glProgramUniform1f(handle, location, value);
+		} else {
+			System.out.println("Can't set uniform - it doesn't exist");
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		if (handle != 0) {
+			glDeleteProgram(handle);
+			glDeleteShader(shaderHandle);
+		}
+	}
+	
+	@Override
+	public int getHandle() {
+		return handle;
+	}
+}
@@ -0,0 +1,83 @@
+package com.playsawdust.glow.gl.shader;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import com.playsawdust.glow.gl.GLResource;
+
+/**
+ * A program with only a vertex stage, whose outputs are captured into buffers with transform feedback instead of
+ * being rasterized. This is how GL 4.1 runs general per-element work on the GPU without compute shaders: draw one
+ * point per element with GL_RASTERIZER_DISCARD enabled, and each vertex's outputs become the next state.
+ *
+ * <p>The named varyings are captured interleaved, in the order given, into the buffer bound to transform feedback
+ * binding 0.
+ */
+public class TransformFeedbackProgram implements GLResource {
+	private final int handle;
+	private final int vertHandle;
+	
+	public TransformFeedbackProgram(String vert, String... varyings) {
+		handle = glCreateProgram();
+		vertHandle = glCreateShader(GL_VERTEX_SHADER);
+		glShaderSource(vertHandle, vert);
+		glCompileShader(vertHandle);
+		if (glGetShaderi(vertHandle, GL_COMPILE_STATUS) != GL_TRUE) {
+			String err = glGetShaderInfoLog(vertHandle);
+			glDeleteShader(vertHandle);
+			glDeleteProgram(handle);
+			throw new RuntimeException("Vertex shader compile error: " + err);
+		}
+		
+		String log = glGetShaderInfoLog(vertHandle);
+		if (log != null && !log.isBlank()) System.out.println(log);
+		
+		glAttachShader(handle, vertHandle);
+		// Must be specified before linking; they decide what the linker keeps
+		glTransformFeedbackVaryings(handle, varyings, GL_INTERLEAVED_ATTRIBS);
+		glLinkProgram(handle);
+		if (glGetProgrami(handle, GL_LINK_STATUS) != GL_TRUE) {
+			String err = glGetProgramInfoLog(handle);
+			glDeleteShader(vertHandle);
+			glDeleteProgram(handle);
+			throw new RuntimeException("Transform feedback program link error: "+err);
+		}
+		
+		log = glGetProgramInfoLog(handle);
+		if (log != null && !log.isBlank()) System.out.println(log);
+	}
+	
+	public void bind() {
+		glUseProgram(handle);
+	}
+	
+	public void setUniform(String name, float value) {
+		int location = glGetUniformLocation(handle, name);
+		if (location != -1) {
+			glProgramUniform1f(handle, location, value);
+		} else {
+			System.out.println("Can't set uniform - it doesn't exist");
+		}
+	}
+	
+	public void setUniform(String name, float x, float y) {
+		int location = glGetUniformLocation(handle, name);
+		if (location != -1) {
+			glProgramUniform2f(handle, location, x, y);
+		} else {
+			System.out.println("Can't set uniform - it doesn't exist");
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		if (handle != 0) {
+			glDeleteProgram(handle);
+			glDeleteShader(vertHandle);
+		}
+	}
+	
+	@Override
+	public int getHandle() {
+		return handle;
+	}
+}
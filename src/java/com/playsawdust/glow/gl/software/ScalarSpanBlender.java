@@ -0,0 +1,77 @@
+package com.playsawdust.glow.gl.software;
+
+import com.playsawdust.glow.gl.BlendMode;
+
+/**
+ * The portable SpanBlender, one pixel at a time. Also serves as the tail loop of {@link VectorSpanBlender}, so both
+ * produce identical results.
+ */
+final class ScalarSpanBlender implements SpanBlender {
+	@Override
+	public void blend(int[] dst, int dstOffset, int[] src, int srcOffset, int length, int tintA, int tintR, int tintG, int tintB, BlendMode mode) {
+		for(int i=0; i<length; i++) {
+			int s = src[srcOffset + i];
+			int sa = mul(s >>> 24, tintA);
+			// Fully transparent sources leave the destination untouched, except where color is added regardless of alpha
+			if (sa == 0 && (mode == BlendMode.NORMAL || mode == BlendMode.ADDITIVE)) continue;
+			int sr = mul((s >>> 16) & 0xFF, tintR);
+			int sg = mul((s >>> 8) & 0xFF, tintG);
+			int sb = mul(s & 0xFF, tintB);
+			dst[dstOffset + i] = blendPixel(dst[dstOffset + i], sa, sr, sg, sb, mode);
+		}
+	}
+	
+	@Override
+	public void blendSolid(int[] dst, int dstOffset, int length, int a, int r, int g, int b, BlendMode mode) {
+		for(int i=0; i<length; i++) {
+			dst[dstOffset + i] = blendPixel(dst[dstOffset + i], a, r, g, b, mode);
+		}
+	}
+	
+	/**
+	 * Multiplies two 0-255 values as if they were 0-1 fractions, rounding to nearest, without a division.
+	 */
+	static int mul(int x, int y) {
+		int t = x * y + 128;
+		return (t + (t >>> 8)) >>> 8;
+	}
+	
+	static int blendPixel(int d, int sa, int sr, int sg, int sb, BlendMode mode) {
+		int da = d >>> 24;
+		int dr = (d >>> 16) & 0xFF;
+		int dg = (d >>> 8) & 0xFF;
+		int db = d & 0xFF;
+		int inv = 255 - sa;
+		
+		int a, r, g, b;
+		switch(mode) {
+			case NORMAL -> {
+				a = sa + mul(da, inv);
+				r = mul(sr, sa) + mul(dr, inv);
+				g = mul(sg, sa) + mul(dg, inv);
+				b = mul(sb, sa) + mul(db, inv);
+			}
+			case ADDITIVE -> {
+				a = Math.min(255, sa + da);
+				r = Math.min(255, mul(sr, sa) + dr);
+				g = Math.min(255, mul(sg, sa) + dg);
+				b = Math.min(255, mul(sb, sa) + db);
+			}
+			case MULTIPLY -> {
+				a = da;
+				r = mul(sr, dr) + mul(dr, inv);
+				g = mul(sg, dg) + mul(dg, inv);
+				b = mul(sb, db) + mul(db, inv);
+			}
+			default -> {
+				// PREMULTIPLIED
+				a = Math.min(255, sa + mul(da, inv));
+				r = Math.min(255, sr + mul(dr, inv));
+				g = Math.min(255, sg + mul(dg, inv));
+				b = Math.min(255, sb + mul(db, inv));
+			}
+		}
+		// NORMAL and MULTIPLY can't overflow mathematically, but rounding both terms up can reach 256
+		return (Math.min(a, 255) << 24) | (Math.min(r, 255) << 16) | (Math.min(g, 255) << 8) | Math.min(b, 255);
+	}
+}
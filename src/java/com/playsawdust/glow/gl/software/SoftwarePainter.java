@@ -0,0 +1,295 @@
+package com.playsawdust.glow.gl.software;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.playsawdust.glow.gl.BlendMode;
+import com.playsawdust.glow.gl.color.ColorConversion;
+import com.playsawdust.glow.image.ImageData;
+import com.playsawdust.glow.image.SrgbImageData;
+import com.playsawdust.glow.image.color.RGBColor;
+import com.playsawdust.glow.render.Painter;
+
+/**
+ * A Painter which rasterizes on the CPU into an SrgbImageData, for machines without a GPU or a display, and as a
+ * reference to compare the GL path against.
+ *
+ * <p>Its output matches {@link com.playsawdust.glow.gl.WindowPainter WindowPainter} drawing into an 8-bit target:
+ * images are tinted by multiplying each channel, then blended with the same {@link BlendMode} equations, all in 8-bit
+ * fixed point on the stored (sRGB-encoded) values, just as GL does with an RGBA8 texture and framebuffer. Linear
+ * RGBColor components are encoded to sRGB first, the same way WindowPainter encodes them.
+ *
+ * <p>Like WindowPainter, draws are queued and only rasterized by {@link #flush()}. The image is split into bands of
+ * rows, and bands are rasterized in parallel on a ForkJoinPool, each one replaying, in order, only the draws that
+ * touch it. Within a band, each draw is a set of row spans, filled directly when opaque and otherwise blended by the
+ * Vector API where it's available. Images drawn through this Painter must not change until the next flush.
+ *
+ * <p>Not thread-safe; use one SoftwarePainter per thread.
+ */
+public class SoftwarePainter implements Painter {
+	private static final int BAND_HEIGHT = 32;
+	/** Below this many pixels of work, a flush runs on the calling thread rather than paying for fork-join */
+	private static final long PARALLEL_THRESHOLD = 64 * 1024;
+	private static final SpanBlender BLENDER = SpanBlender.create();
+	
+	private final SrgbImageData image;
+	private final int[] pixels;
+	private final int width;
+	private final int height;
+	private final ForkJoinPool pool;
+	
+	private final List<Op> ops = new ArrayList<>();
+	private long queuedArea = 0;
+	private BlendMode blendMode = BlendMode.NORMAL;
+	/** The clip rectangle as {x0, y0, x1, y1}, exclusive at x1 and y1 */
+	private int[] clip;
+	private final Deque<int[]> clipStack = new ArrayDeque<>();
+	
+	public SoftwarePainter(int width, int height) {
+		this(new SrgbImageData(width, height));
+	}
+	
+	public SoftwarePainter(SrgbImageData image) {
+		this(image, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a SoftwarePainter which draws into an existing image.
+	 * @param pool the pool to rasterize bands on. Pass a pool with parallelism 1 to keep everything on one core.
+	 */
+	public SoftwarePainter(SrgbImageData image, ForkJoinPool pool) {
+		this.image = image;
+		this.pixels = image.getData();
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.pool = pool;
+		this.clip = new int[] { 0, 0, width, height };
+	}
+	
+	/**
+	 * Gets the image being painted. Call {@link #flush()} first to make sure everything queued is in it.
+	 */
+	public SrgbImageData getImage() {
+		return image;
+	}
+	
+	/**
+	 * Returns true if blending runs on the Vector API, rather than the scalar fallback.
+	 */
+	public static boolean isVectorized() {
+		return !(BLENDER instanceof ScalarSpanBlender);
+	}
+	
+	public void setBlendMode(BlendMode blendMode) {
+		this.blendMode = blendMode;
+	}
+	
+	public BlendMode getBlendMode() {
+		return blendMode;
+	}
+	
+	/**
+	 * Narrows the clip rectangle to its intersection with the given one, until the matching {@link #popClip()}.
+	 */
+	public void pushClip(int x, int y, int width, int height) {
+		clipStack.push(clip);
+		clip = new int[] {
+			Math.max(clip[0], x),
+			Math.max(clip[1], y),
+			Math.min(clip[2], x + width),
+			Math.min(clip[3], y + height)
+		};
+	}
+	
+	public void popClip() {
+		if (clipStack.isEmpty()) throw new IllegalStateException("popClip without a matching pushClip.");
+		clip = clipStack.pop();
+	}
+	
+	/**
+	 * Fills the whole image with a color, ignoring the clip and blend mode. Unlike a window's clear, the color's alpha
+	 * is kept, so that the image can be saved with a transparent or opaque background as needed.
+	 */
+	public void clear(RGBColor color) {
+		ops.clear();
+		queuedArea = 0;
+		Arrays.fill(pixels, pack(color));
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public void drawImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, float opacity) {
+		drawTintImage(image, destX, destY, srcX, srcY, width, height, new RGBColor(opacity, 1, 1, 1));
+	}
+	
+	@Override
+	public void drawTintImage(ImageData image, int destX, int destY, int srcX, int srcY, int width, int height, RGBColor tintColor) {
+		// Only sample inside the source image, like a clamped texture lookup would at 1:1
+		if (srcX < 0) { destX -= srcX; width += srcX; srcX = 0; }
+		if (srcY < 0) { destY -= srcY; height += srcY; srcY = 0; }
+		width = Math.min(width, image.getWidth() - srcX);
+		height = Math.min(height, image.getHeight() - srcY);
+		
+		int x0 = Math.max(destX, clip[0]);
+		int y0 = Math.max(destY, clip[1]);
+		int x1 = Math.min(destX + width, clip[2]);
+		int y1 = Math.min(destY + height, clip[3]);
+		if (x1 <= x0 || y1 <= y0) return;
+		
+		int[] source;
+		int stride;
+		int sx = srcX + (x0 - destX);
+		int sy = srcY + (y0 - destY);
+		if (image instanceof SrgbImageData srgb && srgb != this.image) {
+			source = srgb.getData();
+			stride = srgb.getWidth();
+		} else {
+			// Copy just the visible part, so that any ImageData works and an image can be drawn onto itself
+			if (image == this.image) flush();
+			stride = x1 - x0;
+			source = new int[stride * (y1 - y0)];
+			for(int y=0; y<y1 - y0; y++) {
+				for(int x=0; x<stride; x++) {
+					source[y * stride + x] = image.getSrgbPixel(sx + x, sy + y);
+				}
+			}
+			sx = 0;
+			sy = 0;
+		}
+		
+		int tintA = toByte(tintColor.alpha());
+		if (tintA == 0 && (blendMode == BlendMode.NORMAL || blendMode == BlendMode.ADDITIVE)) return;
+		queue(new Op(x0, y0, x1, y1, source, stride, sx - x0, sy - y0, tintA, encode(tintColor.r(), tintColor.alpha()), encode(tintColor.g(), tintColor.alpha()), encode(tintColor.b(), tintColor.alpha()), blendMode));
+	}
+	
+	@Override
+	public void drawPixel(int x, int y, RGBColor color) {
+		fillRect(x, y, 1, 1, color);
+	}
+	
+	@Override
+	public void fillRect(int x, int y, int width, int height, RGBColor color) {
+		int x0 = Math.max(x, clip[0]);
+		int y0 = Math.max(y, clip[1]);
+		int x1 = Math.min(x + width, clip[2]);
+		int y1 = Math.min(y + height, clip[3]);
+		if (x1 <= x0 || y1 <= y0) return;
+		
+		int a = toByte(color.alpha());
+		if (a == 0 && (blendMode == BlendMode.NORMAL || blendMode == BlendMode.ADDITIVE)) return;
+		queue(new Op(x0, y0, x1, y1, null, 0, 0, 0, a, encode(color.r(), color.alpha()), encode(color.g(), color.alpha()), encode(color.b(), color.alpha()), blendMode));
+	}
+	
+	private void queue(Op op) {
+		ops.add(op);
+		queuedArea += (long) (op.x1 - op.x0) * (op.y1 - op.y0);
+	}
+	
+	/**
+	 * Rasterizes everything queued so far into the image.
+	 */
+	public void flush() {
+		if (ops.isEmpty()) return;
+		
+		Op[] frame = ops.toArray(new Op[0]);
+		int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+		if (queuedArea < PARALLEL_THRESHOLD || pool.getParallelism() <= 1) {
+			rasterizeBands(frame, 0, bands);
+		} else {
+			pool.invoke(new BandTask(frame, 0, bands));
+		}
+		
+		ops.clear();
+		queuedArea = 0;
+	}
+	
+	private void rasterizeBands(Op[] frame, int firstBand, int endBand) {
+		int bandTop = firstBand * BAND_HEIGHT;
+		int bandBottom = Math.min(height, endBand * BAND_HEIGHT);
+		for(Op op : frame) {
+			int y0 = Math.max(op.y0, bandTop);
+			int y1 = Math.min(op.y1, bandBottom);
+			if (y1 <= y0) continue;
+			
+			int length = op.x1 - op.x0;
+			for(int y=y0; y<y1; y++) {
+				int row = y * width + op.x0;
+				if (op.source == null) {
+					if (op.a == 255 && (op.mode == BlendMode.NORMAL || op.mode == BlendMode.PREMULTIPLIED)) {
+						Arrays.fill(pixels, row, row + length, (255 << 24) | (op.r << 16) | (op.g << 8) | op.b);
+					} else {
+						BLENDER.blendSolid(pixels, row, length, op.a, op.r, op.g, op.b, op.mode);
+					}
+				} else {
+					int sourceRow = (y + op.sourceDY) * op.stride + op.x0 + op.sourceDX;
+					BLENDER.blend(pixels, row, op.source, sourceRow, length, op.a, op.r, op.g, op.b, op.mode);
+				}
+			}
+		}
+	}
+	
+	private static int toByte(float value) {
+		return Math.round(Math.max(0, Math.min(1, value)) * 255);
+	}
+	
+	/**
+	 * Encodes one linear color channel to 8-bit sRGB. Premultiplied channels are encoded as the color they stand for,
+	 * then scaled back down, so that a tint like (a, a, a, a) still fades.
+	 */
+	private int encode(float value, float alpha) {
+		if (blendMode == BlendMode.PREMULTIPLIED && alpha > 0) return toByte(ColorConversion.linearToSrgb(value / alpha) * alpha);
+		return ColorConversion.linearToSrgb8(value);
+	}
+	
+	private static int pack(RGBColor color) {
+		return (toByte(color.alpha()) << 24)
+				| (ColorConversion.linearToSrgb8(color.r()) << 16)
+				| (ColorConversion.linearToSrgb8(color.g()) << 8)
+				| ColorConversion.linearToSrgb8(color.b());
+	}
+	
+	/**
+	 * One queued draw, already clipped. Solid fills have no source. For images, the source pixel for destination
+	 * (x, y) is at (x + sourceDX, y + sourceDY).
+	 */
+	private record Op(int x0, int y0, int x1, int y1, int[] source, int stride, int sourceDX, int sourceDY, int a, int r, int g, int b, BlendMode mode) {}
+	
+	private class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		// ForkJoinTasks are Serializable in name only; these never leave the pool
+		private final transient Op[] frame;
+		private final int firstBand;
+		private final int endBand;
+		
+		private BandTask(Op[] frame, int firstBand, int endBand) {
+			this.frame = frame;
+			this.firstBand = firstBand;
+			this.endBand = endBand;
+		}
+		
+		@Override
+		protected void compute() {
+			if (endBand - firstBand <= 1) {
+				rasterizeBands(frame, firstBand, endBand);
+			} else {
+				int middle = (firstBand + endBand) >>> 1;
+				invokeAll(new BandTask(frame, firstBand, middle), new BandTask(frame, middle, endBand));
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.playsawdust.glow.gl.software;
+
+import com.playsawdust.glow.gl.BlendMode;
+
+/**
+ * Blends horizontal runs of packed 0xAARRGGBB pixels into a destination, with exactly the arithmetic the GL path uses
+ * for each {@link BlendMode}, in 8-bit fixed point.
+ */
+interface SpanBlender {
+	/**
+	 * Multiplies each source pixel by the tint, then blends it over the destination pixel at the same position.
+	 */
+	void blend(int[] dst, int dstOffset, int[] src, int srcOffset, int length, int tintA, int tintR, int tintG, int tintB, BlendMode mode);
+	
+	/**
+	 * Blends a single color over every destination pixel in the span.
+	 */
+	void blendSolid(int[] dst, int dstOffset, int length, int a, int r, int g, int b, BlendMode mode);
+	
+	/**
+	 * Gets the fastest blender this JVM can run. The Vector API implementation is used when the
+	 * {@code jdk.incubator.vector} module has been added (with {@code --add-modules jdk.incubator.vector}) and the
+	 * {@code glow.software.vector} system property isn't set to false; otherwise, the scalar one.
+	 */
+	static SpanBlender create() {
+		boolean allowed = !"false".equals(System.getProperty("glow.software.vector"));
+		if (allowed && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (SpanBlender) Class.forName("com.playsawdust.glow.gl.software.VectorSpanBlender").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Fall through to the scalar path
+			}
+		}
+		return new ScalarSpanBlender();
+	}
+}
@@ -0,0 +1,44 @@
+package com.playsawdust.glow.gl.spatial;
+
+/**
+ * The half-open rectangle an indexed object occupies, shared by the SpatialIndex implementations.
+ */
+class Bounds {
+	float x0;
+	float y0;
+	float x1;
+	float y1;
+	
+	void setBounds(float x, float y, float width, float height) {
+		this.x0 = x;
+		this.y0 = y;
+		this.x1 = x + width;
+		this.y1 = y + height;
+	}
+	
+	boolean overlaps(float x0, float y0, float x1, float y1) {
+		return spansOverlap(this.x0, this.x1, x0, x1) && spansOverlap(this.y0, this.y1, y0, y1);
+	}
+	
+	/**
+	 * Returns true if these bounds lie within the half-open rectangle. Zero-size bounds on its far edge don't, since
+	 * that point is outside it.
+	 */
+	boolean isInside(float x0, float y0, float x1, float y1) {
+		return this.x0 >= x0 && this.x1 <= x1 && this.y0 >= y0 && this.y1 <= y1 && this.x0 < x1 && this.y0 < y1;
+	}
+	
+	/**
+	 * Returns true if two half-open spans overlap. A zero-size span is the single point it starts at, so it overlaps a
+	 * span containing that point, or an equal point.
+	 */
+	static boolean spansOverlap(float a0, float a1, float b0, float b1) {
+		if (a0 == a1) return contains(b0, b1, a0);
+		if (b0 == b1) return contains(a0, a1, b0);
+		return a0 < b1 && a1 > b0;
+	}
+	
+	private static boolean contains(float start, float end, float point) {
+		return point >= start && (point < end || point == start);
+	}
+}
@@ -0,0 +1,217 @@
+package com.playsawdust.glow.gl.spatial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A SpatialIndex which recursively splits a fixed region into quadrants as they fill up. Each object lives in the
+ * smallest quadrant that wholly contains it, so it's only ever stored once, and a query only descends into quadrants
+ * which overlap it.
+ *
+ * <p>Unlike a {@link UniformGrid}, this copes well with objects of very different sizes and with clumpy scenes, like a
+ * zoomed-out canvas with a few huge backgrounds and thousands of small details. Objects outside the region are still
+ * accepted, but are kept in a plain list which every query checks, so the region should cover the world.
+ */
+public class Quadtree<T> implements SpatialIndex<T> {
+	/** A node holding more than this many objects splits, unless it's already at the maximum depth */
+	private static final int NODE_CAPACITY = 8;
+	private static final int MAX_DEPTH = 10;
+	
+	private final Node<T> root;
+	private final List<Entry<T>> outside = new ArrayList<>();
+	private final Map<T, Entry<T>> entries = new HashMap<>();
+	
+	/**
+	 * Creates an empty Quadtree covering the given region.
+	 */
+	public Quadtree(float x, float y, float width, float height) {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("Quadtree region must have a positive size.");
+		root = new Node<>(null, x, y, x + width, y + height, 0);
+	}
+	
+	@Override
+	public void put(T object, float x, float y, float width, float height) {
+		Entry<T> entry = entries.get(object);
+		if (entry == null) {
+			entry = new Entry<>(object);
+			entries.put(object, entry);
+		} else {
+			entry.setBounds(x, y, width, height);
+			// Still fits where it is, and wouldn't fit any deeper: nothing to move
+			if (entry.node != null && entry.isInside(entry.node.x0, entry.node.y0, entry.node.x1, entry.node.y1) && !fitsChild(entry.node, entry)) return;
+			detach(entry);
+		}
+		
+		entry.setBounds(x, y, width, height);
+		insert(entry);
+	}
+	
+	@Override
+	public boolean remove(T object) {
+		Entry<T> entry = entries.remove(object);
+		if (entry == null) return false;
+		detach(entry);
+		return true;
+	}
+	
+	@Override
+	public boolean contains(T object) {
+		return entries.containsKey(object);
+	}
+	
+	@Override
+	public void query(float x, float y, float width, float height, Consumer<? super T> action) {
+		float x1 = x + width;
+		float y1 = y + height;
+		for(int i=0; i<outside.size(); i++) {
+			Entry<T> entry = outside.get(i);
+			if (entry.overlaps(x, y, x1, y1)) action.accept(entry.object);
+		}
+		query(root, x, y, x1, y1, action);
+	}
+	
+	private void query(Node<T> node, float x0, float y0, float x1, float y1, Consumer<? super T> action) {
+		if (!(Bounds.spansOverlap(node.x0, node.x1, x0, x1) && Bounds.spansOverlap(node.y0, node.y1, y0, y1))) return;
+		
+		boolean covered = (x0 <= node.x0 && x1 >= node.x1 && y0 <= node.y0 && y1 >= node.y1);
+		for(int i=0; i<node.entries.size(); i++) {
+			Entry<T> entry = node.entries.get(i);
+			if (covered || entry.overlaps(x0, y0, x1, y1)) action.accept(entry.object);
+		}
+		if (node.children != null) {
+			for(Node<T> child : node.children) {
+				query(child, x0, y0, x1, y1, action);
+			}
+		}
+	}
+	
+	@Override
+	public int size() {
+		return entries.size();
+	}
+	
+	@Override
+	public void clear() {
+		root.entries.clear();
+		root.children = null;
+		outside.clear();
+		entries.clear();
+	}
+	
+	private void insert(Entry<T> entry) {
+		if (!entry.isInside(root.x0, root.y0, root.x1, root.y1)) {
+			entry.node = null;
+			outside.add(entry);
+			return;
+		}
+		
+		Node<T> node = root;
+		while(node.children != null) {
+			Node<T> child = childFor(node, entry);
+			if (child == null) break;
+			node = child;
+		}
+		node.entries.add(entry);
+		entry.node = node;
+		if (node.children == null && node.entries.size() > NODE_CAPACITY && node.depth < MAX_DEPTH) split(node);
+	}
+	
+	private void split(Node<T> node) {
+		float midX = (node.x0 + node.x1) / 2;
+		float midY = (node.y0 + node.y1) / 2;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Node<T>[] children = new Node[] {
+			new Node<>(node, node.x0, node.y0, midX, midY, node.depth + 1),
+			new Node<>(node, midX, node.y0, node.x1, midY, node.depth + 1),
+			new Node<>(node, node.x0, midY, midX, node.y1, node.depth + 1),
+			new Node<>(node, midX, midY, node.x1, node.y1, node.depth + 1)
+		};
+		node.children = children;
+		
+		List<Entry<T>> kept = new ArrayList<>();
+		for(Entry<T> entry : node.entries) {
+			Node<T> child = childFor(node, entry);
+			if (child == null) {
+				kept.add(entry);
+			} else {
+				child.entries.add(entry);
+				entry.node = child;
+			}
+		}
+		node.entries = kept;
+		for(Node<T> child : children) {
+			if (child.entries.size() > NODE_CAPACITY && child.depth < MAX_DEPTH) split(child);
+		}
+	}
+	
+	private void detach(Entry<T> entry) {
+		Node<T> node = entry.node;
+		List<Entry<T>> list = (node == null) ? outside : node.entries;
+		int index = list.indexOf(entry);
+		if (index != -1) {
+			int last = list.size() - 1;
+			list.set(index, list.get(last));
+			list.remove(last);
+		}
+		entry.node = null;
+		
+		// Fold emptied quadrants back into their parent, so removing everything returns the tree to a single node
+		while(node != null && node.parent != null && node.parent.isEmptyBelow()) {
+			node.parent.children = null;
+			node = node.parent;
+		}
+	}
+	
+	private Node<T> childFor(Node<T> node, Entry<T> entry) {
+		if (node.children == null) return null;
+		for(Node<T> child : node.children) {
+			if (entry.isInside(child.x0, child.y0, child.x1, child.y1)) return child;
+		}
+		return null;
+	}
+	
+	private boolean fitsChild(Node<T> node, Entry<T> entry) {
+		return childFor(node, entry) != null;
+	}
+	
+	private static class Node<T> {
+		private final Node<T> parent;
+		private final float x0;
+		private final float y0;
+		private final float x1;
+		private final float y1;
+		private final int depth;
+		private List<Entry<T>> entries = new ArrayList<>();
+		private Node<T>[] children;
+		
+		private Node(Node<T> parent, float x0, float y0, float x1, float y1, int depth) {
+			this.parent = parent;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.depth = depth;
+		}
+		
+		/** Returns true if none of this node's children, or their descendants, hold anything */
+		private boolean isEmptyBelow() {
+			if (children == null) return true;
+			for(Node<T> child : children) {
+				if (!child.entries.isEmpty() || !child.isEmptyBelow()) return false;
+			}
+			return true;
+		}
+	}
+	
+	private static class Entry<T> extends Bounds {
+		private final T object;
+		private Node<T> node;
+		
+		private Entry(T object) {
+			this.object = object;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.playsawdust.glow.gl.spatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A set of objects with rectangular bounds, which can quickly find the ones overlapping a rectangle. Use one to hold a
+ * retained scene, so that each frame only visits what's in the viewport instead of everything in the world:
+ *
+ * <pre>
+ * index.query(cameraX, cameraY, painter.getWidth(), painter.getHeight(), sprite -&gt; sprite.paint(painter));
+ * </pre>
+ *
+ * <p>Each object is in the index at most once, identified by {@code equals}; putting it again moves it. Bounds are
+ * half-open, so two rectangles which only share an edge don't overlap. A zero-size rectangle is the point at its
+ * corner, and overlaps any rectangle containing that point.
+ *
+ * <p>Implementations are not thread-safe.
+ */
+public interface SpatialIndex<T> {
+	/**
+	 * Adds an object with the given bounds, or moves it there if it's already in the index.
+	 */
+	void put(T object, float x, float y, float width, float height);
+	
+	/**
+	 * Removes an object.
+	 * @return true if the object was in the index
+	 */
+	boolean remove(T object);
+	
+	boolean contains(T object);
+	
+	/**
+	 * Calls {@code action} once for each object whose bounds overlap the rectangle, in no particular order. The index
+	 * must not be changed from inside the action.
+	 */
+	void query(float x, float y, float width, float height, Consumer<? super T> action);
+	
+	/**
+	 * Gets every object whose bounds overlap the rectangle, in no particular order.
+	 */
+	default List<T> query(float x, float y, float width, float height) {
+		List<T> result = new ArrayList<>();
+		query(x, y, width, height, result::add);
+		return result;
+	}
+	
+	int size();
+	
+	void clear();
+}
@@ -0,0 +1,241 @@
+package com.playsawdust.glow.gl.spatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A SpatialIndex which buckets objects into square cells of a fixed size, over an unbounded plane. Each object is
+ * listed in every cell its bounds touch, and only cells that hold something take any memory.
+ *
+ * <p>This is the best choice when objects are all of a similar size and spread fairly evenly, like sprites in a
+ * level: pick a cell size a few times larger than a typical object, and a query costs about one visit per nearby
+ * object. Objects much larger than a cell land in many cells, which makes moving them slower; a {@link Quadtree}
+ * copes better with widely varying sizes.
+ */
+public class UniformGrid<T> implements SpatialIndex<T> {
+	private final float cellSize;
+	/**
+	 * The occupied cells, as an open-addressed hash table from {@link #key(int, int)} to the cell's entries, so that
+	 * looking a cell up never boxes its key. A null list marks an empty slot.
+	 */
+	private long[] cellKeys = new long[64];
+	private List<Entry<T>>[] cellLists = newCellLists(64);
+	private int cellCount = 0;
+	private final Map<T, Entry<T>> entries = new HashMap<>();
+	/** Bumped for each query, so that objects spanning several cells are only reported once */
+	private int queryStamp = 0;
+	
+	public UniformGrid(float cellSize) {
+		if (cellSize <= 0) throw new IllegalArgumentException("Cell size must be positive.");
+		this.cellSize = cellSize;
+	}
+	
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+	@Override
+	public void put(T object, float x, float y, float width, float height) {
+		Entry<T> entry = entries.get(object);
+		if (entry == null) {
+			entry = new Entry<>(object);
+			entries.put(object, entry);
+		} else {
+			int cx0 = cell(x);
+			int cy0 = cell(y);
+			int cx1 = lastCell(x + width, cx0);
+			int cy1 = lastCell(y + height, cy0);
+			if (cx0 == entry.cx0 && cy0 == entry.cy0 && cx1 == entry.cx1 && cy1 == entry.cy1) {
+				// Moved within the same cells, which is the common case for small steps
+				entry.setBounds(x, y, width, height);
+				return;
+			}
+			unlink(entry);
+		}
+		
+		entry.setBounds(x, y, width, height);
+		entry.cx0 = cell(x);
+		entry.cy0 = cell(y);
+		entry.cx1 = lastCell(x + width, entry.cx0);
+		entry.cy1 = lastCell(y + height, entry.cy0);
+		for(int cy=entry.cy0; cy<=entry.cy1; cy++) {
+			for(int cx=entry.cx0; cx<=entry.cx1; cx++) {
+				addToCell(key(cx, cy), entry);
+			}
+		}
+	}
+	
+	@Override
+	public boolean remove(T object) {
+		Entry<T> entry = entries.remove(object);
+		if (entry == null) return false;
+		unlink(entry);
+		return true;
+	}
+	
+	@Override
+	public boolean contains(T object) {
+		return entries.containsKey(object);
+	}
+	
+	@Override
+	public void query(float x, float y, float width, float height, Consumer<? super T> action) {
+		float x1 = x + width;
+		float y1 = y + height;
+		int cx0 = cell(x);
+		int cy0 = cell(y);
+		int cx1 = lastCell(x1, cx0);
+		int cy1 = lastCell(y1, cy0);
+		
+		int stamp = ++queryStamp;
+		if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > cellCount) {
+			// A query wider than the populated area is cheaper to answer by walking the cells that exist
+			for(List<Entry<T>> list : cellLists) {
+				if (list != null) visit(list, stamp, x, y, x1, y1, action);
+			}
+			return;
+		}
+		for(int cy=cy0; cy<=cy1; cy++) {
+			for(int cx=cx0; cx<=cx1; cx++) {
+				List<Entry<T>> list = cellLists[slot(key(cx, cy))];
+				if (list != null) visit(list, stamp, x, y, x1, y1, action);
+			}
+		}
+	}
+	
+	private void visit(List<Entry<T>> list, int stamp, float x0, float y0, float x1, float y1, Consumer<? super T> action) {
+		for(int i=0; i<list.size(); i++) {
+			Entry<T> entry = list.get(i);
+			if (entry.stamp == stamp) continue;
+			entry.stamp = stamp;
+			if (entry.overlaps(x0, y0, x1, y1)) action.accept(entry.object);
+		}
+	}
+	
+	@Override
+	public int size() {
+		return entries.size();
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(cellLists, null);
+		cellCount = 0;
+		entries.clear();
+	}
+	
+	private void unlink(Entry<T> entry) {
+		for(int cy=entry.cy0; cy<=entry.cy1; cy++) {
+			for(int cx=entry.cx0; cx<=entry.cx1; cx++) {
+				int slot = slot(key(cx, cy));
+				List<Entry<T>> list = cellLists[slot];
+				if (list == null) continue;
+				
+				// Swap-remove; order within a cell doesn't matter
+				int index = list.indexOf(entry);
+				if (index != -1) {
+					int last = list.size() - 1;
+					list.set(index, list.get(last));
+					list.remove(last);
+				}
+				if (list.isEmpty()) removeSlot(slot);
+			}
+		}
+	}
+	
+	/** Finds the slot holding a cell's key, or the empty slot where it would go */
+	private int slot(long key) {
+		int mask = cellKeys.length - 1;
+		int slot = hash(key) & mask;
+		while(cellLists[slot] != null && cellKeys[slot] != key) slot = (slot + 1) & mask;
+		return slot;
+	}
+	
+	private void addToCell(long key, Entry<T> entry) {
+		int slot = slot(key);
+		if (cellLists[slot] == null) {
+			if ((cellCount + 1) * 4 > cellKeys.length * 3) {
+				rehash(cellKeys.length * 2);
+				slot = slot(key);
+			}
+			cellKeys[slot] = key;
+			cellLists[slot] = new ArrayList<>();
+			cellCount++;
+		}
+		cellLists[slot].add(entry);
+	}
+	
+	/** Empties a slot, shifting back any later keys in its probe run so that lookups never stop short of them */
+	private void removeSlot(int slot) {
+		int mask = cellKeys.length - 1;
+		cellLists[slot] = null;
+		cellCount--;
+		
+		int next = slot;
+		while(true) {
+			next = (next + 1) & mask;
+			if (cellLists[next] == null) return;
+			int home = hash(cellKeys[next]) & mask;
+			// Leave keys whose home lies cyclically in (slot, next], since the gap isn't on their probe path
+			boolean reachable = (slot <= next) ? (home > slot && home <= next) : (home > slot || home <= next);
+			if (reachable) continue;
+			cellKeys[slot] = cellKeys[next];
+			cellLists[slot] = cellLists[next];
+			cellLists[next] = null;
+			slot = next;
+		}
+	}
+	
+	private void rehash(int capacity) {
+		long[] oldKeys = cellKeys;
+		List<Entry<T>>[] oldLists = cellLists;
+		cellKeys = new long[capacity];
+		cellLists = newCellLists(capacity);
+		for(int i=0; i<oldLists.length; i++) {
+			if (oldLists[i] == null) continue;
+			int slot = slot(oldKeys[i]);
+			cellKeys[slot] = oldKeys[i];
+			cellLists[slot] = oldLists[i];
+		}
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> List<Entry<T>>[] newCellLists(int capacity) {
+		return new List[capacity];
+	}
+	
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	
+	private int cell(float coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+	
+	/** Gets the cell holding the last point before an exclusive edge, without going below the first cell */
+	private int lastCell(float edge, int firstCell) {
+		return Math.max(firstCell, (int) Math.ceil(edge / cellSize) - 1);
+	}
+	
+	private static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+	
+	private static class Entry<T> extends Bounds {
+		private final T object;
+		private int cx0;
+		private int cy0;
+		private int cx1;
+		private int cy1;
+		private int stamp;
+		
+		private Entry(T object) {
+			this.object = object;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.playsawdust.glow.gl.text;
+
+import static org.lwjgl.stb.STBTruetype.*;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.stb.STBTTFontinfo;
+import org.lwjgl.system.MemoryUtil;
+
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * A TrueType or OpenType font, parsed once and kept off-heap so that glyphs can be rasterized from it on demand.
+ *
+ * <p>A Font knows nothing about sizes or textures; all of its metrics are in font units. Use a {@link GlyphCache} to
+ * rasterize it at a particular pixel height.
+ */
+public class Font implements Destroyable {
+	private final ByteBuffer data;
+	private final STBTTFontinfo info;
+	private final int ascent;
+	private final int descent;
+	private final int lineGap;
+	
+	public Font(byte[] ttf) {
+		this(ByteBuffer.wrap(ttf));
+	}
+	
+	/**
+	 * Creates a Font from the contents of a font file. The data is copied, so the buffer can be reused afterwards.
+	 */
+	public Font(ByteBuffer ttf) {
+		data = MemoryUtil.memAlloc(ttf.remaining());
+		data.put(ttf.duplicate()).flip();
+		
+		info = STBTTFontinfo.malloc();
+		if (!stbtt_InitFont(info, data)) {
+			info.free();
+			MemoryUtil.memFree(data);
+			throw new IllegalArgumentException("Couldn't parse font data.");
+		}
+		
+		int[] ascentBuf = new int[1];
+		int[] descentBuf = new int[1];
+		int[] lineGapBuf = new int[1];
+		stbtt_GetFontVMetrics(info, ascentBuf, descentBuf, lineGapBuf);
+		ascent = ascentBuf[0];
+		descent = descentBuf[0];
+		lineGap = lineGapBuf[0];
+	}
+	
+	/**
+	 * Gets the scale factor which converts font units into pixels for text whose ascent-to-descent height is
+	 * {@code pixelHeight}.
+	 */
+	public float scaleForPixelHeight(float pixelHeight) {
+		return stbtt_ScaleForPixelHeight(info, pixelHeight);
+	}
+	
+	/** Gets how far above the baseline the tallest glyphs reach, in font units. Always positive. */
+	public int getAscent() {
+		return ascent;
+	}
+	
+	/** Gets how far below the baseline the lowest glyphs reach, in font units. Usually negative. */
+	public int getDescent() {
+		return descent;
+	}
+	
+	/** Gets the extra space the font asks for between the descent of one line and the ascent of the next. */
+	public int getLineGap() {
+		return lineGap;
+	}
+	
+	/**
+	 * Gets the index of the glyph which draws a codepoint, or 0 (the "missing glyph" box) if the font doesn't cover it.
+	 */
+	public int getGlyphIndex(int codepoint) {
+		return stbtt_FindGlyphIndex(info, codepoint);
+	}
+	
+	/** Gets how far the pen moves after drawing a glyph, in font units. */
+	public int getAdvance(int glyphIndex) {
+		int[] advance = new int[1];
+		int[] leftBearing = new int[1];
+		stbtt_GetGlyphHMetrics(info, glyphIndex, advance, leftBearing);
+		return advance[0];
+	}
+	
+	/** Gets the kerning adjustment between two glyphs, in font units. */
+	public int getKerning(int glyphIndex, int nextGlyphIndex) {
+		return stbtt_GetGlyphKernAdvance(info, glyphIndex, nextGlyphIndex);
+	}
+	
+	/**
+	 * Gets the pixel bounds of a glyph rasterized at the given scale, relative to the pen position on the baseline.
+	 * @return {x0, y0, x1, y1}, with y growing downwards
+	 */
+	public int[] getBitmapBox(int glyphIndex, float scale) {
+		int[] x0 = new int[1];
+		int[] y0 = new int[1];
+		int[] x1 = new int[1];
+		int[] y1 = new int[1];
+		stbtt_GetGlyphBitmapBox(info, glyphIndex, scale, scale, x0, y0, x1, y1);
+		return new int[] { x0[0], y0[0], x1[0], y1[0] };
+	}
+	
+	/**
+	 * Rasterizes a glyph's antialiased coverage into {@code out}, which must hold at least {@code stride * height}
+	 * bytes. The bitmap's size and offset come from {@link #getBitmapBox(int, float)}.
+	 */
+	public void rasterize(int glyphIndex, float scale, ByteBuffer out, int width, int height, int stride) {
+		stbtt_MakeGlyphBitmap(info, out, width, height, stride, scale, scale, glyphIndex);
+	}
+	
+	/**
+	 * Rasterizes a glyph as a signed distance field. Each byte is 128 on the glyph's outline, rising towards 255 inside
+	 * and falling towards 0 outside, at {@code 128 / padding} per pixel.
+	 * @param metrics receives {width, height, xOffset, yOffset}
+	 * @return a buffer which must be passed to {@link #freeSdf(ByteBuffer)}, or null if the glyph has no outline
+	 */
+	public ByteBuffer rasterizeSdf(int glyphIndex, float scale, int padding, int[] metrics) {
+		int[] width = new int[1];
+		int[] height = new int[1];
+		int[] xOffset = new int[1];
+		int[] yOffset = new int[1];
+		ByteBuffer result = stbtt_GetGlyphSDF(info, scale, glyphIndex, padding, (byte) 128, 128f / padding, width, height, xOffset, yOffset);
+		metrics[0] = width[0];
+		metrics[1] = height[0];
+		metrics[2] = xOffset[0];
+		metrics[3] = yOffset[0];
+		return result;
+	}
+	
+	public void freeSdf(ByteBuffer sdf) {
+		stbtt_FreeSDF(sdf);
+	}
+	
+	@Override
+	public void destroy() {
+		info.free();
+		MemoryUtil.memFree(data);
+	}
+}
@@ -0,0 +1,362 @@
+package com.playsawdust.glow.gl.text;
+
+import static org.lwjgl.opengl.GL41.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.playsawdust.glow.gl.Texture;
+import com.playsawdust.glow.gl.TextureFilter;
+import com.playsawdust.glow.gl.TextureFormat;
+import com.playsawdust.glow.offheap.Destroyable;
+
+/**
+ * Rasterizes the glyphs of one {@link Font} at one pixel height, the first time each is asked for, and packs them into
+ * a small number of atlas pages on the GPU.
+ *
+ * <p>Each page is a single-channel texture, swizzled so that it samples as white with the glyph in alpha. Coverage
+ * glyphs can therefore be drawn by the ordinary textured-quad shader, tinted by the vertex color. SDF glyphs store a
+ * distance instead of coverage, and need a shader that thresholds it - see
+ * {@link com.playsawdust.glow.gl.WindowPainter#drawString(GlyphCache, CharSequence, float, float, float, com.playsawdust.glow.image.color.RGBColor)}.
+ *
+ * <p>Glyphs are packed onto shelves. Once every page is full, the least recently used page is wiped and reused, and
+ * every glyph that lived on it is forgotten and will be rasterized again if it's needed. Glyph objects are only valid
+ * until the next call to {@link #getGlyph(int, Runnable)}, since that call may evict their page.
+ *
+ * <p>All methods must be called on a thread with a GL context current.
+ */
+public class GlyphCache implements Destroyable {
+	public enum Mode {
+		/**
+		 * Antialiased coverage, rasterized at exactly the cache's pixel height. The crispest option when text is drawn at
+		 * that size, but blurs or aliases when scaled.
+		 */
+		COVERAGE,
+		/**
+		 * Signed distance fields. Slightly softer at the native size, but stay sharp across a wide range of scales, so
+		 * one cache can serve several text sizes.
+		 */
+		SDF;
+	}
+	
+	/** Zero-valued pixels kept around each glyph, so that linear filtering never bleeds in a neighbor. */
+	private static final int GUTTER = 1;
+	/** How far outside the outline an SDF glyph's distance field extends, in pixels. */
+	private static final int SDF_PADDING = 4;
+	
+	private final Font font;
+	private final float pixelHeight;
+	private final Mode mode;
+	private final float scale;
+	private final int pageSize;
+	private final int maxPages;
+	private final List<Page> pages = new ArrayList<>();
+	/**
+	 * Glyphs by codepoint, in blocks of 256 which are only allocated once a codepoint in them is used. Unlike a map,
+	 * looking a glyph up never boxes its codepoint.
+	 */
+	private final Glyph[][] glyphs = new Glyph[(Character.MAX_CODE_POINT + 1) >> 8][];
+	private long clock = 0;
+	
+	public GlyphCache(Font font, float pixelHeight, Mode mode) {
+		this(font, pixelHeight, mode, 1024, 4);
+	}
+	
+	/**
+	 * Creates a new GlyphCache. No textures are created until the first glyph is requested.
+	 * @param font        The font to rasterize. The cache doesn't own it, so it must be destroyed separately.
+	 * @param pixelHeight The height, from descent to ascent, to rasterize glyphs at
+	 * @param mode        Whether to rasterize coverage or signed distance fields
+	 * @param pageSize    The width and height of each atlas page
+	 * @param maxPages    How many pages may exist before old ones start being evicted
+	 */
+	public GlyphCache(Font font, float pixelHeight, Mode mode, int pageSize, int maxPages) {
+		if (maxPages < 1) throw new IllegalArgumentException("A GlyphCache needs at least one page.");
+		this.font = font;
+		this.pixelHeight = pixelHeight;
+		this.mode = mode;
+		this.scale = font.scaleForPixelHeight(pixelHeight);
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+	}
+	
+	public Font getFont() {
+		return font;
+	}
+	
+	public float getPixelHeight() {
+		return pixelHeight;
+	}
+	
+	public Mode getMode() {
+		return mode;
+	}
+	
+	/** Gets the distance from the top of a line to its baseline, in pixels at this cache's height. */
+	public float getAscent() {
+		return font.getAscent() * scale;
+	}
+	
+	/** Gets the distance from one baseline to the next, in pixels at this cache's height. */
+	public float getLineHeight() {
+		return (font.getAscent() - font.getDescent() + font.getLineGap()) * scale;
+	}
+	
+	/** Gets the kerning adjustment between two glyphs, in pixels at this cache's height. */
+	public float getKerning(int glyphIndex, int nextGlyphIndex) {
+		return font.getKerning(glyphIndex, nextGlyphIndex) * scale;
+	}
+	
+	/**
+	 * Measures the width of the widest line of a string, in pixels at this cache's height. Doesn't rasterize anything.
+	 */
+	public float getStringWidth(CharSequence text) {
+		float widest = 0;
+		float width = 0;
+		int previous = -1;
+		for(int i=0; i<text.length(); ) {
+			int codepoint = Character.codePointAt(text, i);
+			i += Character.charCount(codepoint);
+			if (codepoint == '\n') {
+				widest = Math.max(widest, width);
+				width = 0;
+				previous = -1;
+				continue;
+			}
+			
+			int index = font.getGlyphIndex(codepoint);
+			if (previous != -1) width += getKerning(previous, index);
+			width += font.getAdvance(index) * scale;
+			previous = index;
+		}
+		return Math.max(widest, width);
+	}
+	
+	/**
+	 * Gets the glyph for a codepoint, rasterizing it into an atlas page first if necessary.
+	 * @param beforeEviction run just before a page is wiped to make room, so that any queued draws which sample it can
+	 *                       be submitted first. May be null if nothing is ever queued.
+	 */
+	public Glyph getGlyph(int codepoint, Runnable beforeEviction) {
+		if (codepoint < 0 || codepoint > Character.MAX_CODE_POINT) codepoint = 0xFFFD;
+		Glyph[] block = glyphs[codepoint >> 8];
+		if (block == null) {
+			block = new Glyph[256];
+			glyphs[codepoint >> 8] = block;
+		}
+		Glyph glyph = block[codepoint & 0xFF];
+		if (glyph == null) {
+			glyph = rasterize(codepoint, beforeEviction);
+			block[codepoint & 0xFF] = glyph;
+		}
+		if (glyph.page != null) glyph.page.lastUsed = ++clock;
+		return glyph;
+	}
+	
+	private Glyph rasterize(int codepoint, Runnable beforeEviction) {
+		int index = font.getGlyphIndex(codepoint);
+		float advance = font.getAdvance(index) * scale;
+		
+		int width;
+		int height;
+		int xOffset;
+		int yOffset;
+		ByteBuffer pixels;
+		int[] metrics = new int[4];
+		if (mode == Mode.SDF) {
+			ByteBuffer sdf = font.rasterizeSdf(index, scale, SDF_PADDING, metrics);
+			if (sdf == null) return new Glyph(index, advance);
+			width = metrics[0];
+			height = metrics[1];
+			xOffset = metrics[2];
+			yOffset = metrics[3];
+			pixels = padded(width, height);
+			for(int y=0; y<height; y++) {
+				for(int x=0; x<width; x++) {
+					pixels.put((y + GUTTER) * (width + GUTTER * 2) + x + GUTTER, sdf.get(y * width + x));
+				}
+			}
+			font.freeSdf(sdf);
+		} else {
+			int[] box = font.getBitmapBox(index, scale);
+			width = box[2] - box[0];
+			height = box[3] - box[1];
+			xOffset = box[0];
+			yOffset = box[1];
+			if (width <= 0 || height <= 0) return new Glyph(index, advance);
+			pixels = padded(width, height);
+			int stride = width + GUTTER * 2;
+			font.rasterize(index, scale, pixels.position(GUTTER * stride + GUTTER), width, height, stride);
+			pixels.position(0);
+		}
+		
+		int paddedWidth = width + GUTTER * 2;
+		int paddedHeight = height + GUTTER * 2;
+		try {
+			if (paddedWidth > pageSize || paddedHeight > pageSize) {
+				throw new IllegalArgumentException("Glyph for codepoint "+codepoint+" is "+paddedWidth+"x"+paddedHeight+", which doesn't fit on a "+pageSize+"x"+pageSize+" page.");
+			}
+			
+			Page page = null;
+			int[] slot = null;
+			for(Page cur : pages) {
+				slot = cur.allocate(paddedWidth, paddedHeight);
+				if (slot != null) {
+					page = cur;
+					break;
+				}
+			}
+			if (page == null) {
+				page = (pages.size() < maxPages) ? newPage() : evict(beforeEviction);
+				slot = page.allocate(paddedWidth, paddedHeight);
+			}
+			
+			page.texture.setSubData(0, slot[0], slot[1], paddedWidth, paddedHeight, pixels);
+			page.codepoints.add(codepoint);
+			
+			float u0 = slot[0] / (float) pageSize;
+			float v0 = slot[1] / (float) pageSize;
+			float u1 = (slot[0] + paddedWidth) / (float) pageSize;
+			float v1 = (slot[1] + paddedHeight) / (float) pageSize;
+			return new Glyph(index, advance, page, u0, v0, u1, v1, xOffset - GUTTER, yOffset - GUTTER, paddedWidth, paddedHeight);
+		} finally {
+			MemoryUtil.memFree(pixels);
+		}
+	}
+	
+	private static ByteBuffer padded(int width, int height) {
+		return MemoryUtil.memCalloc((width + GUTTER * 2) * (height + GUTTER * 2));
+	}
+	
+	private Page newPage() {
+		Texture texture = new Texture(TextureFormat.R8, pageSize, pageSize, 1);
+		texture.setFilter(TextureFilter.LINEAR, TextureFilter.LINEAR);
+		texture.setSwizzle(GL_ONE, GL_ONE, GL_ONE, GL_RED);
+		Page page = new Page(texture);
+		pages.add(page);
+		return page;
+	}
+	
+	private Page evict(Runnable beforeEviction) {
+		Page oldest = pages.get(0);
+		for(Page page : pages) {
+			if (page.lastUsed < oldest.lastUsed) oldest = page;
+		}
+		
+		if (beforeEviction != null) beforeEviction.run();
+		for(int codepoint : oldest.codepoints) {
+			glyphs[codepoint >> 8][codepoint & 0xFF] = null;
+		}
+		oldest.reset();
+		return oldest;
+	}
+	
+	/**
+	 * Forgets every glyph, so that they'll all be rasterized again on demand. The atlas pages are kept.
+	 */
+	public void clear() {
+		Arrays.fill(glyphs, null);
+		for(Page page : pages) {
+			page.reset();
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		Arrays.fill(glyphs, null);
+		for(Page page : pages) {
+			page.texture.destroy();
+		}
+		pages.clear();
+	}
+	
+	private static class Page {
+		private final Texture texture;
+		private final List<Integer> codepoints = new ArrayList<>();
+		private int shelfY = 0;
+		private int shelfHeight = 0;
+		private int cursorX = 0;
+		private long lastUsed = 0;
+		
+		private Page(Texture texture) {
+			this.texture = texture;
+		}
+		
+		/**
+		 * Finds room for a rectangle, starting a new shelf if the current one is too short or too full.
+		 * @return {x, y}, or null if this page is full
+		 */
+		private int[] allocate(int width, int height) {
+			int size = texture.getWidth();
+			if (cursorX + width > size || (height > shelfHeight && cursorX != 0)) {
+				// Close off the current shelf and start a new one below it
+				shelfY += shelfHeight;
+				shelfHeight = 0;
+				cursorX = 0;
+			}
+			if (shelfY + height > size) return null;
+			
+			int[] result = { cursorX, shelfY };
+			cursorX += width;
+			shelfHeight = Math.max(shelfHeight, height);
+			return result;
+		}
+		
+		private void reset() {
+			codepoints.clear();
+			shelfY = 0;
+			shelfHeight = 0;
+			cursorX = 0;
+		}
+	}
+	
+	/**
+	 * One rasterized glyph, positioned relative to the pen on the baseline, in pixels at its cache's height.
+	 */
+	public static class Glyph {
+		private final int index;
+		private final float advance;
+		private final Page page;
+		private final float u0, v0, u1, v1;
+		private final int xOffset, yOffset, width, height;
+		
+		private Glyph(int index, float advance) {
+			this(index, advance, null, 0, 0, 0, 0, 0, 0, 0, 0);
+		}
+		
+		private Glyph(int index, float advance, Page page, float u0, float v0, float u1, float v1, int xOffset, int yOffset, int width, int height) {
+			this.index = index;
+			this.advance = advance;
+			this.page = page;
+			this.u0 = u0;
+			this.v0 = v0;
+			this.u1 = u1;
+			this.v1 = v1;
+			this.xOffset = xOffset;
+			this.yOffset = yOffset;
+			this.width = width;
+			this.height = height;
+		}
+		
+		/** Gets the font's index for this glyph, for use with {@link GlyphCache#getKerning(int, int)}. */
+		public int index() { return index; }
+		/** Gets how far the pen moves after this glyph. */
+		public float advance() { return advance; }
+		/** Returns true if this glyph draws nothing, like a space. */
+		public boolean isEmpty() { return page == null; }
+		/** Gets the atlas page this glyph lives on, or null if it's empty. */
+		public Texture texture() { return (page == null) ? null : page.texture; }
+		public float u0() { return u0; }
+		public float v0() { return v0; }
+		public float u1() { return u1; }
+		public float v1() { return v1; }
+		public int xOffset() { return xOffset; }
+		public int yOffset() { return yOffset; }
+		public int width() { return width; }
+		public int height() { return height; }
+	}
+}
@@ -0,0 +1,108 @@
+package com.playsawdust.glow.gl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.playsawdust.glow.gl.text.Font;
+import com.playsawdust.glow.gl.text.GlyphCache;
+import com.playsawdust.glow.image.SrgbImageData;
+
+/**
+ * The painter's per-frame drawing calls, each queueing a batch of quads and flushing them the way a frame would. Once
+ * warmed up, none of them should allocate. Run under the gc profiler by {@link WindowPainterAllocationTest}.
+ */
+@State(Scope.Thread)
+public class WindowPainterAllocationBenchmark {
+	/** Quads queued per operation */
+	static final int BATCH = 64;
+	static final String TEXT = "Sphinx of black quartz, judge my vow.";
+	
+	/** Where drawString's font is looked for, after the glow.test.font system property */
+	private static final String[] FONT_PATHS = {
+		"/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+		"/usr/share/fonts/TTF/DejaVuSans.ttf",
+		"/usr/share/fonts/dejavu/DejaVuSans.ttf",
+		"/Library/Fonts/Arial.ttf",
+		"/System/Library/Fonts/Supplemental/Arial.ttf",
+		"C:/Windows/Fonts/arial.ttf"
+	};
+	
+	private Window window;
+	private WindowPainter painter;
+	private Texture image;
+	private GlyphCache glyphs;
+	
+	@Setup
+	public void setup() throws IOException {
+		// JMH runs setup on the benchmark's own thread, so the context is current where it's needed
+		window = new Window("WindowPainter allocation");
+		painter = window.getPainter();
+		
+		SrgbImageData data = new SrgbImageData(16, 16);
+		for(int y=0; y<16; y++) {
+			for(int x=0; x<16; x++) {
+				data.setPixel(x, y, 0xFF000000 | (x * 16 << 16) | (y * 16 << 8));
+			}
+		}
+		image = new Texture();
+		image.setImage(data);
+		
+		Path font = findFont();
+		if (font != null) {
+			glyphs = new GlyphCache(new Font(Files.readAllBytes(font)), 16, GlyphCache.Mode.COVERAGE);
+		}
+		painter.startDrawing();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		painter.flush();
+		if (glyphs != null) glyphs.destroy();
+		image.destroy();
+		window.destroy();
+	}
+	
+	@Benchmark
+	public void fillRect() {
+		for(int i=0; i<BATCH; i++) {
+			painter.fillRect(i, i, 32, 32, 0x80FF8040);
+		}
+		painter.flush();
+	}
+	
+	@Benchmark
+	public void drawTintImage() {
+		for(int i=0; i<BATCH; i++) {
+			painter.drawTintImage(image, i, i, 0, 0, 16, 16, 0xC0FFFFFF);
+		}
+		painter.flush();
+	}
+	
+	@Benchmark
+	public void drawString() {
+		for(int i=0; i<4; i++) {
+			painter.drawString(glyphs, TEXT, 4, i * 20, 0xFFFFFFFF);
+		}
+		painter.flush();
+	}
+	
+	/**
+	 * Finds a TrueType font to draw text with, or returns null if there isn't one, in which case the drawString benchmark
+	 * can't run.
+	 */
+	static Path findFont() {
+		String property = System.getProperty("glow.test.font");
+		if (property != null) return Path.of(property);
+		for(String path : FONT_PATHS) {
+			if (Files.isRegularFile(Path.of(path))) return Path.of(path);
+		}
+		return null;
+	}
+}
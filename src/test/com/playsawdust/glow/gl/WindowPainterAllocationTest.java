@@ -0,0 +1,54 @@
+package com.playsawdust.glow.gl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs {@link WindowPainterAllocationBenchmark} with JMH's gc profiler, and fails if any of the painter's drawing calls
+ * allocate. The benchmark runs in this JVM rather than a fork: it only needs a GL context, and allocation counts, unlike
+ * timings, aren't skewed by sharing a JVM with the test runner. Skipped where no GL context can be created, and
+ * drawString is only measured where a font can be found.
+ */
+public class WindowPainterAllocationTest {
+	/** JMH's own bookkeeping can show up as a fraction of a byte per operation */
+	private static final double TOLERANCE = 1;
+	
+	@Test
+	public void drawingAllocatesNothing() throws RunnerException {
+		Window probe = null;
+		try {
+			probe = new Window("WindowPainter allocation probe");
+		} catch (Throwable t) {
+			// No display, or no GL 4.1 driver
+		}
+		Assumptions.assumeTrue(probe != null, "No GL context available.");
+		probe.destroy();
+		
+		String benchmarks = (WindowPainterAllocationBenchmark.findFont() != null) ? "fillRect|drawTintImage|drawString" : "fillRect|drawTintImage";
+		Options options = new OptionsBuilder()
+				.include(WindowPainterAllocationBenchmark.class.getName() + "\\.(" + benchmarks + ")$")
+				.forks(0)
+				.warmupIterations(3)
+				.warmupTime(TimeValue.milliseconds(200))
+				.measurementIterations(3)
+				.measurementTime(TimeValue.milliseconds(200))
+				.addProfiler(GCProfiler.class)
+				.build();
+		
+		for(RunResult result : new Runner(options).run()) {
+			String name = result.getParams().getBenchmark();
+			assertTrue(result.getSecondaryResults().containsKey("gc.alloc.rate.norm"), "The gc profiler reported nothing for "+name+".");
+			double allocated = result.getSecondaryResults().get("gc.alloc.rate.norm").getScore();
+			assertTrue(allocated < TOLERANCE, name+" allocated "+allocated+" bytes per operation.");
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.playsawdust.glow.gl.color;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bulk conversions against each other and against the single-value ones. Run with
+ * {@code --add-modules jdk.incubator.vector} to compare the Vector API kernel against the scalar one; without it, both
+ * sides are scalar.
+ */
+public class ColorConversionTest {
+	private static final ColorKernel SCALAR = new ScalarColorKernel();
+	private static final ColorKernel FASTEST = ColorKernel.create();
+	
+	@Test
+	public void kernelsAgree() {
+		Random random = new Random(42);
+		// Odd offsets and lengths, so the vector loops hand a remainder to their tail
+		for(int length : new int[] { 0, 1, 7, 64, 301 }) {
+			int[] pixels = new int[length + 3];
+			for(int i=0; i<pixels.length; i++) pixels[i] = random.nextInt();
+			
+			assertKernelsAgree(pixels, (kernel, p) -> kernel.toLinear(p, 3, length));
+			assertKernelsAgree(pixels, (kernel, p) -> kernel.toSrgb(p, 3, length));
+			assertKernelsAgree(pixels, (kernel, p) -> kernel.premultiply(p, 3, length));
+			assertKernelsAgree(pixels, (kernel, p) -> kernel.unpremultiply(p, 3, length));
+			assertKernelsAgree(pixels, (kernel, p) -> kernel.swapRedBlue(p, 3, length));
+			
+			ByteBuffer expected = ByteBuffer.allocateDirect(pixels.length * 4);
+			ByteBuffer actual = ByteBuffer.allocateDirect(pixels.length * 4);
+			for(int pixel : pixels) {
+				expected.putInt(pixel);
+				actual.putInt(pixel);
+			}
+			SCALAR.swapRedBlue(expected, 6, length);
+			FASTEST.swapRedBlue(actual, 6, length);
+			assertEquals(expected.clear(), actual.clear());
+		}
+	}
+	
+	@Test
+	public void swapRedBlue() {
+		int[] pixels = { 0x80112233 };
+		ColorConversion.swapRedBlue(pixels, 0, 1);
+		assertEquals(0x80332211, pixels[0]);
+		
+		// Offsets are absolute, whatever the buffer's position
+		ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+		for(int i=0; i<buffer.capacity(); i++) buffer.put(i, (byte) i);
+		buffer.position(100);
+		ColorConversion.swapRedBlue(buffer, 4, 60);
+		assertEquals(100, buffer.position());
+		assertEquals(0, buffer.get(0));
+		assertEquals(6, buffer.get(4));
+		assertEquals(4, buffer.get(6));
+		assertEquals((byte) 242, buffer.get(240));
+		assertEquals((byte) 240, buffer.get(242));
+		assertEquals((byte) 244, buffer.get(244));
+		
+		assertThrows(IndexOutOfBoundsException.class, () -> ColorConversion.swapRedBlue(buffer, 8, 63));
+	}
+	
+	@Test
+	public void linearFloatsRoundTrip() {
+		int[] pixels = new int[256];
+		for(int i=0; i<256; i++) pixels[i] = (i << 24) | (i << 16) | ((255 - i) << 8) | (i * 7 & 0xFF);
+		
+		float[] linear = new float[256 * 4 + 2];
+		ColorConversion.toLinear(pixels, 0, linear, 2, 256, false);
+		assertEquals(ColorConversion.srgbToLinear(200), linear[2 + 200 * 4], 0);
+		assertEquals(200 / 255f, linear[2 + 200 * 4 + 3], 0);
+		
+		int[] back = new int[256];
+		ColorConversion.toSrgb(linear, 2, back, 0, 256, false);
+		assertArrayEquals(pixels, back);
+	}
+	
+	@Test
+	public void premultipliedFloats() {
+		int[] pixels = { 0x80FF8000, 0x00FFFFFF };
+		float[] linear = new float[8];
+		ColorConversion.toLinear(pixels, 0, linear, 0, 2, true);
+		float alpha = 0x80 / 255f;
+		assertEquals(alpha, linear[0], 1e-6f);
+		assertEquals(ColorConversion.srgbToLinear(0x80) * alpha, linear[1], 1e-6f);
+		assertEquals(0, linear[4]);
+		
+		int[] back = new int[2];
+		ColorConversion.toSrgb(linear, 0, back, 0, 2, true);
+		assertEquals(0x80FF8000, back[0]);
+		assertEquals(0, back[1]);
+	}
+	
+	@Test
+	public void floatsAreClamped() {
+		float[] linear = { 2, -1, Float.NaN, 1.5f };
+		int[] pixel = new int[1];
+		ColorConversion.toSrgb(linear, 0, pixel, 0, 1, false);
+		assertEquals(0xFFFF0000, pixel[0]);
+		
+		assertThrows(IndexOutOfBoundsException.class, () -> ColorConversion.toSrgb(linear, 1, pixel, 0, 1, false));
+	}
+	
+	private static void assertKernelsAgree(int[] pixels, KernelCall call) {
+		int[] expected = pixels.clone();
+		int[] actual = pixels.clone();
+		call.run(SCALAR, expected);
+		call.run(FASTEST, actual);
+		assertArrayEquals(expected, actual);
+	}
+	
+	@FunctionalInterface
+	private interface KernelCall {
+		void run(ColorKernel kernel, int[] pixels);
+	}
+}
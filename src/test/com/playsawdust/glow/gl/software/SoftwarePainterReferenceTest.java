@@ -0,0 +1,128 @@
+package com.playsawdust.glow.gl.software;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.playsawdust.glow.gl.BlendMode;
+import com.playsawdust.glow.gl.Framebuffer;
+import com.playsawdust.glow.gl.Window;
+import com.playsawdust.glow.image.SrgbImageData;
+import com.playsawdust.glow.image.color.RGBColor;
+import com.playsawdust.glow.render.Painter;
+
+/**
+ * Paints the same scenes with SoftwarePainter and with the GL path into a Framebuffer, and compares them pixel by
+ * pixel. Skipped where no GL context can be created, such as on a headless build machine.
+ */
+public class SoftwarePainterReferenceTest {
+	private static final int SIZE = 64;
+	/** Rounding differs a little between the GPU's blender and ours, so allow a couple of steps per channel */
+	private static final int TOLERANCE = 2;
+	
+	private static Window window;
+	private static SrgbImageData sprite;
+	
+	@BeforeAll
+	public static void createContext() {
+		try {
+			window = new Window("SoftwarePainter reference");
+		} catch (Throwable t) {
+			// No display, or no GL 4.1 driver
+		}
+		Assumptions.assumeTrue(window != null, "No GL context available.");
+		
+		sprite = new SrgbImageData(16, 16);
+		for(int y=0; y<16; y++) {
+			for(int x=0; x<16; x++) {
+				int alpha = (x + y) * 8;
+				sprite.setPixel(x, y, (alpha << 24) | (x * 16 << 16) | (y * 16 << 8) | 0x80);
+			}
+		}
+	}
+	
+	@AfterAll
+	public static void destroyContext() {
+		if (window != null) window.destroy();
+	}
+	
+	@Test
+	public void opaqueRects() {
+		compare(painter -> {
+			painter.fillRect(0, 0, SIZE, SIZE, new RGBColor(1, 0.2f, 0.3f, 0.4f));
+			painter.fillRect(8, 8, 20, 12, new RGBColor(1, 1, 0.5f, 0));
+			painter.fillRect(30, 40, 30, 30, new RGBColor(1, 0, 0.05f, 1));
+		}, BlendMode.NORMAL);
+	}
+	
+	@Test
+	public void translucentRects() {
+		compare(painter -> {
+			painter.fillRect(0, 0, SIZE, SIZE, new RGBColor(1, 0.8f, 0.8f, 0.8f));
+			painter.fillRect(4, 4, 40, 40, new RGBColor(0.5f, 1, 0, 0));
+			painter.fillRect(20, 20, 40, 40, new RGBColor(0.25f, 0, 0, 1));
+		}, BlendMode.NORMAL);
+	}
+	
+	@Test
+	public void images() {
+		compare(painter -> {
+			painter.fillRect(0, 0, SIZE, SIZE, new RGBColor(1, 0.1f, 0.1f, 0.1f));
+			painter.drawImage(sprite, 0, 0, 0, 0, 16, 16, 1);
+			painter.drawImage(sprite, 20, 4, 4, 4, 12, 12, 0.5f);
+			painter.drawTintImage(sprite, 40, 40, 0, 0, 16, 16, new RGBColor(0.75f, 1, 0.5f, 0.25f));
+		}, BlendMode.NORMAL);
+	}
+	
+	@Test
+	public void blendModes() {
+		for(BlendMode mode : BlendMode.values()) {
+			compare(painter -> {
+				painter.fillRect(0, 0, SIZE, SIZE, new RGBColor(1, 0.4f, 0.5f, 0.6f));
+				painter.drawImage(sprite, 8, 8, 0, 0, 16, 16, 1);
+				painter.fillRect(16, 16, 32, 32, new RGBColor(0.6f, 0.9f, 0.2f, 0.1f));
+			}, mode);
+		}
+	}
+	
+	private void compare(Consumer<Painter> scene, BlendMode mode) {
+		SoftwarePainter software = new SoftwarePainter(SIZE, SIZE);
+		software.setBlendMode(BlendMode.NORMAL);
+		software.fillRect(0, 0, SIZE, SIZE, new RGBColor(1, 0, 0, 0));
+		software.setBlendMode(mode);
+		scene.accept(software);
+		software.flush();
+		int[] expected = software.getImage().getData();
+		
+		Framebuffer framebuffer = new Framebuffer(SIZE, SIZE);
+		try {
+			window.paint(painter -> {
+				painter.pushTarget(framebuffer);
+				painter.setBlendMode(BlendMode.NORMAL);
+				painter.fillRect(0, 0, SIZE, SIZE, new RGBColor(1, 0, 0, 0));
+				painter.setBlendMode(mode);
+				scene.accept(painter);
+				painter.setBlendMode(BlendMode.NORMAL);
+				painter.popTarget();
+			});
+			int[] actual = framebuffer.getTexture().getImage().getData();
+			
+			for(int i=0; i<expected.length; i++) {
+				for(int shift=0; shift<32; shift+=8) {
+					int e = (expected[i] >>> shift) & 0xFF;
+					int a = (actual[i] >>> shift) & 0xFF;
+					if (Math.abs(e - a) > TOLERANCE) {
+						fail(mode+": pixel ("+(i % SIZE)+", "+(i / SIZE)+") is "+Integer.toHexString(actual[i])+" on the GPU but "+Integer.toHexString(expected[i])+" in software.");
+					}
+				}
+			}
+		} finally {
+			framebuffer.destroy();
+		}
+	}
+}
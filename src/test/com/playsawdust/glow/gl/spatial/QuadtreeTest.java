@@ -0,0 +1,134 @@
+package com.playsawdust.glow.gl.spatial;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class QuadtreeTest {
+	@Test
+	public void straddlingNodesIsReportedOnce() {
+		Quadtree<Integer> tree = new Quadtree<>(0, 0, 100, 100);
+		// Enough small objects in one corner to split the root, and then its first quadrant
+		for(int i=0; i<40; i++) tree.put(i, (i % 8) * 3, (i / 8) * 3, 2, 2);
+		tree.put(-1, 40, 40, 20, 20);
+		tree.put(-2, 20, 20, 10, 10);
+		
+		assertEquals(List.of(-1), tree.query(45, 55, 1, 1));
+		assertEquals(List.of(-1), tree.query(55, 45, 1, 1));
+		assertEquals(List.of(-2), tree.query(24, 24, 2, 2));
+		assertEquals(42, tree.query(0, 0, 100, 100).size());
+	}
+	
+	@Test
+	public void edgesAreHalfOpen() {
+		Quadtree<String> tree = new Quadtree<>(0, 0, 100, 100);
+		tree.put("a", 0, 0, 50, 50);
+		
+		assertTrue(tree.query(50, 0, 10, 10).isEmpty());
+		assertTrue(tree.query(0, 50, 10, 10).isEmpty());
+		assertEquals(List.of("a"), tree.query(49.5f, 49.5f, 1, 1));
+	}
+	
+	@Test
+	public void zeroSizeBounds() {
+		Quadtree<Integer> tree = new Quadtree<>(0, 0, 100, 100);
+		for(int i=0; i<20; i++) tree.put(i, 60 + i, 60 + i, 1, 1);
+		// On the split lines between quadrants
+		tree.put(-1, 50, 50, 0, 0);
+		tree.put(-2, 25, 50, 0, 10);
+		
+		assertEquals(List.of(-1), tree.query(50, 50, 0, 0));
+		assertEquals(List.of(-1), tree.query(50, 50, 5, 5));
+		assertTrue(tree.query(45, 45, 5, 5).isEmpty());
+		assertEquals(List.of(-2), tree.query(25, 55, 0, 0));
+		assertEquals(List.of(-2), tree.query(20, 50, 10, 1));
+		assertTrue(tree.query(20, 40, 10, 10).isEmpty());
+		
+		// A zero-size query is a point, and finds whatever contains it
+		assertEquals(List.of(0), tree.query(60, 60, 0, 0));
+		assertTrue(tree.query(61.5f, 60.5f, 0, 0).isEmpty());
+	}
+	
+	@Test
+	public void outsideTheRegion() {
+		Quadtree<String> tree = new Quadtree<>(0, 0, 100, 100);
+		tree.put("far", 500, 500, 10, 10);
+		tree.put("edge", 100, 100, 0, 0);
+		tree.put("overhang", 90, 90, 20, 20);
+		
+		assertEquals(List.of("far"), tree.query(505, 505, 1, 1));
+		assertEquals(Set.of("edge", "overhang"), new HashSet<>(tree.query(100, 100, 0, 0)));
+		assertEquals(Set.of("edge", "overhang"), new HashSet<>(tree.query(95, 95, 10, 10)));
+		assertEquals(List.of("overhang"), tree.query(91, 91, 2, 2));
+		assertTrue(tree.remove("far"));
+		assertTrue(tree.query(505, 505, 1, 1).isEmpty());
+	}
+	
+	@Test
+	public void moveAndRemove() {
+		Quadtree<Integer> tree = new Quadtree<>(0, 0, 100, 100);
+		for(int i=0; i<30; i++) tree.put(i, i * 3, i * 3, 2, 2);
+		tree.put(0, 80, 10, 2, 2);
+		assertEquals(30, tree.size());
+		assertTrue(tree.query(0, 0, 2, 2).isEmpty());
+		assertEquals(List.of(0), tree.query(80, 10, 1, 1));
+		
+		for(int i=0; i<30; i++) assertTrue(tree.remove(i));
+		assertFalse(tree.remove(0));
+		assertFalse(tree.contains(0));
+		assertEquals(0, tree.size());
+		assertTrue(tree.query(0, 0, 100, 100).isEmpty());
+		
+		// Removing everything folds the tree back up, so it still works afterwards
+		tree.put(1, 10, 10, 80, 80);
+		assertEquals(List.of(1), tree.query(50, 50, 1, 1));
+	}
+	
+	@Test
+	public void clear() {
+		Quadtree<Integer> tree = new Quadtree<>(0, 0, 100, 100);
+		for(int i=0; i<50; i++) tree.put(i, i, i, 1, 1);
+		tree.put(-1, 200, 200, 1, 1);
+		tree.clear();
+		
+		assertEquals(0, tree.size());
+		assertTrue(tree.query(-1000, -1000, 2000, 2000).isEmpty());
+		tree.put(1, 0, 0, 1, 1);
+		assertEquals(List.of(1), tree.query(0, 0, 1, 1));
+	}
+	
+	@Test
+	public void matchesBruteForce() {
+		Random random = new Random(42);
+		Quadtree<Integer> tree = new Quadtree<>(-200, -200, 400, 400);
+		float[][] bounds = new float[300][];
+		
+		for(int step=0; step<5000; step++) {
+			int id = random.nextInt(bounds.length);
+			if (random.nextInt(4) == 0) {
+				assertEquals(bounds[id] != null, tree.remove(id));
+				bounds[id] = null;
+			} else {
+				float[] b = UniformGridTest.randomBounds(random);
+				tree.put(id, b[0], b[1], b[2], b[3]);
+				bounds[id] = b;
+			}
+			
+			float[] q = UniformGridTest.randomBounds(random);
+			Set<Integer> expected = new HashSet<>();
+			for(int i=0; i<bounds.length; i++) {
+				if (bounds[i] != null && UniformGridTest.overlaps(bounds[i], q)) expected.add(i);
+			}
+			List<Integer> found = new ArrayList<>();
+			tree.query(q[0], q[1], q[2], q[3], found::add);
+			assertEquals(expected.size(), found.size(), "Duplicate or missing results at step "+step);
+			assertEquals(expected, new HashSet<>(found), "Wrong results at step "+step);
+		}
+	}
+}
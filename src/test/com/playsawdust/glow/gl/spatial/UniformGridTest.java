@@ -0,0 +1,137 @@
+package com.playsawdust.glow.gl.spatial;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class UniformGridTest {
+	@Test
+	public void straddlingCellsIsReportedOnce() {
+		UniformGrid<String> grid = new UniformGrid<>(10);
+		grid.put("wide", 5, 5, 30, 30);
+		
+		List<String> found = grid.query(0, 0, 40, 40);
+		assertEquals(List.of("wide"), found);
+		assertEquals(List.of("wide"), grid.query(31, 31, 2, 2));
+		assertEquals(List.of("wide"), grid.query(-5, -5, 10.5f, 10.5f));
+	}
+	
+	@Test
+	public void edgesAreHalfOpen() {
+		UniformGrid<String> grid = new UniformGrid<>(10);
+		grid.put("a", 0, 0, 10, 10);
+		
+		assertTrue(grid.query(10, 0, 10, 10).isEmpty());
+		assertTrue(grid.query(-10, 0, 10, 10).isEmpty());
+		assertEquals(List.of("a"), grid.query(9.5f, 9.5f, 1, 1));
+	}
+	
+	@Test
+	public void negativeCoordinates() {
+		UniformGrid<String> grid = new UniformGrid<>(10);
+		grid.put("a", -25, -25, 10, 10);
+		
+		assertEquals(List.of("a"), grid.query(-20, -20, 1, 1));
+		assertTrue(grid.query(-14, -14, 20, 20).isEmpty());
+	}
+	
+	@Test
+	public void zeroSizeBounds() {
+		UniformGrid<String> grid = new UniformGrid<>(10);
+		grid.put("point", 10, 10, 0, 0);
+		grid.put("line", 20, 0, 0, 30);
+		
+		assertEquals(List.of("point"), grid.query(10, 10, 5, 5));
+		assertEquals(List.of("point"), grid.query(10, 10, 0, 0));
+		assertTrue(grid.query(0, 0, 10, 10).isEmpty());
+		assertEquals(List.of("line"), grid.query(15, 15, 10, 1));
+		assertTrue(grid.query(10, 15, 10, 1).isEmpty());
+		
+		// A zero-size query is a point, and finds whatever contains it
+		grid.put("box", 30, 30, 10, 10);
+		assertEquals(List.of("box"), grid.query(30, 30, 0, 0));
+		assertTrue(grid.query(40, 40, 0, 0).isEmpty());
+	}
+	
+	@Test
+	public void moveAndRemove() {
+		UniformGrid<String> grid = new UniformGrid<>(10);
+		grid.put("a", 0, 0, 5, 5);
+		grid.put("a", 1, 1, 5, 5);
+		assertEquals(1, grid.size());
+		assertEquals(List.of("a"), grid.query(5.5f, 5.5f, 1, 1));
+		
+		grid.put("a", 100, 100, 25, 5);
+		assertTrue(grid.query(0, 0, 50, 50).isEmpty());
+		assertEquals(List.of("a"), grid.query(120, 100, 1, 1));
+		
+		assertTrue(grid.remove("a"));
+		assertFalse(grid.remove("a"));
+		assertFalse(grid.contains("a"));
+		assertEquals(0, grid.size());
+		assertTrue(grid.query(-1000, -1000, 2000, 2000).isEmpty());
+	}
+	
+	@Test
+	public void clear() {
+		UniformGrid<Integer> grid = new UniformGrid<>(10);
+		for(int i=0; i<100; i++) grid.put(i, i * 7, i * 3, 4, 4);
+		grid.clear();
+		
+		assertEquals(0, grid.size());
+		assertTrue(grid.query(-1000, -1000, 2000, 2000).isEmpty());
+		grid.put(1, 0, 0, 1, 1);
+		assertEquals(List.of(1), grid.query(0, 0, 1, 1));
+	}
+	
+	/**
+	 * Puts, moves and removes enough objects to grow the cell table and exercise removal from the middle of probe runs,
+	 * checking every query against a brute-force scan.
+	 */
+	@Test
+	public void matchesBruteForce() {
+		Random random = new Random(42);
+		UniformGrid<Integer> grid = new UniformGrid<>(16);
+		float[][] bounds = new float[300][];
+		
+		for(int step=0; step<5000; step++) {
+			int id = random.nextInt(bounds.length);
+			if (random.nextInt(4) == 0) {
+				assertEquals(bounds[id] != null, grid.remove(id));
+				bounds[id] = null;
+			} else {
+				float[] b = randomBounds(random);
+				grid.put(id, b[0], b[1], b[2], b[3]);
+				bounds[id] = b;
+			}
+			
+			float[] q = randomBounds(random);
+			Set<Integer> expected = new HashSet<>();
+			for(int i=0; i<bounds.length; i++) {
+				if (bounds[i] != null && overlaps(bounds[i], q)) expected.add(i);
+			}
+			List<Integer> found = new ArrayList<>();
+			grid.query(q[0], q[1], q[2], q[3], found::add);
+			assertEquals(expected.size(), found.size(), "Duplicate or missing results at step "+step);
+			assertEquals(expected, new HashSet<>(found), "Wrong results at step "+step);
+		}
+	}
+	
+	static float[] randomBounds(Random random) {
+		float x = random.nextInt(400) - 200;
+		float y = random.nextInt(400) - 200;
+		float width = (random.nextInt(8) == 0) ? 0 : random.nextInt(60);
+		float height = (random.nextInt(8) == 0) ? 0 : random.nextInt(60);
+		return new float[] { x, y, width, height };
+	}
+	
+	static boolean overlaps(float[] a, float[] b) {
+		return Bounds.spansOverlap(a[0], a[0] + a[2], b[0], b[0] + b[2]) && Bounds.spansOverlap(a[1], a[1] + a[3], b[1], b[1] + b[3]);
+	}
+}
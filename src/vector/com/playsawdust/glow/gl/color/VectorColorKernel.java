@@ -0,0 +1,137 @@
+package com.playsawdust.glow.gl.color;
+
+import static jdk.incubator.vector.VectorOperators.DIV;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A ColorKernel which works on as many pixels at once as the CPU's widest vector registers hold, using the incubating
+ * Vector API. Only loaded reflectively by {@link ColorKernel#create()}, so that nothing breaks on JVMs started without
+ * the {@code jdk.incubator.vector} module.
+ *
+ * <p>The sRGB conversions are table lookups, which the scalar loop already does about as fast as gathers could, so
+ * those are shared with {@link ScalarColorKernel}.
+ */
+final class VectorColorKernel implements ColorKernel {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	private static final ScalarColorKernel TAIL = new ScalarColorKernel();
+	
+	@Override
+	public void toLinear(int[] pixels, int offset, int length) {
+		TAIL.toLinear(pixels, offset, length);
+	}
+	
+	@Override
+	public void toSrgb(int[] pixels, int offset, int length) {
+		TAIL.toSrgb(pixels, offset, length);
+	}
+	
+	@Override
+	public void toLinear(int[] src, int srcOffset, float[] dst, int dstOffset, int length, boolean premultiply) {
+		TAIL.toLinear(src, srcOffset, dst, dstOffset, length, premultiply);
+	}
+	
+	@Override
+	public void toSrgb(float[] src, int srcOffset, int[] dst, int dstOffset, int length, boolean unpremultiply) {
+		TAIL.toSrgb(src, srcOffset, dst, dstOffset, length, unpremultiply);
+	}
+	
+	@Override
+	public void premultiply(int[] pixels, int offset, int length) {
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		for(; i<bound; i += SPECIES.length()) {
+			IntVector p = IntVector.fromArray(SPECIES, pixels, offset + i);
+			IntVector a = p.lanewise(LSHR, 24);
+			IntVector r = mul(p.lanewise(LSHR, 16).and(0xFF), a);
+			IntVector g = mul(p.lanewise(LSHR, 8).and(0xFF), a);
+			IntVector b = mul(p.and(0xFF), a);
+			pack(a, r, g, b).intoArray(pixels, offset + i);
+		}
+		
+		if (i < length) TAIL.premultiply(pixels, offset + i, length - i);
+	}
+	
+	@Override
+	public void unpremultiply(int[] pixels, int offset, int length) {
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		for(; i<bound; i += SPECIES.length()) {
+			IntVector p = IntVector.fromArray(SPECIES, pixels, offset + i);
+			IntVector a = p.lanewise(LSHR, 24);
+			VectorMask<Integer> transparent = a.eq(0);
+			// Transparent lanes divide by one instead of zero, and are blanked afterwards
+			IntVector divisor = a.max(1);
+			IntVector half = divisor.lanewise(LSHR, 1);
+			IntVector r = div(p.lanewise(LSHR, 16).and(0xFF), divisor, half);
+			IntVector g = div(p.lanewise(LSHR, 8).and(0xFF), divisor, half);
+			IntVector b = div(p.and(0xFF), divisor, half);
+			pack(a, r, g, b).blend(0, transparent).intoArray(pixels, offset + i);
+		}
+		
+		if (i < length) TAIL.unpremultiply(pixels, offset + i, length - i);
+	}
+	
+	@Override
+	public void swapRedBlue(int[] pixels, int offset, int length) {
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		for(; i<bound; i += SPECIES.length()) {
+			swap(IntVector.fromArray(SPECIES, pixels, offset + i)).intoArray(pixels, offset + i);
+		}
+		
+		if (i < length) TAIL.swapRedBlue(pixels, offset + i, length - i);
+	}
+	
+	@Override
+	public void swapRedBlue(ByteBuffer pixels, int offset, int length) {
+		if (!pixels.isDirect()) {
+			TAIL.swapRedBlue(pixels, offset, length);
+			return;
+		}
+		
+		// A segment only spans position to limit, so view the whole buffer to keep offsets absolute like the tail's
+		MemorySegment segment = MemorySegment.ofBuffer(pixels.duplicate().clear());
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		for(; i<bound; i += SPECIES.length()) {
+			// Byte order doesn't matter as long as loads and stores agree, but little-endian puts the first byte in the low bits
+			long at = offset + i * 4L;
+			IntVector p = IntVector.fromMemorySegment(SPECIES, segment, at, ByteOrder.LITTLE_ENDIAN);
+			swap(p).intoMemorySegment(segment, at, ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		if (i < length) TAIL.swapRedBlue(pixels, offset + i * 4, length - i);
+	}
+	
+	private static IntVector swap(IntVector p) {
+		return p.and(0xFF00FF00).or(p.lanewise(LSHR, 16).and(0xFF)).or(p.and(0xFF).lanewise(LSHL, 16));
+	}
+	
+	private static IntVector pack(IntVector a, IntVector r, IntVector g, IntVector b) {
+		return a.lanewise(LSHL, 24).or(r.lanewise(LSHL, 16)).or(g.lanewise(LSHL, 8)).or(b);
+	}
+	
+	/**
+	 * The same arithmetic as {@link ScalarColorKernel#mul}.
+	 */
+	private static IntVector mul(IntVector x, IntVector y) {
+		IntVector t = x.mul(y).add(128);
+		return t.add(t.lanewise(LSHR, 8)).lanewise(LSHR, 8);
+	}
+	
+	/**
+	 * The same arithmetic as {@link ScalarColorKernel#div}.
+	 */
+	private static IntVector div(IntVector x, IntVector a, IntVector half) {
+		return x.mul(255).add(half).lanewise(DIV, a).min(255);
+	}
+}
@@ -0,0 +1,110 @@
+package com.playsawdust.glow.gl.software;
+
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+
+import com.playsawdust.glow.gl.BlendMode;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A SpanBlender which works on as many pixels at once as the CPU's widest vector registers hold, using the incubating
+ * Vector API. Only loaded reflectively by {@link SpanBlender#create()}, so that nothing breaks on JVMs started without
+ * the {@code jdk.incubator.vector} module.
+ */
+final class VectorSpanBlender implements SpanBlender {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	private static final ScalarSpanBlender TAIL = new ScalarSpanBlender();
+	
+	@Override
+	public void blend(int[] dst, int dstOffset, int[] src, int srcOffset, int length, int tintA, int tintR, int tintG, int tintB, BlendMode mode) {
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		for(; i<bound; i += SPECIES.length()) {
+			IntVector s = IntVector.fromArray(SPECIES, src, srcOffset + i);
+			IntVector d = IntVector.fromArray(SPECIES, dst, dstOffset + i);
+			IntVector sa = mul(s.lanewise(LSHR, 24), tintA);
+			IntVector sr = mul(s.lanewise(LSHR, 16).and(0xFF), tintR);
+			IntVector sg = mul(s.lanewise(LSHR, 8).and(0xFF), tintG);
+			IntVector sb = mul(s.and(0xFF), tintB);
+			blend(d, sa, sr, sg, sb, mode).intoArray(dst, dstOffset + i);
+		}
+		
+		if (i < length) {
+			TAIL.blend(dst, dstOffset + i, src, srcOffset + i, length - i, tintA, tintR, tintG, tintB, mode);
+		}
+	}
+	
+	@Override
+	public void blendSolid(int[] dst, int dstOffset, int length, int a, int r, int g, int b, BlendMode mode) {
+		IntVector sa = IntVector.broadcast(SPECIES, a);
+		IntVector sr = IntVector.broadcast(SPECIES, r);
+		IntVector sg = IntVector.broadcast(SPECIES, g);
+		IntVector sb = IntVector.broadcast(SPECIES, b);
+		
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		for(; i<bound; i += SPECIES.length()) {
+			IntVector d = IntVector.fromArray(SPECIES, dst, dstOffset + i);
+			blend(d, sa, sr, sg, sb, mode).intoArray(dst, dstOffset + i);
+		}
+		
+		for(; i<length; i++) {
+			dst[dstOffset + i] = ScalarSpanBlender.blendPixel(dst[dstOffset + i], a, r, g, b, mode);
+		}
+	}
+	
+	private static IntVector mul(IntVector x, int y) {
+		IntVector t = x.mul(y).add(128);
+		return t.add(t.lanewise(LSHR, 8)).lanewise(LSHR, 8);
+	}
+	
+	private static IntVector mul(IntVector x, IntVector y) {
+		IntVector t = x.mul(y).add(128);
+		return t.add(t.lanewise(LSHR, 8)).lanewise(LSHR, 8);
+	}
+	
+	/**
+	 * The same arithmetic as {@link ScalarSpanBlender#blendPixel}, a vector's worth of pixels at a time.
+	 */
+	private static IntVector blend(IntVector d, IntVector sa, IntVector sr, IntVector sg, IntVector sb, BlendMode mode) {
+		IntVector da = d.lanewise(LSHR, 24);
+		IntVector dr = d.lanewise(LSHR, 16).and(0xFF);
+		IntVector dg = d.lanewise(LSHR, 8).and(0xFF);
+		IntVector db = d.and(0xFF);
+		IntVector inv = IntVector.broadcast(SPECIES, 255).sub(sa);
+		
+		IntVector a, r, g, b;
+		switch(mode) {
+			case NORMAL -> {
+				a = sa.add(mul(da, inv));
+				r = mul(sr, sa).add(mul(dr, inv));
+				g = mul(sg, sa).add(mul(dg, inv));
+				b = mul(sb, sa).add(mul(db, inv));
+			}
+			case ADDITIVE -> {
+				a = sa.add(da);
+				r = mul(sr, sa).add(dr);
+				g = mul(sg, sa).add(dg);
+				b = mul(sb, sa).add(db);
+			}
+			case MULTIPLY -> {
+				a = da;
+				r = mul(sr, dr).add(mul(dr, inv));
+				g = mul(sg, dg).add(mul(dg, inv));
+				b = mul(sb, db).add(mul(db, inv));
+			}
+			default -> {
+				a = sa.add(mul(da, inv));
+				r = sr.add(mul(dr, inv));
+				g = sg.add(mul(dg, inv));
+				b = sb.add(mul(db, inv));
+			}
+		}
+		return a.min(255).lanewise(LSHL, 24)
+				.or(r.min(255).lanewise(LSHL, 16))
+				.or(g.min(255).lanewise(LSHL, 8))
+				.or(b.min(255));
+	}
+}